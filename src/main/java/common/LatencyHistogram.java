@@ -0,0 +1,131 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, which records any value from 0 up to
+ * {@link Long#MAX_VALUE} in constant time and space while keeping percentiles accurate to within 1%.
+ *
+ * As in an HdrHistogram, values are counted in buckets whose width grows with the size of the value. Values below 128
+ * have a bucket each. Above that, each power of two is split into 64 buckets of equal width, so a bucket is never wider
+ * than 1/64th of the values in it. Every bucket is an atomic counter, so any number of threads may record at once.
+ *
+ * @author Tristan Batchler
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_HALF_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_HALF_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a given value. Negative values are recorded as zero.
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.getAndIncrement(indexOf(value));
+        total.getAndIncrement();
+        sum.getAndAdd(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // Another thread raised the maximum first: check against its value.
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the largest value recorded, exactly, or 0 if none have been.
+     * @return The largest value recorded, or 0.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if none have been.
+     * @return The mean of the values recorded, or 0.
+     */
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Returns a value which a given percentage of the values recorded are at or below, rounded up to the top of its
+     * bucket but never above the largest value recorded. Returns 0 if no values have been recorded.
+     * @param percentile The percentage, in the range [0, 100].
+     * @return The value at the given percentile.
+     * @throws IllegalArgumentException If the given percentage is not in the range [0, 100].
+     */
+    public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in the range [0, 100]");
+        }
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every value recorded. Values recorded while resetting may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the index of the bucket counting a given non-negative value.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_HALF_BITS;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value counted by the bucket with a given index.
+     */
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,64 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sequence lock (seqlock) letting a single writer publish changes to shared data which any number of readers on other
+ * threads can read consistently without ever blocking the writer or taking a lock themselves.
+ *
+ * The writer brackets each change with {@link #beginWrite()} and {@link #endWrite()}. A reader takes a stamp with
+ * {@link #beginRead()}, reads the data, and then checks with {@link #validate(long)} that no change happened in the
+ * meantime, trying again if one did:
+ * <pre>
+ *     long stamp;
+ *     do {
+ *         stamp = lock.beginRead();
+ *         // read the data
+ *     } while (!lock.validate(stamp));
+ * </pre>
+ *
+ * For this to be safe the data itself must be written with at least release semantics and read with acquire semantics,
+ * such as through the {@code lazySet} and {@code get} methods of the {@code java.util.concurrent.atomic} arrays.
+ *
+ * @author Tristan Batchler
+ */
+public final class SequenceLock {
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Marks the start of a change to the data. Must only ever be called by the one writer thread.
+     */
+    public void beginWrite() {
+        sequence.getAndIncrement();
+    }
+
+    /**
+     * Marks the end of a change to the data, publishing the change to readers. Must only ever be called by the one
+     * writer thread, after {@link #beginWrite()}.
+     */
+    public void endWrite() {
+        sequence.lazySet(sequence.get() + 1);
+    }
+
+    /**
+     * Waits for any change in progress to end and returns a stamp to later validate the read against.
+     * @return A stamp to pass to {@link #validate(long)} once the data has been read.
+     */
+    public long beginRead() {
+        long stamp;
+        while (((stamp = sequence.get()) & 1) != 0) {
+            Thread.yield();
+        }
+        return stamp;
+    }
+
+    /**
+     * Returns true if and only if the data has not changed since a given stamp was taken, meaning everything read since
+     * then is consistent.
+     * @param stamp The stamp returned by {@link #beginRead()}.
+     * @return True if the data read since the stamp was taken is consistent; false if it must be read again.
+     */
+    public boolean validate(long stamp) {
+        return sequence.get() == stamp;
+    }
+}
@@ -0,0 +1,85 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which many threads can add to at once without slowing each other down.
+ *
+ * The count is split across a number of cells, each on its own cache line, and each thread adds to the cell picked by its
+ * thread identifier. Threads only contend when they happen to share a cell, and a single thread adding on its own costs
+ * no more than an uncontended atomic add. Reading the count adds up every cell, so is slower than adding to it, and is
+ * only exact while nobody is adding.
+ *
+ * @author Tristan Batchler
+ */
+public final class StripedCounter {
+    /**
+     * The number of longs between cells, so that each cell is on its own 64-byte cache line.
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Creates a new counter at zero, with one cell for each available processor (rounded up to a power of two).
+     */
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new counter at zero, with a given number of cells (rounded up to a power of two).
+     * @param stripes The positive number of cells to split the count across.
+     * @throws IllegalArgumentException If the given number of cells is not positive.
+     */
+    public StripedCounter(int stripes) throws IllegalArgumentException {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("number of stripes must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        cells = new AtomicLongArray(size * PADDING);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds a given amount to the count.
+     * @param amount The amount to add.
+     */
+    public void add(long amount) {
+        long id = Thread.currentThread().getId();
+        int cell = (int) (id ^ (id >>> 16)) & mask;
+        cells.getAndAdd(cell * PADDING, amount);
+    }
+
+    /**
+     * Returns the count, as the sum of every cell.
+     * @return The count.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the count back to zero. Amounts added while resetting may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            cells.set(i, 0);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -18,24 +19,39 @@ public final class Utils {
     public static Random rng = new Random();
 
     /**
-     * Returns a random line in a file given as a filename. Prints the stack trace if an IOException exception occurs.
+     * Returns every line in a file given as a filename. Prints the stack trace if an IOException exception occurs.
      *
-     * Returns the empty string if the given file is empty and null if an IOException occurred.
-     * @param filename The filename for the file to get the random line from.
-     * @return A random line in the file given by the filename, the empty string if the file contains no lines, or null
-     *         if an IOException occurred.
+     * Returns null if an IOException occurred.
+     * @param filename The filename for the file to get the lines from.
+     * @return The lines in the file given by the filename, or null if an IOException occurred.
      */
-    public static String getRandomLineInFile(String filename) {
-        ArrayList<String> names = new ArrayList<>();
+    public static List<String> getLinesInFile(String filename) {
+        ArrayList<String> lines = new ArrayList<>();
         try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
             String line;
             while ((line = br.readLine()) != null) {
-                names.add(line);
+                lines.add(line);
             }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
+        return lines;
+    }
+
+    /**
+     * Returns a random line in a file given as a filename. Prints the stack trace if an IOException exception occurs.
+     *
+     * Returns the empty string if the given file is empty and null if an IOException occurred.
+     * @param filename The filename for the file to get the random line from.
+     * @return A random line in the file given by the filename, the empty string if the file contains no lines, or null
+     *         if an IOException occurred.
+     */
+    public static String getRandomLineInFile(String filename) {
+        List<String> names = getLinesInFile(filename);
+        if (names == null) {
+            return null;
+        }
 
         String returnLine;
         try {
@@ -2,6 +2,8 @@ package economy;
 
 import common.Utils;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A person or a vendor who is offering an exchange of goods or money in a market.
  *
@@ -9,6 +11,13 @@ import common.Utils;
  * @see Market
  */
 public class Agent implements Comparable<Agent> {
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * The unique identifier of the current agent. Identifiers are handed out in creation order and are never reused
+     * within a single simulation.
+     */
+    public final int id;
     /**
      * The name of the current agent.
      */
@@ -24,10 +33,7 @@ public class Agent implements Comparable<Agent> {
      * Creates a new agent with a random name, $0.00 and no items belonging to no market.
      */
     public Agent() {
-        name = Utils.getRandomLineInFile("src/main/resources/names");
-        inventory = new Inventory();
-        money = 0L;
-        this.market = null;
+        this(Utils.getRandomLineInFile("src/main/resources/names"));
     }
 
     /**
@@ -35,8 +41,11 @@ public class Agent implements Comparable<Agent> {
      * @param name The name to give the newly created agent.
      */
     public Agent(String name) {
-        this();
+        id = nextId.getAndIncrement();
         this.name = name;
+        inventory = new Inventory(this);
+        money = 0L;
+        this.market = null;
     }
 
     /**
@@ -63,11 +72,43 @@ public class Agent implements Comparable<Agent> {
         market.addAgent(this);
     }
 
+    /**
+     * Creates a new agent with a given identifier, a given name, $0.00 and no items belonging to no market. Used to
+     * restore agents which existed before (see {@link MarketJournal}), so identifiers handed out afterwards will never
+     * collide with the given one.
+     * @param id The identifier to give the newly created agent.
+     * @param name The name to give the newly created agent.
+     */
+    Agent(int id, String name) {
+        this.id = id;
+        this.name = name;
+        inventory = new Inventory(this);
+        money = 0L;
+        this.market = null;
+        nextId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Returns a copy of the current agent, with the same identifier, name, money and items, belonging to no market. The
+     * copy's inventory shares its structure with the current agent's until either of them changes. Used when forking a
+     * market (see {@link Market#fork()}).
+     * @return A copy of the current agent.
+     */
+    Agent copy() {
+        Agent copy = new Agent(id, name);
+        copy.inventory = new Inventory(copy, inventory);
+        copy.money = getMoney();
+        return copy;
+    }
+
     /**
      * Returns the current agent's amount of money.
      * @return The current agent's amount of money.
      */
     public double getMoney() {
+        if (market != null && market.ledger != null) {
+            return MoneyLedger.toDollars(market.ledger.getCents(id));
+        }
         return money;
     }
 
@@ -89,6 +130,10 @@ public class Agent implements Comparable<Agent> {
         }
 
         inventory.add(item, quantity);
+
+        if (market != null && market.journal != null) {
+            market.journal.recordQuantity(this, item);
+        }
     }
 
     /**
@@ -97,7 +142,16 @@ public class Agent implements Comparable<Agent> {
      */
     public void receive(double amount) {
         if (amount > 0) {
-            money += amount;
+            if (market != null && market.ledger != null) {
+                market.ledger.deposit(id, MoneyLedger.toCents(amount));
+            } else {
+                money += amount;
+            }
+            indexMoney();
+
+            if (market != null && market.journal != null) {
+                market.journal.recordMoney(this);
+            }
         }
     }
 
@@ -118,6 +172,10 @@ public class Agent implements Comparable<Agent> {
 
         if (market != null) {
             market.removeItem(item, quantity);
+
+            if (market.journal != null) {
+                market.journal.recordQuantity(this, item);
+            }
         }
     }
 
@@ -128,10 +186,61 @@ public class Agent implements Comparable<Agent> {
      */
     public void lose(double amount) {
         if (amount > 0) {
-            money -= amount;
+            if (market != null && market.ledger != null) {
+                market.ledger.withdraw(id, MoneyLedger.toCents(amount));
+            } else {
+                money -= amount;
+            }
+            indexMoney();
+
+            if (market != null && market.journal != null) {
+                market.journal.recordMoney(this);
+            }
+        }
+    }
+
+    /**
+     * Sets the current agent's amount of money without any of the checks done by {@link #receive(double)} and
+     * {@link #lose(double)}. Used when restoring a previously recorded state.
+     * @param money The amount of money the current agent now has.
+     */
+    void setMoney(double money) {
+        if (market != null && market.ledger != null) {
+            market.ledger.setCents(id, MoneyLedger.toCents(money));
+        } else {
+            this.money = money;
+        }
+        indexMoney();
+    }
+
+    /**
+     * Moves the current agent to its new amount of money in its market's index of agents by money, if there is one.
+     */
+    private void indexMoney() {
+        if (market != null && market.moneyIndex != null) {
+            market.moneyIndex.put(id, this, getMoney());
         }
     }
 
+    /**
+     * Moves the current agent's money into a given ledger, where it will be kept while the agent is in a market using
+     * that ledger. Called as the agent joins such a market.
+     * @param ledger The ledger to move the money into.
+     */
+    void moveMoneyTo(MoneyLedger ledger) {
+        ledger.setCents(id, MoneyLedger.toCents(money));
+        money = 0;
+    }
+
+    /**
+     * Moves the current agent's money out of a given ledger and back into the agent. Called as the agent leaves a market
+     * using that ledger.
+     * @param ledger The ledger to move the money out of.
+     */
+    void moveMoneyFrom(MoneyLedger ledger) {
+        money = MoneyLedger.toDollars(ledger.setCents(id, 0));
+    }
+
     /**
      * Returns a string representation of the current agent which is of the form:
      * <blockquote>"A" with $B and C.</blockquote>
@@ -140,7 +249,7 @@ public class Agent implements Comparable<Agent> {
      */
     @Override
     public String toString() {
-        return String.format("\"%s\" with $%.2f and " + inventory, name, money);
+        return String.format("\"%s\" with $%.2f and " + inventory, name, getMoney());
     }
 
     /**
@@ -149,7 +258,7 @@ public class Agent implements Comparable<Agent> {
      *         less than the other agent.
      */
     public int compareTo(Agent other) {
-        return Double.compare(this.money, other.money);
+        return Double.compare(this.getMoney(), other.getMoney());
     }
 
     /**
@@ -171,7 +280,7 @@ public class Agent implements Comparable<Agent> {
 
         Agent agent = (Agent) o;
 
-        if (Double.compare(agent.money, money) != 0) return false;
+        if (Double.compare(agent.getMoney(), getMoney()) != 0) return false;
         if (name != null ? !name.equals(agent.name) : agent.name != null) return false;
         if (inventory != null ? !inventory.equals(agent.inventory) : agent.inventory != null) return false;
         return market != null ? market.equals(agent.market) : agent.market == null;
@@ -188,7 +297,7 @@ public class Agent implements Comparable<Agent> {
         long temp;
         result = name != null ? name.hashCode() : 0;
         result = 31 * result + (inventory != null ? inventory.hashCode() : 0);
-        temp = Double.doubleToLongBits(money);
+        temp = Double.doubleToLongBits(getMoney());
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         result = 31 * result + (market != null ? market.hashCode() : 0);
         return result;
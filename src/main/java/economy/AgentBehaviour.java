@@ -0,0 +1,19 @@
+package economy;
+
+/**
+ * The behaviour of an agent run by an {@link AgentRuntime}. The behaviour runs on the agent's own thread and may block
+ * freely, talking to the market only through the given {@link AgentContext}.
+ *
+ * @author Tristan Batchler
+ * @see AgentRuntime
+ */
+@FunctionalInterface
+public interface AgentBehaviour {
+    /**
+     * Runs the behaviour of an agent until it has nothing more to do.
+     * @param context The agent's way of talking to its market.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting, such as when the runtime is
+     *                              closed.
+     */
+    void run(AgentContext context) throws InterruptedException;
+}
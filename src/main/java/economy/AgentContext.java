@@ -0,0 +1,161 @@
+package economy;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An agent's mailbox for talking to its market while being run by an {@link AgentRuntime}.
+ *
+ * Every method sends a request down the runtime's channel to the thread running the market and blocks the agent's thread
+ * until the reply arrives in this mailbox. An agent only ever has one request outstanding, so the mailbox itself is
+ * reused for every request and asking the market something allocates nothing. The methods must only be called from the
+ * agent's own thread.
+ *
+ * @author Tristan Batchler
+ * @see AgentBehaviour
+ */
+public final class AgentContext {
+    static final int BUY = 0;
+    static final int PRICE = 1;
+    static final int RANDOM_AGENT = 2;
+    static final int SLEEP = 3;
+    static final int RANDOM_HOLDER = 4;
+
+    private final AgentRuntime runtime;
+    private final Agent agent;
+    Thread thread;
+
+    int request;
+    Agent seller;
+    Item item;
+    long quantity;
+    double price;
+
+    boolean succeeded;
+    double value;
+    Agent other;
+    long wakeTick;
+    private volatile boolean replied;
+
+    AgentContext(AgentRuntime runtime, Agent agent) {
+        this.runtime = runtime;
+        this.agent = agent;
+    }
+
+    /**
+     * Returns the agent this mailbox belongs to.
+     * @return The agent this mailbox belongs to.
+     */
+    public Agent getAgent() {
+        return agent;
+    }
+
+    /**
+     * Asks the market to process a transaction in which the current agent buys a given quantity of a given item from a
+     * given seller at a given price each, and waits for the answer. See {@link Market#buy} for more information.
+     * @param seller The seller agent.
+     * @param item The item to buy.
+     * @param quantity The quantity of the item to buy.
+     * @param buyingPriceEach The price per each item to buy at.
+     * @return True if the transaction went through; false if either agent did not have enough, the seller was not in
+     *         the same market, the quantity was not positive, or the market failed to carry out the trade.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting.
+     */
+    public boolean buy(Agent seller, Item item, long quantity, double buyingPriceEach) throws InterruptedException {
+        this.request = BUY;
+        this.seller = seller;
+        this.item = item;
+        this.quantity = quantity;
+        this.price = buyingPriceEach;
+        send();
+        this.seller = null;
+        this.item = null;
+        return succeeded;
+    }
+
+    /**
+     * Asks the market for the current price of a given item and waits for the answer.
+     * @param item The item to get the price of.
+     * @return The current market price of the given item, or NaN if the market has no price for it.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting.
+     */
+    public double getPrice(Item item) throws InterruptedException {
+        this.request = PRICE;
+        this.item = item;
+        send();
+        this.item = null;
+        return value;
+    }
+
+    /**
+     * Asks the market for a random agent in it and waits for the answer.
+     * @return A random agent in the market, or null if the market has no agents.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting.
+     */
+    public Agent getRandomAgent() throws InterruptedException {
+        this.request = RANDOM_AGENT;
+        send();
+        Agent random = other;
+        other = null;
+        return random;
+    }
+
+    /**
+     * Asks the market for a random agent in it holding a given item and waits for the answer.
+     * @param item The item to find a holder of.
+     * @return A random agent in the market holding the given item, or null if no agent holds it.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting.
+     * @see Market#getRandomHolder(Item)
+     */
+    public Agent getRandomHolder(Item item) throws InterruptedException {
+        this.request = RANDOM_HOLDER;
+        this.item = item;
+        send();
+        this.item = null;
+        Agent holder = other;
+        other = null;
+        return holder;
+    }
+
+    /**
+     * Returns the tick the market was at when the last answer to the current agent was sent.
+     * @return The tick the market was at when the last answer to the current agent was sent.
+     */
+    public long getTick() {
+        return wakeTick;
+    }
+
+    /**
+     * Waits until the market has moved on by a given number of ticks.
+     * @param ticks The positive number of ticks to wait for.
+     * @throws InterruptedException If the agent's thread is interrupted while waiting.
+     * @throws IllegalArgumentException If the given number of ticks is not positive.
+     */
+    public void sleep(long ticks) throws InterruptedException, IllegalArgumentException {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("number of ticks to sleep for must be positive");
+        }
+        this.request = SLEEP;
+        this.quantity = ticks;
+        send();
+    }
+
+    private void send() throws InterruptedException {
+        replied = false;
+        runtime.send(this);
+        while (!replied) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Delivers the reply to the request in this mailbox and wakes the agent's thread. Called by the thread running the
+     * market.
+     */
+    void reply() {
+        replied = true;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,247 @@
+package economy;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs agents as independent actors: each agent's {@link AgentBehaviour} runs on its own thread and may block while it
+ * waits for the market or for time to pass.
+ *
+ * Agents never touch the market directly. Instead they send requests through their {@link AgentContext mailbox} down a
+ * lock-free channel to whichever thread calls {@link #runTick()}, which is the only thread to touch the market. A tick
+ * ends once every agent is asleep (waiting for a later tick) or finished.
+ *
+ * Where the Java runtime supports virtual threads (Java 21 and later), every agent gets a virtual thread, so millions of
+ * blocked agents cost little more than their stacks. The project still targets Java 8, so virtual threads are found by
+ * reflection; on older runtimes, agents get platform threads with small stacks instead, which only suits thousands of
+ * agents.
+ *
+ * @author Tristan Batchler
+ * @see AgentBehaviour
+ * @see AgentContext
+ */
+public class AgentRuntime implements Closeable {
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    private static final ThreadFactory VIRTUAL_THREADS = findVirtualThreadFactory();
+
+    private final Market market;
+    private final ThreadFactory threads;
+    private final Queue<AgentContext> channel = new ConcurrentLinkedQueue<>();
+    private final Set<AgentContext> contexts = ConcurrentHashMap.newKeySet();
+    private final PriorityQueue<AgentContext> sleepers =
+            new PriorityQueue<>(Comparator.comparingLong((AgentContext context) -> context.wakeTick));
+    private final AtomicInteger awake = new AtomicInteger();
+    private volatile Thread marketThread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new runtime for the agents of a given market, running each agent on a virtual thread if the Java runtime
+     * supports them or on a platform thread otherwise.
+     * @param market The market the agents trade in.
+     */
+    public AgentRuntime(Market market) {
+        this(market, VIRTUAL_THREADS != null ? VIRTUAL_THREADS : AgentRuntime::newPlatformThread);
+    }
+
+    /**
+     * Creates a new runtime for the agents of a given market, running each agent on a thread made by a given factory.
+     * @param market The market the agents trade in.
+     * @param threads The factory making the threads to run agents on.
+     */
+    public AgentRuntime(Market market, ThreadFactory threads) {
+        this.market = market;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns true if and only if the Java runtime supports virtual threads, in which case runtimes created without a
+     * thread factory run each agent on a virtual thread.
+     * @return True if the Java runtime supports virtual threads; false otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    private static ThreadFactory findVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Thread newPlatformThread(Runnable runnable) {
+        Thread thread = new Thread(null, runnable, "agent", PLATFORM_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Returns the market the agents trade in.
+     * @return The market the agents trade in.
+     */
+    public Market getMarket() {
+        return market;
+    }
+
+    /**
+     * Returns the number of agents which have been started and have not yet finished.
+     * @return The number of agents which have been started and have not yet finished.
+     */
+    public int getAgentCount() {
+        return contexts.size();
+    }
+
+    /**
+     * Starts running a given behaviour for a given agent on a new thread. The behaviour starts straight away, but can
+     * only hear back from the market while {@link #runTick()} is running.
+     * @param agent The agent to run. Must be in the current runtime's market.
+     * @param behaviour The behaviour of the agent.
+     * @throws IllegalArgumentException If the given agent is not in the current runtime's market.
+     * @throws IllegalStateException If the current runtime has been closed.
+     */
+    public void start(Agent agent, AgentBehaviour behaviour) throws IllegalArgumentException, IllegalStateException {
+        if (agent.market != market) {
+            throw new IllegalArgumentException("agent must be in the runtime's market");
+        }
+        if (closed) {
+            throw new IllegalStateException("runtime has been closed");
+        }
+
+        AgentContext context = new AgentContext(this, agent);
+        context.wakeTick = market.getTick();
+        contexts.add(context);
+        awake.incrementAndGet();
+        context.thread = threads.newThread(() -> {
+            try {
+                behaviour.run(context);
+            } catch (InterruptedException e) {
+                // The runtime is closing.
+            } finally {
+                contexts.remove(context);
+                awake.decrementAndGet();
+                LockSupport.unpark(marketThread);
+            }
+        });
+        context.thread.start();
+    }
+
+    /**
+     * Sends a request from a given mailbox down the channel to the market. Called from the agent's thread.
+     */
+    void send(AgentContext context) {
+        channel.offer(context);
+        LockSupport.unpark(marketThread);
+    }
+
+    /**
+     * Runs the market for one tick on the calling thread: answers every agent's requests until every agent is asleep or
+     * finished, then {@link Market#tick() ticks} the market and wakes the agents whose sleep is over.
+     * @return The number of requests answered during the tick.
+     */
+    public long runTick() {
+        marketThread = Thread.currentThread();
+        long answered = 0;
+        while (true) {
+            AgentContext context;
+            while ((context = channel.poll()) != null) {
+                answer(context);
+                answered++;
+            }
+            if (awake.get() == 0 && channel.isEmpty()) {
+                break;
+            }
+            LockSupport.parkNanos(this, 100_000);
+        }
+
+        market.tick();
+        long now = market.getTick();
+        while (!sleepers.isEmpty() && sleepers.peek().wakeTick <= now) {
+            AgentContext sleeper = sleepers.poll();
+            sleeper.wakeTick = now;
+            awake.incrementAndGet();
+            sleeper.reply();
+        }
+        return answered;
+    }
+
+    private void answer(AgentContext context) {
+        context.wakeTick = market.getTick();
+        switch (context.request) {
+            case AgentContext.BUY:
+                try {
+                    market.buy(context.getAgent(), context.seller, context.item, context.quantity, context.price);
+                    context.succeeded = context.quantity > 0;
+                } catch (InsufficientAmountException | RuntimeException e) {
+                    context.succeeded = false;
+                }
+                break;
+            case AgentContext.PRICE:
+                try {
+                    context.value = market.getPrice(context.item);
+                } catch (RuntimeException e) {
+                    context.value = Double.NaN;
+                }
+                break;
+            case AgentContext.RANDOM_AGENT:
+                try {
+                    context.other = market.getRandomAgent();
+                } catch (RuntimeException e) {
+                    context.other = null;
+                }
+                break;
+            case AgentContext.RANDOM_HOLDER:
+                try {
+                    context.other = market.getRandomHolder(context.item);
+                } catch (RuntimeException e) {
+                    context.other = null;
+                }
+                break;
+            case AgentContext.SLEEP:
+                context.wakeTick = market.getTick() + context.quantity;
+                sleepers.add(context);
+                awake.decrementAndGet();
+                return;
+            default:
+                // Still answer, so that the agent is not left waiting for ever.
+                context.succeeded = false;
+                context.value = Double.NaN;
+                context.other = null;
+        }
+        context.reply();
+    }
+
+    /**
+     * Stops every agent by interrupting its thread, and waits for them all to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (AgentContext context : contexts) {
+            context.thread.interrupt();
+        }
+        boolean interrupted = false;
+        for (AgentContext context : contexts) {
+            while (context.thread.isAlive()) {
+                try {
+                    context.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        sleepers.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
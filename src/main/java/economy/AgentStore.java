@@ -0,0 +1,189 @@
+package economy;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Storage for the state of many agents - their names, money and inventories - kept as fixed-size records rather than
+ * as {@link Agent} objects, so that markets with hundreds of millions of agents do not need hundreds of millions of
+ * objects on the heap.
+ *
+ * Agents in a store are known by their index, which is handed out in order as they are added, starting at 0. Each
+ * agent's inventory has a fixed number of slots, so an agent can only hold so many different items at once. Rather than
+ * making an object per agent, code usually reads and writes a store through a {@link StoredAgent}, a reusable cursor
+ * which can be moved from one agent to another.
+ *
+ * Stores are not thread-safe, and must be closed once no longer needed to release their memory.
+ *
+ * @author Tristan Batchler
+ * @see StoredAgent
+ * @see OffHeapAgentStore
+ */
+public interface AgentStore extends Closeable {
+    /**
+     * Returns the number of agents in the current store.
+     * @return The number of agents in the current store.
+     */
+    int size();
+
+    /**
+     * Returns the greatest number of different items each agent in the current store can hold at once.
+     * @return The number of inventory slots of each agent.
+     */
+    int getSlotsPerAgent();
+
+    /**
+     * Adds a new agent with a given name, $0.00 and no items to the current store.
+     * @param name The name of the new agent.
+     * @return The index of the new agent.
+     * @throws IllegalStateException If the current store has been closed or is full.
+     */
+    int add(String name) throws IllegalStateException;
+
+    /**
+     * Adds a copy of a given agent's name, money and inventory to the current store. The agent itself is left as it is.
+     * @param agent The agent to copy.
+     * @return The index of the copy.
+     * @throws IllegalStateException If the current store has been closed or is full, or if the given agent holds more
+     *                               different items than each agent in the store can.
+     */
+    default int add(Agent agent) throws IllegalStateException {
+        if (agent.inventory.size() > getSlotsPerAgent()) {
+            throw new IllegalStateException("agent holds more different items than the store has slots for");
+        }
+        int index = add(agent.name);
+        setMoney(index, agent.getMoney());
+        for (Map.Entry<Item, Long> entry : agent.inventory) {
+            setQuantity(index, entry.getKey(), entry.getValue());
+        }
+        return index;
+    }
+
+    /**
+     * Returns the name of the agent with a given index.
+     * @param index The index of the agent.
+     * @return The name of the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    String getName(int index) throws IndexOutOfBoundsException;
+
+    /**
+     * Returns the amount of money of the agent with a given index.
+     * @param index The index of the agent.
+     * @return The amount of money of the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    double getMoney(int index) throws IndexOutOfBoundsException;
+
+    /**
+     * Sets the amount of money of the agent with a given index.
+     * @param index The index of the agent.
+     * @param money The new amount of money of the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    void setMoney(int index, double money) throws IndexOutOfBoundsException;
+
+    /**
+     * Returns the number of different items held by the agent with a given index.
+     * @param index The index of the agent.
+     * @return The number of different items held by the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    int getItemCount(int index) throws IndexOutOfBoundsException;
+
+    /**
+     * Returns the item in a given inventory slot of the agent with a given index. The items held by an agent are always
+     * in its first {@link #getItemCount} slots, but may move between slots as items are added and removed.
+     * @param index The index of the agent.
+     * @param slot The slot, less than the agent's item count.
+     * @return The item in the given slot.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index or the slot is not in use.
+     */
+    Item getItem(int index, int slot) throws IndexOutOfBoundsException;
+
+    /**
+     * Returns the quantity of a given item held by the agent with a given index, or 0 if it holds none.
+     * @param index The index of the agent.
+     * @param item The item to get the quantity of.
+     * @return The quantity of the given item held by the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    long getQuantity(int index, Item item) throws IndexOutOfBoundsException;
+
+    /**
+     * Sets the quantity of a given item held by the agent with a given index. A quantity which is not positive removes
+     * the item from the agent's inventory.
+     * @param index The index of the agent.
+     * @param item The item to set the quantity of.
+     * @param quantity The new quantity of the item.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     * @throws IllegalStateException If the item is new to the agent and every one of the agent's slots is in use.
+     */
+    void setQuantity(int index, Item item, long quantity) throws IndexOutOfBoundsException, IllegalStateException;
+
+    /**
+     * Processes a transaction in which one agent in the current store buys a given quantity of a given item from another
+     * at a given price each, as {@link Market#buy} would, except that no market prices are involved. Nothing changes
+     * unless the whole transaction goes through.
+     * @param buyer The index of the buyer.
+     * @param seller The index of the seller.
+     * @param item The item to buy.
+     * @param quantity The quantity of the item to buy.
+     * @param buyingPriceEach The price per each item to buy at.
+     * @return True if the transaction went through; false if the quantity was not positive, either agent did not have
+     *         enough, or the item is new to the buyer and the buyer has no free slot for it.
+     * @throws IndexOutOfBoundsException If there is no agent with one of the given indices.
+     */
+    default boolean buy(int buyer, int seller, Item item, long quantity, double buyingPriceEach)
+            throws IndexOutOfBoundsException {
+        if (quantity <= 0 || buyer == seller) {
+            return false;
+        }
+        double cost = quantity * buyingPriceEach;
+        double buyerMoney = getMoney(buyer);
+        long stock = getQuantity(seller, item);
+        long held = getQuantity(buyer, item);
+        if (buyerMoney < cost || stock < quantity || held == 0 && getItemCount(buyer) == getSlotsPerAgent()) {
+            return false;
+        }
+
+        setQuantity(buyer, item, held + quantity);
+        setQuantity(seller, item, stock - quantity);
+        setMoney(buyer, buyerMoney - cost);
+        setMoney(seller, getMoney(seller) + cost);
+        return true;
+    }
+
+    /**
+     * Returns a new {@link Agent} with the name, money and inventory of the agent with a given index, belonging to no
+     * market.
+     * @param index The index of the agent.
+     * @return A copy of the agent as an {@link Agent}.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    default Agent toAgent(int index) throws IndexOutOfBoundsException {
+        Agent agent = new Agent(getName(index));
+        agent.receive(getMoney(index));
+        for (int slot = 0; slot < getItemCount(index); slot++) {
+            Item item = getItem(index, slot);
+            agent.receive(item, getQuantity(index, item));
+        }
+        return agent;
+    }
+
+    /**
+     * Returns a new cursor over the current store, on the agent with a given index.
+     * @param index The index of the agent.
+     * @return A new cursor on the agent.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    default StoredAgent cursor(int index) throws IndexOutOfBoundsException {
+        return new StoredAgent(this).moveTo(index);
+    }
+
+    /**
+     * Releases the memory held by the current store. Afterwards, using the store throws an IllegalStateException.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,21 @@
+package economy;
+
+/**
+ * The trading behaviour shared by a group of agents in a market (see {@link Market#addStrategyGroup}).
+ *
+ * Once per tick, the market hands the strategy its whole {@link StrategyGroup} at once, and the strategy adds the orders
+ * its agents want to make to an {@link OrderBatch}, which the market then carries out. A strategy therefore decides for
+ * every one of its agents in a single loop over the group's columns, with one call per group rather than one per agent.
+ *
+ * @author Tristan Batchler
+ * @see StrategyGroup
+ */
+@FunctionalInterface
+public interface AgentStrategy {
+    /**
+     * Decides what every agent in a given group buys this tick.
+     * @param group The group of agents following the current strategy.
+     * @param orders The batch to add the agents' orders to.
+     */
+    void evaluate(StrategyGroup group, OrderBatch orders);
+}
@@ -0,0 +1,33 @@
+package economy;
+
+/**
+ * A pricing model in which each unit of an item entering the market multiplies its price by e<sup>-elasticity</sup>, and
+ * each unit leaving multiplies it by e<sup>elasticity</sup>. Prices therefore never reach zero, and adding and then
+ * removing the same quantity brings the price back to where it started.
+ *
+ * Demand pressure moves the price by a factor of e<sup>pressure / price</sup>.
+ *
+ * @author Tristan Batchler
+ */
+public final class ExponentialPricingModel implements PricingModel {
+    /**
+     * The one instance of the exponential pricing model.
+     */
+    public static final ExponentialPricingModel INSTANCE = new ExponentialPricingModel();
+
+    private ExponentialPricingModel() {
+    }
+
+    @Override
+    public double supplyChanged(double price, long delta, double elasticity) {
+        return price * Math.exp(-elasticity * delta);
+    }
+
+    @Override
+    public double demandChanged(double price, double pressure, double elasticity) {
+        if (price <= 0) {
+            return Math.max(0, pressure);
+        }
+        return price * Math.exp(pressure / price);
+    }
+}
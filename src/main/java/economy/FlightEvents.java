@@ -0,0 +1,90 @@
+package economy;
+
+/**
+ * Custom JDK Flight Recorder events for what happens in markets, so that trades, price changes, agents joining and
+ * leaving, and the phases of each tick show up in a recording alongside garbage collections, lock contention and CPU
+ * samples.
+ *
+ * The events are only emitted if the {@code economy.jfr} system property is set to {@code true} and the Java runtime has
+ * Flight Recorder. Otherwise {@link #ENABLED} is false, every check for it is against a constant, and the JIT compiles
+ * the events away. This class makes no reference to Flight Recorder itself: the events live in
+ * {@link FlightRecorderEvents}, which markets only reach through this class after checking {@link #ENABLED}, so it never
+ * loads on a runtime without Flight Recorder.
+ *
+ * Even when enabled, an event costs little more than a check unless a recording which includes it is running, and
+ * nothing is allocated while no recording is running. All the events are in the "Economy" category and named
+ * {@code economy.Trade}, {@code economy.PriceChange}, {@code economy.AgentAdded}, {@code economy.AgentRemoved} and
+ * {@code economy.TickPhase}.
+ *
+ * @author Tristan Batchler
+ */
+final class FlightEvents {
+    /**
+     * True if and only if market events are emitted to Flight Recorder.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("economy.jfr") && isFlightRecorderAvailable();
+
+    private FlightEvents() {
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a trade, returning the event to pass to {@link #commitTrade}, or null if no recording wants it.
+     */
+    static Object beginTrade() {
+        return FlightRecorderEvents.beginTrade();
+    }
+
+    /**
+     * Finishes and commits a trade event started by {@link #beginTrade()}.
+     */
+    static void commitTrade(Object started, Market market, Agent buyer, Agent seller, Item item, long quantity,
+                            double priceEach, double priceBefore, double priceAfter, String outcome) {
+        FlightRecorderEvents.commitTrade(started, market, buyer, seller, item, quantity, priceEach, priceBefore,
+                priceAfter, outcome);
+    }
+
+    /**
+     * Emits an event for the price of an item having been set.
+     */
+    static void priceChanged(Market market, Item item, double priceBefore, double priceAfter) {
+        FlightRecorderEvents.priceChanged(market, item, priceBefore, priceAfter);
+    }
+
+    /**
+     * Emits an event for an agent having joined a market.
+     */
+    static void agentAdded(Market market, Agent agent) {
+        FlightRecorderEvents.agentAdded(market, agent);
+    }
+
+    /**
+     * Emits an event for an agent having left a market.
+     */
+    static void agentRemoved(Market market, Agent agent) {
+        FlightRecorderEvents.agentRemoved(market, agent);
+    }
+
+    /**
+     * Starts timing a phase of a tick, returning the event to pass to {@link #commitTickPhase}, or null if no recording
+     * wants it.
+     */
+    static Object beginTickPhase() {
+        return FlightRecorderEvents.beginTickPhase();
+    }
+
+    /**
+     * Finishes and commits a tick phase event started by {@link #beginTickPhase()}.
+     */
+    static void commitTickPhase(Object started, Market market, long tick, String phase) {
+        FlightRecorderEvents.commitTickPhase(started, market, tick, phase);
+    }
+}
@@ -0,0 +1,238 @@
+package economy;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event classes behind {@link FlightEvents}, and the {@link EventType}s used to check whether any
+ * recording wants each of them before an event object is created, so that nothing is allocated while no recording is
+ * running.
+ *
+ * This class refers to {@code jdk.jfr} throughout, so it is only ever touched after {@link FlightEvents#ENABLED} has
+ * been checked, and never loads on a runtime without Flight Recorder.
+ *
+ * @author Tristan Batchler
+ */
+final class FlightRecorderEvents {
+    private static final EventType TRADE = EventType.getEventType(TradeEvent.class);
+    private static final EventType PRICE_CHANGE = EventType.getEventType(PriceChangeEvent.class);
+    private static final EventType AGENT_ADDED = EventType.getEventType(AgentAddedEvent.class);
+    private static final EventType AGENT_REMOVED = EventType.getEventType(AgentRemovedEvent.class);
+    private static final EventType TICK_PHASE = EventType.getEventType(TickPhaseEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Starts timing a trade, returning the event to pass to {@link #commitTrade}, or null if no recording wants it.
+     */
+    static Object beginTrade() {
+        if (!TRADE.isEnabled()) {
+            return null;
+        }
+        TradeEvent event = new TradeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes and commits a trade event started by {@link #beginTrade()}.
+     */
+    static void commitTrade(Object started, Market market, Agent buyer, Agent seller, Item item, long quantity,
+                            double priceEach, double priceBefore, double priceAfter, String outcome) {
+        TradeEvent event = (TradeEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.market = market.name;
+            event.item = item.getName();
+            event.buyerId = buyer.id;
+            event.sellerId = seller.id;
+            event.quantity = quantity;
+            event.priceEach = priceEach;
+            event.priceBefore = priceBefore;
+            event.priceAfter = priceAfter;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event for the price of an item having been set.
+     */
+    static void priceChanged(Market market, Item item, double priceBefore, double priceAfter) {
+        if (!PRICE_CHANGE.isEnabled()) {
+            return;
+        }
+        PriceChangeEvent event = new PriceChangeEvent();
+        if (event.shouldCommit()) {
+            event.market = market.name;
+            event.tick = market.getTick();
+            event.item = item.getName();
+            event.priceBefore = priceBefore;
+            event.priceAfter = priceAfter;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event for an agent having joined a market.
+     */
+    static void agentAdded(Market market, Agent agent) {
+        if (!AGENT_ADDED.isEnabled()) {
+            return;
+        }
+        AgentAddedEvent event = new AgentAddedEvent();
+        if (event.shouldCommit()) {
+            event.market = market.name;
+            event.tick = market.getTick();
+            event.agentId = agent.id;
+            event.agentName = agent.name;
+            event.money = agent.getMoney();
+            event.itemTypes = agent.inventory.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event for an agent having left a market.
+     */
+    static void agentRemoved(Market market, Agent agent) {
+        if (!AGENT_REMOVED.isEnabled()) {
+            return;
+        }
+        AgentRemovedEvent event = new AgentRemovedEvent();
+        if (event.shouldCommit()) {
+            event.market = market.name;
+            event.tick = market.getTick();
+            event.agentId = agent.id;
+            event.agentName = agent.name;
+            event.money = agent.getMoney();
+            event.itemTypes = agent.inventory.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a phase of a tick, returning the event to pass to {@link #commitTickPhase}, or null if no recording
+     * wants it.
+     */
+    static Object beginTickPhase() {
+        if (!TICK_PHASE.isEnabled()) {
+            return null;
+        }
+        TickPhaseEvent event = new TickPhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes and commits a tick phase event started by {@link #beginTickPhase()}.
+     */
+    static void commitTickPhase(Object started, Market market, long tick, String phase) {
+        TickPhaseEvent event = (TickPhaseEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.market = market.name;
+            event.tick = tick;
+            event.phase = phase;
+            event.commit();
+        }
+    }
+
+    @Name("economy.Trade")
+    @Label("Trade")
+    @Category("Economy")
+    @Description("An attempt by one agent to buy an item from another")
+    @StackTrace(false)
+    static final class TradeEvent extends Event {
+        @Label("Market")
+        String market;
+        @Label("Item")
+        String item;
+        @Label("Buyer ID")
+        int buyerId;
+        @Label("Seller ID")
+        int sellerId;
+        @Label("Quantity")
+        long quantity;
+        @Label("Price Each")
+        double priceEach;
+        @Label("Market Price Before")
+        double priceBefore;
+        @Label("Market Price After")
+        double priceAfter;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("economy.PriceChange")
+    @Label("Price Change")
+    @Category("Economy")
+    @Description("The price of an item being set")
+    @StackTrace(false)
+    static final class PriceChangeEvent extends Event {
+        @Label("Market")
+        String market;
+        @Label("Tick")
+        long tick;
+        @Label("Item")
+        String item;
+        @Label("Price Before")
+        double priceBefore;
+        @Label("Price After")
+        double priceAfter;
+    }
+
+    @Name("economy.AgentAdded")
+    @Label("Agent Added")
+    @Category("Economy")
+    @Description("An agent joining a market")
+    @StackTrace(false)
+    static final class AgentAddedEvent extends Event {
+        @Label("Market")
+        String market;
+        @Label("Tick")
+        long tick;
+        @Label("Agent ID")
+        int agentId;
+        @Label("Agent Name")
+        String agentName;
+        @Label("Money")
+        double money;
+        @Label("Item Types")
+        long itemTypes;
+    }
+
+    @Name("economy.AgentRemoved")
+    @Label("Agent Removed")
+    @Category("Economy")
+    @Description("An agent leaving a market")
+    @StackTrace(false)
+    static final class AgentRemovedEvent extends Event {
+        @Label("Market")
+        String market;
+        @Label("Tick")
+        long tick;
+        @Label("Agent ID")
+        int agentId;
+        @Label("Agent Name")
+        String agentName;
+        @Label("Money")
+        double money;
+        @Label("Item Types")
+        long itemTypes;
+    }
+
+    @Name("economy.TickPhase")
+    @Label("Tick Phase")
+    @Category("Economy")
+    @Description("One phase of a market ending a tick")
+    @StackTrace(false)
+    static final class TickPhaseEvent extends Event {
+        @Label("Market")
+        String market;
+        @Label("Tick")
+        long tick;
+        @Label("Phase")
+        String phase;
+    }
+}
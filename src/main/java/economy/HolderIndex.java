@@ -0,0 +1,240 @@
+package economy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An index of the agents holding each item in a market, so that a seller of an item can be found, or picked at random,
+ * in constant time rather than by looking through every agent's inventory.
+ *
+ * The holders of each item are kept as a sparse set: an array of the holders in no particular order, alongside a table
+ * of where in the array each holder is. Adding a holder appends it to the array and removing one moves the last holder
+ * into its place, so both take constant time, and a random holder is a random position in the array. The positions of
+ * all items' holders share one open-addressing hash table keyed by item and agent identifier, so the index needs no
+ * objects per holder and allocates only when an array or the table grows.
+ *
+ * Indexes are not thread-safe; a market's index is only used by the thread running the market.
+ *
+ * @author Tristan Batchler
+ * @see Market#enableHolderIndex()
+ */
+public final class HolderIndex {
+    private static final long EMPTY = -1;
+    private static final Agent[] NO_HOLDERS = new Agent[0];
+
+    private Agent[][] holders = new Agent[0][];
+    private int[] counts = new int[0];
+
+    // Open-addressing table of (item identifier, agent identifier) to position in the item's array of holders.
+    private long[] keys = newKeys(16);
+    private int[] positions = new int[16];
+    private int entries;
+
+    /**
+     * Creates a new index with no holders.
+     */
+    HolderIndex() {
+    }
+
+    /**
+     * Returns the number of agents holding a given item.
+     * @param item The item to count the holders of.
+     * @return The number of agents holding the given item.
+     */
+    public int count(Item item) {
+        int id = item.getId();
+        return id < counts.length ? counts[id] : 0;
+    }
+
+    /**
+     * Returns true if and only if a given agent holds a given item.
+     * @param item The item to check.
+     * @param agent The agent to check.
+     * @return True if the given agent holds the given item; false otherwise.
+     */
+    public boolean contains(Item item, Agent agent) {
+        return slotOf(key(item, agent)) >= 0;
+    }
+
+    /**
+     * Returns the holder of a given item at a given position, where positions run from 0 up to the number of holders of
+     * the item. Holders are in no particular order, and change position as other holders are added and removed.
+     * @param item The item to get a holder of.
+     * @param position The position of the holder.
+     * @return The holder of the given item at the given position.
+     * @throws IndexOutOfBoundsException If the position is negative or not less than the number of holders.
+     */
+    public Agent get(Item item, int position) throws IndexOutOfBoundsException {
+        if (position < 0 || position >= count(item)) {
+            throw new IndexOutOfBoundsException("position " + position + " of " + count(item) + " holders");
+        }
+        return holders[item.getId()][position];
+    }
+
+    /**
+     * Returns a random agent holding a given item, every holder being equally likely, or null if no agent holds it.
+     * @param item The item to get a holder of.
+     * @return A random holder of the given item, or null if there is none.
+     */
+    public Agent getRandom(Item item) {
+        int count = count(item);
+        return count == 0 ? null : holders[item.getId()][ThreadLocalRandom.current().nextInt(count)];
+    }
+
+    /**
+     * Returns an unmodifiable list of the agents holding a given item, in no particular order, as they are now.
+     * @param item The item to get the holders of.
+     * @return The holders of the given item.
+     */
+    public List<Agent> getAll(Item item) {
+        int count = count(item);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(holders[item.getId()]).subList(0, count)));
+    }
+
+    /**
+     * Records that a given agent holds a given item.
+     * @param item The item held.
+     * @param agent The agent holding the item.
+     * @return True if the agent was not already recorded as holding the item; false otherwise.
+     */
+    boolean add(Item item, Agent agent) {
+        long key = key(item, agent);
+        if (slotOf(key) >= 0) {
+            return false;
+        }
+
+        int id = item.getId();
+        if (id >= counts.length) {
+            int length = Math.max(id + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, length);
+            int old = holders.length;
+            holders = Arrays.copyOf(holders, length);
+            Arrays.fill(holders, old, length, NO_HOLDERS);
+        }
+        Agent[] array = holders[id];
+        int position = counts[id];
+        if (position == array.length) {
+            holders[id] = array = Arrays.copyOf(array, Math.max(4, array.length * 2));
+        }
+        array[position] = agent;
+        counts[id] = position + 1;
+
+        if ((entries + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        insert(key, position);
+        entries++;
+        return true;
+    }
+
+    /**
+     * Records that a given agent no longer holds a given item.
+     * @param item The item no longer held.
+     * @param agent The agent which no longer holds the item.
+     * @return True if the agent was recorded as holding the item; false otherwise.
+     */
+    boolean remove(Item item, Agent agent) {
+        int slot = slotOf(key(item, agent));
+        if (slot < 0) {
+            return false;
+        }
+        int position = positions[slot];
+        delete(slot);
+        entries--;
+
+        // Move the last holder into the emptied position.
+        int id = item.getId();
+        Agent[] array = holders[id];
+        int last = --counts[id];
+        if (position != last) {
+            Agent moved = array[last];
+            array[position] = moved;
+            positions[slotOf(key(item, moved))] = position;
+        }
+        array[last] = null;
+        return true;
+    }
+
+    private static long key(Item item, Agent agent) {
+        return (long) item.getId() << 32 | agent.id & 0xffff_ffffL;
+    }
+
+    private static long[] newKeys(int length) {
+        long[] keys = new long[length];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * Returns the slot of the table in which a key should first be looked for.
+     */
+    private int home(long key) {
+        long hash = key * 0x9e37_79b9_7f4a_7c15L;
+        return (int) (hash >>> 32) & (keys.length - 1);
+    }
+
+    /**
+     * Returns the slot of the table holding a given key, or -1 if the key is not in the table.
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        for (int slot = home(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Puts a key which is not in the table into the table with a given position.
+     */
+    private void insert(long key, int position) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        positions[slot] = position;
+    }
+
+    /**
+     * Empties a given slot of the table, moving back any later keys which could no longer be found past the gap, so that
+     * the table never needs markers for deleted keys.
+     */
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = home(keys[next]);
+            // Move the key back if its home is not cyclically within (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                positions[gap] = positions[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void rehash(int length) {
+        long[] oldKeys = keys;
+        int[] oldPositions = positions;
+        keys = newKeys(length);
+        positions = new int[length];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                insert(oldKeys[slot], oldPositions[slot]);
+            }
+        }
+    }
+}
@@ -5,16 +5,96 @@ import java.util.*;
 /**
  * A data structure that represents a collection of items with varying quantities.
  *
+ * Most inventories hold only a few different items, so an inventory changes how it stores them as it grows. An empty
+ * inventory shares empty arrays with every other empty inventory. Up to {@link #INLINE_CAPACITY} different items are
+ * kept in a pair of small arrays of items and quantities, which costs a fraction of a hash map and needs no boxing. Past
+ * that, the items are moved for good into the same trie a {@link PersistentInventory} uses, which the inventory updates
+ * in place until a snapshot shares it.
+ *
+ * A {@link #snapshot()} of an inventory takes constant time however many items it holds, and costs memory only as the
+ * inventory goes on to change: each later change copies the few nodes of the trie it touches.
+ *
+ * Items in the arrays are kept in the order a newly created hash map would iterate over them, so small inventories
+ * iterate in the order they did when every inventory was a hash map.
+ *
  * @author Tristan Batchler
  */
 public class Inventory implements Iterable<Map.Entry<Item, Long>> {
-    private Map<Item, Long> data;
+    /**
+     * The greatest number of different items an inventory keeps in arrays before moving them into a trie.
+     */
+    static final int INLINE_CAPACITY = 8;
+
+    private static final Item[] NO_ITEMS = new Item[0];
+    private static final long[] NO_QUANTITIES = new long[0];
+    /**
+     * The number of buckets in a newly created hash map, which decides the order it iterates over its items in.
+     */
+    private static final int HASH_MAP_BUCKETS = 16;
+
+    private Item[] items = NO_ITEMS;
+    private long[] quantities = NO_QUANTITIES;
+    private int count;
+    private PersistentInventory.Node root;
+    private int rootSize;
+    private Object edit;
+    private PersistentInventory snapshot;
+    Agent owner;
 
     /**
      * Creates a new empty inventory.
      */
     public Inventory() {
-        data = new HashMap<>();
+    }
+
+    /**
+     * Creates a new inventory holding the items of a given persistent inventory. Takes constant time: the new inventory
+     * shares the persistent inventory's structure, and copies parts of it only as it changes.
+     * @param snapshot The persistent inventory to start from.
+     */
+    public Inventory(PersistentInventory snapshot) {
+        if (snapshot.size() <= INLINE_CAPACITY) {
+            for (Map.Entry<Item, Long> entry : snapshot) {
+                put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            root = snapshot.root;
+            rootSize = snapshot.size();
+            edit = new Object();
+        }
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Creates a new empty inventory belonging to a given agent. Whenever the inventory changes while the agent is in a
+     * market, the market's supply is kept up to date.
+     * @param owner The agent the inventory belongs to.
+     */
+    Inventory(Agent owner) {
+        this();
+        this.owner = owner;
+    }
+
+    /**
+     * Creates a new inventory belonging to a given agent and holding the items of another inventory. Takes constant time
+     * however many items the other inventory holds: a trie is shared between the two inventories, and whichever changes
+     * first copies the parts it touches.
+     * @param owner The agent the new inventory belongs to.
+     * @param other The inventory to copy.
+     */
+    Inventory(Agent owner, Inventory other) {
+        if (other.root != null) {
+            PersistentInventory shared = other.snapshot();
+            root = shared.root;
+            rootSize = shared.size();
+            edit = new Object();
+            snapshot = shared;
+        } else if (other.count > 0) {
+            items = Arrays.copyOf(other.items, other.items.length);
+            quantities = Arrays.copyOf(other.quantities, other.quantities.length);
+            count = other.count;
+        }
+        this.owner = owner;
     }
 
     /**
@@ -29,7 +109,24 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
             return;
         }
         long currentQuantity = getQuantity(item);
-        data.put(item, currentQuantity + quantity);
+        put(item, currentQuantity + quantity);
+
+        if (owner != null && owner.market != null) {
+            owner.market.changeSupply(item, quantity);
+            if (currentQuantity == 0 && owner.market.holderIndex != null) {
+                owner.market.holderIndex.add(item, owner);
+            }
+        }
+    }
+
+    /**
+     * Adds a given item of a given positive quantity to the current inventory without telling the owner's market. Used
+     * when the market accounts for the change in supply itself, such as when seeding many inventories at once.
+     * @param item The item to add to the current inventory.
+     * @param quantity The positive quantity to add to the current inventory.
+     */
+    void addUntracked(Item item, long quantity) {
+        put(item, getQuantity(item) + quantity);
     }
 
     /**
@@ -48,11 +145,17 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
             return;
         }
 
-        long newQuantity = getQuantity(item) - quantity;
-        if (newQuantity <= 0) {
-            data.remove(item);
-        } else {
-            data.replace(item, newQuantity);
+        long currentQuantity = getQuantity(item);
+        long newQuantity = currentQuantity - quantity;
+        if (currentQuantity > 0) {
+            put(item, Math.max(newQuantity, 0));
+        }
+
+        if (owner != null && owner.market != null && currentQuantity > 0) {
+            owner.market.changeSupply(item, Math.max(newQuantity, 0) - currentQuantity);
+            if (newQuantity <= 0 && owner.market.holderIndex != null) {
+                owner.market.holderIndex.remove(item, owner);
+            }
         }
     }
 
@@ -62,7 +165,7 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      * @return true if the current item has a positive quantity in the current  inventory; false otherwise.
      */
     public boolean contains(Item item) {
-        return data.containsKey(item);
+        return root != null ? root.get(item.getId(), 0) > 0 : indexOf(item) >= 0;
     }
 
     /**
@@ -73,7 +176,11 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      * in the current inventory.
      */
     public long getQuantity(Item item) {
-        return this.contains(item) ? data.get(item) : 0;
+        if (root != null) {
+            return root.get(item.getId(), 0);
+        }
+        int index = indexOf(item);
+        return index >= 0 ? quantities[index] : 0;
     }
 
     /**
@@ -81,7 +188,7 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      * @return The number of unique items in the current inventory.
      */
     public long size() {
-        return data.size();
+        return root != null ? rootSize : count;
     }
 
     /**
@@ -89,7 +196,7 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      * @return True if there are no items in the current inventory; false otherwise.
      */
     public boolean isEmpty() {
-        return data.isEmpty();
+        return size() == 0;
     }
 
     /**
@@ -100,7 +207,10 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
         if (this.isEmpty()) {
             return null;
         }
-        int index = (int)(Math.random() * data.size());
+        int index = (int)(Math.random() * size());
+        if (root == null) {
+            return items[index];
+        }
         List<Item> items = getItems();
         return items.get(index);
     }
@@ -110,8 +220,11 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      * @return An unmodifiable view of the list of items in the current inventory.
      */
     public List<Item> getItems() {
+        if (root == null) {
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(items, count)));
+        }
         List<Item> items = new ArrayList<>();
-        for (Map.Entry<Item, Long> entry : data.entrySet()) {
+        for (Map.Entry<Item, Long> entry : this) {
             Item item = entry.getKey();
             items.add(item);
         }
@@ -131,6 +244,28 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
         }
     }
 
+    /**
+     * Returns an immutable snapshot of the items in the current inventory, which later changes to the current inventory
+     * do not affect. Takes constant time, however many items the current inventory holds.
+     * @return A snapshot of the current inventory.
+     */
+    public PersistentInventory snapshot() {
+        if (snapshot == null) {
+            if (root != null) {
+                snapshot = new PersistentInventory(root, rootSize);
+                // The trie is shared from now on, so later changes must copy the nodes they touch.
+                edit = new Object();
+            } else {
+                PersistentInventory items = PersistentInventory.empty();
+                for (int i = 0; i < count; i++) {
+                    items = items.with(this.items[i], quantities[i]);
+                }
+                snapshot = items;
+            }
+        }
+        return snapshot;
+    }
+
     /**
      * Returns an iterator over the entries of type {@link Map.Entry} representing items and quantities in
      * the current inventory.
@@ -139,7 +274,119 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      */
     @Override
     public Iterator<Map.Entry<Item, Long>> iterator() {
-        return data.entrySet().iterator();
+        if (root != null) {
+            return new PersistentInventory.EntryIterator(root);
+        }
+        return new Iterator<Map.Entry<Item, Long>>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Map.Entry<Item, Long> next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<Item, Long> entry = new AbstractMap.SimpleImmutableEntry<>(items[next], quantities[next]);
+                next++;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Sets the quantity of a given item, removing it if the quantity is zero, without telling the owner's market.
+     */
+    private void put(Item item, long quantity) {
+        snapshot = null;
+        if (root != null) {
+            long current = root.get(item.getId(), 0);
+            if (quantity > 0) {
+                root = root.put(edit, item, quantity, 0);
+                if (current == 0) {
+                    rootSize++;
+                }
+            } else if (current > 0) {
+                root = root.remove(edit, item.getId(), 0);
+                rootSize--;
+            }
+            return;
+        }
+
+        int index = indexOf(item);
+        if (index >= 0) {
+            if (quantity > 0) {
+                quantities[index] = quantity;
+            } else {
+                count--;
+                System.arraycopy(items, index + 1, items, index, count - index);
+                System.arraycopy(quantities, index + 1, quantities, index, count - index);
+                items[count] = null;
+            }
+        } else if (quantity > 0) {
+            if (count == INLINE_CAPACITY) {
+                promote();
+                put(item, quantity);
+                return;
+            }
+            if (count == items.length) {
+                int capacity = Math.max(1, items.length * 2);
+                items = Arrays.copyOf(items, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+
+            // Insert after every item which a new hash map would put in the same bucket or an earlier one.
+            int bucket = bucketOf(item);
+            int at = count;
+            while (at > 0 && bucketOf(items[at - 1]) > bucket) {
+                at--;
+            }
+            System.arraycopy(items, at, items, at + 1, count - at);
+            System.arraycopy(quantities, at, quantities, at + 1, count - at);
+            items[at] = item;
+            quantities[at] = quantity;
+            count++;
+        }
+    }
+
+    /**
+     * Moves the items in the arrays into a trie, which holds them from then on.
+     */
+    private void promote() {
+        edit = new Object();
+        PersistentInventory.Node root = PersistentInventory.Node.EMPTY;
+        for (int i = 0; i < count; i++) {
+            root = root.put(edit, items[i], quantities[i], 0);
+        }
+        this.root = root;
+        rootSize = count;
+        items = NO_ITEMS;
+        quantities = NO_QUANTITIES;
+        count = 0;
+    }
+
+    /**
+     * Returns the index of a given item in the arrays, or -1 if it is not there.
+     */
+    private int indexOf(Item item) {
+        Item[] items = this.items;
+        for (int i = 0; i < count; i++) {
+            if (items[i] == item || items[i].equals(item)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bucket a newly created hash map would put a given item in.
+     */
+    private static int bucketOf(Item item) {
+        int hash = item.hashCode();
+        return (hash ^ (hash >>> 16)) & (HASH_MAP_BUCKETS - 1);
     }
 
     /**
@@ -187,7 +434,15 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
       }
 
       Inventory other = (Inventory)o;
-      return this.data.equals(other.data);
+      if (this.size() != other.size()) {
+        return false;
+      }
+      for (Map.Entry<Item, Long> entry : this) {
+        if (other.getQuantity(entry.getKey()) != entry.getValue()) {
+          return false;
+        }
+      }
+      return true;
     }
 
     /**
@@ -196,6 +451,17 @@ public class Inventory implements Iterable<Map.Entry<Item, Long>> {
      */
     @Override
     public int hashCode() {
-        return data != null ? data.hashCode() : 0;
+        // The same as the hash code of a map holding the same items.
+        int hash = 0;
+        if (root != null) {
+            for (Map.Entry<Item, Long> entry : this) {
+                hash += entry.getKey().hashCode() ^ Long.hashCode(entry.getValue());
+            }
+            return hash;
+        }
+        for (int i = 0; i < count; i++) {
+            hash += items[i].hashCode() ^ Long.hashCode(quantities[i]);
+        }
+        return hash;
     }
 }
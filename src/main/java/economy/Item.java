@@ -2,13 +2,22 @@ package economy;
 
 import common.Utils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * An immutable item which has a name.
  *
  * @author Tristan Batchler
  */
 public final class Item implements Comparable<Item> {
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
     private final String name;
+    private final int id;
 
     /**
      * Creates a new item and assigns a given name to it.
@@ -16,13 +25,59 @@ public final class Item implements Comparable<Item> {
      */
     public Item(String name) {
         this.name = name;
+        this.id = idOf(name);
     }
 
     /**
      * Creates a new item and assigns a random name to it.
      */
     public Item() {
-        name = Utils.getRandomLineInFile("src/main/resources/items");
+        this(Utils.getRandomLineInFile("src/main/resources/items"));
+    }
+
+    /**
+     * Returns the identifier given to items with a given name, giving the name the next free identifier if no item
+     * has had it before.
+     */
+    private static synchronized int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of item identifiers handed out so far. Every item's identifier is less than this number.
+     * @return The number of item identifiers handed out so far.
+     */
+    public static synchronized int getIdCount() {
+        return names.size();
+    }
+
+    /**
+     * Returns an item with the name that was given a given identifier.
+     * @param id The identifier of the item.
+     * @return An item equal to every item with the given identifier.
+     * @throws IndexOutOfBoundsException If no item has been given the given identifier.
+     */
+    public static Item forId(int id) throws IndexOutOfBoundsException {
+        String name;
+        synchronized (Item.class) {
+            name = names.get(id);
+        }
+        return new Item(name);
+    }
+
+    /**
+     * Returns the identifier of this item. Items with equal names always have the same identifier, and identifiers are
+     * small non-negative integers handed out in order, so they can be used to index arrays of per-item values.
+     * @return The identifier of this item.
+     */
+    public int getId() {
+        return id;
     }
 
     /**
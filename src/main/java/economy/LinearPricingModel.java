@@ -0,0 +1,39 @@
+package economy;
+
+/**
+ * A pricing model in which each unit of an item entering the market brings its price down by a fraction of the price
+ * equal to the market's elasticity, and each unit leaving pushes it up by the same amount, never going below zero.
+ *
+ * This is how markets have always priced items, and is the model markets use unless given another. Note that adding and
+ * then removing the same quantity does not bring the price back to where it started.
+ *
+ * @author Tristan Batchler
+ */
+public final class LinearPricingModel implements PricingModel {
+    /**
+     * The one instance of the linear pricing model.
+     */
+    public static final LinearPricingModel INSTANCE = new LinearPricingModel();
+
+    private LinearPricingModel() {
+    }
+
+    @Override
+    public double supplyChanged(double price, long delta, double elasticity) {
+        return Math.max(0, price - price * elasticity * delta);
+    }
+
+    @Override
+    public double demandChanged(double price, double pressure, double elasticity) {
+        return Math.max(0, price + pressure);
+    }
+
+    @Override
+    public void apply(double[] prices, long[] supplyDeltas, double[] pressures, int count, double elasticity) {
+        for (int i = 0; i < count; i++) {
+            double price = prices[i];
+            price = Math.max(0, price - price * elasticity * supplyDeltas[i]);
+            prices[i] = Math.max(0, price + pressures[i]);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package economy;
+
+/**
+ * A pricing model in which prices respond to the logarithm of the quantity entering or leaving the market: a quantity
+ * q entering divides the price by (1 + q)<sup>elasticity</sup>, and leaving multiplies it by the same factor. Large
+ * lots therefore move prices far less than they would under the {@link LinearPricingModel}, prices never reach zero,
+ * and adding and then removing the same quantity brings the price back to where it started.
+ *
+ * Demand pressure moves the price in the same way, taking the pressure relative to the price, without the elasticity
+ * it already carries, as the quantity.
+ *
+ * @author Tristan Batchler
+ */
+public final class LogElasticPricingModel implements PricingModel {
+    /**
+     * The one instance of the log-elastic pricing model.
+     */
+    public static final LogElasticPricingModel INSTANCE = new LogElasticPricingModel();
+
+    private LogElasticPricingModel() {
+    }
+
+    @Override
+    public double supplyChanged(double price, long delta, double elasticity) {
+        return price * Math.exp(-Math.signum(delta) * elasticity * Math.log1p(Math.abs((double) delta)));
+    }
+
+    @Override
+    public double demandChanged(double price, double pressure, double elasticity) {
+        if (price <= 0) {
+            return Math.max(0, pressure);
+        }
+        if (elasticity == 0) {
+            return price;
+        }
+        double relative = pressure / (elasticity * price);
+        return price * Math.exp(Math.signum(relative) * elasticity * Math.log1p(Math.abs(relative)));
+    }
+}
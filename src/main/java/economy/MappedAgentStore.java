@@ -0,0 +1,595 @@
+package economy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AgentStore} which keeps agents in memory-mapped files, so that a store can hold more agents than fit in
+ * memory and lives on from one run to the next.
+ *
+ * Agents are fixed-size records in {@code agents.dat}, which is mapped a segment of about a million records at a time.
+ * The operating system's page cache decides which records are in memory: agents being traded are read and written at
+ * nearly the speed of an {@link OffHeapAgentStore}, while idle agents cost only disk space. The file is sparse, so even
+ * unused space on disk is only taken up by agents which have been written to.
+ *
+ * Each record has a few inventory slots of its own. An agent holding more different items than that spills the rest
+ * into a chain of blocks of 16 slots each in {@code overflow.dat}, so large inventories are possible without making every
+ * record large. Blocks which are no longer needed are kept on a free list in the file and reused. Names are kept in a
+ * table of distinct names, appended to {@code names.dat} as they are first seen.
+ *
+ * Items are kept in a table of their names in {@code items.dat} in the same way, and records refer to items by their
+ * place in that table rather than by {@link Item#getId() id}, as ids are handed out afresh in every run.
+ *
+ * Opening a directory which already holds a store picks up where it was left. Changes reach the files whenever the
+ * operating system writes them back, or straight away on {@link #flush()}. A new name or item is written through to its
+ * table before any record refers to it, so a store left by a process which stopped without flushing is still
+ * consistent; only {@link #flush()} makes sure changes survive the machine itself stopping.
+ *
+ * @author Tristan Batchler
+ */
+public class MappedAgentStore implements AgentStore {
+    /**
+     * The number of inventory slots in each agent's record, by default.
+     */
+    public static final int DEFAULT_SLOTS = 4;
+    /**
+     * The number of inventory slots in each block of the overflow area.
+     */
+    public static final int OVERFLOW_SLOTS = 16;
+
+    private static final int MAGIC = 0x45434f41;
+    private static final int HEADER = 64;
+
+    // The header of agents.dat.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_SLOTS = 4;
+    private static final int HEADER_SIZE = 8;
+
+    // The header of overflow.dat.
+    private static final int HEADER_FREE = 0;
+    private static final int HEADER_BLOCKS = 8;
+
+    // Each agent's record. Overflow links hold a block number plus one, so that 0 means none.
+    private static final int MONEY = 0;
+    private static final int NAME = 8;
+    private static final int COUNT = 12;
+    private static final int OVERFLOW = 16;
+    private static final int QUANTITIES = 24;
+
+    // Each block of the overflow area.
+    private static final int NEXT = 0;
+    private static final int BLOCK_QUANTITIES = 8;
+    private static final int BLOCK_ITEMS = BLOCK_QUANTITIES + 8 * OVERFLOW_SLOTS;
+    private static final int BLOCK_SIZE = BLOCK_ITEMS + 4 * OVERFLOW_SLOTS;
+
+    private static final int SEGMENT_BITS = 20;
+    private static final int SEGMENT_RECORDS = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_RECORDS - 1;
+    private static final int SEGMENT_BLOCKS = 1 << 14;
+
+    private final int slots;
+    private final int items;
+    private final int recordSize;
+    private final RandomAccessFile agentsFile;
+    private final RandomAccessFile overflowFile;
+    private final DataOutputStream namesOut;
+    private final DataOutputStream itemsOut;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer overflowHeader;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndices = new HashMap<>();
+    private final List<Item> storedItems = new ArrayList<>();
+    // The place of each item in the table, plus one, by item id, so that 0 means none.
+    private int[] storedIds = new int[0];
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private MappedByteBuffer[] overflowSegments = new MappedByteBuffer[0];
+    private int size;
+    private boolean closed;
+
+    /**
+     * Opens the store in a given directory, creating an empty one giving each record {@link #DEFAULT_SLOTS} inventory
+     * slots if there is none.
+     * @param directory The directory holding the store's files.
+     * @throws IOException If the store's files could not be created or read, or are not those of a store.
+     */
+    public MappedAgentStore(File directory) throws IOException {
+        this(directory, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Opens the store in a given directory, creating an empty one giving each record a given number of inventory slots
+     * if there is none.
+     * @param directory The directory holding the store's files.
+     * @param slots The number of inventory slots in each agent's record.
+     * @throws IOException If the store's files could not be created or read, or are not those of a store.
+     * @throws IllegalArgumentException If the given number of slots is negative or too large, or if the store already
+     *                                  in the directory has a different number of slots.
+     */
+    public MappedAgentStore(File directory, int slots) throws IOException, IllegalArgumentException {
+        if (slots < 0 || slots > 64) {
+            throw new IllegalArgumentException("number of slots must be between 0 and 64");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create store directory " + directory);
+        }
+        this.slots = slots;
+        items = QUANTITIES + 8 * slots;
+        recordSize = (items + 4 * slots + 7) & ~7;
+
+        File names = new File(directory, "names.dat");
+        for (String name : readStrings(names)) {
+            nameIndices.put(name, this.names.size());
+            this.names.add(name);
+        }
+        File itemNames = new File(directory, "items.dat");
+        for (String name : readStrings(itemNames)) {
+            addStoredItem(new Item(name));
+        }
+
+        agentsFile = new RandomAccessFile(new File(directory, "agents.dat"), "rw");
+        overflowFile = new RandomAccessFile(new File(directory, "overflow.dat"), "rw");
+        boolean created = agentsFile.length() == 0;
+        header = map(agentsFile, 0, HEADER);
+        overflowHeader = map(overflowFile, 0, HEADER);
+        if (created) {
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_SLOTS, slots);
+            header.putInt(HEADER_SIZE, 0);
+        } else if (header.getInt(HEADER_MAGIC) != MAGIC) {
+            close();
+            throw new IOException("not an agent store: " + directory);
+        } else if (header.getInt(HEADER_SLOTS) != slots) {
+            int existing = header.getInt(HEADER_SLOTS);
+            close();
+            throw new IllegalArgumentException("store in " + directory + " has " + existing + " slots per record");
+        }
+        size = header.getInt(HEADER_SIZE);
+        namesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(names, true)));
+        itemsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(itemNames, true)));
+    }
+
+    /**
+     * Returns the strings written one after another to a given file, or none if there is no such file.
+     */
+    private static List<String> readStrings(File file) throws IOException {
+        List<String> strings = new ArrayList<>();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    try {
+                        strings.add(in.readUTF());
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return strings;
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, long position, long length) throws IOException {
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, length);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@link Integer#MAX_VALUE}, as agents holding more different items than their records have slots for spill
+     * into the overflow area.
+     */
+    @Override
+    public int getSlotsPerAgent() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of inventory slots in each agent's record. Agents may hold more different items than this,
+     * with the rest kept in the overflow area.
+     * @return The number of inventory slots in each agent's record.
+     */
+    public int getRecordSlots() {
+        return slots;
+    }
+
+    /**
+     * Returns the number of blocks in the overflow area, including those on the free list.
+     * @return The number of blocks in the overflow area.
+     */
+    public long getOverflowBlocks() {
+        return overflowHeader.getLong(HEADER_BLOCKS);
+    }
+
+    @Override
+    public int add(String name) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("store has been closed");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("store is full");
+        }
+
+        int index = size;
+        ByteBuffer segment = segment(index);
+        int record = record(index);
+        segment.putDouble(record + MONEY, 0);
+        segment.putInt(record + NAME, nameIndex(name));
+        segment.putInt(record + COUNT, 0);
+        segment.putLong(record + OVERFLOW, 0);
+        size++;
+        header.putInt(HEADER_SIZE, size);
+        return index;
+    }
+
+    @Override
+    public String getName(int index) throws IndexOutOfBoundsException {
+        int name = checkedSegment(index).getInt(record(index) + NAME);
+        return name < 0 ? null : names.get(name);
+    }
+
+    @Override
+    public double getMoney(int index) throws IndexOutOfBoundsException {
+        return checkedSegment(index).getDouble(record(index) + MONEY);
+    }
+
+    @Override
+    public void setMoney(int index, double money) throws IndexOutOfBoundsException {
+        checkedSegment(index).putDouble(record(index) + MONEY, money);
+    }
+
+    @Override
+    public int getItemCount(int index) throws IndexOutOfBoundsException {
+        return checkedSegment(index).getInt(record(index) + COUNT);
+    }
+
+    @Override
+    public Item getItem(int index, int slot) throws IndexOutOfBoundsException {
+        if (slot < 0 || slot >= getItemCount(index)) {
+            throw new IndexOutOfBoundsException("slot " + slot + " is not in use");
+        }
+        return storedItems.get(getSlotItem(index, slot));
+    }
+
+    @Override
+    public long getQuantity(int index, Item item) throws IndexOutOfBoundsException {
+        int count = getItemCount(index);
+        int stored = storedId(item);
+        int slot = stored < 0 ? -1 : find(index, count, stored);
+        return slot < 0 ? 0 : getSlotQuantity(index, slot);
+    }
+
+    @Override
+    public void setQuantity(int index, Item item, long quantity) throws IndexOutOfBoundsException {
+        ByteBuffer segment = checkedSegment(index);
+        int record = record(index);
+        int count = segment.getInt(record + COUNT);
+        int stored = quantity <= 0 ? storedId(item) : storedIdOrAdd(item);
+        int slot = stored < 0 ? -1 : find(index, count, stored);
+
+        if (quantity <= 0) {
+            if (slot >= 0) {
+                // Fill the hole with the last slot in use, then give back the last overflow block if it is now empty.
+                int last = count - 1;
+                setSlot(index, slot, getSlotItem(index, last), getSlotQuantity(index, last));
+                if (last >= slots && overflowSlot(last) == 0) {
+                    releaseLastBlock(index, last);
+                }
+                segment.putInt(record + COUNT, last);
+            }
+            return;
+        }
+
+        if (slot < 0) {
+            slot = count;
+            if (slot >= slots && overflowSlot(slot) == 0) {
+                appendBlock(index, slot);
+            }
+            segment.putInt(record + COUNT, count + 1);
+        }
+        setSlot(index, slot, stored, quantity);
+    }
+
+    /**
+     * Forces every change to the current store out to its files.
+     * @throws IOException If the files could not be written to.
+     */
+    public void flush() throws IOException {
+        header.force();
+        overflowHeader.force();
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        for (MappedByteBuffer segment : overflowSegments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        namesOut.flush();
+        itemsOut.flush();
+    }
+
+    /**
+     * Flushes the current store, then unmaps and closes its files.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (itemsOut != null) {
+                flush();
+                namesOut.close();
+                itemsOut.close();
+            }
+            closed = true;
+            size = 0;
+            for (MappedByteBuffer segment : segments) {
+                if (segment != null) {
+                    OffHeapAgentStore.free(segment);
+                }
+            }
+            for (MappedByteBuffer segment : overflowSegments) {
+                if (segment != null) {
+                    OffHeapAgentStore.free(segment);
+                }
+            }
+            segments = new MappedByteBuffer[0];
+            overflowSegments = new MappedByteBuffer[0];
+            OffHeapAgentStore.free(header);
+            OffHeapAgentStore.free(overflowHeader);
+            agentsFile.close();
+            overflowFile.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the place of a given item in the current store's table of items, or -1 if it is not in the table.
+     */
+    private int storedId(Item item) {
+        int id = item.getId();
+        return id < storedIds.length ? storedIds[id] - 1 : -1;
+    }
+
+    /**
+     * Returns the place of a given item in the current store's table of items, adding it to the table if it is not yet.
+     */
+    private int storedIdOrAdd(Item item) {
+        int stored = storedId(item);
+        if (stored < 0) {
+            try {
+                itemsOut.writeUTF(item.getName());
+                itemsOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            stored = addStoredItem(item);
+        }
+        return stored;
+    }
+
+    private int addStoredItem(Item item) {
+        int id = item.getId();
+        if (id >= storedIds.length) {
+            storedIds = Arrays.copyOf(storedIds, Math.max(id + 1, storedIds.length * 2));
+        }
+        storedIds[id] = storedItems.size() + 1;
+        storedItems.add(item);
+        return storedItems.size() - 1;
+    }
+
+    /**
+     * Returns the slot holding the item at a given place in the item table in the inventory of the agent with a given
+     * index, or -1 if there is none.
+     */
+    private int find(int index, int count, int itemId) {
+        ByteBuffer segment = segment(index);
+        int record = record(index);
+        int inline = Math.min(count, slots);
+        for (int slot = 0; slot < inline; slot++) {
+            if (segment.getInt(record + items + 4 * slot) == itemId) {
+                return slot;
+            }
+        }
+
+        long link = segment.getLong(record + OVERFLOW);
+        for (int first = slots; first < count; first += OVERFLOW_SLOTS) {
+            long block = link - 1;
+            ByteBuffer overflow = overflowSegment(block);
+            int offset = blockOffset(block);
+            int used = Math.min(OVERFLOW_SLOTS, count - first);
+            for (int slot = 0; slot < used; slot++) {
+                if (overflow.getInt(offset + BLOCK_ITEMS + 4 * slot) == itemId) {
+                    return first + slot;
+                }
+            }
+            link = overflow.getLong(offset + NEXT);
+        }
+        return -1;
+    }
+
+    private int getSlotItem(int index, int slot) {
+        if (slot < slots) {
+            return segment(index).getInt(record(index) + items + 4 * slot);
+        }
+        long block = block(index, slot);
+        return overflowSegment(block).getInt(blockOffset(block) + BLOCK_ITEMS + 4 * overflowSlot(slot));
+    }
+
+    private long getSlotQuantity(int index, int slot) {
+        if (slot < slots) {
+            return segment(index).getLong(record(index) + QUANTITIES + 8 * slot);
+        }
+        long block = block(index, slot);
+        return overflowSegment(block).getLong(blockOffset(block) + BLOCK_QUANTITIES + 8 * overflowSlot(slot));
+    }
+
+    private void setSlot(int index, int slot, int itemId, long quantity) {
+        if (slot < slots) {
+            ByteBuffer segment = segment(index);
+            int record = record(index);
+            segment.putInt(record + items + 4 * slot, itemId);
+            segment.putLong(record + QUANTITIES + 8 * slot, quantity);
+        } else {
+            long block = block(index, slot);
+            ByteBuffer overflow = overflowSegment(block);
+            int offset = blockOffset(block);
+            overflow.putInt(offset + BLOCK_ITEMS + 4 * overflowSlot(slot), itemId);
+            overflow.putLong(offset + BLOCK_QUANTITIES + 8 * overflowSlot(slot), quantity);
+        }
+    }
+
+    private int overflowSlot(int slot) {
+        return (slot - slots) % OVERFLOW_SLOTS;
+    }
+
+    /**
+     * Returns the overflow block holding a given slot, beyond the record's own, of the agent with a given index.
+     */
+    private long block(int index, int slot) {
+        long link = segment(index).getLong(record(index) + OVERFLOW);
+        for (int n = (slot - slots) / OVERFLOW_SLOTS; n > 0; n--) {
+            long block = link - 1;
+            link = overflowSegment(block).getLong(blockOffset(block) + NEXT);
+        }
+        return link - 1;
+    }
+
+    /**
+     * Links a new overflow block, for slots starting at a given slot, onto the end of the chain of the agent with a given
+     * index.
+     */
+    private void appendBlock(int index, int slot) {
+        long block = allocateBlock();
+        if (slot == slots) {
+            segment(index).putLong(record(index) + OVERFLOW, block + 1);
+        } else {
+            long previous = block(index, slot - 1);
+            overflowSegment(previous).putLong(blockOffset(previous) + NEXT, block + 1);
+        }
+    }
+
+    /**
+     * Unlinks the last overflow block, which starts at a given slot, from the chain of the agent with a given index, and
+     * puts it on the free list.
+     */
+    private void releaseLastBlock(int index, int slot) {
+        long block = block(index, slot);
+        if (slot == slots) {
+            segment(index).putLong(record(index) + OVERFLOW, 0);
+        } else {
+            long previous = block(index, slot - 1);
+            overflowSegment(previous).putLong(blockOffset(previous) + NEXT, 0);
+        }
+        overflowSegment(block).putLong(blockOffset(block) + NEXT, overflowHeader.getLong(HEADER_FREE));
+        overflowHeader.putLong(HEADER_FREE, block + 1);
+    }
+
+    /**
+     * Takes a block off the free list, or adds a new one to the overflow area if the list is empty.
+     */
+    private long allocateBlock() {
+        long free = overflowHeader.getLong(HEADER_FREE);
+        long block;
+        if (free != 0) {
+            block = free - 1;
+            overflowHeader.putLong(HEADER_FREE, overflowSegment(block).getLong(blockOffset(block) + NEXT));
+        } else {
+            block = overflowHeader.getLong(HEADER_BLOCKS);
+            overflowHeader.putLong(HEADER_BLOCKS, block + 1);
+        }
+        overflowSegment(block).putLong(blockOffset(block) + NEXT, 0);
+        return block;
+    }
+
+    private ByteBuffer checkedSegment(int index) {
+        if (index < 0 || index >= size) {
+            if (closed) {
+                throw new IllegalStateException("store has been closed");
+            }
+            throw new IndexOutOfBoundsException("no agent at index " + index);
+        }
+        return segment(index);
+    }
+
+    /**
+     * Returns the segment holding the record of the agent with a given index, mapping it if it is not yet.
+     */
+    private ByteBuffer segment(int index) {
+        int segment = index >>> SEGMENT_BITS;
+        if (segment >= segments.length) {
+            segments = Arrays.copyOf(segments, segment + 1);
+        }
+        if (segments[segment] == null) {
+            long bytes = (long) SEGMENT_RECORDS * recordSize;
+            segments[segment] = mapOrThrow(agentsFile, HEADER + segment * bytes, bytes);
+        }
+        return segments[segment];
+    }
+
+    private int record(int index) {
+        return (index & SEGMENT_MASK) * recordSize;
+    }
+
+    /**
+     * Returns the segment of the overflow area holding a given block, mapping it if it is not yet.
+     */
+    private ByteBuffer overflowSegment(long block) {
+        int segment = (int) (block / SEGMENT_BLOCKS);
+        if (segment >= overflowSegments.length) {
+            overflowSegments = Arrays.copyOf(overflowSegments, segment + 1);
+        }
+        if (overflowSegments[segment] == null) {
+            long bytes = (long) SEGMENT_BLOCKS * BLOCK_SIZE;
+            overflowSegments[segment] = mapOrThrow(overflowFile, HEADER + segment * bytes, bytes);
+        }
+        return overflowSegments[segment];
+    }
+
+    private static int blockOffset(long block) {
+        return (int) (block % SEGMENT_BLOCKS) * BLOCK_SIZE;
+    }
+
+    private static MappedByteBuffer mapOrThrow(RandomAccessFile file, long position, long length) {
+        try {
+            return map(file, position, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int nameIndex(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer index = nameIndices.get(name);
+        if (index == null) {
+            index = names.size();
+            try {
+                namesOut.writeUTF(name);
+                namesOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            nameIndices.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+}
@@ -1,6 +1,9 @@
 package economy;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
 import common.Utils;
 
 /**
@@ -10,10 +13,45 @@ import common.Utils;
  * @see Agent
  */
 public class Market {
+    private static final int TRADED = 0;
+    private static final int NOTHING_TO_TRADE = 1;
+    private static final int NOT_IN_MARKET = 2;
+    private static final int NOT_ENOUGH_MONEY = 3;
+    private static final int NOT_ENOUGH_STOCK = 4;
+    private static final String[] TRADE_OUTCOMES =
+            {"traded", "nothing to trade", "not in market", "not enough money", "not enough stock"};
+
     public String name = "Market";
-    private List<Agent> agents;
-    private Map<Item, Double> prices;
+    private ArrayList<Agent> agents;
+    private PriceTable prices;
     public final double elasticity;
+    private final PricingModel pricingModel;
+    private boolean batchPricing;
+    private int[] pendingSlots = new int[0];
+    private Item[] pendingItems = new Item[0];
+    private long[] pendingSupply = new long[0];
+    private double[] pendingPressure = new double[0];
+    private double[] pendingPrices = new double[0];
+    private double[] pendingPrevious = new double[0];
+    private int pendingCount;
+    private long tick;
+    private long[] supply = new long[0];
+    // The part of the supply held by agents in the agent store, which a fork leaves behind.
+    private long[] storedSupply = new long[0];
+    private final TradeStatistics tradeStatistics = new TradeStatistics();
+    MarketJournal journal;
+    PriceHistory priceHistory;
+    MetricsExporter metricsExporter;
+    MoneyLedger ledger;
+    MarketEventBus eventBus;
+    RangeIndex<Item> priceIndex;
+    RangeIndex<Agent> moneyIndex;
+    HolderIndex holderIndex;
+    private AgentStore agentStore;
+    private final MarketMetrics metrics;
+    private final List<StrategyGroup> strategyGroups = new ArrayList<>();
+    private final OrderBatch strategyOrders = new OrderBatch();
+    private volatile MarketView view;
 
     /**
      * Creates a new market with a given elasticity with no agents and no items.
@@ -23,10 +61,7 @@ public class Market {
      * @param elasticity The elasticity of the market to create.
      */
     public Market(double elasticity) {
-        agents = new ArrayList<>();
-        prices = new HashMap<>();
-        this.elasticity = elasticity;
-        this.name = "Market";
+        this("Market", elasticity, LinearPricingModel.INSTANCE);
     }
 
     /**
@@ -38,17 +73,570 @@ public class Market {
      * @param elasticity The elasticity of the market to create.
      */
     public Market(String name, double elasticity) {
-        this(elasticity);
+        this(name, elasticity, LinearPricingModel.INSTANCE);
+    }
+
+    /**
+     * Creates a new market with a given name and elasticity with no agents and no items, whose prices respond to changes
+     * in supply and demand according to a given pricing model.
+     *
+     * The elasticity of a market is a non-negative value denoting how responsive the market is to changes in
+     * supply. An elasticity of zero (0) means the market does not respond to changes in supply at all.
+     * @param name The name of the market to create.
+     * @param elasticity The elasticity of the market to create.
+     * @param pricingModel The pricing model of the market to create.
+     */
+    public Market(String name, double elasticity, PricingModel pricingModel) {
+        agents = new ArrayList<>();
+        prices = new PriceTable();
+        this.elasticity = elasticity;
+        this.pricingModel = pricingModel;
         this.name = name;
+        metrics = MarketMetrics.ENABLED ? new MarketMetrics(this) : null;
+    }
+
+    /**
+     * Returns a new market which starts out exactly as the current market is now, but from then on changes independently
+     * of it, for trying out what-if scenarios without disturbing the current market.
+     *
+     * The new market has the same name, elasticity, pricing model, tick, prices and pending batched price changes as the
+     * current market, and a copy of each of its agents, in the same order and with the same identifiers. The copies'
+     * inventories share their structure with the originals until either of them changes, so forking takes time in
+     * proportion to the number of agents and items rather than to the total number of inventory entries, and a fork
+     * needs little memory beyond its agents and whatever changes in it. If the current market keeps its money in a
+     * {@link MoneyLedger}, so does the new market, in a ledger of its own, and likewise for range indexes and the index
+     * of holders.
+     *
+     * Nothing attached to the current market is carried over: the new market has no journal, price history, metrics
+     * exporter, event bus, strategy groups or {@link #setAgentStore agent store}, and its trade statistics start from
+     * nothing. As the new market has none of the stored agents, the items they hold are left out of its supply, though
+     * its prices are the same.
+     * @return A fork of the current market.
+     */
+    public Market fork() {
+        Market fork = new Market(name, elasticity, pricingModel);
+        fork.batchPricing = batchPricing;
+        fork.tick = tick;
+        fork.prices = prices.copy();
+        fork.supply = supply.clone();
+        for (int id = 0; id < storedSupply.length; id++) {
+            fork.supply[id] -= storedSupply[id];
+        }
+        fork.pendingSlots = pendingSlots.clone();
+        fork.pendingItems = pendingItems.clone();
+        fork.pendingSupply = pendingSupply.clone();
+        fork.pendingPressure = pendingPressure.clone();
+        fork.pendingPrices = pendingPrices.clone();
+        fork.pendingPrevious = pendingPrevious.clone();
+        fork.pendingCount = pendingCount;
+
+        fork.agents.ensureCapacity(agents.size());
+        for (Agent agent : agents) {
+            Agent copy = agent.copy();
+            copy.market = fork;
+            fork.agents.add(copy);
+        }
+        if (ledger != null) {
+            fork.enableMoneyLedger();
+        }
+        if (priceIndex != null) {
+            fork.enableRangeIndexes();
+        }
+        if (holderIndex != null) {
+            fork.enableHolderIndex();
+        }
+        return fork;
+    }
+
+    /**
+     * Returns the metrics counting what the current market does, or null if markets are not instrumented (see
+     * {@link MarketMetrics}).
+     * @return The metrics of the current market, or null if markets are not instrumented.
+     */
+    public MarketMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the current tick of the current market. A new market starts at tick 0.
+     * @return The current tick of the current market.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Advances the current market by one tick. Everything that happens in the market between two calls to this method
+     * is considered to have happened during the same tick.
+     */
+    public void tick() {
+        Object phase = FlightEvents.ENABLED ? FlightEvents.beginTickPhase() : null;
+        evaluateStrategies();
+        phase = endTickPhase(phase, "strategies");
+        applyPendingPrices();
+        phase = endTickPhase(phase, "prices");
+        if (metricsExporter != null) {
+            metricsExporter.capture();
+        }
+        phase = endTickPhase(phase, "metrics");
+        tradeStatistics.closeTick(tick);
+        tick++;
+
+        if (journal != null) {
+            journal.recordTick(tick);
+        }
+        if (view != null) {
+            view = MarketView.capture(tick, agents, prices, view);
+        }
+        if (eventBus != null) {
+            eventBus.publishTick(tick);
+        }
+        endTickPhase(phase, "publish");
+    }
+
+    /**
+     * Commits a Flight Recorder event for a phase of the tick which has just ended, and starts timing the next phase.
+     * @param phase The event timing the phase which has ended, or null if phases are not being recorded.
+     * @param name The name of the phase which has ended.
+     * @return The event timing the next phase, or null if phases are not being recorded.
+     */
+    private Object endTickPhase(Object phase, String name) {
+        if (!FlightEvents.ENABLED || phase == null) {
+            return null;
+        }
+        FlightEvents.commitTickPhase(phase, this, tick, name);
+        return FlightEvents.beginTickPhase();
+    }
+
+    /**
+     * Creates a new group of agents in the current market which all follow a given strategy. Every tick, the strategy
+     * decides what the group's agents buy, and the market carries out their orders, before the market's prices are
+     * updated.
+     * @param strategy The strategy the agents of the new group follow.
+     * @return The new group, to which agents may then be added.
+     */
+    public StrategyGroup addStrategyGroup(AgentStrategy strategy) {
+        StrategyGroup group = new StrategyGroup(this, strategy);
+        strategyGroups.add(group);
+        return group;
+    }
+
+    /**
+     * Removes a given group of agents from the current market, so that its strategy is no longer followed. The agents
+     * stay in the market.
+     * @param group The group to remove.
+     */
+    public void removeStrategyGroup(StrategyGroup group) {
+        strategyGroups.remove(group);
+    }
+
+    /**
+     * Lets every strategy group decide on its orders for the tick, then carries the orders out.
+     */
+    private void evaluateStrategies() {
+        for (int g = 0; g < strategyGroups.size(); g++) {
+            StrategyGroup group = strategyGroups.get(g);
+            group.refresh();
+            group.strategy.evaluate(group, strategyOrders);
+            execute(strategyOrders);
+            strategyOrders.clear();
+        }
+    }
+
+    /**
+     * Returns the pricing model the current market's prices follow.
+     * @return The pricing model of the current market.
+     */
+    public PricingModel getPricingModel() {
+        return pricingModel;
+    }
+
+    /**
+     * Returns true if and only if the current market defers price changes to the end of each tick. See
+     * {@link #setBatchPricing}.
+     * @return True if the current market defers price changes to the end of each tick; false otherwise.
+     */
+    public boolean isBatchPricing() {
+        return batchPricing;
+    }
+
+    /**
+     * Sets whether the current market defers price changes to the end of each tick.
+     *
+     * When deferring, the prices of items do not move as items enter, leave and are traded. Instead, the net change in
+     * supply and the total demand pressure on each item are added up, and handed to the pricing model in one batch when
+     * the market {@link #tick() ticks}. Items new to the market still get their first price straight away.
+     *
+     * Turning deferral off applies any changes deferred so far.
+     * @param batchPricing True to defer price changes to the end of each tick; false to apply them straight away.
+     */
+    public void setBatchPricing(boolean batchPricing) {
+        if (!batchPricing) {
+            applyPendingPrices();
+        }
+        this.batchPricing = batchPricing;
+        if (journal != null) {
+            journal.recordBatchPricing(batchPricing);
+        }
+    }
+
+    /**
+     * Adds a change in supply and demand pressure to the changes deferred for a given item until the end of the tick.
+     * @param item The item whose price change is deferred.
+     * @param supplyDelta The change in supply of the item.
+     * @param pressure The demand pressure on the item.
+     */
+    void deferPriceChange(Item item, long supplyDelta, double pressure) {
+        if (journal != null) {
+            journal.recordDeferredPrice(item, supplyDelta, pressure);
+        }
+        int id = item.getId();
+        if (id >= pendingSlots.length) {
+            pendingSlots = Arrays.copyOf(pendingSlots, Math.max(id + 1, pendingSlots.length * 2));
+        }
+        int slot = pendingSlots[id] - 1;
+        if (slot < 0) {
+            slot = pendingCount++;
+            if (slot == pendingItems.length) {
+                int capacity = Math.max(8, pendingItems.length * 2);
+                pendingItems = Arrays.copyOf(pendingItems, capacity);
+                pendingSupply = Arrays.copyOf(pendingSupply, capacity);
+                pendingPressure = Arrays.copyOf(pendingPressure, capacity);
+                pendingPrices = Arrays.copyOf(pendingPrices, capacity);
+                pendingPrevious = Arrays.copyOf(pendingPrevious, capacity);
+            }
+            pendingSlots[id] = slot + 1;
+            pendingItems[slot] = item;
+            pendingSupply[slot] = 0;
+            pendingPressure[slot] = 0;
+        }
+        pendingSupply[slot] += supplyDelta;
+        pendingPressure[slot] += pressure;
+    }
+
+    /**
+     * Returns the number of items with price changes deferred until the end of the tick.
+     * @return The number of items with deferred price changes.
+     */
+    int getPendingCount() {
+        return pendingCount;
     }
 
     /**
-     * Returns the quantity of a given item existing in the current market.
+     * Returns the item with deferred price changes at a given position, from 0 up to {@link #getPendingCount()}.
+     * @param i The position of the item.
+     * @return The item at the given position.
+     */
+    Item getPendingItem(int i) {
+        return pendingItems[i];
+    }
+
+    /**
+     * Returns the net change in supply deferred for the item at a given position.
+     * @param i The position of the item.
+     * @return The deferred change in supply of the item.
+     */
+    long getPendingSupply(int i) {
+        return pendingSupply[i];
+    }
+
+    /**
+     * Returns the total demand pressure deferred for the item at a given position.
+     * @param i The position of the item.
+     * @return The deferred demand pressure on the item.
+     */
+    double getPendingPressure(int i) {
+        return pendingPressure[i];
+    }
+
+    /**
+     * Forgets every deferred price change without applying it. Used when replaying a journal, which records the prices
+     * the changes led to.
+     */
+    void discardPendingPrices() {
+        for (int i = 0; i < pendingCount; i++) {
+            pendingSlots[pendingItems[i].getId()] = 0;
+            pendingItems[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Hands every deferred price change to the pricing model in one batch and sets the resulting prices, publishing them
+     * to readers of the price table all at once.
+     */
+    private void applyPendingPrices() {
+        if (pendingCount == 0) {
+            return;
+        }
+
+        for (int i = 0; i < pendingCount; i++) {
+            pendingPrices[i] = pendingPrevious[i] = getPrice(pendingItems[i]);
+        }
+        pricingModel.apply(pendingPrices, pendingSupply, pendingPressure, pendingCount, elasticity);
+        prices.beginBatch();
+        for (int i = 0; i < pendingCount; i++) {
+            prices.set(pendingItems[i], pendingPrices[i]);
+        }
+        prices.endBatch();
+        // Only tell anyone about the new prices once they are published, as listeners may wait on readers of the table.
+        for (int i = 0; i < pendingCount; i++) {
+            Item item = pendingItems[i];
+            priceChanged(item, pendingPrevious[i], pendingPrices[i]);
+            pendingSlots[item.getId()] = 0;
+            pendingItems[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Returns the running totals of the trades made in the current market, which may be read from any thread.
+     * @return The running totals of the trades made in the current market.
+     */
+    public TradeStatistics getTradeStatistics() {
+        return tradeStatistics;
+    }
+
+    /**
+     * Makes the current market publish a {@link MarketView} of its prices and agents at the end of every tick, so that
+     * other threads can read a consistent state of the market while it keeps changing. A view of the market as it is now
+     * is published straight away.
+     *
+     * Does nothing if the current market already publishes views.
+     */
+    public void enableReadViews() {
+        if (view == null) {
+            view = MarketView.capture(tick, agents, prices, null);
+        }
+    }
+
+    /**
+     * Returns the view of the current market published at the end of the latest tick, or null if the current market does
+     * not publish views (see {@link #enableReadViews()}). May be called from any thread.
+     * @return The latest view of the current market, or null if there is none.
+     */
+    public MarketView getView() {
+        return view;
+    }
+
+    /**
+     * Makes the current market keep the money of its agents in a {@link MoneyLedger} as whole numbers of cents, so that
+     * money is never lost or created by rounding. The money of every agent already in the market, and of every agent
+     * joining it later, is moved into the ledger, and moved back out into the agent when the agent leaves.
+     *
+     * Does nothing if the current market already uses a ledger.
+     */
+    public void enableMoneyLedger() {
+        if (ledger != null) {
+            return;
+        }
+        MoneyLedger ledger = new MoneyLedger();
+        for (Agent agent : agents) {
+            agent.moveMoneyTo(ledger);
+        }
+        this.ledger = ledger;
+        // Money is rounded to whole cents on its way into the ledger.
+        indexMoney();
+    }
+
+    /**
+     * Makes the current market keep two {@link RangeIndex range indexes}: one of its items by price and one of its agents
+     * by money, kept up to date as prices and money change, so that questions such as which items are priced between $10
+     * and $50, or which agents have less than $100, are answered without scanning every item or agent.
+     *
+     * Keeping the indexes makes every change of price or money take O(log n) time rather than constant time. Does nothing
+     * if the current market already keeps range indexes.
+     */
+    public void enableRangeIndexes() {
+        if (priceIndex != null) {
+            return;
+        }
+        priceIndex = new RangeIndex<>();
+        for (Map.Entry<Item, Double> entry : prices.toMap().entrySet()) {
+            priceIndex.put(entry.getKey().getId(), entry.getKey(), entry.getValue());
+        }
+        moneyIndex = new RangeIndex<>();
+        indexMoney();
+    }
+
+    /**
+     * Returns the index of the current market's items by price, or null if the current market keeps no range indexes (see
+     * {@link #enableRangeIndexes()}).
+     * @return The index of the current market's items by price, or null if there is none.
+     */
+    public RangeIndex<Item> getPriceIndex() {
+        return priceIndex;
+    }
+
+    /**
+     * Returns the index of the current market's agents by money, or null if the current market keeps no range indexes
+     * (see {@link #enableRangeIndexes()}).
+     * @return The index of the current market's agents by money, or null if there is none.
+     */
+    public RangeIndex<Agent> getMoneyIndex() {
+        return moneyIndex;
+    }
+
+    /**
+     * Returns a new list of the items in the current market priced at least a given minimum and at most a given maximum,
+     * in order of price if the current market keeps range indexes. Takes O(log n + k) time for n items and k found if the
+     * current market keeps range indexes, and looks at every item otherwise.
+     * @param min The lowest price to include.
+     * @param max The highest price to include.
+     * @return The items priced in the given range.
+     */
+    public List<Item> getItemsPricedBetween(double min, double max) {
+        if (priceIndex != null) {
+            return priceIndex.getInRange(min, max);
+        }
+        List<Item> found = new ArrayList<>();
+        for (Map.Entry<Item, Double> entry : prices.toMap().entrySet()) {
+            if (entry.getValue() >= min && entry.getValue() <= max) {
+                found.add(entry.getKey());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns a new list of the agents in the current market with at least a given minimum and at most a given maximum
+     * amount of money, in order of money if the current market keeps range indexes. Takes O(log n + k) time for n agents
+     * and k found if the current market keeps range indexes, and looks at every agent otherwise.
+     * @param min The least money to include.
+     * @param max The most money to include.
+     * @return The agents with money in the given range.
+     */
+    public List<Agent> getAgentsWithMoneyBetween(double min, double max) {
+        if (moneyIndex != null) {
+            return moneyIndex.getInRange(min, max);
+        }
+        List<Agent> found = new ArrayList<>();
+        for (Agent agent : agents) {
+            double money = agent.getMoney();
+            if (money >= min && money <= max) {
+                found.add(agent);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Puts the money of every agent in the current market into the index of agents by money, if there is one.
+     */
+    private void indexMoney() {
+        if (moneyIndex == null) {
+            return;
+        }
+        for (Agent agent : agents) {
+            moneyIndex.put(agent.id, agent, agent.getMoney());
+        }
+    }
+
+    /**
+     * Makes the current market keep a {@link HolderIndex} of which of its agents hold each item, kept up to date as
+     * inventories change and agents come and go, so that a seller of an item can be found without looking through every
+     * agent's inventory.
+     *
+     * Keeping the index adds a constant amount of work whenever an agent gains an item it did not have or runs out of one.
+     * Does nothing if the current market already keeps an index of holders.
+     */
+    public void enableHolderIndex() {
+        if (holderIndex != null) {
+            return;
+        }
+        holderIndex = new HolderIndex();
+        for (Agent agent : agents) {
+            indexHoldings(agent, true);
+        }
+    }
+
+    /**
+     * Returns the index of which of the current market's agents hold each item, or null if the current market keeps no
+     * such index (see {@link #enableHolderIndex()}).
+     * @return The index of holders of the current market's items, or null if there is none.
+     */
+    public HolderIndex getHolderIndex() {
+        return holderIndex;
+    }
+
+    /**
+     * Returns a random agent in the current market holding a given item, every holder being equally likely, or null if no
+     * agent holds it. Takes constant time if the current market keeps an index of holders, and looks at every agent
+     * otherwise.
+     * @param item The item to find a holder of.
+     * @return A random holder of the given item, or null if there is none.
+     */
+    public Agent getRandomHolder(Item item) {
+        if (holderIndex != null) {
+            return holderIndex.getRandom(item);
+        }
+        // Pick uniformly among the holders in a single pass.
+        Agent chosen = null;
+        int seen = 0;
+        for (Agent agent : agents) {
+            if (agent.inventory.contains(item) && ThreadLocalRandom.current().nextInt(++seen) == 0) {
+                chosen = agent;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Adds every item a given agent holds to the index of holders, or removes them from it, if there is an index.
+     */
+    private void indexHoldings(Agent agent, boolean held) {
+        if (holderIndex == null) {
+            return;
+        }
+        for (Map.Entry<Item, Long> entry : agent.inventory) {
+            if (held) {
+                holderIndex.add(entry.getKey(), agent);
+            } else {
+                holderIndex.remove(entry.getKey(), agent);
+            }
+        }
+    }
+
+    /**
+     * Returns the ledger keeping the money of the current market's agents, or null if the agents keep their own money.
+     * @return The ledger keeping the money of the current market's agents, or null if there is none.
+     */
+    public MoneyLedger getMoneyLedger() {
+        return ledger;
+    }
+
+    /**
+     * Sets the current tick of the current market without advancing anything. Used when restoring a previously recorded
+     * state.
+     * @param tick The tick the current market is now at.
+     */
+    void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * Returns the quantity of a given item existing in the current market. The quantity is kept up to date as the
+     * inventories of the market's agents change, so this takes constant time.
      * @param item The item to get the quantity of existing in the current market.
      * @return the quantity of the given item existing in the current market.
      */
     public long getSupply(Item item) {
-        return getItems().getQuantity(item);
+        int id = item.getId();
+        return id < supply.length ? supply[id] : 0;
+    }
+
+    /**
+     * Changes the quantity of a given item existing in the current market by a given amount. Called whenever the
+     * inventory of an agent in the current market changes, and whenever an agent joins or leaves.
+     * @param item The item whose quantity changed.
+     * @param delta The amount the quantity of the item changed by.
+     */
+    void changeSupply(Item item, long delta) {
+        int id = item.getId();
+        if (id >= supply.length) {
+            supply = Arrays.copyOf(supply, Math.max(id + 1, supply.length * 2));
+        }
+        supply[id] += delta;
     }
 
     /**
@@ -58,8 +646,8 @@ public class Market {
      * @throws IllegalStateException If the current market does not already have a price for the given item.
      */
     public double getPrice(Item item) throws IllegalStateException {
-        Double price = prices.get(item);
-        if (price == null) {
+        double price = prices.get(item);
+        if (Double.isNaN(price) && !prices.contains(item)) {
             throw new IllegalStateException("market does not have item " + item + " - cannot get price");
         }
         return price;
@@ -91,7 +679,51 @@ public class Market {
      * @param price The new price to assign to the given item.
      */
     public void setPrice(Item item, double price) {
-        prices.put(item, price);
+        priceChanged(item, prices.set(item, price), price);
+    }
+
+    /**
+     * Tells everything watching the current market that the price of a given item has changed.
+     * @param item The item whose price changed.
+     * @param previous The previous price of the item, or NaN if it had none.
+     * @param price The new price of the item.
+     */
+    private void priceChanged(Item item, double previous, double price) {
+        if (priceIndex != null) {
+            priceIndex.put(item.getId(), item, price);
+        }
+        if (MarketMetrics.ENABLED) {
+            metrics.priceUpdates.increment();
+        }
+        if (FlightEvents.ENABLED) {
+            FlightEvents.priceChanged(this, item, previous, price);
+        }
+
+        if (journal != null) {
+            journal.recordPrice(item, price);
+        }
+        if (priceHistory != null) {
+            priceHistory.record(item, tick, price);
+        }
+        if (eventBus != null) {
+            eventBus.publishPrice(item, price);
+        }
+    }
+
+    /**
+     * Returns the table of the prices of the items in the current market, which may be read from any thread.
+     * @return The prices of the current market.
+     */
+    public PriceTable getPriceTable() {
+        return prices;
+    }
+
+    /**
+     * Returns an unmodifiable view of the prices of all items which have a price in the current market.
+     * @return An unmodifiable view of the prices of all items which have a price in the current market.
+     */
+    Map<Item, Double> getPrices() {
+        return Collections.unmodifiableMap(prices.toMap());
     }
 
     /**
@@ -102,7 +734,7 @@ public class Market {
      *                                  market.
      */
     public void changePrice(Item item, double amount) throws IllegalStateException {
-        if (!prices.containsKey(item)) {
+        if (!prices.contains(item)) {
             throw new IllegalStateException("market does not have item " + item + " - cannot change price");
         }
 
@@ -113,16 +745,29 @@ public class Market {
     /**
      * Generates a number of agents, all with random name, $0.00 and no items and adds them all to this market.
      *
+     * The names file is read once, and the agents are created in parallel before being added to the market in one go,
+     * so generating millions of agents takes seconds.
+     *
      * If the number of agents to generative is non-positive, this method does nothing.
      * @param num The positive number of agents to generate.
+     * @throws IllegalArgumentException If the market could not hold the given number of agents.
      */
-    public void generateAgents(long num) {
+    public void generateAgents(long num) throws IllegalArgumentException {
         if (num <= 0) {
             return;
         }
+        if (num > Integer.MAX_VALUE - agents.size()) {
+            throw new IllegalArgumentException("cannot hold " + num + " more agents");
+        }
 
-        for (int i = 0; i < num; i++) {
-            addAgent(new Agent());
+        String[] names = getLines("src/main/resources/names");
+        Agent[] generated = new Agent[(int) num];
+        IntStream.range(0, generated.length).parallel().forEach(i ->
+                generated[i] = new Agent(names[ThreadLocalRandom.current().nextInt(names.length)]));
+
+        agents.ensureCapacity(agents.size() + generated.length);
+        for (Agent agent : generated) {
+            addAgent(agent);
         }
     }
 
@@ -134,25 +779,123 @@ public class Market {
      * are not enough item names in the item names file. Instead, this method will randomly add quantities of random items
      * to agents' inventories a given number of <em>times</em>.
      *
+     * The market ends up as if each quantity had been given to its agent with {@link Agent#receive(Item, long)} one at a
+     * time, but the quantities are drawn and handed out in parallel, and the market responds to the rise in supply of
+     * each item only once: an item new to the market gets a random price, and every price then responds to each later
+     * quantity received through the market's {@link PricingModel pricing model} - or, when
+     * {@link #setBatchPricing batch pricing}, defers its response to the end of the tick.
+     *
      * If the number of items to generative is non-positive, this method does nothing.
      * @param num The positive number of item types to generate.
      * @param maxQuantity The upper bound (exclusive) on the random quantity of each item type to be dispersed.
+     * @throws IllegalArgumentException If the given number is too large to generate at once.
+     * @throws IllegalStateException If the current market has no agents to disperse items among.
+     * @throws IndexOutOfBoundsException If the given upper bound on the quantity is negative.
      */
-    public void generateItems(long num, long maxQuantity) {
+    public void generateItems(long num, long maxQuantity)
+            throws IllegalArgumentException, IllegalStateException, IndexOutOfBoundsException {
         if (num <= 0) {
             return;
         }
+        if (num > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("cannot generate " + num + " items at once");
+        }
+        if (agents.isEmpty()) {
+            throw new IllegalStateException("market has no agents to give items to");
+        }
+        if (maxQuantity < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // Draw every grant in parallel: which item, how many, and to whom.
+        String[] names = getLines("src/main/resources/items");
+        int n = (int) num;
+        int agentCount = agents.size();
+        int[] lines = new int[n];
+        long[] quantities = new long[n];
+        int[] recipients = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            lines[i] = random.nextInt(names.length);
+            quantities[i] = Math.max(1, (long) (random.nextDouble() * maxQuantity));
+            recipients[i] = random.nextInt(agentCount);
+        });
 
-        for (int i = 0; i < num; i++) {
-            Item item = new Item();
+        // Work out each item's total quantity and new price, in the order the grants were drawn.
+        Item[] itemsByLine = new Item[names.length];
+        Map<Item, double[]> newPrices = new LinkedHashMap<>();
+        Map<Item, Long> totals = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Item item = itemsByLine[lines[i]];
+            if (item == null) {
+                item = itemsByLine[lines[i]] = new Item(names[lines[i]]);
+            }
+            totals.merge(item, quantities[i], Long::sum);
 
-            long quantity = Math.max(1, Utils.getRandomSize(maxQuantity));
+            double[] price = newPrices.get(item);
+            if (price == null && !prices.contains(item)) {
+                // The first quantity of a new item sets its price rather than bringing it down.
+                newPrices.put(item, new double[] {Utils.getRandomSize(10000.00)});
+            } else if (batchPricing) {
+                deferPriceChange(item, quantities[i], 0);
+            } else {
+                if (price == null) {
+                    newPrices.put(item, price = new double[] {prices.get(item)});
+                }
+                price[0] = pricingModel.supplyChanged(price[0], quantities[i], this.elasticity);
+            }
+        }
 
-            // Generate a random market price for this item for now.
-            getRandomAgent().receive(item, quantity);
+        // Group the grants by agent so that each agent's inventory is only touched by one thread.
+        int[] offsets = new int[agentCount + 1];
+        for (int recipient : recipients) {
+            offsets[recipient + 1]++;
+        }
+        for (int a = 0; a < agentCount; a++) {
+            offsets[a + 1] += offsets[a];
+        }
+        int[] order = new int[n];
+        int[] next = Arrays.copyOf(offsets, agentCount);
+        for (int i = 0; i < n; i++) {
+            order[next[recipients[i]]++] = i;
+        }
+        IntStream.range(0, agentCount).parallel().forEach(a -> {
+            Inventory inventory = agents.get(a).inventory;
+            for (int k = offsets[a]; k < offsets[a + 1]; k++) {
+                int i = order[k];
+                inventory.addUntracked(itemsByLine[lines[i]], quantities[i]);
+            }
+        });
+
+        for (Map.Entry<Item, Long> entry : totals.entrySet()) {
+            changeSupply(entry.getKey(), entry.getValue());
+        }
+        if (holderIndex != null) {
+            for (int i = 0; i < n; i++) {
+                holderIndex.add(itemsByLine[lines[i]], agents.get(recipients[i]));
+            }
+        }
+        for (Map.Entry<Item, double[]> entry : newPrices.entrySet()) {
+            setPrice(entry.getKey(), entry.getValue()[0]);
+        }
+        if (journal != null) {
+            for (int i = 0; i < n; i++) {
+                journal.recordQuantity(agents.get(recipients[i]), itemsByLine[lines[i]]);
+            }
         }
     }
 
+    /**
+     * Returns the lines in a file given as a filename, or a single empty line if the file is empty or cannot be read.
+     */
+    private static String[] getLines(String filename) {
+        List<String> lines = Utils.getLinesInFile(filename);
+        if (lines == null || lines.isEmpty()) {
+            return new String[] {""};
+        }
+        return lines.toArray(new String[0]);
+    }
+
     /**
      * Generates an amount of money and disperses equally among agents in the current market.
      *
@@ -165,6 +908,22 @@ public class Market {
         }
 
         int n = agents.size();
+        if (ledger != null && n > 0) {
+            // Split the money exactly, cent for cent.
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = agents.get(i).id;
+            }
+            ledger.splitEqually(ids, MoneyLedger.toCents(amount));
+            indexMoney();
+            if (journal != null) {
+                for (Agent agent : agents) {
+                    journal.recordMoney(agent);
+                }
+            }
+            return;
+        }
+
         for (int i = 0; i < n; i++) {
           agents.get(i).receive(amount / (double) n);
         }
@@ -177,20 +936,21 @@ public class Market {
      *     <li>If the item does not yet exist in the market, the market price of the item will be set to some random
      *     value in the range [0, 10000.00).</li>
      *
-     *     <li>If the item already exists in the market, the market price of the item will decrease by a factor of the
-     *     market's elasticity for every quantity of item received.</li>
+     *     <li>If the item already exists in the market, the market price of the item will come down according to the
+     *     market's {@link PricingModel pricing model}. By default, it will decrease by a factor of the market's
+     *     elasticity for every quantity of item received.</li>
      * </ul>
      * @param item The item to add to the current market.
      * @param quantity The quantity of the given item to add to the current market.
      */
     void addItem(Item item, long quantity) {
-        double marketPrice = Utils.getRandomSize(10000.00);
-        try {   // Supply goes up, so bring the market price down a bit.
-            marketPrice = getPrice(item);
-            changePrice(item, -marketPrice * this.elasticity * quantity);
-        } catch (IllegalStateException e) { // If this item has no price in the market yet, agent sets price.
+        if (!prices.contains(item)) { // If this item has no price in the market yet, agent sets price.
             // Just set the price randomly for now.
-            setPrice(item, marketPrice);
+            setPrice(item, Utils.getRandomSize(10000.00));
+        } else if (batchPricing) {
+            deferPriceChange(item, quantity, 0);
+        } else {    // Supply goes up, so bring the market price down a bit.
+            setPrice(item, pricingModel.supplyChanged(prices.get(item), quantity, this.elasticity));
         }
     }
 
@@ -198,18 +958,21 @@ public class Market {
      * Removes a given item of a given quantity from the current market. The current market will then respond to the
      * decrease in supply according to the following:
      * <ul>
-     *     <li>The market price of the item will increase by a factor of the market's elasticity for every quantity of
-     *     item removed.</li>
+     *     <li>The market price of the item will go up according to the market's {@link PricingModel pricing model}. By
+     *     default, it will increase by a factor of the market's elasticity for every quantity of item removed.</li>
      * </ul>
      * @param item The item to remove from the current market.
      * @param quantity The quantity of the given item to remove from the current market.
+     * @throws IllegalStateException If the current market does not already have a price for the given item.
      */
-    void removeItem(Item item, long quantity) {
-        // TODO: Fix this. Currently the market price drops more when an item leaves than it rises when it enters again.
+    void removeItem(Item item, long quantity) throws IllegalStateException {
         // Supply goes down, so bring price up a bit.
         double currentMarketPrice = getPrice(item);
-        changePrice(item, currentMarketPrice * this.elasticity * quantity);
-
+        if (batchPricing) {
+            deferPriceChange(item, -quantity, 0);
+        } else {
+            setPrice(item, pricingModel.supplyChanged(currentMarketPrice, -quantity, this.elasticity));
+        }
     }
 
     /**
@@ -220,11 +983,30 @@ public class Market {
      * @param agent The agent to add to the current market.
      */
     public void addAgent(Agent agent) {
+        if (ledger != null) {
+            agent.moveMoneyTo(ledger);
+        }
         agent.market = this;
         agents.add(agent);
+        if (moneyIndex != null) {
+            moneyIndex.put(agent.id, agent, agent.getMoney());
+        }
+        indexHoldings(agent, true);
+
+        if (journal != null) {
+            journal.recordAgentAdded(agent);
+        }
+        if (eventBus != null) {
+            eventBus.publishAgentAdded(agent);
+        }
+        if (FlightEvents.ENABLED) {
+            FlightEvents.agentAdded(this, agent);
+        }
+
         for (Map.Entry<Item, Long> entry : agent.inventory) {
             Item item = entry.getKey();
             long qty = entry.getValue();
+            this.changeSupply(item, qty);
             this.addItem(item, qty);
         }
     }
@@ -262,12 +1044,30 @@ public class Market {
      * @param agent The agent to remove from the current market.
      */
     public void removeAgent(Agent agent) {
+        if (ledger != null) {
+            agent.moveMoneyFrom(ledger);
+        }
         agent.market = null;
         agents.remove(agent);
+        if (moneyIndex != null) {
+            moneyIndex.remove(agent.id);
+        }
+        indexHoldings(agent, false);
+
+        if (journal != null) {
+            journal.recordAgentRemoved(agent);
+        }
+        if (eventBus != null) {
+            eventBus.publishAgentRemoved(agent);
+        }
+        if (FlightEvents.ENABLED) {
+            FlightEvents.agentRemoved(this, agent);
+        }
 
         for (Map.Entry<Item, Long> entry : agent.inventory) {
             Item item = entry.getKey();
             long qty = entry.getValue();
+            this.changeSupply(item, -qty);
             this.removeItem(item, qty);
         }
     }
@@ -316,6 +1116,7 @@ public class Market {
      *             <li>If the buying price was <strong>lower</strong> than the asking price, then the market price of
      *             the item decreases by 5% of the difference for each quantity of item bought.</li>
      *         </ul>
+     *     How far the price moves is up to the market's {@link PricingModel pricing model}.
      *     </li>
      * </ol>
      *
@@ -332,45 +1133,233 @@ public class Market {
      */
     public void buy(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach)
             throws InsufficientAmountException, IllegalArgumentException {
+        switch (trade(buyer, seller, item, quantity, buyingPriceEach, false)) {
+            case NOT_IN_MARKET:
+                throw new IllegalArgumentException("buyer and seller must be in the same market");
+            case NOT_ENOUGH_MONEY:
+                throw new InsufficientAmountException("not enough money to buy");
+            case NOT_ENOUGH_STOCK:
+                throw new InsufficientAmountException("not enough stock to sell");
+            default:
+        }
+    }
 
+    /**
+     * Carries out the seller's side of a trade with a buyer in another market, which has already taken the money from
+     * the buyer and will give the buyer the items: the seller loses the given quantity of the given item and is paid
+     * the given buying price for each, and the current market responds to the trade as {@link #buy} would, counting it
+     * in its trade statistics, metrics and events and moving the market price of the item.
+     *
+     * If the given quantity is not positive, nothing happens.
+     * @param buyer The buyer agent, in another market.
+     * @param seller The seller agent.
+     * @param item The item to sell.
+     * @param quantity The quantity of the item to sell.
+     * @param buyingPriceEach The price per each item the buyer paid.
+     * @throws InsufficientAmountException If the seller agent does not have enough quantity to sell.
+     * @throws IllegalArgumentException If the seller agent is not in the current market.
+     */
+    void sellToOtherMarket(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach)
+            throws InsufficientAmountException, IllegalArgumentException {
+        switch (trade(buyer, seller, item, quantity, buyingPriceEach, true)) {
+            case NOT_IN_MARKET:
+                throw new IllegalArgumentException("seller must be in the current market");
+            case NOT_ENOUGH_STOCK:
+                throw new InsufficientAmountException("not enough stock to sell");
+            default:
+        }
+    }
+
+    /**
+     * Carries out every order in a given batch, in order, as if each were passed to {@link #buy}. Orders which
+     * {@link #buy} would refuse are skipped rather than stopping the batch, and cost no more than a filled order.
+     * @param orders The orders to carry out.
+     * @return The number of orders which were filled.
+     */
+    public int execute(OrderBatch orders) {
+        int filled = 0;
+        int size = orders.size();
+        for (int i = 0; i < size; i++) {
+            int result = trade(orders.getBuyer(i), orders.getSeller(i), orders.getItem(i), orders.getQuantity(i),
+                    orders.getPrice(i), false);
+            if (result == TRADED) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Processes a transaction as described by {@link #buy}, returning the outcome rather than throwing it, and counts it
+     * in the current market's metrics if markets are instrumented. If the given buyer is in another market, only the
+     * seller's side of the trade is carried out, as described by {@link #sellToOtherMarket}.
+     * @return {@link #TRADED}, {@link #NOTHING_TO_TRADE}, {@link #NOT_IN_MARKET}, {@link #NOT_ENOUGH_MONEY} or
+     *         {@link #NOT_ENOUGH_STOCK}.
+     */
+    private int trade(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach,
+                      boolean buyerElsewhere) {
+        if (!MarketMetrics.ENABLED && !FlightEvents.ENABLED) {
+            return buyerElsewhere ? sellUninstrumented(buyer, seller, item, quantity, buyingPriceEach)
+                    : tradeUninstrumented(buyer, seller, item, quantity, buyingPriceEach);
+        }
+
+        Object event = FlightEvents.ENABLED ? FlightEvents.beginTrade() : null;
+        double priceBefore = event != null ? getPriceOrNaN(item) : 0;
+        long start = System.nanoTime();
+        int result = buyerElsewhere ? sellUninstrumented(buyer, seller, item, quantity, buyingPriceEach)
+                : tradeUninstrumented(buyer, seller, item, quantity, buyingPriceEach);
+        if (MarketMetrics.ENABLED && result != NOTHING_TO_TRADE) {
+            metrics.buyLatency.record(System.nanoTime() - start);
+            (result == TRADED ? metrics.trades : metrics.rejections).increment();
+        }
+        if (event != null) {
+            FlightEvents.commitTrade(event, this, buyer, seller, item, quantity, buyingPriceEach, priceBefore,
+                    getPriceOrNaN(item), TRADE_OUTCOMES[result]);
+        }
+        return result;
+    }
+
+    private double getPriceOrNaN(Item item) {
+        return prices.get(item);
+    }
+
+    private int tradeUninstrumented(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach) {
         if (quantity <= 0) {
-            return;
+            return NOTHING_TO_TRADE;
         }
 
-        if (!this.agents.contains(buyer) || !this.agents.contains(seller)) {
-            throw new IllegalArgumentException("buyer and seller must be in the same market");
+        if (buyer.market != this || seller.market != this) {
+            return NOT_IN_MARKET;
         }
 
         double finalPrice = buyingPriceEach * quantity;
 
         // Can't buy without enough money.
-        if (buyer.getMoney() < finalPrice) {
-            throw new InsufficientAmountException("not enough money to buy");
+        long finalCents = MoneyLedger.toCents(finalPrice);
+        if (ledger != null ? ledger.getCents(buyer.id) < finalCents : buyer.getMoney() < finalPrice) {
+            return NOT_ENOUGH_MONEY;
         }
 
         // Can't buy if seller doesn't have enough stock.
         if (seller.inventory.getQuantity(item) < quantity) {
-            throw new InsufficientAmountException("not enough stock to sell");
+            return NOT_ENOUGH_STOCK;
         }
 
         double marketPrice = this.getPrice(item);
 
-        // For now just make the seller's asking price just the market price plus some small random percentage.
-        double askingPriceEach = marketPrice + Utils.getRandomSize(marketPrice * 0.10);
-
         // Exchange the item.
         seller.lose(item, quantity);
         buyer.receive(item, quantity);
 
         // Exchange the money.
-        buyer.lose(finalPrice);
+        if (ledger != null) {
+            try {
+                ledger.transfer(buyer.id, seller.id, finalCents);
+            } catch (InsufficientAmountException e) {
+                // Cannot happen: the buyer's balance was checked above, and only this thread changes it.
+                throw new IllegalStateException(e);
+            }
+            if (moneyIndex != null) {
+                moneyIndex.put(buyer.id, buyer, buyer.getMoney());
+                moneyIndex.put(seller.id, seller, seller.getMoney());
+            }
+            if (journal != null) {
+                journal.recordMoney(buyer);
+                journal.recordMoney(seller);
+            }
+        } else {
+            buyer.lose(finalPrice);
+            seller.receive(finalPrice);
+        }
+        tradeStatistics.record(item, quantity, finalPrice);
+        if (eventBus != null) {
+            eventBus.publishTrade(buyer, seller, item, quantity, buyingPriceEach);
+        }
+        respondToTrade(item, quantity, buyingPriceEach, marketPrice);
+        return TRADED;
+    }
+
+    private int sellUninstrumented(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach) {
+        if (quantity <= 0) {
+            return NOTHING_TO_TRADE;
+        }
+        if (seller.market != this) {
+            return NOT_IN_MARKET;
+        }
+        if (seller.inventory.getQuantity(item) < quantity) {
+            return NOT_ENOUGH_STOCK;
+        }
+
+        double marketPrice = this.getPrice(item);
+        double finalPrice = buyingPriceEach * quantity;
+        seller.lose(item, quantity);
         seller.receive(finalPrice);
+        tradeStatistics.record(item, quantity, finalPrice);
+        if (eventBus != null) {
+            eventBus.publishTrade(buyer, seller, item, quantity, buyingPriceEach);
+        }
+        respondToTrade(item, quantity, buyingPriceEach, marketPrice);
+        return TRADED;
+    }
+
+    /**
+     * Moves the market price of a given item in response to a trade of it at a given price, made when the market price
+     * was the given one: up if the seller got the better deal against its asking price, down if the buyer did.
+     */
+    private void respondToTrade(Item item, long quantity, double buyingPriceEach, double marketPrice) {
+        // For now just make the seller's asking price just the market price plus some small random percentage.
+        double askingPriceEach = marketPrice + Utils.getRandomSize(marketPrice * 0.10);
 
         // If difference > 0, the seller got the better deal. If difference < 0, the buyer got the better deal.
         double difference = buyingPriceEach * quantity - askingPriceEach * quantity;
 
         // The market price of the item will increase if the seller gets the better deal and decrease if the buyer got the better deal.
-        this.changePrice(item, difference * this.elasticity * marketPrice);
+        double pressure = difference * this.elasticity * marketPrice;
+        if (batchPricing) {
+            deferPriceChange(item, 0, pressure);
+        } else {
+            setPrice(item, pricingModel.demandChanged(getPrice(item), pressure, this.elasticity));
+        }
+    }
+
+    /**
+     * Sets a given agent's market to the current market and adds the given agent to this market's list of agents without
+     * the market responding to the agent's inventory. Used when restoring a previously recorded state.
+     * @param agent The agent to restore into the current market.
+     */
+    void attachAgent(Agent agent) {
+        if (ledger != null) {
+            agent.moveMoneyTo(ledger);
+        }
+        agent.market = this;
+        agents.add(agent);
+        if (moneyIndex != null) {
+            moneyIndex.put(agent.id, agent, agent.getMoney());
+        }
+        indexHoldings(agent, true);
+        for (Map.Entry<Item, Long> entry : agent.inventory) {
+            changeSupply(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Sets a given agent's market to null and removes the given agent from this market's list of agents without the
+     * market responding to the agent's inventory. Used when restoring a previously recorded state.
+     * @param agent The agent to remove from the current market.
+     */
+    void detachAgent(Agent agent) {
+        if (ledger != null) {
+            agent.moveMoneyFrom(ledger);
+        }
+        agent.market = null;
+        agents.remove(agent);
+        if (moneyIndex != null) {
+            moneyIndex.remove(agent.id);
+        }
+        indexHoldings(agent, false);
+        for (Map.Entry<Item, Long> entry : agent.inventory) {
+            changeSupply(entry.getKey(), -entry.getValue());
+        }
     }
 
     /**
@@ -387,6 +1376,14 @@ public class Market {
         return agents.get(index);
     }
 
+    /**
+     * Returns the number of agents in the current market.
+     * @return The number of agents in the current market.
+     */
+    public int getAgentCount() {
+        return agents.size();
+    }
+
     /**
      * Returns an unmodifiable view of the list of agents in the current market.
      * @return an unmodifiable view of the list of agents in the current market.
@@ -395,6 +1392,141 @@ public class Market {
         return Collections.unmodifiableList(agents);
     }
 
+    /**
+     * Backs the current market with a given store of agents, which then trade in the market by index alongside its
+     * {@link Agent}s, through {@link #buy(int, int, Item, long, double)}, {@link #receive(int, Item, long)} and
+     * {@link #getRandomStoredAgent()}. Every stored agent brings its inventory with it, as with {@link #addAgent}, so
+     * this reads every agent in the store once.
+     *
+     * From then on the stored agents should only be changed through the current market, which does not see changes made
+     * to the store directly. Stored agents are not journalled, indexed, or published to an event bus.
+     * @param store The store of agents to back the current market with.
+     * @throws IllegalStateException If the current market is already backed by a store.
+     */
+    public void setAgentStore(AgentStore store) throws IllegalStateException {
+        if (agentStore != null) {
+            throw new IllegalStateException("market is already backed by an agent store");
+        }
+        agentStore = store;
+        int size = store.size();
+        for (int index = 0; index < size; index++) {
+            int count = store.getItemCount(index);
+            for (int slot = 0; slot < count; slot++) {
+                Item item = store.getItem(index, slot);
+                long quantity = store.getQuantity(index, item);
+                addItem(item, quantity);
+                changeSupply(item, quantity);
+                changeStoredSupply(item, quantity);
+            }
+        }
+    }
+
+    private void changeStoredSupply(Item item, long delta) {
+        int id = item.getId();
+        if (id >= storedSupply.length) {
+            storedSupply = Arrays.copyOf(storedSupply, Math.max(id + 1, storedSupply.length * 2));
+        }
+        storedSupply[id] += delta;
+    }
+
+    /**
+     * Returns the store of agents backing the current market, or null if there is none (see {@link #setAgentStore}).
+     * @return The store of agents backing the current market, or null.
+     */
+    public AgentStore getAgentStore() {
+        return agentStore;
+    }
+
+    /**
+     * Returns the index of a random agent in the store backing the current market, or -1 if the store is empty or there
+     * is none.
+     * @return The index of a random stored agent, or -1.
+     */
+    public int getRandomStoredAgent() {
+        if (agentStore == null || agentStore.size() == 0) {
+            return -1;
+        }
+        return ThreadLocalRandom.current().nextInt(agentStore.size());
+    }
+
+    /**
+     * Adds quantity to an item in the inventory of the stored agent with a given index, and the current market responds
+     * to the rise in supply as it does when an {@link Agent#receive(Item, long) agent receives items}. Does nothing if
+     * the given quantity is non-positive.
+     * @param agent The index of the stored agent.
+     * @param item The item to add quantity to.
+     * @param quantity The quantity to add.
+     * @throws IllegalStateException If the current market is not backed by a store, or the item is new to the agent and
+     *                               all its slots are in use.
+     * @throws IndexOutOfBoundsException If there is no stored agent with the given index.
+     */
+    public void receive(int agent, Item item, long quantity) throws IllegalStateException, IndexOutOfBoundsException {
+        AgentStore store = requireAgentStore();
+        if (quantity <= 0) {
+            return;
+        }
+        store.setQuantity(agent, item, store.getQuantity(agent, item) + quantity);
+        addItem(item, quantity);
+        changeSupply(item, quantity);
+        changeStoredSupply(item, quantity);
+    }
+
+    /**
+     * Processes a transaction between two stored agents, as {@link #buy(Agent, Agent, Item, long, double)} does between
+     * two {@link Agent}s: the seller loses the given quantity of the given item and the buyer receives it, the buyer pays
+     * the seller the given buying price for each item, and the market price of the item responds to the trade.
+     *
+     * If the given quantity is not positive, nothing happens.
+     * @param buyer The index of the stored buyer.
+     * @param seller The index of the stored seller.
+     * @param item The item to buy.
+     * @param quantity The quantity of the item to buy.
+     * @param buyingPriceEach The price per each item to buy at.
+     * @throws InsufficientAmountException If the buyer does not have enough money to buy the quantity of items at the
+     *                                     buying price or if the seller does not have enough quantity to sell.
+     * @throws IllegalArgumentException If the buyer and the seller are the same agent.
+     * @throws IllegalStateException If the current market is not backed by a store, or the item is new to the buyer and
+     *                               all its slots are in use.
+     * @throws IndexOutOfBoundsException If there is no stored agent with one of the given indices.
+     */
+    public void buy(int buyer, int seller, Item item, long quantity, double buyingPriceEach)
+            throws InsufficientAmountException, IllegalArgumentException, IllegalStateException,
+            IndexOutOfBoundsException {
+        AgentStore store = requireAgentStore();
+        if (quantity <= 0) {
+            return;
+        }
+        if (buyer == seller) {
+            throw new IllegalArgumentException("buyer and seller must be different agents");
+        }
+
+        double finalPrice = buyingPriceEach * quantity;
+        if (store.getMoney(buyer) < finalPrice) {
+            throw new InsufficientAmountException("not enough money to buy");
+        }
+        if (store.getQuantity(seller, item) < quantity) {
+            throw new InsufficientAmountException("not enough stock to sell");
+        }
+
+        double marketPrice = this.getPrice(item);
+
+        // Exchange the item and the money.
+        if (!store.buy(buyer, seller, item, quantity, buyingPriceEach)) {
+            throw new IllegalStateException("every inventory slot of the buyer is in use");
+        }
+        removeItem(item, quantity);
+        addItem(item, quantity);
+        tradeStatistics.record(item, quantity, finalPrice);
+        respondToTrade(item, quantity, buyingPriceEach, marketPrice);
+    }
+
+    private AgentStore requireAgentStore() {
+        if (agentStore == null) {
+            throw new IllegalStateException("market is not backed by an agent store");
+        }
+        return agentStore;
+    }
+
     /**
      * Gets an agent's net wealth in the context of the current market.
      * @param agent The agent to get the net wealth of.
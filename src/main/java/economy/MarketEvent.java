@@ -0,0 +1,137 @@
+package economy;
+
+/**
+ * Something that happened in a market, as delivered by a {@link MarketEventBus}.
+ *
+ * Events are not created for each thing that happens. Instead, the bus has a fixed number of events which it fills in
+ * over and over, so an event must only be read during the {@link MarketEventHandler#onEvent} call it was passed to, and
+ * anything needed later must be copied out.
+ *
+ * @author Tristan Batchler
+ * @see MarketEventBus
+ */
+public final class MarketEvent {
+    /**
+     * The type of event for the market ticking. Only the tick is set, to the tick the market moved on to.
+     */
+    public static final int TICK = 0;
+    /**
+     * The type of event for the price of an item being set. The item and price are set.
+     */
+    public static final int PRICE_CHANGED = 1;
+    /**
+     * The type of event for a trade. The agent is the buyer, the other agent is the seller, and the item, quantity and
+     * price paid per item are set.
+     */
+    public static final int TRADE = 2;
+    /**
+     * The type of event for an agent joining the market. The agent is set.
+     */
+    public static final int AGENT_ADDED = 3;
+    /**
+     * The type of event for an agent leaving the market. The agent is set.
+     */
+    public static final int AGENT_REMOVED = 4;
+
+    int type;
+    long tick;
+    Item item;
+    Agent agent;
+    Agent other;
+    long quantity;
+    double price;
+
+    MarketEvent() {
+    }
+
+    /**
+     * Fills in the current event, clearing whatever it held before.
+     */
+    void set(int type, long tick, Item item, Agent agent, Agent other, long quantity, double price) {
+        this.type = type;
+        this.tick = tick;
+        this.item = item;
+        this.agent = agent;
+        this.other = other;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    /**
+     * Returns the type of the current event: {@link #TICK}, {@link #PRICE_CHANGED}, {@link #TRADE},
+     * {@link #AGENT_ADDED} or {@link #AGENT_REMOVED}.
+     * @return The type of the current event.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the tick the market was at when the current event happened.
+     * @return The tick the market was at when the current event happened.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the item the current event is about, or null if it is not about an item.
+     * @return The item the current event is about, or null.
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * Returns the agent the current event is about (the buyer, for a trade), or null if it is not about an agent.
+     * @return The agent the current event is about, or null.
+     */
+    public Agent getAgent() {
+        return agent;
+    }
+
+    /**
+     * Returns the seller of a trade, or null if the current event is not a trade.
+     * @return The seller of a trade, or null.
+     */
+    public Agent getOtherAgent() {
+        return other;
+    }
+
+    /**
+     * Returns the quantity traded, or 0 if the current event is not a trade.
+     * @return The quantity traded, or 0.
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the new price of the item, or the price paid per item for a trade, or 0 for any other event.
+     * @return The price the current event is about, or 0.
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    /**
+     * Returns a string representation of the current event, for debugging.
+     * @return A string representation of the current event.
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case TICK:
+                return "tick " + tick;
+            case PRICE_CHANGED:
+                return String.format("tick %d: %s priced at $%.2f", tick, item, price);
+            case TRADE:
+                return String.format("tick %d: %s bought %dx%s from %s at $%.2fea", tick, agent.name, quantity, item,
+                        other.name, price);
+            case AGENT_ADDED:
+                return "tick " + tick + ": " + agent.name + " joined";
+            default:
+                return "tick " + tick + ": " + agent.name + " left";
+        }
+    }
+}
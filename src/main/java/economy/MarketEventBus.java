@@ -0,0 +1,252 @@
+package economy;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Publishes everything that happens in a market - ticks, price changes, trades, and agents joining and leaving - to any
+ * number of consumers, each running on its own thread.
+ *
+ * Events are written into a ring of preallocated {@link MarketEvent}s, so publishing an event allocates nothing and
+ * costs the market only a few nanoseconds: the market fills in the next event in the ring and moves a cursor on. Each
+ * consumer follows the cursor around the ring at its own pace, handling every event that has been published since it
+ * last looked as one batch. How consumers wait while there are no new events is up to the bus's {@link WaitStrategy}.
+ *
+ * If the slowest consumer falls a whole ring behind, the market waits for it to catch up rather than overwrite events
+ * it has not handled yet, so no consumer ever misses an event. A consumer whose thread has stopped - because its
+ * handler threw an Error, say - no longer holds the market back.
+ *
+ * A runtime exception thrown by a handler is passed to the bus's {@link #setExceptionHandler exception handler} along
+ * with the event, and the consumer carries on with the next event.
+ *
+ * @author Tristan Batchler
+ * @see MarketEvent
+ * @see MarketEventHandler
+ */
+public class MarketEventBus implements Closeable {
+    private final Market market;
+    private final MarketEvent[] ring;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private volatile Consumer[] consumers = new Consumer[0];
+    private long claimed = -1;
+    private long slowest = -1;
+    private volatile boolean closed;
+    private volatile BiConsumer<MarketEvent, RuntimeException> exceptionHandler = MarketEventBus::reportUncaught;
+
+    /**
+     * Creates a new event bus with a ring of a given size and attaches it to a given market, so that everything which
+     * happens in the market from now on is published to the bus.
+     * @param market The market to publish the events of.
+     * @param size The number of events in the ring. Must be a positive power of two.
+     * @param waitStrategy How consumers wait for new events.
+     * @throws IllegalArgumentException If the given size is not a positive power of two.
+     * @throws IllegalStateException If the given market's events are already being published.
+     */
+    public MarketEventBus(Market market, int size, WaitStrategy waitStrategy)
+            throws IllegalArgumentException, IllegalStateException {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("ring size must be a positive power of two");
+        }
+        if (market.eventBus != null) {
+            throw new IllegalStateException("market events are already being published");
+        }
+
+        this.market = market;
+        this.waitStrategy = waitStrategy;
+        ring = new MarketEvent[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new MarketEvent();
+        }
+        mask = size - 1;
+        market.eventBus = this;
+    }
+
+    /**
+     * Sets the handler which is given any runtime exception a consumer's handler throws, along with the event it was
+     * handling, on the consumer's thread. By default it is passed to the thread's uncaught exception handler.
+     * @param handler The handler to pass exceptions to.
+     * @throws IllegalArgumentException If the given handler is null.
+     */
+    public void setExceptionHandler(BiConsumer<MarketEvent, RuntimeException> handler) throws IllegalArgumentException {
+        if (handler == null) {
+            throw new IllegalArgumentException("exception handler must not be null");
+        }
+        exceptionHandler = handler;
+    }
+
+    /**
+     * Starts a new consumer on a new thread, which handles every event published from now on with a given handler.
+     * Runtime exceptions thrown by the handler are passed to the exception handler and the event skipped.
+     * @param name The name of the consumer's thread.
+     * @param handler The handler to pass the events to.
+     * @throws IllegalStateException If the current bus has been closed.
+     */
+    public synchronized void addConsumer(String name, MarketEventHandler handler) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("event bus has been closed");
+        }
+        Consumer consumer = new Consumer(name, handler, cursor.get());
+        Consumer[] consumers = Arrays.copyOf(this.consumers, this.consumers.length + 1);
+        consumers[consumers.length - 1] = consumer;
+        this.consumers = consumers;
+        consumer.thread.start();
+    }
+
+    /**
+     * Returns the number of the last event published, or -1 if none has been.
+     * @return The number of the last event published, or -1.
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    void publishTick(long tick) {
+        publish(MarketEvent.TICK, tick, null, null, null, 0, 0);
+    }
+
+    void publishPrice(Item item, double price) {
+        publish(MarketEvent.PRICE_CHANGED, market.getTick(), item, null, null, 0, price);
+    }
+
+    void publishTrade(Agent buyer, Agent seller, Item item, long quantity, double priceEach) {
+        publish(MarketEvent.TRADE, market.getTick(), item, buyer, seller, quantity, priceEach);
+    }
+
+    void publishAgentAdded(Agent agent) {
+        publish(MarketEvent.AGENT_ADDED, market.getTick(), null, agent, null, 0, 0);
+    }
+
+    void publishAgentRemoved(Agent agent) {
+        publish(MarketEvent.AGENT_REMOVED, market.getTick(), null, agent, null, 0, 0);
+    }
+
+    /**
+     * Fills in the next event in the ring and publishes it, first waiting for the slowest consumer if the ring is full.
+     * Only ever called from the market's thread.
+     */
+    private void publish(int type, long tick, Item item, Agent agent, Agent other, long quantity, double price) {
+        long next = ++claimed;
+        long wrapPoint = next - ring.length;
+        if (wrapPoint > slowest) {
+            slowest = slowestConsumer(next - 1);
+            while (wrapPoint > slowest) {
+                LockSupport.parkNanos(1);
+                slowest = slowestConsumer(next - 1);
+            }
+        }
+
+        ring[(int) next & mask].set(type, tick, item, agent, other, quantity, price);
+        // A full volatile write, so that the wait strategy's check for blocked consumers cannot be ordered before it.
+        cursor.set(next);
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Returns the number of the last event handled by the slowest consumer, or a given default if there are none.
+     */
+    private long slowestConsumer(long none) {
+        long slowest = none;
+        for (Consumer consumer : consumers) {
+            slowest = Math.min(slowest, consumer.sequence.get());
+        }
+        return slowest;
+    }
+
+    /**
+     * Passes a given exception to the current thread's uncaught exception handler.
+     */
+    private static void reportUncaught(MarketEvent event, RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    /**
+     * Detaches the current bus from its market, waits for every consumer to handle every event already published, then
+     * stops the consumers' threads.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (market.eventBus == this) {
+            market.eventBus = null;
+        }
+
+        long last = cursor.get();
+        boolean interrupted = false;
+        for (Consumer consumer : consumers) {
+            while (consumer.sequence.get() < last && consumer.thread.isAlive()) {
+                Thread.yield();
+            }
+            consumer.thread.interrupt();
+            while (consumer.thread.isAlive()) {
+                try {
+                    consumer.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A consumer of events, along with the thread it runs on and the number of the last event it has handled. Once the
+     * thread stops, for whatever reason, the number is set as high as it goes so that nobody waits on the consumer.
+     */
+    private final class Consumer implements Runnable {
+        final MarketEventHandler handler;
+        final AtomicLong sequence;
+        final Thread thread;
+
+        Consumer(String name, MarketEventHandler handler, long sequence) {
+            this.handler = handler;
+            this.sequence = new AtomicLong(sequence);
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } finally {
+                sequence.set(Long.MAX_VALUE);
+            }
+        }
+
+        private void consume() {
+            long next = sequence.get() + 1;
+            while (true) {
+                long available;
+                try {
+                    available = waitStrategy.waitFor(next, cursor);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (long s = next; s <= available; s++) {
+                    MarketEvent event = ring[(int) s & mask];
+                    try {
+                        handler.onEvent(event, s, s == available);
+                    } catch (RuntimeException e) {
+                        exceptionHandler.accept(event, e);
+                    }
+                }
+                sequence.lazySet(available);
+                next = available + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package economy;
+
+/**
+ * Handles the events read from a {@link MarketEventBus} by one consumer, on that consumer's own thread.
+ *
+ * @author Tristan Batchler
+ * @see MarketEventBus#addConsumer
+ */
+@FunctionalInterface
+public interface MarketEventHandler {
+    /**
+     * Handles an event. The event is reused once this method returns, so anything needed later must be copied out.
+     * @param event The event.
+     * @param sequence The number of the event, counting every event published to the bus from 0.
+     * @param endOfBatch True if this is the last event available for now, which makes it a good time to flush anything
+     *                   buffered; false if more events follow straight away.
+     */
+    void onEvent(MarketEvent event, long sequence, boolean endOfBatch);
+}
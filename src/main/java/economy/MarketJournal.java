@@ -0,0 +1,496 @@
+package economy;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A record of every change made to a market, written to disk as the changes happen so that the market can later be
+ * rebuilt exactly as it was at any tick.
+ *
+ * A journal lives in a directory and is made up of three files:
+ * <ul>
+ *     <li><em>journal</em> - every price, quantity, money and agent change made to the market, and every price change
+ *     deferred by batch pricing, in order, with a marker wherever the market moved on to a new tick.</li>
+ *     <li><em>checkpoints</em> - complete snapshots of the market, including its pricing model and any price changes
+ *     it has deferred, taken when the journal is attached and then every so many ticks.</li>
+ *     <li><em>index</em> - a sparse index with an entry for each checkpoint, mapping the tick it was taken at to its
+ *     offset in the checkpoints and the offset in the journal it was taken at.</li>
+ * </ul>
+ *
+ * To rebuild the market as of some tick (see {@link #reconstruct}), only the index is searched, the nearest checkpoint
+ * is loaded and only the tail of the journal after that checkpoint is replayed.
+ *
+ * @author Tristan Batchler
+ * @see Market
+ */
+public class MarketJournal implements Closeable {
+    static final String JOURNAL_FILE = "journal";
+    static final String CHECKPOINTS_FILE = "checkpoints";
+    static final String INDEX_FILE = "index";
+
+    private static final byte TICK = 0;
+    private static final byte PRICE = 1;
+    private static final byte QUANTITY = 2;
+    private static final byte MONEY = 3;
+    private static final byte AGENT_ADDED = 4;
+    private static final byte AGENT_REMOVED = 5;
+    private static final byte DEFERRED_PRICE = 6;
+    private static final byte BATCH_PRICING = 7;
+
+    private final Market market;
+    private final long checkpointInterval;
+    private final CountingOutputStream journalCount;
+    private final DataOutputStream journal;
+    private final CountingOutputStream checkpointsCount;
+    private final DataOutputStream checkpoints;
+    private final DataOutputStream index;
+
+    /**
+     * Creates a new journal in a given directory and attaches it to a given market. Any journal already in the
+     * directory is overwritten. A checkpoint of the market as it is now is taken straight away.
+     * @param market The market to record.
+     * @param directory The directory to write the journal to. Created if it does not exist.
+     * @param checkpointInterval The positive number of ticks between checkpoints.
+     * @throws IOException If the journal files could not be created.
+     * @throws IllegalArgumentException If the checkpoint interval is not positive.
+     * @throws IllegalStateException If the given market is already being recorded by another journal.
+     */
+    public MarketJournal(Market market, File directory, long checkpointInterval)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("checkpoint interval must be positive");
+        }
+        if (market.journal != null) {
+            throw new IllegalStateException("market is already being recorded by another journal");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create journal directory " + directory);
+        }
+
+        this.market = market;
+        this.checkpointInterval = checkpointInterval;
+
+        journalCount = new CountingOutputStream(new FileOutputStream(new File(directory, JOURNAL_FILE)));
+        journal = new DataOutputStream(journalCount);
+        checkpointsCount = new CountingOutputStream(new FileOutputStream(new File(directory, CHECKPOINTS_FILE)));
+        checkpoints = new DataOutputStream(checkpointsCount);
+        index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, INDEX_FILE))));
+
+        writeCheckpoint();
+        market.journal = this;
+    }
+
+    /**
+     * Records that the market has moved on to a given tick, taking a checkpoint if the tick falls on the checkpoint
+     * interval.
+     * @param tick The tick the market has moved on to.
+     */
+    void recordTick(long tick) {
+        try {
+            journal.writeByte(TICK);
+            journal.writeLong(tick);
+
+            if (tick % checkpointInterval == 0) {
+                writeCheckpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that the price of a given item has been set.
+     * @param item The item whose price was set.
+     * @param price The new price of the item.
+     */
+    void recordPrice(Item item, double price) {
+        try {
+            journal.writeByte(PRICE);
+            journal.writeUTF(item.getName());
+            journal.writeDouble(price);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records a change in supply and demand pressure on a given item deferred until the end of the tick by batch pricing.
+     * @param item The item whose price change was deferred.
+     * @param supplyDelta The change in supply.
+     * @param pressure The demand pressure.
+     */
+    void recordDeferredPrice(Item item, long supplyDelta, double pressure) {
+        try {
+            journal.writeByte(DEFERRED_PRICE);
+            journal.writeUTF(item.getName());
+            journal.writeLong(supplyDelta);
+            journal.writeDouble(pressure);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that the market has started or stopped deferring price changes to the end of each tick.
+     * @param batchPricing True if the market now defers price changes; false otherwise.
+     */
+    void recordBatchPricing(boolean batchPricing) {
+        try {
+            journal.writeByte(BATCH_PRICING);
+            journal.writeBoolean(batchPricing);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the quantity a given agent now holds of a given item.
+     * @param agent The agent whose inventory changed.
+     * @param item The item whose quantity changed.
+     */
+    void recordQuantity(Agent agent, Item item) {
+        try {
+            journal.writeByte(QUANTITY);
+            journal.writeInt(agent.id);
+            journal.writeUTF(item.getName());
+            journal.writeLong(agent.inventory.getQuantity(item));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the amount of money a given agent now has.
+     * @param agent The agent whose money changed.
+     */
+    void recordMoney(Agent agent) {
+        try {
+            journal.writeByte(MONEY);
+            journal.writeInt(agent.id);
+            journal.writeDouble(agent.getMoney());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that a given agent has joined the market, along with the money and items the agent brought.
+     * @param agent The agent which joined the market.
+     */
+    void recordAgentAdded(Agent agent) {
+        try {
+            journal.writeByte(AGENT_ADDED);
+            writeAgent(journal, agent);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that a given agent has left the market.
+     * @param agent The agent which left the market.
+     */
+    void recordAgentRemoved(Agent agent) {
+        try {
+            journal.writeByte(AGENT_REMOVED);
+            journal.writeInt(agent.id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes everything recorded so far to disk.
+     * @throws IOException If the journal files could not be written to.
+     */
+    public void flush() throws IOException {
+        journal.flush();
+        checkpoints.flush();
+        index.flush();
+    }
+
+    /**
+     * Detaches the current journal from its market and closes the journal files. Nothing that happens in the market
+     * afterwards is recorded.
+     * @throws IOException If the journal files could not be written to.
+     */
+    @Override
+    public void close() throws IOException {
+        if (market.journal == this) {
+            market.journal = null;
+        }
+        try {
+            journal.close();
+            checkpoints.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        index.writeLong(market.getTick());
+        index.writeLong(checkpointsCount.count);
+        index.writeLong(journalCount.count);
+
+        checkpoints.writeLong(market.getTick());
+        checkpoints.writeUTF(market.name);
+        checkpoints.writeDouble(market.elasticity);
+        checkpoints.writeUTF(market.getPricingModel().getClass().getName());
+        checkpoints.writeBoolean(market.isBatchPricing());
+
+        Map<Item, Double> prices = market.getPrices();
+        checkpoints.writeInt(prices.size());
+        for (Map.Entry<Item, Double> entry : prices.entrySet()) {
+            checkpoints.writeUTF(entry.getKey().getName());
+            checkpoints.writeDouble(entry.getValue());
+        }
+
+        int pending = market.getPendingCount();
+        checkpoints.writeInt(pending);
+        for (int i = 0; i < pending; i++) {
+            checkpoints.writeUTF(market.getPendingItem(i).getName());
+            checkpoints.writeLong(market.getPendingSupply(i));
+            checkpoints.writeDouble(market.getPendingPressure(i));
+        }
+
+        List<Agent> agents = market.getAgents();
+        checkpoints.writeInt(agents.size());
+        for (Agent agent : agents) {
+            writeAgent(checkpoints, agent);
+        }
+    }
+
+    private static void writeAgent(DataOutputStream out, Agent agent) throws IOException {
+        out.writeInt(agent.id);
+        out.writeUTF(agent.name);
+        out.writeDouble(agent.getMoney());
+        out.writeInt((int) agent.inventory.size());
+        for (Map.Entry<Item, Long> entry : agent.inventory) {
+            out.writeUTF(entry.getKey().getName());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static Agent readAgent(DataInputStream in) throws IOException {
+        Agent agent = new Agent(in.readInt(), in.readUTF());
+        agent.setMoney(in.readDouble());
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            agent.inventory.add(new Item(in.readUTF()), in.readLong());
+        }
+        return agent;
+    }
+
+    /**
+     * Rebuilds a market as it was at the end of a given tick from the journal in a given directory. Only the sparse
+     * index is searched; the nearest checkpoint at or before the given tick is loaded and only the part of the journal
+     * from the offset the index gives for that checkpoint, up to the end of the given tick, is replayed.
+     *
+     * The rebuilt market is not recorded by any journal.
+     * @param directory The directory the journal was written to.
+     * @param tick The tick to rebuild the market as of.
+     * @return A new market equal to the recorded market as it was at the end of the given tick.
+     * @throws IOException If the journal files could not be read.
+     * @throws IllegalArgumentException If the journal does not go back as far as the given tick.
+     */
+    public static Market reconstruct(File directory, long tick) throws IOException, IllegalArgumentException {
+        Index index = Index.read(new File(directory, INDEX_FILE));
+        int entry = index.floor(tick);
+        if (entry < 0) {
+            throw new IllegalArgumentException("journal does not go back as far as tick " + tick);
+        }
+
+        Map<Integer, Agent> agents = new HashMap<>();
+        Market market;
+        try (DataInputStream in = openAt(new File(directory, CHECKPOINTS_FILE), index.checkpointOffsets[entry])) {
+            long checkpointTick = in.readLong();
+            market = new Market(in.readUTF(), in.readDouble(), readPricingModel(in.readUTF()));
+            market.setTick(checkpointTick);
+            market.setBatchPricing(in.readBoolean());
+
+            int prices = in.readInt();
+            for (int i = 0; i < prices; i++) {
+                market.setPrice(new Item(in.readUTF()), in.readDouble());
+            }
+
+            int pending = in.readInt();
+            for (int i = 0; i < pending; i++) {
+                market.deferPriceChange(new Item(in.readUTF()), in.readLong(), in.readDouble());
+            }
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Agent agent = readAgent(in);
+                agents.put(agent.id, agent);
+                market.attachAgent(agent);
+            }
+        }
+
+        try (DataInputStream in = openAt(new File(directory, JOURNAL_FILE), index.journalOffsets[entry])) {
+            replay(in, market, agents, tick);
+        }
+        return market;
+    }
+
+    private static void replay(DataInputStream in, Market market, Map<Integer, Agent> agents, long untilTick)
+            throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+
+            try {
+                switch (type) {
+                    case TICK:
+                        long tick = in.readLong();
+                        if (tick > untilTick) {
+                            return;
+                        }
+                        // The prices the deferred changes led to were recorded before the tick.
+                        market.discardPendingPrices();
+                        market.setTick(tick);
+                        break;
+                    case PRICE:
+                        market.setPrice(new Item(in.readUTF()), in.readDouble());
+                        break;
+                    case QUANTITY: {
+                        Agent agent = agents.get(in.readInt());
+                        Item item = new Item(in.readUTF());
+                        agent.inventory.remove(item, Long.MAX_VALUE);
+                        agent.inventory.add(item, in.readLong());
+                        break;
+                    }
+                    case MONEY:
+                        agents.get(in.readInt()).setMoney(in.readDouble());
+                        break;
+                    case AGENT_ADDED: {
+                        Agent agent = readAgent(in);
+                        agents.put(agent.id, agent);
+                        market.attachAgent(agent);
+                        break;
+                    }
+                    case AGENT_REMOVED:
+                        market.detachAgent(agents.remove(in.readInt()));
+                        break;
+                    case DEFERRED_PRICE:
+                        market.deferPriceChange(new Item(in.readUTF()), in.readLong(), in.readDouble());
+                        break;
+                    case BATCH_PRICING:
+                        // Any deferred changes applied on turning batch pricing off were recorded as prices.
+                        market.discardPendingPrices();
+                        market.setBatchPricing(in.readBoolean());
+                        break;
+                    default:
+                        throw new IOException("corrupt journal: unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                // The last record was only partly written, so the journal ends before it.
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the pricing model of a given class: the instance in its public static INSTANCE field if it has one, or else
+     * a new instance made with its public no-argument constructor.
+     */
+    private static PricingModel readPricingModel(String className) throws IOException {
+        try {
+            Class<?> type = Class.forName(className);
+            try {
+                return (PricingModel) type.getField("INSTANCE").get(null);
+            } catch (NoSuchFieldException e) {
+                return (PricingModel) type.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("cannot restore pricing model " + className, e);
+        }
+    }
+
+    private static DataInputStream openAt(File file, long offset) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * The sparse index of a journal, read entirely into memory.
+     */
+    static final class Index {
+        final long[] ticks;
+        final long[] checkpointOffsets;
+        final long[] journalOffsets;
+
+        private Index(long[] ticks, long[] checkpointOffsets, long[] journalOffsets) {
+            this.ticks = ticks;
+            this.checkpointOffsets = checkpointOffsets;
+            this.journalOffsets = journalOffsets;
+        }
+
+        static Index read(File file) throws IOException {
+            int entries = (int) (file.length() / (3 * Long.BYTES));
+            long[] ticks = new long[entries];
+            long[] checkpointOffsets = new long[entries];
+            long[] journalOffsets = new long[entries];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for (int i = 0; i < entries; i++) {
+                    ticks[i] = in.readLong();
+                    checkpointOffsets[i] = in.readLong();
+                    journalOffsets[i] = in.readLong();
+                }
+            }
+            return new Index(ticks, checkpointOffsets, journalOffsets);
+        }
+
+        /**
+         * Returns the position of the last entry at or before a given tick, or -1 if every entry is after it.
+         */
+        int floor(long tick) {
+            int low = 0;
+            int high = ticks.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (ticks[mid] <= tick) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * A buffered output stream which keeps count of the bytes written through it so that offsets into the file can be
+     * recorded without flushing.
+     */
+    private static final class CountingOutputStream extends BufferedOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out, 1 << 16);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            count++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            count += len;
+        }
+    }
+}
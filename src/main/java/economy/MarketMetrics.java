@@ -0,0 +1,172 @@
+package economy;
+
+import common.LatencyHistogram;
+import common.StripedCounter;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts what a market does - trades made and refused, prices set, and how long each trade takes - so that a running
+ * market can be watched, in particular over JMX (see {@link #register()}).
+ *
+ * Instrumentation is switched on for the whole JVM by setting the {@code economy.instrumentation} system property to
+ * {@code true}. When it is off, markets have no metrics and every check for them is against a constant, so the JIT
+ * compiles them away and instrumentation costs nothing.
+ *
+ * @author Tristan Batchler
+ * @see Market#getMetrics()
+ */
+public class MarketMetrics implements MarketMetricsMBean {
+    /**
+     * True if and only if markets are instrumented, as set by the {@code economy.instrumentation} system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("economy.instrumentation");
+
+    private final Market market;
+    final StripedCounter trades = new StripedCounter();
+    final StripedCounter rejections = new StripedCounter();
+    final StripedCounter priceUpdates = new StripedCounter();
+    final LatencyHistogram buyLatency = new LatencyHistogram();
+    private volatile long since = System.nanoTime();
+    private ObjectName objectName;
+
+    MarketMetrics(Market market) {
+        this.market = market;
+    }
+
+    /**
+     * Returns the name the current metrics are registered under, or would be: {@code economy:type=Market,name=NAME},
+     * where NAME is the market's name.
+     * @return The name the current metrics are registered under.
+     */
+    public ObjectName getObjectName() {
+        try {
+            return new ObjectName("economy:type=Market,name=" + ObjectName.quote(market.name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Registers the current metrics with the platform MBean server under the {@link #getObjectName() market's name}.
+     * @throws IllegalStateException If the metrics of another market with the same name are already registered.
+     */
+    public synchronized void register() throws IllegalStateException {
+        if (objectName != null) {
+            return;
+        }
+        ObjectName name = getObjectName();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("metrics of a market named " + market.name + " are already registered");
+        } catch (MBeanRegistrationException | NotCompliantMBeanException e) {
+            throw new IllegalStateException(e);
+        }
+        objectName = name;
+    }
+
+    /**
+     * Removes the current metrics from the platform MBean server. Does nothing if they are not registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // Already gone.
+        } catch (MBeanRegistrationException e) {
+            throw new IllegalStateException(e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getMarketName() {
+        return market.name;
+    }
+
+    @Override
+    public int getAgentCount() {
+        return market.getAgents().size();
+    }
+
+    @Override
+    public long getTick() {
+        return market.getTick();
+    }
+
+    @Override
+    public long getTradeCount() {
+        return trades.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public double getRejectionRate() {
+        long rejected = rejections.sum();
+        long attempted = rejected + trades.sum();
+        return attempted == 0 ? 0 : (double) rejected / attempted;
+    }
+
+    @Override
+    public long getPriceUpdateCount() {
+        return priceUpdates.sum();
+    }
+
+    @Override
+    public double getTradesPerSecond() {
+        return perSecond(trades.sum());
+    }
+
+    @Override
+    public double getPriceUpdatesPerSecond() {
+        return perSecond(priceUpdates.sum());
+    }
+
+    private double perSecond(long count) {
+        double seconds = (System.nanoTime() - since) / 1e9;
+        return seconds <= 0 ? 0 : count / seconds;
+    }
+
+    @Override
+    public double getBuyLatencyMean() {
+        return buyLatency.getMean();
+    }
+
+    @Override
+    public long getBuyLatency50() {
+        return buyLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getBuyLatency99() {
+        return buyLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getBuyLatency999() {
+        return buyLatency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getBuyLatencyMax() {
+        return buyLatency.getMax();
+    }
+
+    @Override
+    public void reset() {
+        trades.reset();
+        rejections.reset();
+        priceUpdates.reset();
+        buyLatency.reset();
+        since = System.nanoTime();
+    }
+}
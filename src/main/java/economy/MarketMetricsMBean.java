@@ -0,0 +1,98 @@
+package economy;
+
+/**
+ * The management interface through which a market's {@link MarketMetrics} are exposed over JMX.
+ *
+ * @author Tristan Batchler
+ * @see MarketMetrics
+ */
+public interface MarketMetricsMBean {
+    /**
+     * Returns the name of the market.
+     * @return The name of the market.
+     */
+    String getMarketName();
+
+    /**
+     * Returns the number of agents in the market.
+     * @return The number of agents in the market.
+     */
+    int getAgentCount();
+
+    /**
+     * Returns the tick the market is at.
+     * @return The tick the market is at.
+     */
+    long getTick();
+
+    /**
+     * Returns the number of trades made since the metrics were last reset.
+     * @return The number of trades made.
+     */
+    long getTradeCount();
+
+    /**
+     * Returns the number of trades refused since the metrics were last reset.
+     * @return The number of trades refused.
+     */
+    long getRejectedCount();
+
+    /**
+     * Returns the fraction of attempted trades which were refused since the metrics were last reset.
+     * @return The fraction of attempted trades which were refused, or 0 if none were attempted.
+     */
+    double getRejectionRate();
+
+    /**
+     * Returns the number of prices set since the metrics were last reset.
+     * @return The number of prices set.
+     */
+    long getPriceUpdateCount();
+
+    /**
+     * Returns the number of trades made per second since the metrics were last reset.
+     * @return The number of trades made per second.
+     */
+    double getTradesPerSecond();
+
+    /**
+     * Returns the number of prices set per second since the metrics were last reset.
+     * @return The number of prices set per second.
+     */
+    double getPriceUpdatesPerSecond();
+
+    /**
+     * Returns the mean time taken by an attempted trade, in nanoseconds.
+     * @return The mean time taken by an attempted trade.
+     */
+    double getBuyLatencyMean();
+
+    /**
+     * Returns the median time taken by an attempted trade, in nanoseconds.
+     * @return The median time taken by an attempted trade.
+     */
+    long getBuyLatency50();
+
+    /**
+     * Returns the 99th percentile of the time taken by an attempted trade, in nanoseconds.
+     * @return The 99th percentile of the time taken by an attempted trade.
+     */
+    long getBuyLatency99();
+
+    /**
+     * Returns the 99.9th percentile of the time taken by an attempted trade, in nanoseconds.
+     * @return The 99.9th percentile of the time taken by an attempted trade.
+     */
+    long getBuyLatency999();
+
+    /**
+     * Returns the longest time taken by an attempted trade, in nanoseconds.
+     * @return The longest time taken by an attempted trade.
+     */
+    long getBuyLatencyMax();
+
+    /**
+     * Sets every count and the latency histogram back to zero.
+     */
+    void reset();
+}
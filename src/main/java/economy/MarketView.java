@@ -0,0 +1,190 @@
+package economy;
+
+import java.util.*;
+
+/**
+ * An immutable view of a market as it was at the end of a tick: its prices, and the money and items of each of its
+ * agents. Views are published by the market (see {@link Market#enableReadViews()}) so that other threads, such as a
+ * reporting thread, can read a consistent state of the market while the simulation carries on changing it.
+ *
+ * A view never changes once published, so any number of threads may read it without taking a lock, and however long
+ * they read it for, they never see a trade half made or prices from two different ticks. Publishing a new view never
+ * waits for readers of older views either: a reader simply keeps the view it has until it asks the market for the latest
+ * one, and old views are reclaimed once no reader holds them.
+ *
+ * Each view shares everything that has not changed since the view before it: agents whose money and items did not
+ * change are not copied again, and the items of agents who did change share structure with their previous items (see
+ * {@link PersistentInventory}).
+ *
+ * @author Tristan Batchler
+ * @see Market#getView()
+ */
+public final class MarketView {
+    private final long tick;
+    private final double[] prices;
+    private final List<AgentView> agents;
+
+    private MarketView(long tick, double[] prices, List<AgentView> agents) {
+        this.tick = tick;
+        this.prices = prices;
+        this.agents = agents;
+    }
+
+    /**
+     * Returns a view of the current state of given agents and prices. Must only be called by the thread running the
+     * market the agents are in.
+     * @param tick The tick the market is at.
+     * @param agents The agents in the market.
+     * @param prices The prices of the items in the market.
+     * @param previous The view published before, whose agent views are reused where nothing changed, or null.
+     * @return A view of the agents and prices.
+     */
+    static MarketView capture(long tick, List<Agent> agents, PriceTable prices, MarketView previous) {
+        AgentView[] views = new AgentView[agents.size()];
+        for (int i = 0; i < views.length; i++) {
+            Agent agent = agents.get(i);
+            PersistentInventory items = agent.inventory.snapshot();
+            double money = agent.getMoney();
+
+            AgentView old = previous != null && i < previous.agents.size() ? previous.agents.get(i) : null;
+            if (old != null && old.id == agent.id && old.items == items && old.money == money
+                    && Objects.equals(old.name, agent.name)) {
+                views[i] = old;
+            } else {
+                views[i] = new AgentView(agent.id, agent.name, money, items);
+            }
+        }
+        double[] priceArray = new double[Item.getIdCount()];
+        prices.readAll(priceArray);
+        return new MarketView(tick, priceArray, Collections.unmodifiableList(Arrays.asList(views)));
+    }
+
+    /**
+     * Returns the tick at the end of which the current view was taken.
+     * @return The tick of the current view.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the price of a given item when the current view was taken.
+     * @param item The item to get the price of.
+     * @return The price of the given item.
+     * @throws IllegalStateException If the market had no price for the given item.
+     */
+    public double getPrice(Item item) throws IllegalStateException {
+        int id = item.getId();
+        if (id >= prices.length || Double.isNaN(prices[id])) {
+            throw new IllegalStateException("market did not have item " + item + " - cannot get price");
+        }
+        return prices[id];
+    }
+
+    /**
+     * Returns a new unmodifiable map of every item with a price to its price when the current view was taken.
+     * @return The prices of the current view.
+     */
+    public Map<Item, Double> getPrices() {
+        Map<Item, Double> map = new HashMap<>();
+        for (int id = 0; id < prices.length; id++) {
+            if (!Double.isNaN(prices[id])) {
+                map.put(Item.forId(id), prices[id]);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns an unmodifiable list of the agents in the market when the current view was taken, in the order the market
+     * held them.
+     * @return The agents of the current view.
+     */
+    public List<AgentView> getAgents() {
+        return agents;
+    }
+
+    /**
+     * Returns the net wealth of a given agent of the current view at the prices of the current view.
+     * @param agent The agent to get the net wealth of.
+     * @return The net wealth of the given agent.
+     * @throws IllegalStateException If the market had no price for one of the agent's items.
+     */
+    public double getAgentWealth(AgentView agent) throws IllegalStateException {
+        double wealth = agent.getMoney();
+        for (Map.Entry<Item, Long> entry : agent.getItems()) {
+            wealth += getPrice(entry.getKey()) * entry.getValue();
+        }
+        return wealth;
+    }
+
+    /**
+     * Returns the total quantity of a given item held by the agents of the current view.
+     * @param item The item to get the quantity of.
+     * @return The total quantity of the given item.
+     */
+    public long getSupply(Item item) {
+        long supply = 0;
+        for (AgentView agent : agents) {
+            supply += agent.getItems().getQuantity(item);
+        }
+        return supply;
+    }
+
+    /**
+     * An immutable view of an agent as it was when a {@link MarketView} was taken.
+     */
+    public static final class AgentView {
+        private final int id;
+        private final String name;
+        private final double money;
+        private final PersistentInventory items;
+
+        AgentView(int id, String name, double money, PersistentInventory items) {
+            this.id = id;
+            this.name = name;
+            this.money = money;
+            this.items = items;
+        }
+
+        /**
+         * Returns the identifier of the agent.
+         * @return The identifier of the agent.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the name of the agent.
+         * @return The name of the agent.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the amount of money the agent had.
+         * @return The amount of money the agent had.
+         */
+        public double getMoney() {
+            return money;
+        }
+
+        /**
+         * Returns the items the agent had.
+         * @return The items the agent had.
+         */
+        public PersistentInventory getItems() {
+            return items;
+        }
+
+        /**
+         * Returns a string representation of the agent of the same form as {@link Agent#toString()}.
+         */
+        @Override
+        public String toString() {
+            return String.format("\"%s\" with $%.2f and " + items, name, money);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package economy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Exports metrics of a market at the end of every tick to a columnar file which can be read back one column at a time
+ * with a {@link MetricsReader}.
+ *
+ * The following columns are exported, one value per tick:
+ * <ul>
+ *     <li><em>tick</em>, <em>agents</em> and <em>trades</em> - the tick which ended, the number of agents in the market
+ *     and the number of trades made during the tick.</li>
+ *     <li><em>money.total</em>, <em>money.min</em>, <em>money.max</em> and <em>money.mean</em> - how money was
+ *     distributed among the agents.</li>
+ *     <li><em>price.NAME</em>, <em>supply.NAME</em>, <em>trades.NAME</em> and <em>volume.NAME</em> for every item NAME
+ *     with a price in the market - the item's price, supply, number of trades and quantity traded. These columns start
+ *     at the first tick the item has a price.</li>
+ * </ul>
+ *
+ * Prices are read from the market's {@link PriceTable} into an array kept between ticks, so capturing a tick allocates
+ * nothing once every item has its columns. The money columns are read from the market's index of agents by money if it
+ * keeps {@link Market#enableRangeIndexes() range indexes}, and otherwise by looking at every agent.
+ *
+ * Each column buffers its values in memory until it has a chunk's worth of ticks. The chunk is then delta-encoded,
+ * compressed and appended to the file through a {@link FileChannel}. When the exporter is closed, a footer listing
+ * where every column's chunks are is appended, so a reader only ever has to read the chunks of the columns it wants.
+ *
+ * File layout, with all numbers big-endian:
+ * <pre>
+ *     chunk*  := column:int firstTick:long count:int length:int deflated-values:byte[length]
+ *     footer  := columns:int (name:UTF type:byte chunks:int (offset:long firstTick:long count:int)*)*
+ *     trailer := footerOffset:long MAGIC:int
+ * </pre>
+ *
+ * @author Tristan Batchler
+ * @see MetricsReader
+ */
+public class MetricsExporter implements Closeable {
+    static final int MAGIC = 0x45434f4c;
+    static final byte LONG = 0;
+    static final byte DOUBLE = 1;
+    static final int CHUNK_HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Market market;
+    private final FileChannel channel;
+    private final int chunkTicks;
+    private final List<Column> columns = new ArrayList<>();
+    private final Column tick;
+    private final Column agents;
+    private final Column trades;
+    private final Column moneyTotal;
+    private final Column moneyMin;
+    private final Column moneyMax;
+    private final Column moneyMean;
+    private Column[] itemColumns = new Column[0];
+    private Item[] items = new Item[0];
+    private double[] prices = new double[0];
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteBuffer raw;
+    private final byte[] compressed;
+    private final ByteBuffer compressedBuffer;
+    private final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_BYTES);
+    private final ByteBuffer[] chunk;
+    private final TradeStatistics.Window window = new TradeStatistics.Window();
+
+    /**
+     * Creates a new exporter writing to a given file and attaches it to a given market, so that the market's metrics are
+     * exported whenever it {@link Market#tick() ticks}. Any existing file is overwritten.
+     * @param market The market to export the metrics of.
+     * @param file The file to export to.
+     * @param chunkTicks The positive number of ticks of each column to compress and write together.
+     * @throws IOException If the file could not be created.
+     * @throws IllegalArgumentException If the number of ticks per chunk is not positive.
+     * @throws IllegalStateException If the given market's metrics are already being exported.
+     */
+    public MetricsExporter(Market market, File file, int chunkTicks)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        if (chunkTicks <= 0 || chunkTicks > Integer.MAX_VALUE / (2 * Long.BYTES)) {
+            throw new IllegalArgumentException("ticks per chunk must be positive");
+        }
+        if (market.metricsExporter != null) {
+            throw new IllegalStateException("market metrics are already being exported");
+        }
+
+        this.market = market;
+        this.chunkTicks = chunkTicks;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        raw = ByteBuffer.allocate(chunkTicks * Long.BYTES);
+        compressed = new byte[2 * chunkTicks * Long.BYTES + 64];
+        compressedBuffer = ByteBuffer.wrap(compressed);
+        chunk = new ByteBuffer[] {header, compressedBuffer};
+
+        tick = addColumn("tick", LONG);
+        agents = addColumn("agents", LONG);
+        trades = addColumn("trades", LONG);
+        moneyTotal = addColumn("money.total", DOUBLE);
+        moneyMin = addColumn("money.min", DOUBLE);
+        moneyMax = addColumn("money.max", DOUBLE);
+        moneyMean = addColumn("money.mean", DOUBLE);
+
+        market.metricsExporter = this;
+    }
+
+    private Column addColumn(String name, byte type) {
+        Column column = new Column(columns.size(), name, type, chunkTicks);
+        columns.add(column);
+        return column;
+    }
+
+    /**
+     * Buffers the value of every column for the tick which is ending, writing out the chunks which become full.
+     */
+    void capture() {
+        long now = market.getTick();
+        TradeStatistics statistics = market.getTradeStatistics();
+
+        PriceTable table = market.getPriceTable();
+        if (prices.length < Item.getIdCount()) {
+            prices = new double[Math.max(Item.getIdCount(), prices.length * 2)];
+        }
+        table.readAll(prices);
+
+        long tradesThisTick = 0;
+        for (int id = 0; id < prices.length; id++) {
+            Item item = id < items.length ? items[id] : null;
+            if (item == null) {
+                // NaN marks an item without a price, unless the price itself is NaN.
+                if (Double.isNaN(prices[id]) && !table.contains(id)) {
+                    continue;
+                }
+                item = addItemColumns(id);
+            }
+
+            statistics.readCurrentTick(item, window);
+            tradesThisTick += window.trades;
+            append(itemColumns[4 * id], now, Double.doubleToRawLongBits(prices[id]));
+            append(itemColumns[4 * id + 1], now, market.getSupply(item));
+            append(itemColumns[4 * id + 2], now, window.trades);
+            append(itemColumns[4 * id + 3], now, window.quantity);
+        }
+
+        int n = market.getAgentCount();
+        double total = 0;
+        double min = 0;
+        double max = 0;
+        RangeIndex<Agent> moneyIndex = market.getMoneyIndex();
+        if (moneyIndex != null) {
+            total = moneyIndex.getSum();
+            if (n > 0) {
+                min = moneyIndex.getMin();
+                max = moneyIndex.getMax();
+            }
+        } else if (n > 0) {
+            List<Agent> agentList = market.getAgents();
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double money = agentList.get(i).getMoney();
+                total += money;
+                min = Math.min(min, money);
+                max = Math.max(max, money);
+            }
+        }
+
+        append(tick, now, now);
+        append(agents, now, n);
+        append(trades, now, tradesThisTick);
+        append(moneyTotal, now, Double.doubleToRawLongBits(total));
+        append(moneyMin, now, Double.doubleToRawLongBits(min));
+        append(moneyMax, now, Double.doubleToRawLongBits(max));
+        append(moneyMean, now, Double.doubleToRawLongBits(n == 0 ? 0 : total / n));
+    }
+
+    private Item addItemColumns(int id) {
+        Item item = Item.forId(id);
+        if (id >= items.length) {
+            items = Arrays.copyOf(items, Math.max(id + 1, items.length * 2));
+            itemColumns = Arrays.copyOf(itemColumns, 4 * items.length);
+        }
+        items[id] = item;
+        itemColumns[4 * id] = addColumn("price." + item.getName(), DOUBLE);
+        itemColumns[4 * id + 1] = addColumn("supply." + item.getName(), LONG);
+        itemColumns[4 * id + 2] = addColumn("trades." + item.getName(), LONG);
+        itemColumns[4 * id + 3] = addColumn("volume." + item.getName(), LONG);
+        return item;
+    }
+
+    private void append(Column column, long now, long value) {
+        if (column.size == 0) {
+            column.firstTick = now;
+        }
+        column.values[column.size++] = value;
+        if (column.size == chunkTicks) {
+            writeChunk(column);
+        }
+    }
+
+    private void writeChunk(Column column) {
+        raw.clear();
+        long previous = 0;
+        for (int i = 0; i < column.size; i++) {
+            long value = column.values[i];
+            raw.putLong(column.type == LONG ? value - previous : value ^ previous);
+            previous = value;
+        }
+
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        try {
+            long offset = channel.position();
+            header.clear();
+            header.putInt(column.index).putLong(column.firstTick).putInt(column.size).putInt(length);
+            header.flip();
+            compressedBuffer.clear().limit(length);
+            while (header.hasRemaining() || compressedBuffer.hasRemaining()) {
+                channel.write(chunk);
+            }
+            column.addChunk(offset, column.firstTick, column.size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        column.size = 0;
+    }
+
+    /**
+     * Detaches the current exporter from its market, writes out every column's remaining values and the footer, and
+     * closes the file.
+     * @throws IOException If the file could not be written to.
+     */
+    @Override
+    public void close() throws IOException {
+        if (market.metricsExporter != this) {
+            return;
+        }
+        market.metricsExporter = null;
+
+        try {
+            for (Column column : columns) {
+                if (column.size > 0) {
+                    writeChunk(column);
+                }
+            }
+
+            long footerOffset = channel.position();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(bytes);
+            footer.writeInt(columns.size());
+            for (Column column : columns) {
+                footer.writeUTF(column.name);
+                footer.writeByte(column.type);
+                footer.writeInt(column.chunks);
+                for (int i = 0; i < column.chunks; i++) {
+                    footer.writeLong(column.chunkOffsets[i]);
+                    footer.writeLong(column.chunkFirstTicks[i]);
+                    footer.writeInt(column.chunkCounts[i]);
+                }
+            }
+            footer.writeLong(footerOffset);
+            footer.writeInt(MAGIC);
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    /**
+     * One column being exported: the values of the chunk being filled and where earlier chunks were written.
+     */
+    private static final class Column {
+        final int index;
+        final String name;
+        final byte type;
+        final long[] values;
+        int size;
+        long firstTick;
+
+        long[] chunkOffsets = new long[4];
+        long[] chunkFirstTicks = new long[4];
+        int[] chunkCounts = new int[4];
+        int chunks;
+
+        Column(int index, String name, byte type, int chunkTicks) {
+            this.index = index;
+            this.name = name;
+            this.type = type;
+            this.values = new long[chunkTicks];
+        }
+
+        void addChunk(long offset, long firstTick, int count) {
+            if (chunks == chunkOffsets.length) {
+                chunkOffsets = Arrays.copyOf(chunkOffsets, chunks * 2);
+                chunkFirstTicks = Arrays.copyOf(chunkFirstTicks, chunks * 2);
+                chunkCounts = Arrays.copyOf(chunkCounts, chunks * 2);
+            }
+            chunkOffsets[chunks] = offset;
+            chunkFirstTicks[chunks] = firstTick;
+            chunkCounts[chunks] = count;
+            chunks++;
+        }
+    }
+}
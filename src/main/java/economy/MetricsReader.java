@@ -0,0 +1,200 @@
+package economy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the columns of a file written by a {@link MetricsExporter}. Only the footer is read when the file is opened, and
+ * reading a column only reads that column's chunks.
+ *
+ * @author Tristan Batchler
+ * @see MetricsExporter
+ */
+public class MetricsReader implements Closeable {
+    private final FileChannel channel;
+    private final Map<String, ColumnInfo> columns = new LinkedHashMap<>();
+
+    /**
+     * Opens a given file written by a {@link MetricsExporter} and reads its footer.
+     * @param file The file to read.
+     * @throws IOException If the file could not be read or was not written by a closed {@link MetricsExporter}.
+     */
+    public MetricsReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = read(size - Long.BYTES - Integer.BYTES, Long.BYTES + Integer.BYTES);
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() != MetricsExporter.MAGIC || footerOffset < 0 || footerOffset > size) {
+                throw new IOException("not a complete metrics file: " + file);
+            }
+
+            ByteBuffer footerBytes = read(footerOffset, (int) (size - footerOffset - Long.BYTES - Integer.BYTES));
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes.array()));
+            int count = footer.readInt();
+            for (int i = 0; i < count; i++) {
+                ColumnInfo column = new ColumnInfo(footer.readUTF(), footer.readByte(), footer.readInt());
+                for (int c = 0; c < column.chunkOffsets.length; c++) {
+                    column.chunkOffsets[c] = footer.readLong();
+                    column.chunkFirstTicks[c] = footer.readLong();
+                    column.chunkCounts[c] = footer.readInt();
+                }
+                columns.put(column.name, column);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of every column in the file, in the order they were first exported.
+     * @return An unmodifiable list of the names of every column in the file.
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(new ArrayList<>(columns.keySet()));
+    }
+
+    /**
+     * Returns the tick of the first value in a given column, or -1 if the column has no values.
+     * @param name The name of the column.
+     * @return The tick of the first value in the given column, or -1 if the column has no values.
+     * @throws IllegalArgumentException If the file has no column with the given name.
+     */
+    public long getFirstTick(String name) throws IllegalArgumentException {
+        ColumnInfo column = getColumn(name);
+        return column.chunkFirstTicks.length == 0 ? -1 : column.chunkFirstTicks[0];
+    }
+
+    /**
+     * Reads every value of a given column of whole numbers, such as a supply or a count. The value at position
+     * <em>i</em> is the value at the tick {@link #getFirstTick} + <em>i</em>.
+     * @param name The name of the column.
+     * @return Every value of the given column in tick order.
+     * @throws IOException If the file could not be read.
+     * @throws IllegalArgumentException If the file has no column of whole numbers with the given name.
+     */
+    public long[] readLongs(String name) throws IOException, IllegalArgumentException {
+        ColumnInfo column = getColumn(name);
+        if (column.type != MetricsExporter.LONG) {
+            throw new IllegalArgumentException("column " + name + " does not hold whole numbers");
+        }
+        return readValues(column);
+    }
+
+    /**
+     * Reads every value of a given column of real numbers, such as a price or an amount of money. The value at position
+     * <em>i</em> is the value at the tick {@link #getFirstTick} + <em>i</em>.
+     * @param name The name of the column.
+     * @return Every value of the given column in tick order.
+     * @throws IOException If the file could not be read.
+     * @throws IllegalArgumentException If the file has no column of real numbers with the given name.
+     */
+    public double[] readDoubles(String name) throws IOException, IllegalArgumentException {
+        ColumnInfo column = getColumn(name);
+        if (column.type != MetricsExporter.DOUBLE) {
+            throw new IllegalArgumentException("column " + name + " does not hold real numbers");
+        }
+        long[] bits = readValues(column);
+        double[] values = new double[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            values[i] = Double.longBitsToDouble(bits[i]);
+        }
+        return values;
+    }
+
+    private ColumnInfo getColumn(String name) throws IllegalArgumentException {
+        ColumnInfo column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("metrics file has no column " + name);
+        }
+        return column;
+    }
+
+    private long[] readValues(ColumnInfo column) throws IOException {
+        int total = 0;
+        for (int count : column.chunkCounts) {
+            total += count;
+        }
+
+        long[] values = new long[total];
+        int position = 0;
+        Inflater inflater = new Inflater();
+        try {
+            for (int c = 0; c < column.chunkOffsets.length; c++) {
+                ByteBuffer header = read(column.chunkOffsets[c], MetricsExporter.CHUNK_HEADER_BYTES);
+                header.getInt();
+                header.getLong();
+                int count = header.getInt();
+                int length = header.getInt();
+
+                byte[] raw = new byte[count * Long.BYTES];
+                inflater.reset();
+                inflater.setInput(read(column.chunkOffsets[c] + MetricsExporter.CHUNK_HEADER_BYTES, length).array());
+                if (inflater.inflate(raw) != raw.length) {
+                    throw new IOException("corrupt chunk in column " + column.name);
+                }
+
+                ByteBuffer decoded = ByteBuffer.wrap(raw);
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    long encoded = decoded.getLong();
+                    previous = column.type == MetricsExporter.LONG ? previous + encoded : previous ^ encoded;
+                    values[position++] = previous;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt chunk in column " + column.name, e);
+        } finally {
+            inflater.end();
+        }
+        return values;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IOException("not a complete metrics file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException If the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Where the chunks of one column are in the file.
+     */
+    private static final class ColumnInfo {
+        final String name;
+        final byte type;
+        final long[] chunkOffsets;
+        final long[] chunkFirstTicks;
+        final int[] chunkCounts;
+
+        ColumnInfo(String name, byte type, int chunks) {
+            this.name = name;
+            this.type = type;
+            chunkOffsets = new long[chunks];
+            chunkFirstTicks = new long[chunks];
+            chunkCounts = new int[chunks];
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package economy;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Exact balances of money, kept as whole numbers of cents and indexed by agent identifier.
+ *
+ * A market using a ledger (see {@link Market#enableMoneyLedger()}) keeps the money of its agents here instead of in
+ * each agent, so money is never lost or created by rounding however many trades are made. Every balance is updated
+ * atomically, so transfers may be made from any thread, and the ledger keeps count of how much money has been put in and
+ * taken out so that {@link #isBalanced()} can check that no money has appeared or vanished.
+ *
+ * Balances are stored in pages of consecutive identifiers, so agents with neighbouring identifiers share cache lines.
+ * Because every balance may be changed from any thread, even passes over many agents (such as {@link #splitEqually})
+ * make one atomic update per agent rather than working on a page as a plain array, so they cannot be vectorized; they
+ * only touch memory in order when the identifiers they are given are in order.
+ *
+ * @author Tristan Batchler
+ * @see Market
+ */
+public final class MoneyLedger {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+    private final AtomicLong issued = new AtomicLong();
+
+    /**
+     * Returns a given amount of money as a whole number of cents, rounded to the nearest cent.
+     * @param amount The amount of money.
+     * @return The given amount of money in cents.
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Returns a given whole number of cents as an amount of money.
+     * @param cents The number of cents.
+     * @return The given number of cents as an amount of money.
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Returns the balance, in cents, of the agent with a given identifier. Agents the ledger has never seen have a
+     * balance of zero.
+     * @param id The identifier of the agent.
+     * @return The balance of the agent in cents.
+     */
+    public long getCents(int id) {
+        AtomicLongArray[] pages = this.pages;
+        int page = id >>> PAGE_BITS;
+        return page < pages.length && pages[page] != null ? pages[page].get(id & PAGE_MASK) : 0;
+    }
+
+    /**
+     * Sets the balance, in cents, of the agent with a given identifier. The difference counts as money put in or taken
+     * out of the ledger.
+     * @param id The identifier of the agent.
+     * @param cents The new balance of the agent in cents.
+     * @return The previous balance of the agent in cents.
+     */
+    public long setCents(int id, long cents) {
+        long previous = page(id).getAndSet(id & PAGE_MASK, cents);
+        issued.addAndGet(cents - previous);
+        return previous;
+    }
+
+    /**
+     * Puts a given number of cents into the balance of the agent with a given identifier.
+     * @param id The identifier of the agent.
+     * @param cents The number of cents to put in.
+     */
+    public void deposit(int id, long cents) {
+        page(id).addAndGet(id & PAGE_MASK, cents);
+        issued.addAndGet(cents);
+    }
+
+    /**
+     * Takes a given number of cents out of the balance of the agent with a given identifier. As with
+     * {@link Agent#lose(double)}, the balance may become negative.
+     * @param id The identifier of the agent.
+     * @param cents The number of cents to take out.
+     */
+    public void withdraw(int id, long cents) {
+        deposit(id, -cents);
+    }
+
+    /**
+     * Moves a given number of cents from the balance of one agent to the balance of another. The payer's balance is
+     * checked and taken from in one atomic step, so concurrent transfers can never overdraw it.
+     * @param from The identifier of the agent paying.
+     * @param to The identifier of the agent being paid.
+     * @param cents The non-negative number of cents to move.
+     * @throws InsufficientAmountException If the payer's balance is less than the given number of cents.
+     * @throws IllegalArgumentException If the given number of cents is negative.
+     */
+    public void transfer(int from, int to, long cents) throws InsufficientAmountException, IllegalArgumentException {
+        if (cents < 0) {
+            throw new IllegalArgumentException("cannot transfer a negative amount");
+        }
+
+        AtomicLongArray payer = page(from);
+        int index = from & PAGE_MASK;
+        long balance;
+        do {
+            balance = payer.get(index);
+            if (balance < cents) {
+                throw new InsufficientAmountException("not enough money to transfer");
+            }
+        } while (!payer.compareAndSet(index, balance, balance - cents));
+        page(to).addAndGet(to & PAGE_MASK, cents);
+    }
+
+    /**
+     * Puts a given number of cents into the ledger, split as equally as possible between the agents with the given
+     * identifiers. Every agent gets the same whole number of cents, and the cents left over are given one each to the
+     * first agents, so exactly the given number of cents is put in. Each agent's balance is updated atomically on its
+     * own, one after another.
+     * @param ids The identifiers of the agents to split the cents between.
+     * @param cents The non-negative number of cents to split.
+     * @throws IllegalArgumentException If the given number of cents is negative.
+     */
+    public void splitEqually(int[] ids, long cents) throws IllegalArgumentException {
+        if (cents < 0) {
+            throw new IllegalArgumentException("cannot split a negative amount");
+        }
+        if (ids.length == 0) {
+            return;
+        }
+
+        long share = cents / ids.length;
+        long remainder = cents % ids.length;
+        for (int i = 0; i < ids.length; i++) {
+            int id = ids[i];
+            page(id).addAndGet(id & PAGE_MASK, i < remainder ? share + 1 : share);
+        }
+        issued.addAndGet(cents);
+    }
+
+    /**
+     * Returns the sum, in cents, of every balance in the ledger. The sum is only exact while no transfer is being made.
+     * @return The sum of every balance in cents.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (AtomicLongArray page : pages) {
+            if (page != null) {
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    total += page.get(i);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of cents put into the ledger minus the number of cents taken out of it.
+     * @return The number of cents put into the ledger minus the number of cents taken out of it.
+     */
+    public long getIssued() {
+        return issued.get();
+    }
+
+    /**
+     * Returns true if and only if the balances in the ledger add up to exactly the money put in minus the money taken
+     * out, which holds unless some money has been lost or created. Only meaningful while no transfer is being made.
+     * @return True if the ledger balances; false otherwise.
+     */
+    public boolean isBalanced() {
+        return getTotal() == getIssued();
+    }
+
+    /**
+     * Returns the page holding the balance of the agent with a given identifier, creating it if needed.
+     */
+    private AtomicLongArray page(int id) {
+        int page = id >>> PAGE_BITS;
+        AtomicLongArray[] pages = this.pages;
+        if (page < pages.length && pages[page] != null) {
+            return pages[page];
+        }
+        synchronized (this) {
+            pages = this.pages;
+            if (page >= pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            }
+            if (pages[page] == null) {
+                pages[page] = new AtomicLongArray(PAGE_SIZE);
+            }
+            this.pages = pages;
+            return pages[page];
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package economy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A strategy in which every agent, with a given probability each tick, tries to buy a given quantity of one of a given
+ * set of items from a random agent, offering the market price give or take a random spread.
+ *
+ * Noise traders make no attempt to trade well, and many of their orders are refused because the seller does not have
+ * the item, but between them they keep goods and money moving around a market. If the market keeps an index of holders
+ * (see {@link Market#enableHolderIndex()}), sellers are instead picked at random from the agents holding the item, so
+ * orders are only refused for want of enough stock or money.
+ *
+ * Each strategy reads the items' prices into the same buffer every tick, so one strategy must not be shared by markets
+ * which tick on different threads.
+ *
+ * @author Tristan Batchler
+ */
+public final class NoiseTraderStrategy implements AgentStrategy {
+    private final Item[] items;
+    private final double probability;
+    private final long quantity;
+    private final double spread;
+    private final double[] prices;
+
+    /**
+     * Creates a new noise trader strategy.
+     * @param items The items the agents trade in.
+     * @param probability The probability, in the range [0, 1], that an agent tries to buy something in any tick.
+     * @param quantity The positive quantity each order is for.
+     * @param spread The largest fraction, in the range [0, 1], by which an offer may be above or below the market price.
+     * @throws IllegalArgumentException If no items are given or any argument is out of range.
+     */
+    public NoiseTraderStrategy(Item[] items, double probability, long quantity, double spread)
+            throws IllegalArgumentException {
+        if (items.length == 0) {
+            throw new IllegalArgumentException("must trade in at least one item");
+        }
+        if (probability < 0 || probability > 1 || spread < 0 || spread > 1) {
+            throw new IllegalArgumentException("probability and spread must be in the range [0, 1]");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        this.items = items.clone();
+        this.probability = probability;
+        this.quantity = quantity;
+        this.spread = spread;
+        this.prices = new double[items.length];
+    }
+
+    @Override
+    public void evaluate(StrategyGroup group, OrderBatch orders) {
+        Market market = group.getMarket();
+        HolderIndex holders = market.getHolderIndex();
+        for (int k = 0; k < items.length; k++) {
+            try {
+                prices[k] = market.getPrice(items[k]);
+            } catch (IllegalStateException e) {
+                prices[k] = Double.NaN;
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = group.size();
+        for (int i = 0; i < size; i++) {
+            if (random.nextDouble() >= probability) {
+                continue;
+            }
+            int k = random.nextInt(items.length);
+            double offer = prices[k] * (1 + spread * (random.nextDouble() * 2 - 1));
+            // Unpriced items give a NaN offer, which fails this check too.
+            if (offer * quantity <= group.getMoney(i)) {
+                Agent seller = holders != null ? holders.getRandom(items[k]) : market.getRandomAgent();
+                if (seller != null) {
+                    orders.add(group.getAgent(i), seller, items[k], quantity, offer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package economy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AgentStore} which keeps agents outside the Java heap, in direct byte buffers, so that the garbage collector
+ * never has to look at them however many there are. A market of a hundred million agents costs the heap only a few
+ * kilobytes of buffer objects, and collections stay as short as they would be without the agents.
+ *
+ * Agents are kept as fixed-size records in slabs of 65,536 records each, which are allocated as the store grows. Each
+ * record holds the agent's money, the index of its name in a table of distinct names (which stays on the heap, as agents
+ * share a small number of names), its item count and its inventory slots. Looking an item up in an inventory scans the
+ * agent's slots, so inventories should be kept to a handful of slots.
+ *
+ * The memory is released as soon as the store is {@link #close() closed} rather than whenever the buffers happen to be
+ * collected. Direct buffers count against the JVM's {@code -XX:MaxDirectMemorySize}, which must be raised for very large
+ * stores.
+ *
+ * @author Tristan Batchler
+ */
+public class OffHeapAgentStore implements AgentStore {
+    /**
+     * The number of inventory slots of each agent, by default.
+     */
+    public static final int DEFAULT_SLOTS = 8;
+
+    private static final int SLAB_BITS = 16;
+    private static final int SLAB_RECORDS = 1 << SLAB_BITS;
+    private static final int SLAB_MASK = SLAB_RECORDS - 1;
+
+    private static final int MONEY = 0;
+    private static final int NAME = 8;
+    private static final int COUNT = 12;
+    private static final int QUANTITIES = 16;
+
+    private final int slots;
+    private final int items;
+    private final int recordSize;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndices = new HashMap<>();
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+    private int size;
+    private boolean closed;
+
+    /**
+     * Creates a new empty store giving each agent {@link #DEFAULT_SLOTS} inventory slots.
+     */
+    public OffHeapAgentStore() {
+        this(DEFAULT_SLOTS);
+    }
+
+    /**
+     * Creates a new empty store giving each agent a given number of inventory slots.
+     * @param slots The number of different items each agent can hold at once.
+     * @throws IllegalArgumentException If the given number of slots is negative or too large.
+     */
+    public OffHeapAgentStore(int slots) throws IllegalArgumentException {
+        if (slots < 0 || slots > 1024) {
+            throw new IllegalArgumentException("number of slots must be between 0 and 1024");
+        }
+        this.slots = slots;
+        items = QUANTITIES + 8 * slots;
+        recordSize = (items + 4 * slots + 7) & ~7;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getSlotsPerAgent() {
+        return slots;
+    }
+
+    /**
+     * Returns the number of bytes of memory outside the heap held by the current store.
+     * @return The number of bytes of memory outside the heap held by the current store.
+     */
+    public long getMemoryUsed() {
+        long used = 0;
+        for (ByteBuffer slab : slabs) {
+            used += slab.capacity();
+        }
+        return used;
+    }
+
+    @Override
+    public int add(String name) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("store has been closed");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("store is full");
+        }
+
+        int index = size;
+        int slab = index >>> SLAB_BITS;
+        if (slab == slabs.length) {
+            slabs = Arrays.copyOf(slabs, slab + 1);
+            slabs[slab] = ByteBuffer.allocateDirect(SLAB_RECORDS * recordSize).order(ByteOrder.nativeOrder());
+        }
+        size++;
+
+        ByteBuffer buffer = slabs[slab];
+        int record = record(index);
+        buffer.putDouble(record + MONEY, 0);
+        buffer.putInt(record + NAME, nameIndex(name));
+        buffer.putInt(record + COUNT, 0);
+        return index;
+    }
+
+    @Override
+    public String getName(int index) throws IndexOutOfBoundsException {
+        int name = slab(index).getInt(record(index) + NAME);
+        return name < 0 ? null : names.get(name);
+    }
+
+    @Override
+    public double getMoney(int index) throws IndexOutOfBoundsException {
+        return slab(index).getDouble(record(index) + MONEY);
+    }
+
+    @Override
+    public void setMoney(int index, double money) throws IndexOutOfBoundsException {
+        slab(index).putDouble(record(index) + MONEY, money);
+    }
+
+    @Override
+    public int getItemCount(int index) throws IndexOutOfBoundsException {
+        return slab(index).getInt(record(index) + COUNT);
+    }
+
+    @Override
+    public Item getItem(int index, int slot) throws IndexOutOfBoundsException {
+        ByteBuffer buffer = slab(index);
+        int record = record(index);
+        if (slot < 0 || slot >= buffer.getInt(record + COUNT)) {
+            throw new IndexOutOfBoundsException("slot " + slot + " is not in use");
+        }
+        return Item.forId(buffer.getInt(record + items + 4 * slot));
+    }
+
+    @Override
+    public long getQuantity(int index, Item item) throws IndexOutOfBoundsException {
+        ByteBuffer buffer = slab(index);
+        int record = record(index);
+        int slot = find(buffer, record, item.getId());
+        return slot < 0 ? 0 : buffer.getLong(record + QUANTITIES + 8 * slot);
+    }
+
+    @Override
+    public void setQuantity(int index, Item item, long quantity)
+            throws IndexOutOfBoundsException, IllegalStateException {
+        ByteBuffer buffer = slab(index);
+        int record = record(index);
+        int slot = find(buffer, record, item.getId());
+
+        if (quantity <= 0) {
+            if (slot >= 0) {
+                // Fill the hole with the last slot in use.
+                int last = buffer.getInt(record + COUNT) - 1;
+                buffer.putLong(record + QUANTITIES + 8 * slot, buffer.getLong(record + QUANTITIES + 8 * last));
+                buffer.putInt(record + items + 4 * slot, buffer.getInt(record + items + 4 * last));
+                buffer.putInt(record + COUNT, last);
+            }
+            return;
+        }
+
+        if (slot < 0) {
+            slot = buffer.getInt(record + COUNT);
+            if (slot == slots) {
+                throw new IllegalStateException("every inventory slot of the agent is in use");
+            }
+            buffer.putInt(record + items + 4 * slot, item.getId());
+            buffer.putInt(record + COUNT, slot + 1);
+        }
+        buffer.putLong(record + QUANTITIES + 8 * slot, quantity);
+    }
+
+    /**
+     * Frees every slab of the current store straight away.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ByteBuffer[] slabs = this.slabs;
+        this.slabs = new ByteBuffer[0];
+        size = 0;
+        for (ByteBuffer slab : slabs) {
+            free(slab);
+        }
+    }
+
+    /**
+     * Returns the slot holding the item with a given identifier in the record at a given offset, or -1 if there is none.
+     */
+    private int find(ByteBuffer buffer, int record, int itemId) {
+        int count = buffer.getInt(record + COUNT);
+        for (int slot = 0; slot < count; slot++) {
+            if (buffer.getInt(record + items + 4 * slot) == itemId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slab holding the record of the agent with a given index.
+     */
+    private ByteBuffer slab(int index) {
+        if (index < 0 || index >= size) {
+            if (closed) {
+                throw new IllegalStateException("store has been closed");
+            }
+            throw new IndexOutOfBoundsException("no agent at index " + index);
+        }
+        return slabs[index >>> SLAB_BITS];
+    }
+
+    /**
+     * Returns the offset of the record of the agent with a given index within its slab.
+     */
+    private int record(int index) {
+        return (index & SLAB_MASK) * recordSize;
+    }
+
+    private int nameIndex(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer index = nameIndices.get(name);
+        if (index == null) {
+            index = names.size();
+            nameIndices.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+
+    /**
+     * Releases the memory of a given direct or mapped buffer straight away, rather than once the buffer is collected.
+     * The buffer must never be used again. If the Java runtime does not allow it, the memory is left to be released
+     * whenever the buffer is collected.
+     * @param buffer The buffer to release.
+     */
+    static void free(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall through to the Java 8 way.
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package economy;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of buy orders, each naming a buyer, a seller, an item, a quantity and a price per item, for a market
+ * to carry out in one go (see {@link Market#execute}).
+ *
+ * The orders are kept in parallel arrays which grow as needed and are kept between uses, so adding an order allocates
+ * nothing once the batch has grown to its working size.
+ *
+ * @author Tristan Batchler
+ * @see AgentStrategy
+ */
+public final class OrderBatch {
+    private Agent[] buyers;
+    private Agent[] sellers;
+    private Item[] items;
+    private long[] quantities;
+    private double[] prices;
+    private int size;
+
+    /**
+     * Creates a new empty batch with room for 1024 orders before it needs to grow.
+     */
+    public OrderBatch() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new empty batch with room for a given number of orders before it needs to grow.
+     * @param capacity The positive number of orders to make room for.
+     * @throws IllegalArgumentException If the given capacity is not positive.
+     */
+    public OrderBatch(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        buyers = new Agent[capacity];
+        sellers = new Agent[capacity];
+        items = new Item[capacity];
+        quantities = new long[capacity];
+        prices = new double[capacity];
+    }
+
+    /**
+     * Adds an order to the end of the current batch in which a given buyer buys a given quantity of a given item from a
+     * given seller at a given price each.
+     * @param buyer The buyer agent.
+     * @param seller The seller agent.
+     * @param item The item to buy.
+     * @param quantity The quantity of the item to buy.
+     * @param buyingPriceEach The price per each item to buy at.
+     */
+    public void add(Agent buyer, Agent seller, Item item, long quantity, double buyingPriceEach) {
+        if (size == buyers.length) {
+            int capacity = size * 2;
+            buyers = Arrays.copyOf(buyers, capacity);
+            sellers = Arrays.copyOf(sellers, capacity);
+            items = Arrays.copyOf(items, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+        }
+        buyers[size] = buyer;
+        sellers[size] = seller;
+        items[size] = item;
+        quantities[size] = quantity;
+        prices[size] = buyingPriceEach;
+        size++;
+    }
+
+    /**
+     * Returns the number of orders in the current batch.
+     * @return The number of orders in the current batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the buyer of the order at a given position in the current batch.
+     * @param index The position of the order.
+     * @return The buyer of the order.
+     */
+    public Agent getBuyer(int index) {
+        return buyers[index];
+    }
+
+    /**
+     * Returns the seller of the order at a given position in the current batch.
+     * @param index The position of the order.
+     * @return The seller of the order.
+     */
+    public Agent getSeller(int index) {
+        return sellers[index];
+    }
+
+    /**
+     * Returns the item of the order at a given position in the current batch.
+     * @param index The position of the order.
+     * @return The item of the order.
+     */
+    public Item getItem(int index) {
+        return items[index];
+    }
+
+    /**
+     * Returns the quantity of the order at a given position in the current batch.
+     * @param index The position of the order.
+     * @return The quantity of the order.
+     */
+    public long getQuantity(int index) {
+        return quantities[index];
+    }
+
+    /**
+     * Returns the price per item of the order at a given position in the current batch.
+     * @param index The position of the order.
+     * @return The price per item of the order.
+     */
+    public double getPrice(int index) {
+        return prices[index];
+    }
+
+    /**
+     * Removes every order from the current batch, keeping its room for reuse.
+     */
+    public void clear() {
+        Arrays.fill(buyers, 0, size, null);
+        Arrays.fill(sellers, 0, size, null);
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+    }
+}
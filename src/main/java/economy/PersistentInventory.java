@@ -0,0 +1,449 @@
+package economy;
+
+import java.util.*;
+
+/**
+ * An immutable collection of items with varying quantities. Changing a persistent inventory gives a new inventory and
+ * leaves the old one as it was, but the two share everything the change did not touch, so keeping many versions of an
+ * inventory costs memory only in proportion to the changes between them.
+ *
+ * Persistent inventories are usually taken as snapshots of an {@link Inventory} (see {@link Inventory#snapshot()}),
+ * which takes constant time however large the inventory is, and turned back into inventories with
+ * {@link Inventory#Inventory(PersistentInventory)}, which also takes constant time.
+ *
+ * The items are kept in a hash array mapped trie keyed by item identifier: each node of the trie has up to 32 slots,
+ * picked by five bits of the identifier, holding either an item and its quantity or another node. A change copies only
+ * the nodes on the path from the root to the item changed, at most seven of them and usually one or two.
+ *
+ * @author Tristan Batchler
+ * @see Inventory
+ */
+public final class PersistentInventory implements Iterable<Map.Entry<Item, Long>> {
+    private static final PersistentInventory EMPTY = new PersistentInventory(Node.EMPTY, 0);
+
+    final Node root;
+    private final int size;
+
+    PersistentInventory(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the persistent inventory with no items.
+     * @return The persistent inventory with no items.
+     */
+    public static PersistentInventory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the quantity of a given item in the current inventory, or 0 if it has none.
+     * @param item The item to get the quantity of.
+     * @return The quantity of the given item in the current inventory.
+     */
+    public long getQuantity(Item item) {
+        return root.get(item.getId(), 0);
+    }
+
+    /**
+     * Returns true if and only if the current inventory has a positive quantity of a given item.
+     * @param item The item to check.
+     * @return True if the current inventory has the given item; false otherwise.
+     */
+    public boolean contains(Item item) {
+        return getQuantity(item) > 0;
+    }
+
+    /**
+     * Returns the number of different items in the current inventory.
+     * @return The number of different items in the current inventory.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if and only if there are no items in the current inventory.
+     * @return True if there are no items in the current inventory; false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an inventory like the current one, but with a given quantity of a given item. A quantity which is not
+     * positive leaves the item out.
+     * @param item The item to set the quantity of.
+     * @param quantity The new quantity of the item.
+     * @return The new inventory, or the current one if nothing changed.
+     */
+    public PersistentInventory with(Item item, long quantity) {
+        int id = item.getId();
+        long current = root.get(id, 0);
+        if (current == Math.max(quantity, 0)) {
+            return this;
+        }
+        if (quantity <= 0) {
+            return size == 1 ? EMPTY : new PersistentInventory(root.remove(null, id, 0), size - 1);
+        }
+        return new PersistentInventory(root.put(null, item, quantity, 0), current == 0 ? size + 1 : size);
+    }
+
+    /**
+     * Returns an inventory like the current one, but with a given quantity more of a given item. See
+     * {@link Inventory#add(Item, long)}.
+     * @param item The item to add.
+     * @param quantity The quantity to add. Nothing changes if it is not positive.
+     * @return The new inventory, or the current one if nothing changed.
+     */
+    public PersistentInventory add(Item item, long quantity) {
+        return quantity > 0 ? with(item, getQuantity(item) + quantity) : this;
+    }
+
+    /**
+     * Returns an inventory like the current one, but with a given quantity less of a given item, leaving the item out if
+     * none is left. See {@link Inventory#remove(Item, long)}.
+     * @param item The item to remove.
+     * @param quantity The quantity to remove. Nothing changes if it is not positive.
+     * @return The new inventory, or the current one if nothing changed.
+     */
+    public PersistentInventory remove(Item item, long quantity) {
+        return quantity > 0 ? with(item, getQuantity(item) - quantity) : this;
+    }
+
+    /**
+     * Returns an unmodifiable list of the items in the current inventory.
+     * @return An unmodifiable list of the items in the current inventory.
+     */
+    public List<Item> getItems() {
+        List<Item> items = new ArrayList<>(size);
+        for (Map.Entry<Item, Long> entry : this) {
+            items.add(entry.getKey());
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Returns an iterator over the items in the current inventory and their quantities.
+     * @return An iterator over the items in the current inventory and their quantities.
+     */
+    @Override
+    public Iterator<Map.Entry<Item, Long>> iterator() {
+        return new EntryIterator(root);
+    }
+
+    /**
+     * Returns a string representation of the current inventory, of the same form as {@link Inventory#toString()}.
+     * @return A string representation of the current inventory.
+     */
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "no items";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Item, Long> entry : this) {
+            sb.append(String.format("%dx%s, ", entry.getValue(), entry.getKey()));
+        }
+        sb.setLength(sb.length() - 2);
+        return sb.toString();
+    }
+
+    /**
+     * Returns true if and only if the given object is a persistent inventory with the same items and quantities as the
+     * current one.
+     * @param o The other object to test equality against this inventory.
+     * @return True if this inventory is equal to the other object; false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PersistentInventory)) return false;
+
+        PersistentInventory other = (PersistentInventory) o;
+        if (size != other.size) {
+            return false;
+        }
+        if (root == other.root) {
+            return true;
+        }
+        for (Map.Entry<Item, Long> entry : this) {
+            if (other.getQuantity(entry.getKey()) != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hashcode for the current inventory, equal to that of an {@link Inventory} with the same items.
+     * @return A hashcode for the current inventory.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Map.Entry<Item, Long> entry : this) {
+            hash += entry.getKey().hashCode() ^ Long.hashCode(entry.getValue());
+        }
+        return hash;
+    }
+
+    /**
+     * A node of the trie. Entries and child nodes have separate bitmaps saying which of the node's 32 slots they are in,
+     * and are packed in slot order into their arrays.
+     *
+     * A node may be changed in place by whoever created it, as long as they still hold the same edit token, which lets a
+     * mutable {@link Inventory} update its own nodes without copying them until a snapshot shares them. Nodes with no
+     * edit token are never changed.
+     */
+    static final class Node {
+        static final Node EMPTY = new Node(null, 0, 0, new Item[0], new long[0], new Node[0]);
+
+        final Object edit;
+        int dataMap;
+        int nodeMap;
+        Item[] items;
+        long[] quantities;
+        Node[] children;
+
+        Node(Object edit, int dataMap, int nodeMap, Item[] items, long[] quantities, Node[] children) {
+            this.edit = edit;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.items = items;
+            this.quantities = quantities;
+            this.children = children;
+        }
+
+        private static int bit(int id, int shift) {
+            return 1 << ((id >>> shift) & 31);
+        }
+
+        private static int index(int map, int bit) {
+            return Integer.bitCount(map & (bit - 1));
+        }
+
+        /**
+         * Returns the quantity of the item with a given identifier under the current node, or 0 if there is none.
+         */
+        long get(int id, int shift) {
+            Node node = this;
+            while (true) {
+                int bit = bit(id, shift);
+                if ((node.dataMap & bit) != 0) {
+                    int index = index(node.dataMap, bit);
+                    return node.items[index].getId() == id ? node.quantities[index] : 0;
+                }
+                if ((node.nodeMap & bit) == 0) {
+                    return 0;
+                }
+                node = node.children[index(node.nodeMap, bit)];
+                shift += 5;
+            }
+        }
+
+        /**
+         * Returns the current node with a given positive quantity of a given item, changed in place if the node belongs to
+         * a given edit token or copied otherwise.
+         */
+        Node put(Object edit, Item item, long quantity, int shift) {
+            int id = item.getId();
+            int bit = bit(id, shift);
+
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                Item existing = items[index];
+                if (existing.getId() == id) {
+                    Node node = editable(edit);
+                    if (node == this) {
+                        quantities[index] = quantity;
+                    } else {
+                        node.quantities = quantities.clone();
+                        node.quantities[index] = quantity;
+                    }
+                    return node;
+                }
+
+                // Two items share this slot, so push them both down into a new node.
+                Node child = pair(edit, existing, quantities[index], item, quantity, shift + 5);
+                Node node = editable(edit);
+                node.items = removeAt(items, index);
+                node.quantities = removeAt(quantities, index);
+                node.dataMap = dataMap ^ bit;
+                node.children = insertAt(children, index(nodeMap, bit), child);
+                node.nodeMap = nodeMap | bit;
+                return node;
+            }
+
+            if ((nodeMap & bit) != 0) {
+                int index = index(nodeMap, bit);
+                Node child = children[index];
+                Node changed = child.put(edit, item, quantity, shift + 5);
+                if (changed == child) {
+                    return this;
+                }
+                Node node = editable(edit);
+                if (node != this) {
+                    node.children = children.clone();
+                }
+                node.children[index] = changed;
+                return node;
+            }
+
+            int index = index(dataMap, bit);
+            Node node = editable(edit);
+            node.items = insertAt(items, index, item);
+            node.quantities = insertAt(quantities, index, quantity);
+            node.dataMap = dataMap | bit;
+            return node;
+        }
+
+        /**
+         * Returns the current node without the item with a given identifier, which must be under it, changed in place if
+         * the node belongs to a given edit token or copied otherwise. A child left with a single item and no children of
+         * its own is folded back into its parent, so every version of a set of items has the same shape.
+         */
+        Node remove(Object edit, int id, int shift) {
+            int bit = bit(id, shift);
+
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                Node node = editable(edit);
+                node.items = removeAt(items, index);
+                node.quantities = removeAt(quantities, index);
+                node.dataMap = dataMap ^ bit;
+                return node;
+            }
+
+            int index = index(nodeMap, bit);
+            Node child = children[index];
+            Node changed = child.remove(edit, id, shift + 5);
+            Node node = editable(edit);
+            if (changed.nodeMap == 0 && Integer.bitCount(changed.dataMap) == 1) {
+                node.children = removeAt(children, index);
+                node.nodeMap = nodeMap ^ bit;
+                int dataIndex = index(dataMap, bit);
+                node.items = insertAt(items, dataIndex, changed.items[0]);
+                node.quantities = insertAt(quantities, dataIndex, changed.quantities[0]);
+                node.dataMap = dataMap | bit;
+            } else if (changed != child) {
+                if (node != this) {
+                    node.children = children.clone();
+                }
+                node.children[index] = changed;
+            }
+            return node;
+        }
+
+        /**
+         * Returns the current node if it belongs to a given edit token, or a copy belonging to the token otherwise.
+         */
+        private Node editable(Object edit) {
+            if (edit != null && this.edit == edit) {
+                return this;
+            }
+            return new Node(edit, dataMap, nodeMap, items, quantities, children);
+        }
+
+        private static Node pair(Object edit, Item a, long quantityA, Item b, long quantityB, int shift) {
+            int bitA = bit(a.getId(), shift);
+            int bitB = bit(b.getId(), shift);
+            if (bitA == bitB) {
+                Node child = pair(edit, a, quantityA, b, quantityB, shift + 5);
+                return new Node(edit, 0, bitA, Node.EMPTY.items, Node.EMPTY.quantities, new Node[] {child});
+            }
+            if (Integer.compareUnsigned(bitA, bitB) < 0) {
+                return new Node(edit, bitA | bitB, 0, new Item[] {a, b}, new long[] {quantityA, quantityB},
+                        Node.EMPTY.children);
+            }
+            return new Node(edit, bitA | bitB, 0, new Item[] {b, a}, new long[] {quantityB, quantityA},
+                    Node.EMPTY.children);
+        }
+
+        private static <T> T[] insertAt(T[] array, int index, T value) {
+            T[] copy = Arrays.copyOf(array, array.length + 1);
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            copy[index] = value;
+            return copy;
+        }
+
+        private static long[] insertAt(long[] array, int index, long value) {
+            long[] copy = new long[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            copy[index] = value;
+            return copy;
+        }
+
+        private static <T> T[] removeAt(T[] array, int index) {
+            T[] copy = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+            return copy;
+        }
+
+        private static long[] removeAt(long[] array, int index) {
+            long[] copy = new long[array.length - 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+            return copy;
+        }
+    }
+
+    /**
+     * Iterates over the entries of a trie, each node's own entries before those of its children.
+     */
+    static final class EntryIterator implements Iterator<Map.Entry<Item, Long>> {
+        private final Node[] nodes = new Node[8];
+        private final int[] positions = new int[8];
+        private int depth;
+
+        EntryIterator(Node root) {
+            nodes[0] = root;
+            advance();
+        }
+
+        /**
+         * Moves to the next node with an entry not yet visited, or past the end.
+         */
+        private void advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                int position = positions[depth];
+                if (position < node.items.length) {
+                    return;
+                }
+                int child = position - node.items.length;
+                if (child < node.children.length) {
+                    positions[depth]++;
+                    depth++;
+                    nodes[depth] = node.children[child];
+                    positions[depth] = 0;
+                } else {
+                    depth--;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @Override
+        public Map.Entry<Item, Long> next() {
+            if (depth < 0) {
+                throw new NoSuchElementException();
+            }
+            Node node = nodes[depth];
+            int position = positions[depth]++;
+            Map.Entry<Item, Long> entry =
+                    new AbstractMap.SimpleImmutableEntry<>(node.items[position], node.quantities[position]);
+            if (positions[depth] >= node.items.length) {
+                advance();
+            }
+            return entry;
+        }
+    }
+}
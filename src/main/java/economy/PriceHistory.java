@@ -0,0 +1,287 @@
+package economy;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A record of every price an item has had in a market, along with open-high-low-close (OHLC) bars of those prices at
+ * several resolutions.
+ *
+ * Each item's history is kept outside of the Java heap in a direct buffer made up of ring buffers: one holding the most
+ * recent price updates and one per resolution holding the most recent bars. Once an item's buffer has been allocated,
+ * recording a price update writes only to that buffer and to a few primitive arrays, so millions of updates add nothing
+ * for the garbage collector to do. When a ring buffer is full, the oldest entry is overwritten.
+ *
+ * A bar of resolution <em>r</em> covers the ticks [<em>k</em>r, (<em>k</em>+1)r) and only exists if the price changed
+ * at least once during those ticks; the price is unchanged in between.
+ *
+ * The history should be read from the same thread that changes the market's prices, or while the market is not
+ * changing.
+ *
+ * @author Tristan Batchler
+ * @see Market
+ */
+public class PriceHistory implements Closeable {
+    /**
+     * The resolutions, in ticks, of the bars kept when no resolutions are given: per tick, per 100 ticks and per 10,000
+     * ticks.
+     */
+    public static final long[] DEFAULT_RESOLUTIONS = {1, 100, 10000};
+
+    private static final int UPDATE_BYTES = 2 * Long.BYTES;
+    private static final int BAR_BYTES = 5 * Long.BYTES;
+    private static final int PRICE = Long.BYTES;
+    private static final int OPEN = Long.BYTES;
+    private static final int HIGH = 2 * Long.BYTES;
+    private static final int LOW = 3 * Long.BYTES;
+    private static final int CLOSE = 4 * Long.BYTES;
+
+    private final Market market;
+    private final int capacity;
+    private final long[] resolutions;
+    private ByteBuffer[] buffers = new ByteBuffer[0];
+    private long[] updateCounts = new long[0];
+    private long[] barCounts = new long[0];
+    private long[] barStarts = new long[0];
+
+    /**
+     * Creates a new price history for a given market keeping bars at the default resolutions, and starts recording
+     * every change to the market's prices.
+     * @param market The market to record the prices of.
+     * @param capacity The positive number of price updates, and of bars at each resolution, to keep for each item.
+     * @throws IllegalArgumentException If the given capacity is not positive.
+     * @throws IllegalStateException If the given market's prices are already being recorded.
+     */
+    public PriceHistory(Market market, int capacity) throws IllegalArgumentException, IllegalStateException {
+        this(market, capacity, DEFAULT_RESOLUTIONS);
+    }
+
+    /**
+     * Creates a new price history for a given market keeping bars at given resolutions, and starts recording every
+     * change to the market's prices.
+     * @param market The market to record the prices of.
+     * @param capacity The positive number of price updates, and of bars at each resolution, to keep for each item.
+     * @param resolutions The positive resolutions, in ticks, of the bars to keep.
+     * @throws IllegalArgumentException If the given capacity or any of the given resolutions is not positive.
+     * @throws IllegalStateException If the given market's prices are already being recorded.
+     */
+    public PriceHistory(Market market, int capacity, long... resolutions)
+            throws IllegalArgumentException, IllegalStateException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        for (long resolution : resolutions) {
+            if (resolution <= 0) {
+                throw new IllegalArgumentException("resolutions must be positive");
+            }
+        }
+        if ((long) capacity * (UPDATE_BYTES + resolutions.length * BAR_BYTES) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is too large to keep in a single buffer");
+        }
+        if (market.priceHistory != null) {
+            throw new IllegalStateException("market prices are already being recorded");
+        }
+
+        this.market = market;
+        this.capacity = capacity;
+        this.resolutions = resolutions.clone();
+        market.priceHistory = this;
+    }
+
+    /**
+     * Records that a given item has a given price as of a given tick.
+     * @param item The item whose price changed.
+     * @param tick The tick at which the price changed.
+     * @param price The new price of the item.
+     */
+    void record(Item item, long tick, double price) {
+        int id = item.getId();
+        if (id >= buffers.length || buffers[id] == null) {
+            allocate(id);
+        }
+        ByteBuffer buffer = buffers[id];
+
+        long update = updateCounts[id]++;
+        int position = (int) (update % capacity) * UPDATE_BYTES;
+        buffer.putLong(position, tick);
+        buffer.putDouble(position + PRICE, price);
+
+        int base = capacity * UPDATE_BYTES;
+        for (int r = 0; r < resolutions.length; r++, base += capacity * BAR_BYTES) {
+            int slot = id * resolutions.length + r;
+            long start = tick - Math.floorMod(tick, resolutions[r]);
+
+            if (barCounts[slot] == 0 || barStarts[slot] != start) {
+                position = base + (int) (barCounts[slot]++ % capacity) * BAR_BYTES;
+                barStarts[slot] = start;
+                buffer.putLong(position, start);
+                buffer.putDouble(position + OPEN, price);
+                buffer.putDouble(position + HIGH, price);
+                buffer.putDouble(position + LOW, price);
+            } else {
+                position = base + (int) ((barCounts[slot] - 1) % capacity) * BAR_BYTES;
+                if (price > buffer.getDouble(position + HIGH)) {
+                    buffer.putDouble(position + HIGH, price);
+                }
+                if (price < buffer.getDouble(position + LOW)) {
+                    buffer.putDouble(position + LOW, price);
+                }
+            }
+            buffer.putDouble(position + CLOSE, price);
+        }
+    }
+
+    private void allocate(int id) {
+        if (id >= buffers.length) {
+            int length = Math.max(id + 1, buffers.length * 2);
+            buffers = Arrays.copyOf(buffers, length);
+            updateCounts = Arrays.copyOf(updateCounts, length);
+            barCounts = Arrays.copyOf(barCounts, length * resolutions.length);
+            barStarts = Arrays.copyOf(barStarts, length * resolutions.length);
+        }
+        buffers[id] = ByteBuffer.allocateDirect(capacity * (UPDATE_BYTES + resolutions.length * BAR_BYTES))
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the resolutions, in ticks, of the bars kept by the current price history.
+     * @return A copy of the resolutions of the bars kept by the current price history.
+     */
+    public long[] getResolutions() {
+        return resolutions.clone();
+    }
+
+    /**
+     * Returns the number of times the price of a given item has been recorded, including updates which have since been
+     * overwritten.
+     * @param item The item to get the number of price updates of.
+     * @return The number of times the price of the given item has been recorded.
+     */
+    public long getUpdateCount(Item item) {
+        int id = item.getId();
+        return id < updateCounts.length ? updateCounts[id] : 0;
+    }
+
+    /**
+     * Copies the most recent price updates of a given item, oldest first, into given arrays. As many updates are copied
+     * as are kept and fit into the shorter of the two arrays.
+     * @param item The item to get the price updates of.
+     * @param ticks The array to copy the tick of each price update into.
+     * @param prices The array to copy the price of each price update into.
+     * @return The number of price updates copied.
+     */
+    public int getPrices(Item item, long[] ticks, double[] prices) {
+        int id = item.getId();
+        if (id >= buffers.length || buffers[id] == null) {
+            return 0;
+        }
+        ByteBuffer buffer = buffers[id];
+
+        long count = updateCounts[id];
+        int n = (int) Math.min(Math.min(count, capacity), Math.min(ticks.length, prices.length));
+        for (int i = 0; i < n; i++) {
+            int position = (int) ((count - n + i) % capacity) * UPDATE_BYTES;
+            ticks[i] = buffer.getLong(position);
+            prices[i] = buffer.getDouble(position + PRICE);
+        }
+        return n;
+    }
+
+    /**
+     * Copies the most recent bars of a given item at a given resolution, oldest first, into given bars. As many bars are
+     * copied as are kept and fit into the given bars; the last one copied may still be changing.
+     * @param item The item to get the bars of.
+     * @param resolution The resolution of the bars to get. Must be one of the current price history's resolutions.
+     * @param bars The bars to copy into.
+     * @return The number of bars copied, which is also stored in the given bars' size.
+     * @throws IllegalArgumentException If the current price history does not keep bars of the given resolution.
+     */
+    public int getBars(Item item, long resolution, Bars bars) throws IllegalArgumentException {
+        int r = 0;
+        while (r < resolutions.length && resolutions[r] != resolution) {
+            r++;
+        }
+        if (r == resolutions.length) {
+            throw new IllegalArgumentException("price history does not keep bars of resolution " + resolution);
+        }
+
+        int id = item.getId();
+        bars.size = 0;
+        if (id >= buffers.length || buffers[id] == null) {
+            return 0;
+        }
+        ByteBuffer buffer = buffers[id];
+
+        int base = capacity * (UPDATE_BYTES + r * BAR_BYTES);
+        long count = barCounts[id * resolutions.length + r];
+        int n = (int) Math.min(Math.min(count, capacity), bars.starts.length);
+        for (int i = 0; i < n; i++) {
+            int position = base + (int) ((count - n + i) % capacity) * BAR_BYTES;
+            bars.starts[i] = buffer.getLong(position);
+            bars.open[i] = buffer.getDouble(position + OPEN);
+            bars.high[i] = buffer.getDouble(position + HIGH);
+            bars.low[i] = buffer.getDouble(position + LOW);
+            bars.close[i] = buffer.getDouble(position + CLOSE);
+        }
+        bars.size = n;
+        return n;
+    }
+
+    /**
+     * Stops recording the market's prices and lets go of every item's buffer.
+     */
+    @Override
+    public void close() {
+        if (market.priceHistory == this) {
+            market.priceHistory = null;
+        }
+        buffers = new ByteBuffer[0];
+        updateCounts = new long[0];
+        barCounts = new long[0];
+        barStarts = new long[0];
+    }
+
+    /**
+     * A reusable set of open-high-low-close bars of one item's price, stored as parallel arrays.
+     */
+    public static final class Bars {
+        /**
+         * The first tick covered by each bar.
+         */
+        public final long[] starts;
+        /**
+         * The first price of the item during each bar.
+         */
+        public final double[] open;
+        /**
+         * The highest price of the item during each bar.
+         */
+        public final double[] high;
+        /**
+         * The lowest price of the item during each bar.
+         */
+        public final double[] low;
+        /**
+         * The last price of the item during each bar.
+         */
+        public final double[] close;
+        /**
+         * The number of bars currently stored.
+         */
+        public int size;
+
+        /**
+         * Creates new empty bars able to hold up to a given number of bars.
+         * @param capacity The number of bars able to be held.
+         */
+        public Bars(int capacity) {
+            starts = new long[capacity];
+            open = new double[capacity];
+            high = new double[capacity];
+            low = new double[capacity];
+            close = new double[capacity];
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package economy;
+
+import common.SequenceLock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The prices of the items in a market, kept in an array indexed by item identifier (see {@link Item#getId()}) so that
+ * reading and setting a price never allocates.
+ *
+ * Only the thread running the market changes the prices, but any number of other threads may read them at the same
+ * time without taking a lock. Each price is published as it is set, except that the price changes a market makes at the
+ * end of a tick are published together. A reader wanting several prices which are consistent with each other - all from
+ * between the same two publications - reads them all at once with {@link #readAll(double[])} or
+ * {@link #read(Item[], double[])}, which retry under a {@link SequenceLock} rather than ever blocking the market.
+ *
+ * @author Tristan Batchler
+ * @see Market#getPriceTable()
+ */
+public final class PriceTable {
+    /**
+     * The bits stored for an item without a price: a NaN which is never stored for a price, since prices are stored with
+     * {@link Double#doubleToLongBits}, which turns every NaN into the same canonical NaN.
+     */
+    private static final long ABSENT = 0xfff0_0000_0000_0001L;
+
+    private final SequenceLock lock = new SequenceLock();
+    private volatile AtomicLongArray bits = new AtomicLongArray(0);
+    private Item[] items = new Item[0];
+    private int batchDepth;
+
+    /**
+     * Creates a new table with no prices.
+     */
+    PriceTable() {
+    }
+
+    /**
+     * Returns the price of a given item, or NaN if it has no price. May be called from any thread.
+     * @param item The item to get the price of.
+     * @return The price of the given item, or NaN if it has no price.
+     */
+    public double get(Item item) {
+        int id = item.getId();
+        AtomicLongArray bits = this.bits;
+        if (id >= bits.length()) {
+            return Double.NaN;
+        }
+        long price = bits.get(id);
+        return price == ABSENT ? Double.NaN : Double.longBitsToDouble(price);
+    }
+
+    /**
+     * Returns true if and only if a given item has a price. May be called from any thread.
+     * @param item The item to check.
+     * @return True if the given item has a price; false otherwise.
+     */
+    public boolean contains(Item item) {
+        return contains(item.getId());
+    }
+
+    /**
+     * Returns true if and only if the item with a given identifier has a price. May be called from any thread.
+     * @param id The identifier of the item to check.
+     * @return True if the item with the given identifier has a price; false otherwise.
+     */
+    boolean contains(int id) {
+        AtomicLongArray bits = this.bits;
+        return id < bits.length() && bits.get(id) != ABSENT;
+    }
+
+    /**
+     * Reads the price of every item into a given array, indexed by item identifier, all as they were at the same moment.
+     * Items without a price, and identifiers beyond the last item with a price, are given NaN. May be called from any
+     * thread, and never allocates.
+     * @param prices The array to read the prices into.
+     */
+    public void readAll(double[] prices) {
+        long stamp;
+        do {
+            stamp = lock.beginRead();
+            AtomicLongArray bits = this.bits;
+            int n = Math.min(prices.length, bits.length());
+            for (int id = 0; id < n; id++) {
+                long price = bits.get(id);
+                prices[id] = price == ABSENT ? Double.NaN : Double.longBitsToDouble(price);
+            }
+            Arrays.fill(prices, n, prices.length, Double.NaN);
+        } while (!lock.validate(stamp));
+    }
+
+    /**
+     * Reads the prices of given items into a given array, all as they were at the same moment. Items without a price are
+     * given NaN. May be called from any thread, and never allocates.
+     * @param items The items to read the prices of.
+     * @param prices The array to read the price of each item into, at the same index as the item.
+     * @throws IllegalArgumentException If the array of prices is shorter than the array of items.
+     */
+    public void read(Item[] items, double[] prices) throws IllegalArgumentException {
+        if (prices.length < items.length) {
+            throw new IllegalArgumentException("array of prices is shorter than array of items");
+        }
+        long stamp;
+        do {
+            stamp = lock.beginRead();
+            for (int i = 0; i < items.length; i++) {
+                prices[i] = get(items[i]);
+            }
+        } while (!lock.validate(stamp));
+    }
+
+    /**
+     * Sets the price of a given item. Must only be called by the thread running the market.
+     * @param item The item to set the price of.
+     * @param price The new price of the item.
+     * @return The previous price of the item, or NaN if it had none.
+     */
+    double set(Item item, double price) {
+        int id = item.getId();
+        AtomicLongArray bits = this.bits;
+        beginBatch();
+        if (id >= bits.length()) {
+            bits = grow(id);
+        }
+        long previous = bits.get(id);
+        bits.lazySet(id, Double.doubleToLongBits(price));
+        endBatch();
+
+        if (previous == ABSENT) {
+            items[id] = item;
+            return Double.NaN;
+        }
+        return Double.longBitsToDouble(previous);
+    }
+
+    /**
+     * Starts a batch of price changes which readers see all at once, when the batch ends. Batches may be nested, and end
+     * with the outermost one. Must only be called by the thread running the market, which must not wait for readers
+     * before ending the batch.
+     */
+    void beginBatch() {
+        if (batchDepth++ == 0) {
+            lock.beginWrite();
+        }
+    }
+
+    /**
+     * Ends a batch of price changes started by {@link #beginBatch()}. Must only be called by the thread running the
+     * market.
+     */
+    void endBatch() {
+        if (--batchDepth == 0) {
+            lock.endWrite();
+        }
+    }
+
+    /**
+     * Returns a new map of every item with a price to its price. Must only be called by the thread running the market.
+     * @return The prices in the current table.
+     */
+    Map<Item, Double> toMap() {
+        Map<Item, Double> prices = new HashMap<>();
+        AtomicLongArray bits = this.bits;
+        for (int id = 0; id < bits.length(); id++) {
+            long price = bits.get(id);
+            if (price != ABSENT) {
+                prices.put(items[id], Double.longBitsToDouble(price));
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Returns a new table with the same prices as the current one. Must only be called by the thread running the market.
+     * @return A copy of the current table.
+     */
+    PriceTable copy() {
+        PriceTable copy = new PriceTable();
+        AtomicLongArray bits = this.bits;
+        AtomicLongArray copied = new AtomicLongArray(bits.length());
+        for (int id = 0; id < bits.length(); id++) {
+            copied.lazySet(id, bits.get(id));
+        }
+        copy.bits = copied;
+        copy.items = items.clone();
+        return copy;
+    }
+
+    /**
+     * Replaces the array of prices with a larger one with room for a given identifier, inside a write.
+     */
+    private AtomicLongArray grow(int id) {
+        AtomicLongArray old = bits;
+        int length = Math.max(id + 1, old.length() * 2);
+        AtomicLongArray grown = new AtomicLongArray(length);
+        for (int i = 0; i < length; i++) {
+            grown.lazySet(i, i < old.length() ? old.get(i) : ABSENT);
+        }
+        items = Arrays.copyOf(items, length);
+        bits = grown;
+        return grown;
+    }
+}
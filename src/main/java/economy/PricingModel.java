@@ -0,0 +1,53 @@
+package economy;
+
+/**
+ * The way a market's prices respond to changes in supply and demand.
+ *
+ * A market calls {@link #supplyChanged} whenever some quantity of an item enters or leaves it, and
+ * {@link #demandChanged} whenever a trade is made above or below the seller's asking price. A market using
+ * {@link Market#setBatchPricing batch pricing} instead adds up the changes for each item over a whole tick and hands
+ * them to {@link #apply} once, at the end of the tick.
+ *
+ * A market keeps the same model for its whole life.
+ *
+ * @author Tristan Batchler
+ * @see LinearPricingModel
+ * @see ExponentialPricingModel
+ * @see LogElasticPricingModel
+ */
+public interface PricingModel {
+    /**
+     * Returns the new price of an item after a given quantity of it has entered or left the market.
+     * @param price The price of the item before the change.
+     * @param delta The quantity of the item that entered the market, or negative if it left.
+     * @param elasticity The elasticity of the market.
+     * @return The non-negative new price of the item.
+     */
+    double supplyChanged(double price, long delta, double elasticity);
+
+    /**
+     * Returns the new price of an item after it has been traded at a price above or below the asking price.
+     * @param price The price of the item before the change.
+     * @param pressure The total amount paid above the asking price (or negative, below it) multiplied by the market's
+     *                 elasticity and the market price at the time of the trade - that is, how far the price would move
+     *                 under the {@link LinearPricingModel}.
+     * @param elasticity The elasticity of the market.
+     * @return The non-negative new price of the item.
+     */
+    double demandChanged(double price, double pressure, double elasticity);
+
+    /**
+     * Applies the changes in supply and demand of a number of items over a tick to their prices, in place. For each item,
+     * the change in supply is applied before the change in demand.
+     * @param prices The prices of the items, replaced by their new prices.
+     * @param supplyDeltas The net quantity of each item that entered the market during the tick.
+     * @param pressures The total demand pressure on each item during the tick (see {@link #demandChanged}).
+     * @param count The number of items, starting from the beginning of each array.
+     * @param elasticity The elasticity of the market.
+     */
+    default void apply(double[] prices, long[] supplyDeltas, double[] pressures, int count, double elasticity) {
+        for (int i = 0; i < count; i++) {
+            prices[i] = demandChanged(supplyChanged(prices[i], supplyDeltas[i], elasticity), pressures[i], elasticity);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package economy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An index of values by a numeric key, such as items by price or agents by money, which finds every value whose key
+ * lies in a given range in O(log n + k) time, where n is the number of values and k the number found.
+ *
+ * Every value has a non-negative integer identifier, such as an item's or agent's identifier, and is in the index at most
+ * once. The keys and identifiers are kept in a B+ tree ordered by key, and by identifier among equal keys. Its leaves
+ * hold dozens of keys each in arrays and are linked in order, so a range is read from a few consecutive arrays rather
+ * than by chasing a pointer per value. Changing the key of a value by an amount too small to take it out of its leaf
+ * only shifts entries within that leaf, and allocates nothing.
+ *
+ * Leaves and branches are split as they fill, and refilled from or merged with a neighbour as they fall below half full,
+ * so the tree stays in proportion to the values in it however many come and go.
+ *
+ * Indexes are not thread-safe; a market's indexes are only used by the thread running the market.
+ *
+ * @author Tristan Batchler
+ * @param <T> The type of the values in the index.
+ * @see Market#enableRangeIndexes()
+ */
+public final class RangeIndex<T> {
+    private static final int LEAF_CAPACITY = 64;
+    private static final int BRANCH_CAPACITY = 64;
+    private static final int LEAF_MINIMUM = LEAF_CAPACITY / 2;
+    private static final int BRANCH_MINIMUM = BRANCH_CAPACITY / 2;
+
+    private double[] keys = new double[0];
+    private Object[] values = new Object[0];
+    private boolean[] present = new boolean[0];
+    private int size;
+    // The sum of the keys, with the rounding error of the sum kept separately (Neumaier summation).
+    private double sum;
+    private double sumError;
+
+    private Object root = new Leaf();
+    private int height;
+
+    // Set by split nodes for their parent, and by findLeaf for the leaf it found.
+    private double splitKey;
+    private int splitId;
+    private boolean hasLow;
+    private double lowKey;
+    private int lowId;
+    private boolean hasHigh;
+    private double highKey;
+    private int highId;
+
+    /**
+     * Creates a new empty index.
+     */
+    public RangeIndex() {
+    }
+
+    /**
+     * Returns the number of values in the current index.
+     * @return The number of values in the current index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the sum of the keys of every value in the current index, kept up to date as values are added, moved and
+     * removed, so this takes constant time.
+     * @return The sum of the keys in the current index.
+     */
+    public double getSum() {
+        return sum + sumError;
+    }
+
+    /**
+     * Returns the smallest key in the current index, or NaN if the index is empty.
+     * @return The smallest key in the current index, or NaN if there is none.
+     */
+    public double getMin() {
+        return edgeKey(root, height, false);
+    }
+
+    /**
+     * Returns the largest key in the current index, or NaN if the index is empty.
+     * @return The largest key in the current index, or NaN if there is none.
+     */
+    public double getMax() {
+        return edgeKey(root, height, true);
+    }
+
+    /**
+     * Returns true if and only if the current index has a value with a given identifier.
+     * @param id The identifier of the value.
+     * @return True if the current index has a value with the given identifier; false otherwise.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < present.length && present[id];
+    }
+
+    /**
+     * Returns the key of the value with a given identifier, or NaN if the current index has no such value.
+     * @param id The identifier of the value.
+     * @return The key of the value, or NaN if there is none.
+     */
+    public double getKey(int id) {
+        return contains(id) ? keys[id] : Double.NaN;
+    }
+
+    /**
+     * Adds a given value with a given identifier and key to the current index, or moves it to the given key if it is
+     * already in the index.
+     * @param id The non-negative identifier of the value.
+     * @param value The value.
+     * @param key The key of the value.
+     * @throws IllegalArgumentException If the given identifier is negative.
+     */
+    public void put(int id, T value, double key) throws IllegalArgumentException {
+        if (id < 0) {
+            throw new IllegalArgumentException("identifier must not be negative");
+        }
+        if (id >= present.length) {
+            int length = Math.max(id + 1, present.length * 2);
+            keys = Arrays.copyOf(keys, length);
+            values = Arrays.copyOf(values, length);
+            present = Arrays.copyOf(present, length);
+        }
+        values[id] = value;
+
+        if (!present[id]) {
+            present[id] = true;
+            keys[id] = key;
+            size++;
+            addToSum(key);
+            insert(key, id);
+            return;
+        }
+
+        double oldKey = keys[id];
+        if (Double.compare(oldKey, key) == 0) {
+            return;
+        }
+        addToSum(-oldKey);
+        addToSum(key);
+        Leaf leaf = findLeaf(oldKey, id);
+        keys[id] = key;
+        if ((!hasLow || !precedes(key, id, lowKey, lowId)) && (!hasHigh || precedes(key, id, highKey, highId))) {
+            // Still belongs in the same leaf, so only entries within it shift.
+            leaf.removeAt(leaf.lowerBound(oldKey, id));
+            leaf.insertAt(leaf.lowerBound(key, id), key, id);
+        } else {
+            delete(oldKey, id);
+            insert(key, id);
+        }
+    }
+
+    /**
+     * Removes the value with a given identifier from the current index.
+     * @param id The identifier of the value.
+     * @return True if the value was in the current index; false otherwise.
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        delete(keys[id], id);
+        present[id] = false;
+        values[id] = null;
+        size--;
+        addToSum(-keys[id]);
+        return true;
+    }
+
+    /**
+     * Passes every value whose key is at least a given minimum and at most a given maximum to a given action, in order of
+     * key. The action must not change the current index.
+     * @param min The smallest key to include.
+     * @param max The largest key to include.
+     * @param action The action to pass each value to.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachInRange(double min, double max, Consumer<? super T> action) {
+        // No identifier is negative, so -1 comes before every value with the smallest key.
+        Leaf leaf = findLeaf(min, -1);
+        int i = leaf.lowerBound(min, -1);
+        for (; leaf != null; leaf = leaf.next, i = 0) {
+            for (; i < leaf.size; i++) {
+                if (Double.compare(leaf.keys[i], max) > 0) {
+                    return;
+                }
+                action.accept((T) values[leaf.ids[i]]);
+            }
+        }
+    }
+
+    /**
+     * Returns a new list of every value whose key is at least a given minimum and at most a given maximum, in order of
+     * key.
+     * @param min The smallest key to include.
+     * @param max The largest key to include.
+     * @return The values with keys in the given range.
+     */
+    public List<T> getInRange(double min, double max) {
+        List<T> found = new ArrayList<>();
+        forEachInRange(min, max, found::add);
+        return found;
+    }
+
+    /**
+     * Returns the number of values whose key is at least a given minimum and at most a given maximum.
+     * @param min The smallest key to include.
+     * @param max The largest key to include.
+     * @return The number of values with keys in the given range.
+     */
+    public int countInRange(double min, double max) {
+        Leaf leaf = findLeaf(min, -1);
+        int i = leaf.lowerBound(min, -1);
+        int count = 0;
+        for (; leaf != null; leaf = leaf.next, i = 0) {
+            for (; i < leaf.size; i++) {
+                if (Double.compare(leaf.keys[i], max) > 0) {
+                    return count;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of leaves and branches in the current index's tree.
+     */
+    int getNodeCount() {
+        return nodeCount(root, height);
+    }
+
+    private static int nodeCount(Object node, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        Branch branch = (Branch) node;
+        int count = 1;
+        for (int i = 0; i <= branch.size; i++) {
+            count += nodeCount(branch.children[i], depth - 1);
+        }
+        return count;
+    }
+
+    private void addToSum(double key) {
+        double total = sum + key;
+        sumError += Math.abs(sum) >= Math.abs(key) ? (sum - total) + key : (key - total) + sum;
+        sum = total;
+    }
+
+    /**
+     * Returns the first or last key below a given node at a given height, or NaN if there is none. Only a root leaf can
+     * be empty, so the key is in the first or last leaf.
+     */
+    private static double edgeKey(Object node, int depth, boolean last) {
+        for (; depth > 0; depth--) {
+            Branch branch = (Branch) node;
+            node = branch.children[last ? branch.size : 0];
+        }
+        Leaf leaf = (Leaf) node;
+        return leaf.size == 0 ? Double.NaN : leaf.keys[last ? leaf.size - 1 : 0];
+    }
+
+    /**
+     * Returns true if and only if a given key and identifier come before another key and identifier.
+     */
+    private static boolean precedes(double key, int id, double otherKey, int otherId) {
+        int order = Double.compare(key, otherKey);
+        return order < 0 || order == 0 && id < otherId;
+    }
+
+    /**
+     * Returns the leaf a given key and identifier belong in, and records the bounds of the keys which belong in it.
+     */
+    private Leaf findLeaf(double key, int id) {
+        hasLow = false;
+        hasHigh = false;
+        Object node = root;
+        for (int depth = height; depth > 0; depth--) {
+            Branch branch = (Branch) node;
+            int child = branch.childIndex(key, id);
+            if (child > 0) {
+                hasLow = true;
+                lowKey = branch.keys[child - 1];
+                lowId = branch.ids[child - 1];
+            }
+            if (child < branch.size) {
+                hasHigh = true;
+                highKey = branch.keys[child];
+                highId = branch.ids[child];
+            }
+            node = branch.children[child];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Inserts a given key and identifier, which must not already be in the tree, splitting nodes as they overflow.
+     */
+    private void insert(double key, int id) {
+        Object split = insert(root, height, key, id);
+        if (split != null) {
+            Branch branch = new Branch();
+            branch.children[0] = root;
+            branch.children[1] = split;
+            branch.keys[0] = splitKey;
+            branch.ids[0] = splitId;
+            branch.size = 1;
+            root = branch;
+            height++;
+        }
+    }
+
+    /**
+     * Inserts a given key and identifier below a given node at a given height. Returns the new right-hand sibling of the
+     * node if the node split, leaving the first key and identifier belonging in the sibling in splitKey and splitId, or
+     * null if it did not.
+     */
+    private Object insert(Object node, int depth, double key, int id) {
+        if (depth == 0) {
+            Leaf leaf = (Leaf) node;
+            leaf.insertAt(leaf.lowerBound(key, id), key, id);
+            return leaf.size > LEAF_CAPACITY ? splitLeaf(leaf) : null;
+        }
+
+        Branch branch = (Branch) node;
+        int child = branch.childIndex(key, id);
+        Object split = insert(branch.children[child], depth - 1, key, id);
+        if (split == null) {
+            return null;
+        }
+        int moved = branch.size - child;
+        System.arraycopy(branch.keys, child, branch.keys, child + 1, moved);
+        System.arraycopy(branch.ids, child, branch.ids, child + 1, moved);
+        System.arraycopy(branch.children, child + 1, branch.children, child + 2, moved);
+        branch.keys[child] = splitKey;
+        branch.ids[child] = splitId;
+        branch.children[child + 1] = split;
+        branch.size++;
+        return branch.size > BRANCH_CAPACITY ? splitBranch(branch) : null;
+    }
+
+    /**
+     * Deletes a given key and identifier, which must be in the tree, merging and refilling nodes as they underflow.
+     */
+    private void delete(double key, int id) {
+        delete(root, height, key, id);
+        if (height > 0 && ((Branch) root).size == 0) {
+            root = ((Branch) root).children[0];
+            height--;
+        }
+    }
+
+    /**
+     * Deletes a given key and identifier below a given node at a given height. Returns true if the node is left less
+     * than half full, for its parent to refill or merge it.
+     */
+    private boolean delete(Object node, int depth, double key, int id) {
+        if (depth == 0) {
+            Leaf leaf = (Leaf) node;
+            leaf.removeAt(leaf.lowerBound(key, id));
+            return leaf.size < LEAF_MINIMUM;
+        }
+
+        Branch branch = (Branch) node;
+        int child = branch.childIndex(key, id);
+        if (delete(branch.children[child], depth - 1, key, id)) {
+            // Pair the child with its left neighbour, or its right one if it has none.
+            int left = child > 0 ? child - 1 : 0;
+            if (depth == 1) {
+                rebalanceLeaves(branch, left);
+            } else {
+                rebalanceBranches(branch, left, left == child);
+            }
+        }
+        return branch.size < BRANCH_MINIMUM;
+    }
+
+    /**
+     * Merges the leaf children of a given branch either side of a given separator if they fit in one leaf, or else
+     * shares their entries out evenly between them.
+     */
+    private static void rebalanceLeaves(Branch parent, int separator) {
+        Leaf left = (Leaf) parent.children[separator];
+        Leaf right = (Leaf) parent.children[separator + 1];
+        int total = left.size + right.size;
+        if (total <= LEAF_CAPACITY) {
+            System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+            System.arraycopy(right.ids, 0, left.ids, left.size, right.size);
+            left.size = total;
+            left.next = right.next;
+            parent.removeSeparator(separator);
+            return;
+        }
+
+        int half = total / 2;
+        if (left.size < half) {
+            int moved = half - left.size;
+            System.arraycopy(right.keys, 0, left.keys, left.size, moved);
+            System.arraycopy(right.ids, 0, left.ids, left.size, moved);
+            System.arraycopy(right.keys, moved, right.keys, 0, right.size - moved);
+            System.arraycopy(right.ids, moved, right.ids, 0, right.size - moved);
+            left.size = half;
+            right.size -= moved;
+        } else {
+            int moved = left.size - half;
+            System.arraycopy(right.keys, 0, right.keys, moved, right.size);
+            System.arraycopy(right.ids, 0, right.ids, moved, right.size);
+            System.arraycopy(left.keys, half, right.keys, 0, moved);
+            System.arraycopy(left.ids, half, right.ids, 0, moved);
+            left.size = half;
+            right.size += moved;
+        }
+        parent.keys[separator] = right.keys[0];
+        parent.ids[separator] = right.ids[0];
+    }
+
+    /**
+     * Merges the branch children of a given branch either side of a given separator, with the separator between them,
+     * if they fit in one branch, or else moves one child across from the fuller one through the separator.
+     */
+    private static void rebalanceBranches(Branch parent, int separator, boolean leftUnderflowed) {
+        Branch left = (Branch) parent.children[separator];
+        Branch right = (Branch) parent.children[separator + 1];
+        if (left.size + right.size + 1 <= BRANCH_CAPACITY) {
+            left.keys[left.size] = parent.keys[separator];
+            left.ids[left.size] = parent.ids[separator];
+            System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+            System.arraycopy(right.ids, 0, left.ids, left.size + 1, right.size);
+            System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+            left.size += right.size + 1;
+            parent.removeSeparator(separator);
+            return;
+        }
+
+        if (leftUnderflowed) {
+            left.keys[left.size] = parent.keys[separator];
+            left.ids[left.size] = parent.ids[separator];
+            left.children[left.size + 1] = right.children[0];
+            left.size++;
+            parent.keys[separator] = right.keys[0];
+            parent.ids[separator] = right.ids[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(right.ids, 1, right.ids, 0, right.size - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.size);
+            right.children[right.size] = null;
+            right.size--;
+        } else {
+            System.arraycopy(right.keys, 0, right.keys, 1, right.size);
+            System.arraycopy(right.ids, 0, right.ids, 1, right.size);
+            System.arraycopy(right.children, 0, right.children, 1, right.size + 1);
+            right.keys[0] = parent.keys[separator];
+            right.ids[0] = parent.ids[separator];
+            right.children[0] = left.children[left.size];
+            right.size++;
+            parent.keys[separator] = left.keys[left.size - 1];
+            parent.ids[separator] = left.ids[left.size - 1];
+            left.children[left.size] = null;
+            left.size--;
+        }
+    }
+
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int half = leaf.size / 2;
+        right.size = leaf.size - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+        System.arraycopy(leaf.ids, half, right.ids, 0, right.size);
+        leaf.size = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        splitKey = right.keys[0];
+        splitId = right.ids[0];
+        return right;
+    }
+
+    private Branch splitBranch(Branch branch) {
+        Branch right = new Branch();
+        int middle = branch.size / 2;
+        right.size = branch.size - middle - 1;
+        System.arraycopy(branch.keys, middle + 1, right.keys, 0, right.size);
+        System.arraycopy(branch.ids, middle + 1, right.ids, 0, right.size);
+        System.arraycopy(branch.children, middle + 1, right.children, 0, right.size + 1);
+        Arrays.fill(branch.children, middle + 1, branch.size + 1, null);
+        splitKey = branch.keys[middle];
+        splitId = branch.ids[middle];
+        branch.size = middle;
+        return right;
+    }
+
+    /**
+     * A node at the bottom of the tree, holding keys and identifiers in order, with room for one more than it may keep
+     * so that it can be split after overflowing.
+     */
+    private static final class Leaf {
+        final double[] keys = new double[LEAF_CAPACITY + 1];
+        final int[] ids = new int[LEAF_CAPACITY + 1];
+        int size;
+        Leaf next;
+
+        /**
+         * Returns the position of the first entry which does not come before a given key and identifier.
+         */
+        int lowerBound(double key, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (precedes(keys[middle], ids[middle], key, id)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void insertAt(int position, double key, int id) {
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            keys[position] = key;
+            ids[position] = id;
+            size++;
+        }
+
+        void removeAt(int position) {
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+    }
+
+    /**
+     * A node above the leaves, holding separators in order: child i holds the keys and identifiers from separator i - 1
+     * up to but not including separator i. Has room for one more separator than it may keep, so that it can be split
+     * after overflowing.
+     */
+    private static final class Branch {
+        final double[] keys = new double[BRANCH_CAPACITY + 1];
+        final int[] ids = new int[BRANCH_CAPACITY + 1];
+        final Object[] children = new Object[BRANCH_CAPACITY + 2];
+        int size;
+
+        /**
+         * Returns the index of the child a given key and identifier belong in.
+         */
+        int childIndex(double key, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (precedes(key, id, keys[middle], ids[middle])) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Removes the separator at a given position along with the child after it.
+         */
+        void removeSeparator(int position) {
+            int moved = size - position - 1;
+            System.arraycopy(keys, position + 1, keys, position, moved);
+            System.arraycopy(ids, position + 1, ids, position, moved);
+            System.arraycopy(children, position + 2, children, position + 1, moved);
+            children[size] = null;
+            size--;
+        }
+    }
+}
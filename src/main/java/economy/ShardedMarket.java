@@ -0,0 +1,382 @@
+package economy;
+
+import java.io.Closeable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A number of markets, called shards, each owned by its own thread so that they can all be simulated at the same time.
+ *
+ * A shard's market, and every agent in it, is only ever touched by the shard's thread. Everything else - including the
+ * other shards - talks to a shard by putting messages into its lock-free inbox, which the shard's thread works through
+ * in order. This way no market needs a lock, and the total throughput grows with the number of shards.
+ *
+ * Agents move between shards with {@link #migrate}: the agent leaves the first market and joins the second, so the
+ * supply-driven price effects of {@link Market#removeAgent} and {@link Market#addAgent} apply on both sides. Agents in
+ * different shards trade with {@link #buy}, which passes the money and goods between the two shards as messages. An
+ * agent cannot migrate while it is waiting on such a trade, so the goods or refund always find it in its shard.
+ *
+ * Anything a message throws completes the future of the call which sent it exceptionally, and is passed to the
+ * {@link #setExceptionHandler exception handler}; the shard's thread carries on with the next message.
+ *
+ * @author Tristan Batchler
+ * @see Market
+ */
+public class ShardedMarket implements Closeable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Shard[] shards;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile BiConsumer<Market, Throwable> exceptionHandler = ShardedMarket::reportUncaught;
+
+    /**
+     * Creates a given number of shards, each with an empty market of a given elasticity named after the given name and
+     * the shard's number, and starts their threads.
+     * @param name The name to give the shards' markets, followed by the number of each shard.
+     * @param shardCount The positive number of shards to create.
+     * @param elasticity The elasticity of every shard's market.
+     * @throws IllegalArgumentException If the given number of shards is not positive.
+     */
+    public ShardedMarket(String name, int shardCount, double elasticity) throws IllegalArgumentException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("number of shards must be positive");
+        }
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(new Market(name + " " + i, elasticity));
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     * @return The number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Sets the handler which is given anything a message throws on a shard's thread, along with that shard's market. By
+     * default it is passed to the thread's uncaught exception handler.
+     * @param handler The handler to pass exceptions to.
+     * @throws IllegalArgumentException If the given handler is null.
+     */
+    public void setExceptionHandler(BiConsumer<Market, Throwable> handler) throws IllegalArgumentException {
+        if (handler == null) {
+            throw new IllegalArgumentException("exception handler must not be null");
+        }
+        exceptionHandler = handler;
+    }
+
+    /**
+     * Runs a given task against the market of a given shard on that shard's thread.
+     * @param shard The number of the shard to run the task in.
+     * @param task The task to run.
+     * @return A future completed once the task has run, or completed exceptionally with whatever the task threw or an
+     *         IllegalStateException if the sharded market is closed.
+     */
+    public CompletableFuture<Void> execute(int shard, Consumer<Market> task) {
+        return query(shard, market -> {
+            task.accept(market);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a given query against the market of a given shard on that shard's thread.
+     * @param shard The number of the shard to run the query in.
+     * @param query The query to run.
+     * @param <T> The type of the query's result.
+     * @return A future completed with the query's result once it has run, or completed exceptionally with whatever the
+     *         query threw or an IllegalStateException if the sharded market is closed.
+     */
+    public <T> CompletableFuture<T> query(int shard, Function<Market, T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(shards[shard], result, market -> {
+            try {
+                result.complete(query.apply(market));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Moves a given agent from the market of one shard to the market of another. The agent first leaves its market on
+     * the first shard's thread, then joins the second market on the second shard's thread, taking its money and items
+     * with it.
+     * @param agent The agent to move.
+     * @param from The number of the shard the agent is in.
+     * @param to The number of the shard to move the agent to.
+     * @return A future completed once the agent has joined the second market, or completed exceptionally with an
+     *         IllegalArgumentException if the agent was not in the first shard's market, an IllegalStateException if
+     *         the agent was waiting on a trade across shards or the sharded market is closed.
+     */
+    public CompletableFuture<Void> migrate(Agent agent, int from, int to) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Shard source = shards[from];
+        Shard destination = shards[to];
+        submit(source, result, market -> {
+            if (agent.market != market) {
+                result.completeExceptionally(new IllegalArgumentException("agent is not in shard " + from));
+                return;
+            }
+            if (source.trading.containsKey(agent)) {
+                result.completeExceptionally(new IllegalStateException("agent has a trade in flight"));
+                return;
+            }
+            market.removeAgent(agent);
+            destination.send(result, other -> {
+                other.addAgent(agent);
+                result.complete(null);
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Processes a transaction between a buyer agent in one shard and a seller agent in another (or the same) shard
+     * wherein the seller loses the given quantity of the given item and the buyer receives it, and the buyer pays the
+     * seller the given buying price for each item.
+     *
+     * When both agents are in the same shard, this is the same as {@link Market#buy}. Otherwise the trade is carried out
+     * by message passing:
+     * <ol>
+     *     <li>On the buyer's shard, the money is taken from the buyer.</li>
+     *     <li>On the seller's shard, the items are taken from the seller, so the seller's market responds to the drop in
+     *     supply, and the seller is paid. The seller's market responds to the trade as it does to {@link Market#buy}:
+     *     the trade counts towards its {@link Market#getTradeStatistics() trade statistics}, metrics and events, and
+     *     the market price of the item moves with the buying price.</li>
+     *     <li>On the buyer's shard, the buyer receives the items, so the buyer's market responds to the rise in
+     *     supply.</li>
+     * </ol>
+     * If the seller turns out not to have enough stock, the buyer is refunded instead and nothing else happens. Until
+     * the buyer has received the items or the refund, it cannot {@link #migrate} out of its shard.
+     *
+     * If the given quantity is not positive, nothing happens.
+     * @param buyerShard The number of the shard the buyer is in.
+     * @param buyer The buyer agent.
+     * @param sellerShard The number of the shard the seller is in.
+     * @param seller The seller agent.
+     * @param item The item to buy.
+     * @param quantity The quantity of the item to buy.
+     * @param buyingPriceEach The price per each item to buy at.
+     * @return A future completed with true once the trade has been made, with false if nothing happened, or completed
+     *         exceptionally with an InsufficientAmountException if the buyer did not have enough money or the seller
+     *         did not have enough stock, an IllegalArgumentException if either agent was not in the given shard, or an
+     *         IllegalStateException if the sharded market is closed.
+     */
+    public CompletableFuture<Boolean> buy(int buyerShard, Agent buyer, int sellerShard, Agent seller, Item item,
+                                          long quantity, double buyingPriceEach) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (buyerShard == sellerShard) {
+            submit(shards[buyerShard], result, market -> {
+                try {
+                    market.buy(buyer, seller, item, quantity, buyingPriceEach);
+                    result.complete(quantity > 0);
+                } catch (InsufficientAmountException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        }
+        if (quantity <= 0) {
+            result.complete(false);
+            return result;
+        }
+
+        double finalPrice = buyingPriceEach * quantity;
+        Shard buyers = shards[buyerShard];
+        Shard sellers = shards[sellerShard];
+        submit(buyers, result, buyerMarket -> {
+            if (buyer.market != buyerMarket) {
+                result.completeExceptionally(new IllegalArgumentException("buyer is not in shard " + buyerShard));
+                return;
+            }
+            if (buyer.getMoney() < finalPrice) {
+                result.completeExceptionally(new InsufficientAmountException("not enough money to buy"));
+                return;
+            }
+            buyer.lose(finalPrice);
+            buyers.startTrade(buyer);
+
+            sellers.send(result, sellerMarket -> {
+                Exception failure = null;
+                if (seller.market != sellerMarket) {
+                    failure = new IllegalArgumentException("seller is not in shard " + sellerShard);
+                } else {
+                    try {
+                        sellerMarket.sellToOtherMarket(buyer, seller, item, quantity, buyingPriceEach);
+                    } catch (InsufficientAmountException | RuntimeException e) {
+                        failure = e;
+                    }
+                }
+
+                if (failure != null) {
+                    Exception refused = failure;
+                    buyers.send(result, market -> {
+                        buyers.finishTrade(buyer);
+                        buyer.receive(finalPrice);
+                        result.completeExceptionally(refused);
+                    });
+                    return;
+                }
+
+                buyers.send(result, market -> {
+                    buyers.finishTrade(buyer);
+                    buyer.receive(item, quantity);
+                    result.complete(true);
+                });
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Sends a given message from outside the shards to a given shard, unless the sharded market is closed.
+     * @param shard The shard to send the message to.
+     * @param result The future of the call sending the message.
+     * @param action The message to send.
+     */
+    private void submit(Shard shard, CompletableFuture<?> result, Consumer<Market> action) {
+        // Counted before checking closed, so close() either sees this message as pending or it is refused here.
+        pending.incrementAndGet();
+        if (closed) {
+            pending.decrementAndGet();
+            result.completeExceptionally(new IllegalStateException("sharded market is closed"));
+            return;
+        }
+        shard.offer(new Message(result, action));
+    }
+
+    /**
+     * Passes a given exception to the current thread's uncaught exception handler.
+     * @param market The market of the shard which threw the exception.
+     * @param e The exception thrown.
+     */
+    private static void reportUncaught(Market market, Throwable e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    /**
+     * Refuses any further calls, waits until every message already sent - and every message those send in turn, such
+     * as the later steps of a trade across shards - has been worked through, then stops every shard's thread and waits
+     * for them to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        while (pending.get() != 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            boolean interrupted = false;
+            while (shard.thread.isAlive()) {
+                try {
+                    shard.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A message for a shard's thread, along with the future of the call which sent it.
+     */
+    private static final class Message {
+        final CompletableFuture<?> result;
+        final Consumer<Market> action;
+
+        Message(CompletableFuture<?> result, Consumer<Market> action) {
+            this.result = result;
+            this.action = action;
+        }
+    }
+
+    /**
+     * One market and the thread which owns it, along with the inbox of messages for that thread.
+     */
+    private final class Shard implements Runnable {
+        final Market market;
+        final Queue<Message> inbox = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        volatile boolean running = true;
+
+        /** The number of trades across shards each buyer in this shard is waiting on; only touched by the thread. */
+        final Map<Agent, Integer> trading = new IdentityHashMap<>();
+
+        Shard(Market market) {
+            this.market = market;
+            thread = new Thread(this, market.name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Sends a given message to this shard from one of the shards' threads, as a later step of the given call.
+         * @param result The future of the call sending the message.
+         * @param action The message to send.
+         */
+        void send(CompletableFuture<?> result, Consumer<Market> action) {
+            pending.incrementAndGet();
+            offer(new Message(result, action));
+        }
+
+        void offer(Message message) {
+            inbox.offer(message);
+            LockSupport.unpark(thread);
+        }
+
+        void startTrade(Agent buyer) {
+            trading.merge(buyer, 1, Integer::sum);
+        }
+
+        void finishTrade(Agent buyer) {
+            trading.computeIfPresent(buyer, (agent, count) -> count == 1 ? null : count - 1);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Message message = inbox.poll();
+                if (message != null) {
+                    try {
+                        message.action.accept(market);
+                    } catch (Throwable e) {
+                        message.result.completeExceptionally(e);
+                        exceptionHandler.accept(market, e);
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                } else if (running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
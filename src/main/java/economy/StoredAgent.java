@@ -0,0 +1,147 @@
+package economy;
+
+/**
+ * A cursor over one agent at a time in an {@link AgentStore}, giving it much the same methods as an {@link Agent}.
+ *
+ * A cursor holds nothing but its store and an index, so one cursor can be moved over millions of agents with
+ * {@link #moveTo} without making an object per agent. Every method reads or writes the store directly, so the agents of
+ * a store backing a market (see {@link Market#setAgentStore}) should receive items and trade through the market instead,
+ * for the market to respond.
+ *
+ * @author Tristan Batchler
+ * @see AgentStore
+ */
+public final class StoredAgent {
+    private final AgentStore store;
+    private int index;
+
+    /**
+     * Creates a new cursor over a given store, on the agent with index 0.
+     * @param store The store to read and write.
+     */
+    public StoredAgent(AgentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Moves the current cursor to the agent with a given index.
+     * @param index The index of the agent.
+     * @return The current cursor.
+     * @throws IndexOutOfBoundsException If there is no agent with the given index.
+     */
+    public StoredAgent moveTo(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= store.size()) {
+            throw new IndexOutOfBoundsException("no agent at index " + index);
+        }
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Returns the index of the agent the current cursor is on.
+     * @return The index of the agent the current cursor is on.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the store the current cursor reads and writes.
+     * @return The store the current cursor reads and writes.
+     */
+    public AgentStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the name of the current agent.
+     * @return The name of the current agent.
+     */
+    public String getName() {
+        return store.getName(index);
+    }
+
+    /**
+     * Returns the current agent's amount of money.
+     * @return The current agent's amount of money.
+     */
+    public double getMoney() {
+        return store.getMoney(index);
+    }
+
+    /**
+     * Adds a given amount of money to the current agent's money pool. If the given amount is not positive, nothing
+     * happens.
+     * @param amount The amount of money for the current agent to receive.
+     */
+    public void receive(double amount) {
+        if (amount > 0) {
+            store.setMoney(index, store.getMoney(index) + amount);
+        }
+    }
+
+    /**
+     * Removes a given amount of money from the current agent's money pool. If the given amount is not positive, nothing
+     * happens.
+     * @param amount The amount of money for the current agent to lose.
+     */
+    public void lose(double amount) {
+        if (amount > 0) {
+            store.setMoney(index, store.getMoney(index) - amount);
+        }
+    }
+
+    /**
+     * Returns the quantity of a given item held by the current agent, or 0 if it holds none.
+     * @param item The item to get the quantity of.
+     * @return The quantity of the given item held by the current agent.
+     */
+    public long getQuantity(Item item) {
+        return store.getQuantity(index, item);
+    }
+
+    /**
+     * Returns the number of different items held by the current agent.
+     * @return The number of different items held by the current agent.
+     */
+    public int getItemCount() {
+        return store.getItemCount(index);
+    }
+
+    /**
+     * Adds quantity to an item in the current agent's inventory. Does nothing if the given quantity is non-positive.
+     * @param item The item to add quantity to.
+     * @param quantity The quantity to add.
+     * @throws IllegalStateException If the item is new to the current agent and all its slots are in use.
+     */
+    public void receive(Item item, long quantity) throws IllegalStateException {
+        if (quantity > 0) {
+            store.setQuantity(index, item, store.getQuantity(index, item) + quantity);
+        }
+    }
+
+    /**
+     * Removes quantity from an item in the current agent's inventory, removing the item altogether if no quantity is
+     * left. Does nothing if the given quantity is non-positive.
+     * @param item The item to remove quantity from.
+     * @param quantity The quantity to remove.
+     */
+    public void lose(Item item, long quantity) {
+        if (quantity > 0) {
+            long current = store.getQuantity(index, item);
+            if (current > 0) {
+                store.setQuantity(index, item, current - quantity);
+            }
+        }
+    }
+
+    /**
+     * Returns a string representation of the current agent which is of the form:
+     * <blockquote>"A" with $B and C different items.</blockquote>
+     * where A is the current agent's name, B is its amount of money, and C is the number of different items it holds.
+     */
+    @Override
+    public String toString() {
+        return String.format("\"%s\" with $%.2f and %d different items", getName(), getMoney(), getItemCount());
+    }
+}
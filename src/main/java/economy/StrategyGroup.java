@@ -0,0 +1,150 @@
+package economy;
+
+import java.util.Arrays;
+
+/**
+ * A group of agents in a market which all follow the same {@link AgentStrategy}, with their state laid out in columns so
+ * that the strategy can loop over the whole group at once.
+ *
+ * Every column is indexed by the agent's position in the group, from 0 up to (but not including) {@link #size()}:
+ * <ul>
+ *     <li>the agents themselves,</li>
+ *     <li>each agent's money, as it was at the start of the tick, and</li>
+ *     <li>a number for the strategy to keep whatever it likes in between ticks, such as a reservation price.</li>
+ * </ul>
+ * Positions change when agents are removed, and the state moves along with its agent.
+ *
+ * @author Tristan Batchler
+ * @see Market#addStrategyGroup
+ */
+public final class StrategyGroup {
+    private final Market market;
+    final AgentStrategy strategy;
+    private Agent[] agents = new Agent[16];
+    private double[] money = new double[16];
+    private double[] state = new double[16];
+    private int size;
+
+    StrategyGroup(Market market, AgentStrategy strategy) {
+        this.market = market;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the market the current group's agents are in.
+     * @return The market the current group's agents are in.
+     */
+    public Market getMarket() {
+        return market;
+    }
+
+    /**
+     * Returns the strategy the current group's agents follow.
+     * @return The strategy the current group's agents follow.
+     */
+    public AgentStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Adds a given agent to the end of the current group, with its strategy state set to zero.
+     * @param agent The agent to add. Must be in the current group's market.
+     * @throws IllegalArgumentException If the given agent is not in the current group's market.
+     */
+    public void add(Agent agent) throws IllegalArgumentException {
+        if (agent.market != market) {
+            throw new IllegalArgumentException("agent must be in the group's market");
+        }
+        if (size == agents.length) {
+            int capacity = size * 2;
+            agents = Arrays.copyOf(agents, capacity);
+            money = Arrays.copyOf(money, capacity);
+            state = Arrays.copyOf(state, capacity);
+        }
+        agents[size] = agent;
+        money[size] = agent.getMoney();
+        state[size] = 0;
+        size++;
+    }
+
+    /**
+     * Removes a given agent from the current group, moving the last agent in the group into its position. Does nothing if
+     * the agent is not in the current group.
+     * @param agent The agent to remove.
+     */
+    public void remove(Agent agent) {
+        for (int i = 0; i < size; i++) {
+            if (agents[i] == agent) {
+                removeAt(i);
+                return;
+            }
+        }
+    }
+
+    private void removeAt(int index) {
+        size--;
+        agents[index] = agents[size];
+        money[index] = money[size];
+        state[index] = state[size];
+        agents[size] = null;
+    }
+
+    /**
+     * Returns the number of agents in the current group.
+     * @return The number of agents in the current group.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the agent at a given position in the current group.
+     * @param index The position of the agent.
+     * @return The agent at the given position.
+     */
+    public Agent getAgent(int index) {
+        return agents[index];
+    }
+
+    /**
+     * Returns the money the agent at a given position in the current group had at the start of the tick.
+     * @param index The position of the agent.
+     * @return The money the agent had at the start of the tick.
+     */
+    public double getMoney(int index) {
+        return money[index];
+    }
+
+    /**
+     * Returns the strategy state of the agent at a given position in the current group.
+     * @param index The position of the agent.
+     * @return The strategy state of the agent.
+     */
+    public double getState(int index) {
+        return state[index];
+    }
+
+    /**
+     * Sets the strategy state of the agent at a given position in the current group.
+     * @param index The position of the agent.
+     * @param value The new strategy state of the agent.
+     */
+    public void setState(int index, double value) {
+        state[index] = value;
+    }
+
+    /**
+     * Drops every agent which has left the market and brings the money column up to date. Called by the market at the
+     * start of each tick, just before the strategy is evaluated.
+     */
+    void refresh() {
+        for (int i = 0; i < size; ) {
+            if (agents[i].market != market) {
+                removeAt(i);
+            } else {
+                money[i] = agents[i].getMoney();
+                i++;
+            }
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package economy;
+
+import java.util.Arrays;
+
+/**
+ * An {@link AgentStore} which keeps the agents being used most on the heap, in front of a slower store holding every
+ * agent, usually a {@link MappedAgentStore} on disk.
+ *
+ * In most markets a small fraction of agents make almost all the trades. Those agents are kept in a cache of a bounded
+ * number of entries, each with its money, an {@link Inventory} and the items it holds in slot order, so that slots are
+ * read in constant time as they are from the cold store. Every other agent only exists as a record in
+ * the cold store. Reading or writing an agent which is not in the cache loads it from the cold store first. If the cache
+ * is full, an entry is evicted to make room: changed entries are written back to the cold store, and unchanged ones are
+ * simply dropped.
+ *
+ * Entries are evicted by the CLOCK algorithm, which approximates evicting the least recently used entry at a fraction of
+ * the cost: every entry has a bit set whenever it is used, and a hand sweeps round the cache clearing bits until it finds
+ * an entry whose bit is already clear. Entries are found by agent index through an open-addressing hash table of the
+ * frames they are in, sized for the whole cache up front, so finding an entry allocates nothing.
+ *
+ * The hit rate of the cache and the cost of evictions are counted, to help choose the size of the cache.
+ *
+ * A market can be backed by a tiered store (see {@link Market#setAgentStore}), so that the agents it trades in are
+ * loaded as they next trade, receive items or are picked at random.
+ *
+ * @author Tristan Batchler
+ */
+public class TieredAgentStore implements AgentStore {
+    private static final int EMPTY = -1;
+
+    private final AgentStore cold;
+    private final Entry[] frames;
+    // Open-addressing table of agent index to the frame holding its entry, never more than half full.
+    private final int[] indices;
+    private final int[] tableFrames;
+    private int hand;
+    private int used;
+    private boolean closed;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writeBacks;
+    private long evictionNanos;
+
+    /**
+     * Creates a new store caching up to a given number of agents in front of a given store. The cold store should not be
+     * used directly while the new store is in use.
+     * @param cold The store holding every agent.
+     * @param capacity The greatest number of agents to keep on the heap.
+     * @throws IllegalArgumentException If the given capacity is not positive.
+     */
+    public TieredAgentStore(AgentStore cold, int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("cache capacity must be positive");
+        }
+        this.cold = cold;
+        frames = new Entry[capacity];
+        int length = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        indices = new int[length];
+        Arrays.fill(indices, EMPTY);
+        tableFrames = new int[length];
+    }
+
+    /**
+     * Returns the store holding every agent.
+     * @return The store holding every agent.
+     */
+    public AgentStore getColdStore() {
+        return cold;
+    }
+
+    /**
+     * Returns the greatest number of agents kept on the heap.
+     * @return The greatest number of agents kept on the heap.
+     */
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the number of agents currently kept on the heap.
+     * @return The number of agents currently kept on the heap.
+     */
+    public int getCachedCount() {
+        return used;
+    }
+
+    /**
+     * Returns true if and only if the agent with a given index is currently kept on the heap.
+     * @param index The index of the agent.
+     * @return True if the agent is kept on the heap; false otherwise.
+     */
+    public boolean isCached(int index) {
+        return slotOf(index) >= 0;
+    }
+
+    /**
+     * Returns the number of times an agent was used while already on the heap.
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times an agent had to be loaded from the cold store.
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of uses of agents which found the agent already on the heap, or NaN if no agent has been used.
+     * @return The cache hit rate.
+     */
+    public double getHitRate() {
+        return (double) hits / (hits + misses);
+    }
+
+    /**
+     * Returns the number of agents evicted from the heap.
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of evicted agents which had changed and were written back to the cold store.
+     * @return The number of write-backs.
+     */
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * Returns the mean time taken to evict an agent, including writing it back if it had changed, in nanoseconds, or NaN
+     * if no agent has been evicted.
+     * @return The mean time taken to evict an agent in nanoseconds.
+     */
+    public double getMeanEvictionNanos() {
+        return (double) evictionNanos / evictions;
+    }
+
+    /**
+     * Resets every count kept by the current store to zero.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        writeBacks = 0;
+        evictionNanos = 0;
+    }
+
+    @Override
+    public int size() {
+        return cold.size();
+    }
+
+    @Override
+    public int getSlotsPerAgent() {
+        return cold.getSlotsPerAgent();
+    }
+
+    @Override
+    public int add(String name) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("store has been closed");
+        }
+        int index = cold.add(name);
+        Entry entry = new Entry(index, name, 0);
+        insert(entry);
+        return index;
+    }
+
+    @Override
+    public String getName(int index) throws IndexOutOfBoundsException {
+        return entry(index).name;
+    }
+
+    @Override
+    public double getMoney(int index) throws IndexOutOfBoundsException {
+        return entry(index).money;
+    }
+
+    @Override
+    public void setMoney(int index, double money) throws IndexOutOfBoundsException {
+        Entry entry = entry(index);
+        entry.money = money;
+        entry.dirty = true;
+    }
+
+    @Override
+    public int getItemCount(int index) throws IndexOutOfBoundsException {
+        return entry(index).count;
+    }
+
+    @Override
+    public Item getItem(int index, int slot) throws IndexOutOfBoundsException {
+        Entry entry = entry(index);
+        if (slot < 0 || slot >= entry.count) {
+            throw new IndexOutOfBoundsException("slot " + slot + " is not in use");
+        }
+        return entry.slots[slot];
+    }
+
+    @Override
+    public long getQuantity(int index, Item item) throws IndexOutOfBoundsException {
+        return entry(index).inventory.getQuantity(item);
+    }
+
+    @Override
+    public void setQuantity(int index, Item item, long quantity)
+            throws IndexOutOfBoundsException, IllegalStateException {
+        Entry entry = entry(index);
+        if (entry.count >= cold.getSlotsPerAgent() && quantity > 0 && !entry.inventory.contains(item)) {
+            throw new IllegalStateException("every inventory slot of the agent is in use");
+        }
+        entry.set(item, quantity);
+        entry.dirty = true;
+    }
+
+    /**
+     * Writes every changed agent on the heap back to the cold store, keeping them on the heap.
+     */
+    public void flush() {
+        for (int frame = 0; frame < used; frame++) {
+            writeBack(frames[frame]);
+        }
+    }
+
+    /**
+     * Writes every changed agent back to the cold store, then closes the cold store.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        Arrays.fill(indices, EMPTY);
+        cold.close();
+    }
+
+    /**
+     * Returns the entry of the agent with a given index, loading it from the cold store if it is not on the heap.
+     */
+    private Entry entry(int index) {
+        if (closed) {
+            throw new IllegalStateException("store has been closed");
+        }
+        int slot = slotOf(index);
+        if (slot >= 0) {
+            Entry entry = frames[tableFrames[slot]];
+            hits++;
+            entry.referenced = true;
+            return entry;
+        }
+
+        misses++;
+        Entry entry = new Entry(index, cold.getName(index), cold.getMoney(index));
+        int count = cold.getItemCount(index);
+        for (int i = 0; i < count; i++) {
+            Item item = cold.getItem(index, i);
+            entry.set(item, cold.getQuantity(index, item));
+        }
+        insert(entry);
+        return entry;
+    }
+
+    /**
+     * Puts a given entry in the cache, evicting another entry first if the cache is full.
+     */
+    private void insert(Entry entry) {
+        int frame;
+        if (used < frames.length) {
+            frame = used++;
+        } else {
+            frame = evict();
+        }
+        frames[frame] = entry;
+
+        int mask = indices.length - 1;
+        int slot = home(entry.index);
+        while (indices[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        indices[slot] = entry.index;
+        tableFrames[slot] = frame;
+    }
+
+    /**
+     * Evicts the first entry the hand of the clock finds which has not been used since the hand last passed it, and
+     * returns the frame it was in.
+     */
+    private int evict() {
+        long start = System.nanoTime();
+        while (frames[hand].referenced) {
+            frames[hand].referenced = false;
+            hand = (hand + 1) % frames.length;
+        }
+        int frame = hand;
+        hand = (hand + 1) % frames.length;
+
+        Entry victim = frames[frame];
+        writeBack(victim);
+        delete(slotOf(victim.index));
+        frames[frame] = null;
+        evictions++;
+        evictionNanos += System.nanoTime() - start;
+        return frame;
+    }
+
+    /**
+     * Returns the slot of the table in which an agent index should first be looked for.
+     */
+    private int home(int index) {
+        long hash = index * 0x9e37_79b9_7f4a_7c15L;
+        return (int) (hash >>> 32) & (indices.length - 1);
+    }
+
+    /**
+     * Returns the slot of the table holding a given agent index, or -1 if the agent is not on the heap.
+     */
+    private int slotOf(int index) {
+        int mask = indices.length - 1;
+        for (int slot = home(index); ; slot = (slot + 1) & mask) {
+            if (indices[slot] == index) {
+                return slot;
+            }
+            if (indices[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Empties a given slot of the table, moving back any later indices which could no longer be found past the gap, so
+     * that the table never needs markers for deleted indices.
+     */
+    private void delete(int slot) {
+        int mask = indices.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; indices[next] != EMPTY; next = (next + 1) & mask) {
+            int home = home(indices[next]);
+            // Move the index back if its home is not cyclically within (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                indices[gap] = indices[next];
+                tableFrames[gap] = tableFrames[next];
+                gap = next;
+            }
+        }
+        indices[gap] = EMPTY;
+    }
+
+    /**
+     * Writes a given entry back to the cold store if it has changed since it was loaded.
+     */
+    private void writeBack(Entry entry) {
+        if (!entry.dirty) {
+            return;
+        }
+        int index = entry.index;
+        cold.setMoney(index, entry.money);
+        for (int slot = cold.getItemCount(index) - 1; slot >= 0; slot--) {
+            Item item = cold.getItem(index, slot);
+            if (!entry.inventory.contains(item)) {
+                cold.setQuantity(index, item, 0);
+            }
+        }
+        for (int slot = 0; slot < entry.count; slot++) {
+            Item item = entry.slots[slot];
+            cold.setQuantity(index, item, entry.inventory.getQuantity(item));
+        }
+        entry.dirty = false;
+        writeBacks++;
+    }
+
+    /**
+     * An agent kept on the heap.
+     */
+    private static final class Entry {
+        private static final Item[] NO_ITEMS = new Item[0];
+
+        final int index;
+        final String name;
+        final Inventory inventory = new Inventory();
+        Item[] slots = NO_ITEMS;
+        int count;
+        double money;
+        boolean referenced = true;
+        boolean dirty;
+
+        Entry(int index, String name, double money) {
+            this.index = index;
+            this.name = name;
+            this.money = money;
+        }
+
+        /**
+         * Sets the quantity of a given item, giving it the next slot if it is new and filling its slot with the last
+         * one if it is removed, as the cold stores do.
+         */
+        void set(Item item, long quantity) {
+            long current = inventory.getQuantity(item);
+            if (current == 0 && quantity > 0) {
+                if (count == slots.length) {
+                    slots = Arrays.copyOf(slots, Math.max(4, count * 2));
+                }
+                slots[count++] = item;
+            } else if (current > 0 && quantity <= 0) {
+                int slot = 0;
+                while (!slots[slot].equals(item)) {
+                    slot++;
+                }
+                slots[slot] = slots[--count];
+                slots[count] = null;
+            }
+
+            if (quantity > current) {
+                inventory.add(item, quantity - current);
+            } else if (quantity < current) {
+                inventory.remove(item, current - Math.max(quantity, 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package economy;
+
+import common.SequenceLock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of the trades made in a market for each item: the quantity traded, the notional value traded (the
+ * total money paid) and the number of trades, from which the volume-weighted average price (VWAP) follows.
+ *
+ * Totals are kept both cumulatively and per tick. The market updates them on every successful
+ * {@link Market#buy purchase} without allocating anything, and any number of reporting threads can read them at the same
+ * time without taking a lock; every read returns values which are consistent with each other.
+ *
+ * @author Tristan Batchler
+ * @see Market#getTradeStatistics()
+ */
+public class TradeStatistics {
+    private static final int CUMULATIVE_QUANTITY = 0;
+    private static final int CUMULATIVE_NOTIONAL = 1;
+    private static final int CUMULATIVE_TRADES = 2;
+    private static final int TICK_QUANTITY = 3;
+    private static final int TICK_NOTIONAL = 4;
+    private static final int TICK_TRADES = 5;
+    private static final int LAST_TICK_QUANTITY = 6;
+    private static final int LAST_TICK_NOTIONAL = 7;
+    private static final int LAST_TICK_TRADES = 8;
+    private static final int STRIDE = 9;
+
+    private final SequenceLock lock = new SequenceLock();
+    private volatile AtomicLongArray totals = new AtomicLongArray(0);
+    private volatile long lastTick = -1;
+
+    /**
+     * Creates new trade statistics with no trades.
+     */
+    TradeStatistics() {
+    }
+
+    /**
+     * Records a trade of a given quantity of a given item for a given total amount of money. Must only be called by the
+     * thread running the market.
+     * @param item The item traded.
+     * @param quantity The quantity of the item traded.
+     * @param notional The total amount of money paid for the item.
+     */
+    void record(Item item, long quantity, double notional) {
+        int base = item.getId() * STRIDE;
+
+        lock.beginWrite();
+        AtomicLongArray totals = this.totals;
+        if (base >= totals.length()) {
+            totals = grow(base);
+        }
+        add(totals, base + CUMULATIVE_QUANTITY, quantity);
+        addDouble(totals, base + CUMULATIVE_NOTIONAL, notional);
+        add(totals, base + CUMULATIVE_TRADES, 1);
+        add(totals, base + TICK_QUANTITY, quantity);
+        addDouble(totals, base + TICK_NOTIONAL, notional);
+        add(totals, base + TICK_TRADES, 1);
+        lock.endWrite();
+    }
+
+    /**
+     * Closes the per-tick totals of the tick which has just ended and starts new, empty ones. Must only be called by the
+     * thread running the market.
+     * @param endedTick The tick which has just ended.
+     */
+    void closeTick(long endedTick) {
+        lock.beginWrite();
+        AtomicLongArray totals = this.totals;
+        for (int base = 0; base < totals.length(); base += STRIDE) {
+            for (int i = 0; i < 3; i++) {
+                totals.lazySet(base + LAST_TICK_QUANTITY + i, totals.get(base + TICK_QUANTITY + i));
+                totals.lazySet(base + TICK_QUANTITY + i, 0L);
+            }
+        }
+        lastTick = endedTick;
+        lock.endWrite();
+    }
+
+    private AtomicLongArray grow(int base) {
+        AtomicLongArray old = totals;
+        AtomicLongArray grown = new AtomicLongArray(Math.max(base + STRIDE, old.length() * 2));
+        for (int i = 0; i < old.length(); i++) {
+            grown.lazySet(i, old.get(i));
+        }
+        totals = grown;
+        return grown;
+    }
+
+    private static void add(AtomicLongArray totals, int i, long amount) {
+        totals.lazySet(i, totals.get(i) + amount);
+    }
+
+    private static void addDouble(AtomicLongArray totals, int i, double amount) {
+        totals.lazySet(i, Double.doubleToRawLongBits(Double.longBitsToDouble(totals.get(i)) + amount));
+    }
+
+    /**
+     * Reads the totals of every trade of a given item since the market was created into a given window.
+     * @param item The item to read the totals of.
+     * @param window The window to read the totals into.
+     */
+    public void readCumulative(Item item, Window window) {
+        read(item, CUMULATIVE_QUANTITY, window);
+    }
+
+    /**
+     * Reads the totals of the trades of a given item during the tick still in progress into a given window.
+     * @param item The item to read the totals of.
+     * @param window The window to read the totals into.
+     */
+    public void readCurrentTick(Item item, Window window) {
+        read(item, TICK_QUANTITY, window);
+    }
+
+    /**
+     * Reads the totals of the trades of a given item during the last tick to have ended into a given window. If no tick
+     * has ended yet, the window's tick is -1 and its totals are zero.
+     * @param item The item to read the totals of.
+     * @param window The window to read the totals into.
+     */
+    public void readLastTick(Item item, Window window) {
+        read(item, LAST_TICK_QUANTITY, window);
+    }
+
+    private void read(Item item, int offset, Window window) {
+        int i = item.getId() * STRIDE + offset;
+        long stamp;
+        do {
+            stamp = lock.beginRead();
+            AtomicLongArray totals = this.totals;
+            if (i < totals.length()) {
+                window.quantity = totals.get(i);
+                window.notional = Double.longBitsToDouble(totals.get(i + 1));
+                window.trades = totals.get(i + 2);
+            } else {
+                window.quantity = 0;
+                window.notional = 0;
+                window.trades = 0;
+            }
+            window.tick = offset == LAST_TICK_QUANTITY ? lastTick : -1;
+        } while (!lock.validate(stamp));
+    }
+
+    /**
+     * Returns the volume-weighted average price of every trade of a given item since the market was created, or NaN if
+     * the item has never been traded.
+     * @param item The item to get the volume-weighted average price of.
+     * @return The volume-weighted average price of the given item, or NaN if the item has never been traded.
+     */
+    public double getVwap(Item item) {
+        Window window = new Window();
+        readCumulative(item, window);
+        return window.getVwap();
+    }
+
+    /**
+     * A reusable holder for the totals of the trades of one item over some window of time.
+     */
+    public static final class Window {
+        /**
+         * The tick this window covers, or -1 if it does not cover a single ended tick.
+         */
+        public long tick = -1;
+        /**
+         * The total quantity of the item traded.
+         */
+        public long quantity;
+        /**
+         * The total amount of money paid for the item.
+         */
+        public double notional;
+        /**
+         * The number of trades of the item.
+         */
+        public long trades;
+
+        /**
+         * Returns the volume-weighted average price of the item over this window, or NaN if none was traded.
+         * @return The volume-weighted average price of the item over this window, or NaN if none was traded.
+         */
+        public double getVwap() {
+            return quantity == 0 ? Double.NaN : notional / quantity;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package economy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How the consumers of a {@link MarketEventBus} wait for events to be published, trading off how quickly they see new
+ * events against how much processor time they use while there are none.
+ *
+ * @author Tristan Batchler
+ * @see MarketEventBus
+ */
+public interface WaitStrategy {
+    /**
+     * Waits until the event with a given number has been published.
+     * @param sequence The number of the event to wait for.
+     * @param cursor The number of the last event published.
+     * @return The number of the last event published, which is at least the given number.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    long waitFor(long sequence, AtomicLong cursor) throws InterruptedException;
+
+    /**
+     * Wakes any consumers blocked waiting for events. Called by the market after every event it publishes, once the
+     * cursor has been moved on with a volatile write, so must be cheap when nobody is blocked.
+     */
+    void signalAll();
+
+    /**
+     * Waits by spinning without pause. Sees new events the soonest, but keeps a processor busy the whole time.
+     */
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            while ((available = cursor.get()) < sequence) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Waits by spinning for a while, then yielding the processor to other threads between checks.
+     */
+    final class Yielding implements WaitStrategy {
+        private static final int SPINS = 100;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            int spins = SPINS;
+            while ((available = cursor.get()) < sequence) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (spins > 0) {
+                    spins--;
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Waits by spinning, then yielding, then sleeping for a short while between checks. Uses little processor time while
+     * idle, at the cost of seeing new events up to a given pause later.
+     */
+    final class Sleeping implements WaitStrategy {
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private final long pauseNanos;
+
+        /**
+         * Creates a new sleeping wait strategy which pauses for 100 microseconds between checks once idle.
+         */
+        public Sleeping() {
+            this(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+
+        /**
+         * Creates a new sleeping wait strategy which pauses for a given time between checks once idle.
+         * @param pauseNanos The time to pause for, in nanoseconds.
+         */
+        public Sleeping(long pauseNanos) {
+            this.pauseNanos = pauseNanos;
+        }
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            int tries = 0;
+            while ((available = cursor.get()) < sequence) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (tries < SPINS) {
+                    tries++;
+                } else if (tries < SPINS + YIELDS) {
+                    tries++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, pauseNanos);
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Waits by blocking on a lock until the market signals that an event has been published. Uses no processor time while
+     * idle, but the market pays to wake the consumers whenever any are blocked.
+     *
+     * A consumer raises a flag before its last check of the cursor, and the market publishes the cursor with a volatile
+     * write before checking the flag, so at least one of them sees the other and no wake-up is missed.
+     */
+    final class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private volatile boolean waiting;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available = cursor.get();
+            if (available >= sequence) {
+                return available;
+            }
+            lock.lockInterruptibly();
+            try {
+                while ((available = cursor.get()) < sequence) {
+                    waiting = true;
+                    // Check again now that the market will see the flag, in case an event was published in between.
+                    if ((available = cursor.get()) >= sequence) {
+                        break;
+                    }
+                    published.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiting) {
+                lock.lock();
+                try {
+                    waiting = false;
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
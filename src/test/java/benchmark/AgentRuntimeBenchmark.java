@@ -0,0 +1,78 @@
+package benchmark;
+
+import economy.*;
+
+/**
+ * Measures how many agents an {@link AgentRuntime} can keep blocked at once, how much heap they take, and how many
+ * trades per second they sustain.
+ *
+ * Every agent repeatedly buys one unit from a random agent and then sleeps for a tick, so each tick every agent makes
+ * one trade attempt and blocks twice.
+ *
+ * Usage: {@code AgentRuntimeBenchmark [agents] [ticks]}. By default a million agents are run if the Java runtime supports
+ * virtual threads, and ten thousand otherwise.
+ */
+public class AgentRuntimeBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        boolean virtual = AgentRuntime.isVirtualThreadSupported();
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : virtual ? 1_000_000 : 10_000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Item item = new Item("Widget");
+
+        System.out.printf("virtual threads: %s, agents: %,d, ticks: %,d%n", virtual ? "yes" : "no", agents, ticks);
+
+        Market market = new Market(0.0);
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < agents; i++) {
+            Agent agent = new Agent("Agent " + i);
+            agent.receive(1_000_000.00);
+            agent.receive(item, 1_000_000);
+            market.addAgent(agent);
+        }
+        market.setPrice(item, 1.00);
+
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            for (Agent agent : market.getAgents()) {
+                runtime.start(agent, context -> {
+                    while (true) {
+                        Agent seller = context.getRandomAgent();
+                        if (seller != context.getAgent()) {
+                            context.buy(seller, item, 1, 1.00);
+                        }
+                        context.sleep(1);
+                    }
+                });
+            }
+            runtime.runTick();
+            System.out.printf("started in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+            System.out.printf("heap with every agent blocked: %,d MB (%,d bytes per agent)%n",
+                    (usedHeap() - heapBefore) >> 20, (usedHeap() - heapBefore) / agents);
+
+            long tradesBefore = tradeCount(market, item);
+            start = System.nanoTime();
+            long requests = 0;
+            for (int t = 0; t < ticks; t++) {
+                requests += runtime.runTick();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long tradesDuring = tradeCount(market, item) - tradesBefore;
+            System.out.printf("%,d requests and %,d trades in %.2f s: %,.0f requests/s, %,.0f trades/s%n",
+                    requests, tradesDuring, seconds, requests / seconds, tradesDuring / seconds);
+        }
+    }
+
+    private static long tradeCount(Market market, Item item) {
+        TradeStatistics.Window window = new TradeStatistics.Window();
+        market.getTradeStatistics().readCumulative(item, window);
+        return window.trades;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import economy.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures how quickly a market can be {@link Market#fork() forked} into what-if branches, and how much memory each
+ * branch needs.
+ *
+ * A market is filled with agents holding a number of different items each, then forked into a number of branches. The
+ * time taken by each fork and the heap retained per branch are printed, then a batch of random trades is made in every
+ * branch and the heap retained per branch is printed again, as the branches stop sharing what they changed.
+ *
+ * Usage: {@code ForkBenchmark [agents] [items per agent] [branches] [trades per branch]}.
+ */
+public class ForkBenchmark {
+    public static void main(String[] args) {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int entries = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int branches = args.length > 2 ? Integer.parseInt(args[2]) : 48;
+        int trades = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        Item[] items = new Item[entries * 4];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Fork Item " + i);
+        }
+
+        Market market = new Market(0.0);
+        for (int i = 0; i < agents; i++) {
+            Agent agent = new Agent("Agent", market);
+            agent.receive(1_000_000.00);
+            for (int e = 0; e < entries; e++) {
+                agent.receive(items[(i + e) % items.length], 1_000);
+            }
+        }
+        long before = retainedHeap();
+
+        Market[] forks = new Market[branches];
+        long start = System.nanoTime();
+        for (int b = 0; b < branches; b++) {
+            forks[b] = market.fork();
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        long forked = retainedHeap();
+        System.out.printf("%,d agents with %d items each: %d forks in %.1f ms (%.2f ms per fork)%n", agents, entries,
+                branches, millis, millis / branches);
+        System.out.printf("%,.0f KB retained per fork (%.1f bytes per agent)%n",
+                (forked - before) / 1024.0 / branches, (double) (forked - before) / branches / agents);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Market fork : forks) {
+            List<Agent> copies = fork.getAgents();
+            OrderBatch orders = new OrderBatch();
+            for (int t = 0; t < trades; t++) {
+                int seller = random.nextInt(agents);
+                orders.add(copies.get(random.nextInt(agents)), copies.get(seller),
+                        items[(seller + random.nextInt(entries)) % items.length], 1, 1.00);
+            }
+            fork.execute(orders);
+        }
+        long traded = retainedHeap();
+        // Use the original and the forks after measuring, so that neither is collected early.
+        System.out.printf("%,.0f KB retained per fork after %,d trades each (%,d agents in every branch)%n",
+                (traded - before) / 1024.0 / branches, trades,
+                market.getAgents().size() + forks[branches - 1].getAgents().size() - agents);
+    }
+
+    /**
+     * Collects every collectable object, then returns the number of bytes of heap still in use.
+     */
+    private static long retainedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,41 @@
+package benchmark;
+
+import economy.*;
+
+/**
+ * Measures what publishing to a {@link MarketEventBus} costs the market, by timing price changes with and without a bus
+ * attached and one consumer reading every event.
+ *
+ * Usage: {@code MarketEventBusBenchmark [events]}.
+ */
+public class MarketEventBusBenchmark {
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 50_000_000;
+        Item item = new Item("Widget");
+
+        Market plain = new Market(0.0);
+        run("no bus", plain, item, events / 10);
+        run("no bus", plain, item, events);
+
+        WaitStrategy[] strategies = {new WaitStrategy.BusySpin(), new WaitStrategy.Yielding(),
+                new WaitStrategy.Sleeping(), new WaitStrategy.Blocking()};
+        for (WaitStrategy strategy : strategies) {
+            Market market = new Market(0.0);
+            long[] seen = new long[1];
+            try (MarketEventBus bus = new MarketEventBus(market, 1 << 16, strategy)) {
+                bus.addConsumer("Consumer", (event, sequence, endOfBatch) -> seen[0]++);
+                run(strategy.getClass().getSimpleName(), market, item, events / 10);
+                run(strategy.getClass().getSimpleName(), market, item, events);
+            }
+        }
+    }
+
+    private static void run(String name, Market market, Item item, int events) {
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            market.setPrice(item, i);
+        }
+        double nanos = System.nanoTime() - start;
+        System.out.printf("%-10s %6.2f ns per price change%n", name, nanos / events);
+    }
+}
@@ -0,0 +1,34 @@
+package benchmark;
+
+import economy.*;
+
+/**
+ * Measures how long it takes to seed a market with agents and items using {@link Market#generateAgents} and
+ * {@link Market#generateItems}.
+ *
+ * Usage: {@code PopulationBenchmark [agents] [item units]}. By default ten million agents and a hundred million item
+ * units are generated, which needs a few gigabytes of heap.
+ */
+public class PopulationBenchmark {
+    public static void main(String[] args) {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        long units = args.length > 1 ? Long.parseLong(args[1]) : 100_000_000L;
+        long maxQuantity = 100;
+        long grants = Math.max(1, units * 2 / maxQuantity);
+
+        Market market = new Market(0.0000001);
+        long start = System.nanoTime();
+        market.generateAgents(agents);
+        long agentsDone = System.nanoTime();
+        market.generateItems(grants, maxQuantity);
+        long itemsDone = System.nanoTime();
+
+        long supply = 0;
+        for (int id = 0; id < Item.getIdCount(); id++) {
+            supply += market.getSupply(Item.forId(id));
+        }
+        System.out.printf("%,d agents in %,d ms%n", agents, (agentsDone - start) / 1_000_000);
+        System.out.printf("%,d item units in %,d grants in %,d ms%n", supply, grants,
+                (itemsDone - agentsDone) / 1_000_000);
+    }
+}
@@ -0,0 +1,84 @@
+package benchmark;
+
+import economy.*;
+
+import java.util.Random;
+
+/**
+ * Compares the cost of working out price changes with the original inline formula, with a {@link PricingModel} called
+ * once per change, and with a {@link PricingModel} called once per batch of changes.
+ *
+ * Usage: {@code PricingModelBenchmark [items] [rounds]}.
+ */
+public class PricingModelBenchmark {
+    private static final double ELASTICITY = 0.0001;
+
+    public static void main(String[] args) {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        Random random = new Random(42);
+        double[] start = new double[items];
+        long[] deltas = new long[items];
+        double[] pressures = new double[items];
+        for (int i = 0; i < items; i++) {
+            start[i] = 1 + random.nextDouble() * 10000;
+            deltas[i] = random.nextInt(21) - 10;
+            pressures[i] = random.nextGaussian();
+        }
+
+        PricingModel model = LinearPricingModel.INSTANCE;
+        double[] prices = start.clone();
+        for (int warmup = 0; warmup < 5; warmup++) {
+            inline(prices, deltas, pressures, rounds / 10);
+            scalar(model, prices, deltas, pressures, rounds / 10);
+            model.apply(prices, deltas, pressures, items, ELASTICITY);
+        }
+
+        long operations = (long) items * rounds;
+        prices = start.clone();
+        long time = System.nanoTime();
+        inline(prices, deltas, pressures, rounds);
+        report("inline", System.nanoTime() - time, operations, prices);
+
+        prices = start.clone();
+        time = System.nanoTime();
+        scalar(model, prices, deltas, pressures, rounds);
+        report("model, per change", System.nanoTime() - time, operations, prices);
+
+        prices = start.clone();
+        time = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            model.apply(prices, deltas, pressures, items, ELASTICITY);
+        }
+        report("model, per batch", System.nanoTime() - time, operations, prices);
+    }
+
+    private static void inline(double[] prices, long[] deltas, double[] pressures, int rounds) {
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < prices.length; i++) {
+                double price = prices[i];
+                price = Math.max(0, price + -price * ELASTICITY * deltas[i]);
+                prices[i] = Math.max(0, price + pressures[i]);
+            }
+        }
+    }
+
+    private static void scalar(PricingModel model, double[] prices, long[] deltas, double[] pressures, int rounds) {
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = model.demandChanged(model.supplyChanged(prices[i], deltas[i], ELASTICITY), pressures[i],
+                        ELASTICITY);
+            }
+        }
+    }
+
+    private static void report(String name, long nanos, long operations, double[] prices) {
+        double checksum = 0;
+        for (double price : prices) {
+            checksum += price;
+        }
+        System.out.printf("%-18s %6.2f ns per price change (checksum %.4f)%n", name, (double) nanos / operations,
+                checksum);
+    }
+}
@@ -0,0 +1,229 @@
+package benchmark;
+
+import economy.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures how the memory and speed of a market scale with its number of agents, to size heaps from measurements
+ * rather than guesswork.
+ *
+ * For every power of ten from a thousand agents up to the given maximum, a fresh market is filled with agents, then
+ * every agent is given the same number of distinct item types drawn from a pool, so that the ratio of the two sets how
+ * sparse inventories are. After each stage every collectable object is collected, and the heap still in use gives the
+ * memory retained per agent and per inventory entry. Last, a batch of random trades between the agents is timed.
+ *
+ * One row per size is printed and written as CSV to the report file.
+ *
+ * The storage is one of:
+ * <ul>
+ *     <li>{@code heap}: {@link Agent}s in a {@link Market}, each with an {@link Inventory}, which keeps a few items in
+ *     small arrays and more in a trie.</li>
+ *     <li>{@code offheap}: records in an {@link OffHeapAgentStore} with twice as many inventory slots as entries,
+ *     traded with {@link AgentStore#buy}. Memory outside the heap is reported separately.</li>
+ *     <li>{@code mapped}: records in a {@link MappedAgentStore} in a new temporary directory, with as many inventory
+ *     slots as entries, traded with {@link AgentStore#buy}. The size of its files is reported as the memory outside
+ *     the heap.</li>
+ * </ul>
+ *
+ * Usage: {@code ScalingBenchmark [max agents] [entries per agent] [item types] [storage] [report file]}. By default
+ * markets of up to a million agents with 4 of 1,000 item types each are measured, using {@code heap} storage, and the
+ * report is written to {@code scaling-report.csv}. Measuring ten million agents needs several gigabytes of heap, or of
+ * direct memory ({@code -XX:MaxDirectMemorySize}) for {@code offheap}, or of disk for {@code mapped}.
+ */
+public class ScalingBenchmark {
+    private static final int TRADES = 1_000_000;
+    private static final long STOCK = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        int maxAgents = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int entries = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int types = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String storage = args.length > 3 ? args[3] : "heap";
+        String report = args.length > 4 ? args[4] : "scaling-report.csv";
+        if (entries > types) {
+            throw new IllegalArgumentException("entries per agent cannot exceed the number of item types");
+        }
+        if (!storage.equals("heap") && !storage.equals("offheap") && !storage.equals("mapped")) {
+            throw new IllegalArgumentException("unknown storage " + storage);
+        }
+
+        Item[] items = new Item[types];
+        for (int i = 0; i < types; i++) {
+            items[i] = new Item("Scaling Item " + i);
+        }
+
+        try (PrintWriter csv = new PrintWriter(new FileWriter(report))) {
+            csv.println("storage,agents,entries_per_agent,item_types,bytes_per_agent,bytes_per_entry,"
+                    + "offheap_bytes_per_agent,trades_per_second");
+            System.out.printf("%-8s %12s %16s %16s %16s %16s%n", "storage", "agents", "bytes/agent", "bytes/entry",
+                    "offheap/agent", "trades/s");
+            for (long agents = 1000; agents <= maxAgents; agents *= 10) {
+                Row row = storage.equals("heap")
+                        ? measureHeap((int) agents, entries, items)
+                        : measureStore(storage, (int) agents, entries, items);
+                csv.printf(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.1f,%.1f,%.0f%n", storage, agents, entries, types,
+                        row.bytesPerAgent, row.bytesPerEntry, row.offHeapBytesPerAgent, row.tradesPerSecond);
+                csv.flush();
+                System.out.printf("%-8s %,12d %,16.1f %,16.1f %,16.1f %,16.0f%n", storage, agents, row.bytesPerAgent,
+                        row.bytesPerEntry, row.offHeapBytesPerAgent, row.tradesPerSecond);
+            }
+        }
+        System.out.println("Report written to " + report);
+    }
+
+    private static Row measureHeap(int count, int entries, Item[] items) {
+        Row row = new Row();
+        long empty = retainedHeap();
+
+        Market market = new Market(0.0);
+        Agent[] agents = new Agent[count];
+        for (int i = 0; i < count; i++) {
+            agents[i] = new Agent("Agent", market);
+        }
+        long withAgents = retainedHeap();
+        row.bytesPerAgent = (double) (withAgents - empty) / count;
+
+        for (int i = 0; i < count; i++) {
+            for (int e = 0; e < entries; e++) {
+                agents[i].receive(itemOf(i, e, entries, items), STOCK);
+            }
+            agents[i].receive(1_000_000_000.00);
+        }
+        for (Item item : items) {
+            market.setPrice(item, 1.00);
+        }
+        long withItems = retainedHeap();
+        row.bytesPerEntry = entries == 0 ? 0 : (double) (withItems - withAgents) / ((long) count * entries);
+
+        if (entries > 0) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            OrderBatch orders = new OrderBatch();
+            for (int t = 0; t < TRADES; t++) {
+                int seller = random.nextInt(count);
+                orders.add(agents[random.nextInt(count)], agents[seller],
+                        itemOf(seller, random.nextInt(entries), entries, items), 1, 1.00);
+            }
+            long start = System.nanoTime();
+            int filled = market.execute(orders);
+            row.tradesPerSecond = filled / ((System.nanoTime() - start) / 1e9);
+        }
+        return row;
+    }
+
+    private static Row measureStore(String storage, int count, int entries, Item[] items) throws IOException {
+        Row row = new Row();
+        long empty = retainedHeap();
+
+        File directory = null;
+        AgentStore store;
+        if (storage.equals("offheap")) {
+            store = new OffHeapAgentStore(2 * entries);
+        } else {
+            directory = Files.createTempDirectory("scaling").toFile();
+            store = new MappedAgentStore(directory, entries);
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                store.add("Agent");
+            }
+            long withAgents = retainedHeap();
+            row.bytesPerAgent = (double) (withAgents - empty) / count;
+
+            StoredAgent cursor = new StoredAgent(store);
+            for (int i = 0; i < count; i++) {
+                cursor.moveTo(i);
+                for (int e = 0; e < entries; e++) {
+                    cursor.receive(itemOf(i, e, entries, items), STOCK);
+                }
+                cursor.receive(1_000_000_000.00);
+            }
+            long withItems = retainedHeap();
+            row.bytesPerEntry = entries == 0 ? 0 : (double) (withItems - withAgents) / ((long) count * entries);
+            row.offHeapBytesPerAgent = (double) outsideHeap(store, directory) / count;
+
+            if (entries > 0) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int[] buyers = new int[TRADES];
+                int[] sellers = new int[TRADES];
+                Item[] bought = new Item[TRADES];
+                for (int t = 0; t < TRADES; t++) {
+                    buyers[t] = random.nextInt(count);
+                    sellers[t] = random.nextInt(count);
+                    bought[t] = itemOf(sellers[t], random.nextInt(entries), entries, items);
+                }
+                long start = System.nanoTime();
+                int filled = 0;
+                for (int t = 0; t < TRADES; t++) {
+                    if (store.buy(buyers[t], sellers[t], bought[t], 1, 1.00)) {
+                        filled++;
+                    }
+                }
+                row.tradesPerSecond = filled / ((System.nanoTime() - start) / 1e9);
+            }
+        } finally {
+            store.close();
+            if (directory != null) {
+                for (File file : directory.listFiles()) {
+                    file.delete();
+                }
+                directory.delete();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Returns the number of bytes a given store holds outside the heap: its direct memory, or the length of its files.
+     */
+    private static long outsideHeap(AgentStore store, File directory) {
+        if (store instanceof OffHeapAgentStore) {
+            return ((OffHeapAgentStore) store).getMemoryUsed();
+        }
+        long bytes = 0;
+        for (File file : directory.listFiles()) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the item type of a given entry in the inventory of the agent with a given index.
+     */
+    private static Item itemOf(int agent, int entry, int entries, Item[] items) {
+        return items[(int) (((long) agent * entries + entry) % items.length)];
+    }
+
+    /**
+     * Collects every collectable object, then returns the number of bytes of heap still in use.
+     */
+    private static long retainedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static final class Row {
+        double bytesPerAgent;
+        double bytesPerEntry;
+        double offHeapBytesPerAgent;
+        double tradesPerSecond;
+    }
+}
@@ -0,0 +1,37 @@
+package benchmark;
+
+import economy.*;
+
+/**
+ * Measures how many strategy evaluations per second a market can make, with every agent in one
+ * {@link NoiseTraderStrategy} group.
+ *
+ * Usage: {@code StrategyBenchmark [agents] [ticks] [probability]}.
+ */
+public class StrategyBenchmark {
+    public static void main(String[] args) {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double probability = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+
+        Market market = new Market(0.0000001);
+        market.generateAgents(agents);
+        market.generateMoney(agents * 1000.00);
+        market.generateItems(agents, 100);
+        Item[] items = market.getItemsList().toArray(new Item[0]);
+
+        StrategyGroup group = market.addStrategyGroup(new NoiseTraderStrategy(items, probability, 1, 0.05));
+        for (Agent agent : market.getAgents()) {
+            group.add(agent);
+        }
+
+        market.tick();
+        long start = System.nanoTime();
+        for (int t = 0; t < ticks; t++) {
+            market.tick();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d agents, %,d ticks in %.2f s: %,.0f evaluations/s%n", agents, ticks, seconds,
+                (double) agents * ticks / seconds);
+    }
+}
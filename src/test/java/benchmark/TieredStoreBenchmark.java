@@ -0,0 +1,66 @@
+package benchmark;
+
+import economy.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures how well a {@link TieredAgentStore} in front of a {@link MappedAgentStore} copes with a market in which a
+ * small fraction of agents make most of the trades.
+ *
+ * Nine in ten trades are between agents drawn from the first {@code hot fraction} of agents, and the rest between any
+ * agents at all. The hit rate, evictions and throughput are printed.
+ *
+ * Usage: {@code TieredStoreBenchmark [agents] [cache capacity] [hot fraction] [trades]}.
+ */
+public class TieredStoreBenchmark {
+    public static void main(String[] args) throws IOException {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        double hotFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        int trades = args.length > 3 ? Integer.parseInt(args[3]) : 5_000_000;
+        int hot = Math.max(2, (int) (agents * hotFraction));
+
+        Item[] items = new Item[16];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Tiered Item " + i);
+        }
+
+        File directory = Files.createTempDirectory("tiered").toFile();
+        try (TieredAgentStore store = new TieredAgentStore(new MappedAgentStore(directory), capacity)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < agents; i++) {
+                int index = store.add("Agent");
+                store.setMoney(index, 1_000_000.00);
+                store.setQuantity(index, items[i % items.length], 1_000_000);
+            }
+            System.out.printf("%,d agents stored in %,d ms%n", agents, (System.nanoTime() - start) / 1_000_000);
+            store.resetStatistics();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int filled = 0;
+            start = System.nanoTime();
+            for (int t = 0; t < trades; t++) {
+                int range = random.nextInt(10) == 0 ? agents : hot;
+                int seller = random.nextInt(range);
+                if (store.buy(random.nextInt(range), seller, items[seller % items.length], 1, 1.00)) {
+                    filled++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d of %,d trades in %.2f s: %,.0f trades/s%n", filled, trades, seconds,
+                    filled / seconds);
+            System.out.printf("hit rate %.1f%%, %,d evictions (%,d written back), %.0f ns per eviction%n",
+                    100 * store.getHitRate(), store.getEvictions(), store.getWriteBacks(),
+                    store.getMeanEvictionNanos());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package common;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes of heap an operation allocates each time it runs on the current thread, so that tests can
+ * hold hot paths to an allocation budget.
+ *
+ * The operation is first run enough times for the JIT to compile it, so that allocations it would optimise away (such
+ * as objects which never escape) are not counted. It is then run many more times between two readings of the thread's
+ * allocation counter, and the difference is averaged, so the cost of reading the counter itself is negligible.
+ *
+ * Needs the HotSpot extension {@code com.sun.management.ThreadMXBean}; see {@link #isSupported()}.
+ *
+ * @author Tristan Batchler
+ */
+public final class AllocationMeter {
+    /**
+     * The number of times an operation is run before being measured, by default.
+     */
+    public static final int DEFAULT_WARMUP = 50_000;
+    /**
+     * The number of times an operation is run while being measured, by default.
+     */
+    public static final int DEFAULT_ITERATIONS = 100_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+
+    /**
+     * An operation to measure.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        /**
+         * Runs the operation once.
+         * @throws Exception If the operation fails.
+         */
+        void run() throws Exception;
+    }
+
+    private AllocationMeter() {
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return threads;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Not a HotSpot JVM.
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if and only if the JVM can count the bytes allocated by each thread.
+     * @return True if allocations can be measured; false otherwise.
+     */
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Returns the mean number of bytes a given operation allocates each time it runs, after the default warmup.
+     * @param operation The operation to measure.
+     * @return The mean number of bytes allocated per run.
+     * @throws Exception If the operation fails.
+     * @throws IllegalStateException If allocations cannot be measured.
+     */
+    public static double bytesPerOperation(Operation operation) throws Exception, IllegalStateException {
+        return bytesPerOperation(operation, DEFAULT_WARMUP, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Returns the mean number of bytes a given operation allocates each time it runs.
+     * @param operation The operation to measure.
+     * @param warmup The number of times to run the operation before measuring.
+     * @param iterations The positive number of times to run the operation while measuring.
+     * @return The mean number of bytes allocated per run.
+     * @throws Exception If the operation fails.
+     * @throws IllegalStateException If allocations cannot be measured.
+     */
+    public static double bytesPerOperation(Operation operation, int warmup, int iterations)
+            throws Exception, IllegalStateException {
+        if (THREADS == null) {
+            throw new IllegalStateException("thread allocation counting is not supported");
+        }
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long after = THREADS.getThreadAllocatedBytes(thread);
+        return (double) (after - before) / iterations;
+    }
+
+    /**
+     * Fails with an AssertionError if a given operation allocates more than a given number of bytes per run on average.
+     * The average is rounded to the nearest byte first, so that the odd allocation made by the JVM itself while measuring
+     * (such as a new allocation buffer) does not fail an operation which allocates nothing.
+     * @param name The name of the operation, for the failure message.
+     * @param budget The most bytes the operation may allocate per run.
+     * @param operation The operation to measure.
+     * @throws Exception If the operation fails.
+     * @throws AssertionError If the operation allocates more than its budget.
+     */
+    public static void assertWithinBudget(String name, long budget, Operation operation) throws Exception {
+        double bytes = bytesPerOperation(operation);
+        if (Math.round(bytes) > budget) {
+            throw new AssertionError(String.format("%s allocated %.1f bytes per call, over its budget of %d bytes",
+                    name, bytes, budget));
+        }
+    }
+}
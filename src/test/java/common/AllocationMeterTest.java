@@ -0,0 +1,42 @@
+package common;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link AllocationMeter} class.
+ */
+public class AllocationMeterTest {
+    static volatile Object sink;
+
+    @Before
+    public void supported() {
+        Assume.assumeTrue(AllocationMeter.isSupported());
+    }
+
+    @Test
+    public void nothingAllocatedMeasuresZero() throws Exception {
+        int[] counter = new int[1];
+        assertEquals(0.0, AllocationMeter.bytesPerOperation(() -> counter[0]++), 1.0);
+    }
+
+    @Test
+    public void arrayAllocationIsMeasured() throws Exception {
+        double bytes = AllocationMeter.bytesPerOperation(() -> sink = new byte[1000], 1_000, 10_000);
+        assertTrue(bytes >= 1000);
+        assertTrue(bytes < 1100);
+    }
+
+    @Test
+    public void withinBudgetPasses() throws Exception {
+        AllocationMeter.assertWithinBudget("allocating 1000 bytes", 1100, () -> sink = new byte[1000]);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void overBudgetFails() throws Exception {
+        AllocationMeter.assertWithinBudget("allocating 1000 bytes", 100, () -> sink = new byte[1000]);
+    }
+}
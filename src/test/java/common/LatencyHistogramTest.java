@@ -0,0 +1,71 @@
+package common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsAreContiguous() {
+        long previousHighest = -1;
+        for (int index = 0; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+            long highest = LatencyHistogram.highestValueIn(index);
+            assertEquals(index, LatencyHistogram.indexOf(previousHighest + 1));
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            assertTrue(highest > previousHighest);
+            previousHighest = highest;
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void percentilesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 1e-9);
+        assertEquals(50000, histogram.getValueAtPercentile(50), 500);
+        assertEquals(99000, histogram.getValueAtPercentile(99), 990);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(7);
+        assertEquals(0, histogram.getValueAtPercentile(33));
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(100));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void percentileOutOfRange() {
+        new LatencyHistogram().getValueAtPercentile(100.1);
+    }
+
+    @Test
+    public void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,66 @@
+package common;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link SequenceLock} class.
+ */
+public class SequenceLockTest {
+    @Test
+    public void readWithoutWrites() {
+        SequenceLock lock = new SequenceLock();
+        long stamp = lock.beginRead();
+        assertTrue(lock.validate(stamp));
+    }
+
+    @Test
+    public void writeInvalidatesRead() {
+        SequenceLock lock = new SequenceLock();
+        long stamp = lock.beginRead();
+        lock.beginWrite();
+        lock.endWrite();
+        assertFalse(lock.validate(stamp));
+        assertTrue(lock.validate(lock.beginRead()));
+    }
+
+    @Test
+    public void readersNeverSeeTornWrites() throws InterruptedException {
+        SequenceLock lock = new SequenceLock();
+        AtomicLongArray data = new AtomicLongArray(4);
+        boolean[] torn = {false};
+
+        Thread reader = new Thread(() -> {
+            long[] copy = new long[4];
+            for (int i = 0; i < 100000; i++) {
+                long stamp;
+                do {
+                    stamp = lock.beginRead();
+                    for (int j = 0; j < 4; j++) {
+                        copy[j] = data.get(j);
+                    }
+                } while (!lock.validate(stamp));
+
+                for (int j = 1; j < 4; j++) {
+                    if (copy[j] != copy[0]) {
+                        torn[0] = true;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (long value = 1; value <= 1000000; value++) {
+            lock.beginWrite();
+            for (int j = 0; j < 4; j++) {
+                data.lazySet(j, value);
+            }
+            lock.endWrite();
+        }
+        reader.join();
+
+        assertFalse(torn[0]);
+    }
+}
@@ -0,0 +1,43 @@
+package common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link StripedCounter} class.
+ */
+public class StripedCounterTest {
+    @Test (expected = IllegalArgumentException.class)
+    public void nonPositiveStripes() {
+        new StripedCounter(0);
+    }
+
+    @Test
+    public void addAndReset() {
+        StripedCounter counter = new StripedCounter(3);
+        counter.increment();
+        counter.add(41);
+        assertEquals(42, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void concurrentIncrements() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    counter.increment();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800000, counter.sum());
+    }
+}
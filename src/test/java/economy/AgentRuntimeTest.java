@@ -0,0 +1,168 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link AgentRuntime} and {@link AgentContext} classes.
+ */
+public class AgentRuntimeTest {
+    Item item = new Item("Runtime Item");
+
+    @Test (expected = IllegalArgumentException.class)
+    public void startAgentFromAnotherMarket() {
+        Market market = new Market(0.05);
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            runtime.start(new Agent("Stranger", new Market(0.05)), context -> { });
+        }
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void startAfterClose() {
+        Market market = new Market(0.05);
+        AgentRuntime runtime = new AgentRuntime(market);
+        runtime.close();
+        runtime.start(new Agent("Late", market), context -> { });
+    }
+
+    @Test
+    public void agentsTradeAndSleep() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        Agent seller = new Agent("Seller", market);
+        seller.receive(item, 1000);
+        market.setPrice(item, 2.00);
+
+        List<Agent> buyers = new ArrayList<>();
+        List<Boolean> trades = Collections.synchronizedList(new ArrayList<>());
+        List<Long> wakeTicks = Collections.synchronizedList(new ArrayList<>());
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            for (int i = 0; i < 10; i++) {
+                Agent buyer = new Agent("Buyer " + i, market);
+                buyer.receive(100.00);
+                buyers.add(buyer);
+                runtime.start(buyer, context -> {
+                    for (int t = 0; t < 5; t++) {
+                        double price = context.getPrice(item);
+                        trades.add(context.buy(seller, item, 1, price));
+                        context.sleep(2);
+                        wakeTicks.add(context.getTick());
+                    }
+                });
+            }
+            assertEquals(10, runtime.getAgentCount());
+
+            long answered = 0;
+            // The last tick only waits for the agents woken at tick 10 to finish.
+            for (int t = 0; t < 11; t++) {
+                answered += runtime.runTick();
+            }
+            assertEquals(10 * 5 * 3, answered);
+            assertEquals(0, runtime.getAgentCount());
+        }
+
+        assertEquals(11, market.getTick());
+        for (Agent buyer : buyers) {
+            assertEquals(5, buyer.inventory.getQuantity(item));
+            assertEquals(90.00, buyer.getMoney(), 1e-9);
+        }
+        assertEquals(950, seller.inventory.getQuantity(item));
+        assertEquals(Collections.nCopies(50, true), trades);
+        assertEquals(50, wakeTicks.size());
+        for (long tick : wakeTicks) {
+            assertEquals(0, tick % 2);
+        }
+    }
+
+    @Test
+    public void failedTradeReturnsFalse() {
+        Market market = new Market(0.0);
+        Agent seller = new Agent("Seller", market);
+        Agent buyer = new Agent("Buyer", market);
+        seller.receive(item, 1);
+
+        boolean[] results = new boolean[2];
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            runtime.start(buyer, context -> {
+                results[0] = context.buy(seller, item, 1, 1.00);
+                results[1] = Double.isNaN(context.getPrice(new Item("Unpriced Runtime Item")));
+            });
+            runtime.runTick();
+        }
+        assertFalse(results[0]);
+        assertTrue(results[1]);
+        assertEquals(1, seller.inventory.getQuantity(item));
+    }
+
+    @Test (timeout = 10000)
+    public void failingRequestStillAnswered() {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        buyer.receive(100.00);
+        // Restored without the market pricing the seller's stock, so buying it fails with an IllegalStateException.
+        Agent seller = new Agent("Seller");
+        Item unpriced = new Item("Unpriced Runtime Item");
+        seller.receive(unpriced, 1);
+        market.attachAgent(seller);
+
+        boolean[] results = new boolean[2];
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            runtime.start(buyer, context -> {
+                results[0] = context.buy(seller, unpriced, 1, 1.00);
+                results[1] = Double.isNaN(context.getPrice(unpriced));
+            });
+            assertEquals(2, runtime.runTick());
+            assertEquals(0, runtime.getAgentCount());
+        }
+        assertFalse(results[0]);
+        assertTrue(results[1]);
+        assertEquals(100.00, buyer.getMoney(), 1e-9);
+    }
+
+    @Test
+    public void sleepNonPositive() {
+        Market market = new Market(0.0);
+        Agent agent = new Agent("Sleeper", market);
+        boolean[] thrown = new boolean[1];
+        try (AgentRuntime runtime = new AgentRuntime(market)) {
+            runtime.start(agent, context -> {
+                try {
+                    context.sleep(0);
+                } catch (IllegalArgumentException e) {
+                    thrown[0] = true;
+                }
+            });
+            runtime.runTick();
+        }
+        assertTrue(thrown[0]);
+    }
+
+    @Test
+    public void closeStopsSleepingAgents() {
+        Market market = new Market(0.0);
+        boolean[] interrupted = new boolean[3];
+        AgentRuntime runtime = new AgentRuntime(market, Executors.defaultThreadFactory());
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            runtime.start(new Agent("Agent " + i, market), context -> {
+                try {
+                    context.sleep(Long.MAX_VALUE / 2);
+                } catch (InterruptedException e) {
+                    interrupted[index] = true;
+                    throw e;
+                }
+            });
+        }
+        runtime.runTick();
+        assertEquals(3, runtime.getAgentCount());
+
+        runtime.close();
+        assertEquals(0, runtime.getAgentCount());
+        assertArrayEquals(new boolean[] {true, true, true}, interrupted);
+    }
+}
@@ -0,0 +1,171 @@
+package economy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link AgentStrategy}, {@link StrategyGroup} and {@link OrderBatch} classes.
+ */
+public class AgentStrategyTest {
+    Item item = new Item("Strategy Item");
+
+    @Test
+    public void orderBatchGrows() {
+        OrderBatch orders = new OrderBatch(1);
+        Agent a = new Agent("A");
+        Agent b = new Agent("B");
+        for (int i = 0; i < 10; i++) {
+            orders.add(a, b, item, i, i * 2.0);
+        }
+        assertEquals(10, orders.size());
+        assertSame(b, orders.getSeller(9));
+        assertEquals(9, orders.getQuantity(9));
+        assertEquals(18.0, orders.getPrice(9), 0.0);
+
+        orders.clear();
+        assertEquals(0, orders.size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void orderBatchNonPositiveCapacity() {
+        new OrderBatch(0);
+    }
+
+    @Test
+    public void executeSkipsRefusedOrders() {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        Agent stranger = new Agent("Stranger");
+        buyer.receive(100.00);
+        seller.receive(item, 5);
+
+        OrderBatch orders = new OrderBatch();
+        orders.add(buyer, seller, item, 2, 10.00);
+        orders.add(buyer, seller, item, 10, 1.00);
+        orders.add(buyer, seller, item, 1, 1000.00);
+        orders.add(buyer, stranger, item, 1, 1.00);
+        orders.add(buyer, seller, item, 0, 1.00);
+        orders.add(buyer, seller, item, 3, 10.00);
+
+        assertEquals(2, market.execute(orders));
+        assertEquals(5, buyer.inventory.getQuantity(item));
+        assertEquals(50.00, buyer.getMoney(), 1e-9);
+        assertEquals(50.00, seller.getMoney(), 1e-9);
+    }
+
+    @Test
+    public void strategyRunsEachTick() {
+        Market market = new Market(0.0);
+        Agent seller = new Agent("Seller", market);
+        seller.receive(item, 1000);
+        market.setPrice(item, 1.00);
+
+        StrategyGroup group = market.addStrategyGroup((g, orders) -> {
+            for (int i = 0; i < g.size(); i++) {
+                g.setState(i, g.getState(i) + 1);
+                orders.add(g.getAgent(i), seller, item, 1, 1.00);
+            }
+        });
+        Agent[] buyers = new Agent[5];
+        for (int i = 0; i < buyers.length; i++) {
+            buyers[i] = new Agent("Buyer " + i, market);
+            buyers[i].receive(2.00);
+            group.add(buyers[i]);
+        }
+
+        for (int t = 0; t < 3; t++) {
+            market.tick();
+        }
+        for (int i = 0; i < buyers.length; i++) {
+            assertEquals(2, buyers[i].inventory.getQuantity(item));
+            assertEquals(0.00, buyers[i].getMoney(), 1e-9);
+            assertEquals(3, group.getState(i), 0.0);
+            assertEquals(0.00, group.getMoney(i), 1e-9);
+        }
+        assertEquals(990, seller.inventory.getQuantity(item));
+    }
+
+    @Test
+    public void agentsLeavingMarketLeaveGroup() {
+        Market market = new Market(0.0);
+        StrategyGroup group = market.addStrategyGroup((g, orders) -> { });
+        Agent a = new Agent("A", market);
+        Agent b = new Agent("B", market);
+        group.add(a);
+        group.add(b);
+        group.setState(1, 42);
+
+        market.removeAgent(a);
+        market.tick();
+        assertEquals(1, group.size());
+        assertSame(b, group.getAgent(0));
+        assertEquals(42, group.getState(0), 0.0);
+
+        group.remove(b);
+        assertEquals(0, group.size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void addAgentFromAnotherMarket() {
+        Market market = new Market(0.0);
+        market.addStrategyGroup((g, orders) -> { }).add(new Agent("Stranger"));
+    }
+
+    @Test
+    public void noiseTradersConserveGoodsAndMoney() {
+        Market market = new Market(0.0001);
+        market.generateAgents(1000);
+        market.generateMoney(1000000.00);
+        market.generateItems(1000, 100);
+        Item[] items = market.getItemsList().toArray(new Item[0]);
+        long supply = 0;
+        for (Item i : items) {
+            supply += market.getSupply(i);
+        }
+
+        StrategyGroup group = market.addStrategyGroup(new NoiseTraderStrategy(items, 0.5, 1, 0.1));
+        for (Agent agent : market.getAgents()) {
+            group.add(agent);
+        }
+        for (int t = 0; t < 20; t++) {
+            market.tick();
+        }
+
+        long after = 0;
+        for (Item i : items) {
+            after += market.getSupply(i);
+        }
+        double money = 0;
+        for (Agent agent : market.getAgents()) {
+            money += agent.getMoney();
+        }
+        assertEquals(supply, after);
+        assertEquals(1000000.00, money, 1e-3);
+    }
+
+    @Test
+    public void noiseTradersBuyFromHoldersWhenMarketIndexesThem() {
+        Market market = new Market(0.0);
+        market.setPrice(item, 1.00);
+        market.generateAgents(100);
+        market.generateMoney(1000.00);
+        Agent holder = market.getAgents().get(37);
+        holder.receive(item, 1000);
+        market.enableHolderIndex();
+
+        NoiseTraderStrategy strategy = new NoiseTraderStrategy(new Item[] {item}, 1.0, 1, 0.0);
+        StrategyGroup group = market.addStrategyGroup(strategy);
+        for (Agent agent : market.getAgents()) {
+            group.add(agent);
+        }
+        OrderBatch orders = new OrderBatch();
+        strategy.evaluate(group, orders);
+
+        assertEquals(100, orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            assertSame(holder, orders.getSeller(i));
+        }
+    }
+}
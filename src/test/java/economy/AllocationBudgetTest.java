@@ -0,0 +1,139 @@
+package economy;
+
+import common.AllocationMeter;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Holds the hot paths of trading, inventories and prices to a budget of bytes allocated per call, so that a change which
+ * adds boxing, varargs or string formatting to them fails here rather than in a profile.
+ *
+ * The budgets are for markets as they run in production, with instrumentation and Flight Recorder events switched off,
+ * so the build runs these tests in a separate execution with both off, and they are skipped in any other configuration.
+ * Every budgeted path allocates nothing.
+ */
+public class AllocationBudgetTest {
+    /**
+     * Prices are kept in a {@link PriceTable} of primitives and small inventories in arrays, so a purchase allocates
+     * nothing.
+     */
+    static final long BUY_BUDGET = 0;
+    /**
+     * Small inventories keep quantities in arrays, so changing one allocates nothing.
+     */
+    static final long INVENTORY_BUDGET = 0;
+    /**
+     * Setting a price allocates nothing.
+     */
+    static final long PRICE_BUDGET = 0;
+
+    Item item = new Item("Budget Item");
+
+    @Before
+    public void supported() {
+        Assume.assumeTrue(AllocationMeter.isSupported());
+        Assume.assumeFalse(MarketMetrics.ENABLED || FlightEvents.ENABLED);
+    }
+
+    @Test
+    public void buyWithinBudget() throws Exception {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(1e12);
+        seller.receive(item, 1_000_000_000L);
+        market.setPrice(item, 1.00);
+
+        AllocationMeter.assertWithinBudget("Market.buy", BUY_BUDGET, () -> market.buy(buyer, seller, item, 1, 1.00));
+    }
+
+    @Test
+    public void rejectedBuyAllocatesNothing() throws Exception {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        market.setPrice(item, 1.00);
+
+        AllocationMeter.assertWithinBudget("Market.buy with nothing to trade", 0,
+                () -> market.buy(buyer, seller, item, 0, 1.00));
+    }
+
+    @Test
+    public void inventoryAddWithinBudget() throws Exception {
+        Inventory inventory = new Inventory();
+        inventory.add(item, 1000);
+
+        AllocationMeter.assertWithinBudget("Inventory.add", INVENTORY_BUDGET, () -> inventory.add(item, 1));
+    }
+
+    @Test
+    public void inventoryRemoveWithinBudget() throws Exception {
+        Inventory inventory = new Inventory();
+        inventory.add(item, 1_000_000_000L);
+
+        AllocationMeter.assertWithinBudget("Inventory.remove", INVENTORY_BUDGET, () -> inventory.remove(item, 1));
+    }
+
+    @Test
+    public void inventoryReadsAllocateNothing() throws Exception {
+        Inventory inventory = new Inventory();
+        inventory.add(item, 1000);
+
+        AllocationMeter.assertWithinBudget("Inventory.getQuantity", 0, () -> inventory.getQuantity(item));
+    }
+
+    @Test
+    public void setPriceWithinBudget() throws Exception {
+        Market market = new Market(0.0);
+        market.setPrice(item, 1.00);
+
+        AllocationMeter.assertWithinBudget("Market.setPrice", PRICE_BUDGET, () -> market.setPrice(item, 1.50));
+    }
+
+    @Test
+    public void changePriceWithinBudget() throws Exception {
+        Market market = new Market(0.0);
+        market.setPrice(item, 1.00);
+
+        AllocationMeter.assertWithinBudget("Market.changePrice", PRICE_BUDGET, () -> market.changePrice(item, 0.0));
+    }
+
+    @Test
+    public void metricsCaptureAllocatesNothing() throws Exception {
+        Market market = new Market(0.0);
+        market.enableRangeIndexes();
+        new Agent("Agent", market).receive(item, 10);
+        market.setPrice(item, 1.00);
+        File file = File.createTempFile("metrics", null);
+        file.deleteOnExit();
+        MetricsExporter exporter = new MetricsExporter(market, file, 1 << 16);
+        try {
+            AllocationMeter.assertWithinBudget("MetricsExporter.capture", 0, exporter::capture);
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test
+    public void noiseTraderEvaluationAllocatesNothing() throws Exception {
+        Market market = new Market(0.0);
+        market.setPrice(item, 1.00);
+        StrategyGroup group = market.addStrategyGroup(new NoiseTraderStrategy(new Item[] {item}, 0.0, 1, 0.1));
+        group.add(new Agent("Agent", market));
+        OrderBatch orders = new OrderBatch();
+
+        AllocationMeter.assertWithinBudget("NoiseTraderStrategy.evaluate", 0,
+                () -> group.strategy.evaluate(group, orders));
+    }
+
+    @Test
+    public void getPriceAllocatesNothing() throws Exception {
+        Market market = new Market(0.0);
+        market.setPrice(item, 1.00);
+
+        AllocationMeter.assertWithinBudget("Market.getPrice", 0, () -> market.getPrice(item));
+    }
+}
@@ -0,0 +1,150 @@
+package economy;
+
+import common.AllocationMeter;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link FlightEvents} class. The build runs tests with the events switched on.
+ */
+public class FlightEventsTest {
+    Item item = new Item("Flight Item");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void marketActivityIsRecorded() throws Exception {
+        Assume.assumeTrue(FlightEvents.ENABLED);
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"economy.Trade", "economy.PriceChange", "economy.AgentAdded",
+                    "economy.AgentRemoved", "economy.TickPhase"}) {
+                recording.enable(name).withThreshold(java.time.Duration.ZERO);
+            }
+            recording.start();
+
+            Market market = new Market("Flight Market", 0.0);
+            Agent buyer = new Agent("Buyer", market);
+            Agent seller = new Agent("Seller", market);
+            buyer.receive(100.00);
+            market.setPrice(item, 2.00);
+            seller.receive(item, 5);
+            market.buy(buyer, seller, item, 3, 2.50);
+            market.tick();
+            market.removeAgent(seller);
+
+            recording.stop();
+            Path file = folder.newFile("market.jfr").toPath();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> "Flight Market".equals(event.getString("market")))
+                    .collect(Collectors.toList());
+        }
+
+        RecordedEvent trade = only(events, "economy.Trade");
+        assertEquals("Flight Item", trade.getString("item"));
+        assertEquals(buyer(events), trade.getInt("buyerId"));
+        assertEquals(3, trade.getLong("quantity"));
+        assertEquals(2.50, trade.getDouble("priceEach"), 0.0);
+        assertEquals(2.00, trade.getDouble("priceBefore"), 0.0);
+        assertEquals("traded", trade.getString("outcome"));
+
+        List<RecordedEvent> prices = of(events, "economy.PriceChange");
+        assertTrue(Double.isNaN(prices.get(0).getDouble("priceBefore")));
+        assertEquals(2.00, prices.get(0).getDouble("priceAfter"), 0.0);
+
+        assertEquals(2, of(events, "economy.AgentAdded").size());
+        assertEquals("Seller", only(events, "economy.AgentRemoved").getString("agentName"));
+        assertEquals(4, of(events, "economy.TickPhase").size());
+    }
+
+    @Test
+    public void nothingIsAllocatedWithoutARecording() throws Exception {
+        Assume.assumeTrue(FlightEvents.ENABLED);
+        Assume.assumeTrue(AllocationMeter.isSupported());
+        Market market = new Market("Unrecorded Market", 0.0);
+        Agent agent = new Agent("Agent", market);
+
+        assertNull(FlightEvents.beginTrade());
+        assertNull(FlightEvents.beginTickPhase());
+        AllocationMeter.assertWithinBudget("Flight Recorder events with no recording", 0, () -> {
+            FlightEvents.beginTrade();
+            FlightEvents.beginTickPhase();
+            FlightEvents.priceChanged(market, item, 1.00, 2.00);
+            FlightEvents.agentAdded(market, agent);
+            FlightEvents.agentRemoved(market, agent);
+        });
+    }
+
+    private static int buyer(List<RecordedEvent> events) {
+        return of(events, "economy.AgentAdded").stream()
+                .filter(event -> "Buyer".equals(event.getString("agentName")))
+                .findFirst().get().getInt("agentId");
+    }
+
+    private static List<RecordedEvent> of(List<RecordedEvent> events, String type) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(type))
+                .collect(Collectors.toList());
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String type) {
+        List<RecordedEvent> matching = of(events, type);
+        assertEquals(1, matching.size());
+        return matching.get(0);
+    }
+
+    @Test
+    public void marketsRunWithoutFlightRecorder() throws Exception {
+        // Leaving out the jdk.jfr module needs a runtime with modules.
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        Process process = new ProcessBuilder(java, "--limit-modules", "java.base,java.management,java.logging",
+                "-cp", System.getProperty("java.class.path"), FlightEventsTest.class.getName())
+                .redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        assertEquals(output.toString(), 0, process.waitFor());
+        assertEquals("ticked\n", output.toString());
+    }
+
+    /**
+     * Runs a market through a trade and a tick, for {@link #marketsRunWithoutFlightRecorder()} to run on a runtime without
+     * Flight Recorder.
+     * @param args Unused.
+     * @throws Exception If the market could not be run.
+     */
+    public static void main(String[] args) throws Exception {
+        Market market = new Market("Probe", 0.1);
+        Item item = new Item("Probe Item");
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(10.00);
+        market.setPrice(item, 1.00);
+        seller.receive(item, 1);
+        market.buy(buyer, seller, item, 1, 1.00);
+        market.tick();
+        market.removeAgent(seller);
+        System.out.println("ticked");
+    }
+}
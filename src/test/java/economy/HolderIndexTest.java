@@ -0,0 +1,106 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link HolderIndex} class.
+ */
+public class HolderIndexTest {
+    private final Item item = new Item("Held Item");
+    private final Item other = new Item("Other Held Item");
+
+    @Test
+    public void newIndexHasNoHolders() {
+        HolderIndex index = new HolderIndex();
+        assertEquals(0, index.count(item));
+        assertNull(index.getRandom(item));
+        assertTrue(index.getAll(item).isEmpty());
+        assertFalse(index.contains(item, new Agent("Agent")));
+    }
+
+    @Test
+    public void addAndRemove() {
+        HolderIndex index = new HolderIndex();
+        Agent a = new Agent("A");
+        Agent b = new Agent("B");
+
+        assertTrue(index.add(item, a));
+        assertFalse(index.add(item, a));
+        assertTrue(index.add(item, b));
+        assertTrue(index.add(other, b));
+        assertEquals(2, index.count(item));
+        assertEquals(1, index.count(other));
+
+        assertTrue(index.remove(item, a));
+        assertFalse(index.remove(item, a));
+        assertFalse(index.remove(other, a));
+        assertEquals(Collections.singletonList(b), index.getAll(item));
+        assertSame(b, index.get(item, 0));
+        assertTrue(index.contains(other, b));
+    }
+
+    @Test (expected = IndexOutOfBoundsException.class)
+    public void getPastLastHolder() {
+        HolderIndex index = new HolderIndex();
+        index.add(item, new Agent("A"));
+        index.get(item, 1);
+    }
+
+    @Test
+    public void randomHoldersAreAllPicked() {
+        HolderIndex index = new HolderIndex();
+        Set<Agent> holders = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Agent agent = new Agent("Agent " + i);
+            holders.add(agent);
+            index.add(item, agent);
+        }
+
+        Set<Agent> picked = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            picked.add(index.getRandom(item));
+        }
+        assertEquals(holders, picked);
+    }
+
+    @Test
+    public void matchesModelUnderRandomChanges() {
+        Random random = new Random(50);
+        Item[] items = new Item[8];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Randomly Held Item " + i);
+        }
+        Agent[] agents = new Agent[300];
+        for (int i = 0; i < agents.length; i++) {
+            agents[i] = new Agent("Agent " + i);
+        }
+        HolderIndex index = new HolderIndex();
+        List<Set<Agent>> model = new ArrayList<>();
+        for (Item ignored : items) {
+            model.add(new HashSet<>());
+        }
+
+        for (int step = 0; step < 50000; step++) {
+            int k = random.nextInt(items.length);
+            Agent agent = agents[random.nextInt(agents.length)];
+            if (random.nextBoolean()) {
+                assertEquals(model.get(k).add(agent), index.add(items[k], agent));
+            } else {
+                assertEquals(model.get(k).remove(agent), index.remove(items[k], agent));
+            }
+
+            if (step % 500 == 0) {
+                for (int i = 0; i < items.length; i++) {
+                    assertEquals(model.get(i), new HashSet<>(index.getAll(items[i])));
+                    for (Agent held : model.get(i)) {
+                        assertTrue(index.contains(items[i], held));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package economy;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -324,6 +325,126 @@ public class InventoryTest {
         assertEquals(inventory1.hashCode(), inventory2.hashCode());
     }
 
+    @Test
+    public void iterationOrderMatchesHashMapWhileSmall() {
+        Inventory inventory = new Inventory();
+        Map<Item, Long> expected = new HashMap<>();
+        for (int i = 0; i < 3 * Inventory.INLINE_CAPACITY; i++) {
+            Item item = new Item("Grown Item " + (i * 7919 % 100));
+            inventory.add(item, i + 1);
+            expected.put(item, expected.getOrDefault(item, 0L) + i + 1);
+
+            List<Item> order = new ArrayList<>();
+            for (Map.Entry<Item, Long> entry : inventory) {
+                order.add(entry.getKey());
+                assertEquals(expected.get(entry.getKey()), entry.getValue());
+            }
+            if (expected.size() <= Inventory.INLINE_CAPACITY) {
+                assertEquals(new ArrayList<>(expected.keySet()), order);
+            } else {
+                assertTrue(listsHaveSameElements(new ArrayList<>(expected.keySet()), order));
+            }
+            assertEquals(expected.size(), inventory.size());
+        }
+    }
+
+    @Test
+    public void removingItemsKeepsHashMapOrder() {
+        Inventory inventory = new Inventory();
+        Map<Item, Long> expected = new HashMap<>();
+        for (int i = 0; i < Inventory.INLINE_CAPACITY; i++) {
+            Item item = new Item("Removed Item " + i);
+            inventory.add(item, 5);
+            expected.put(item, 5L);
+        }
+        Item removed = new Item("Removed Item 3");
+        inventory.remove(removed, 5);
+        expected.remove(removed);
+        inventory.add(removed, 2);
+        expected.put(removed, 2L);
+
+        assertEquals(new ArrayList<>(expected.keySet()), inventory.getItems());
+    }
+
+    @Test
+    public void inventoriesStoredDifferentlyAreEqual() {
+        Inventory small = new Inventory();
+        Inventory promoted = new Inventory();
+        for (int i = 0; i <= Inventory.INLINE_CAPACITY; i++) {
+            promoted.add(new Item("Promoted Item " + i), 1);
+        }
+        for (int i = 0; i <= Inventory.INLINE_CAPACITY; i++) {
+            promoted.remove(new Item("Promoted Item " + i), 1);
+        }
+        promoted.add(items[0], 4);
+        promoted.add(items[1], 6);
+        small.add(items[1], 6);
+        small.add(items[0], 4);
+
+        assertEquals(small, promoted);
+        assertEquals(promoted, small);
+        assertEquals(small.hashCode(), promoted.hashCode());
+        assertEquals(small.toString(), promoted.toString());
+
+        promoted.add(items[2], 1);
+        assertNotEquals(small, promoted);
+        assertNotEquals(promoted, small);
+    }
+
+    @Test
+    public void removingEverythingLeavesEmptyInventory() {
+        Inventory inventory = new Inventory();
+        inventory.add(items[0], 3);
+        inventory.add(items[1], 3);
+        inventory.remove(items[0], 5);
+        inventory.remove(items[1], 3);
+        assertTrue(inventory.isEmpty());
+        assertFalse(inventory.contains(items[0]));
+        assertNull(inventory.getRandomItem());
+        assertEquals(new Inventory(), inventory);
+    }
+
+    @Test
+    public void snapshotIsUnaffectedByLaterChanges() {
+        for (int size : new int[] {2, 3 * Inventory.INLINE_CAPACITY}) {
+            Inventory inventory = new Inventory();
+            for (int i = 0; i < size; i++) {
+                inventory.add(new Item("Snapshot Item " + i), i + 1);
+            }
+            PersistentInventory snapshot = inventory.snapshot();
+            assertSame(snapshot, inventory.snapshot());
+
+            inventory.add(new Item("Snapshot Item 0"), 10);
+            inventory.remove(new Item("Snapshot Item 1"), 2);
+            inventory.add(items[0], 1);
+
+            assertEquals(size, snapshot.size());
+            assertEquals(1, snapshot.getQuantity(new Item("Snapshot Item 0")));
+            assertEquals(2, snapshot.getQuantity(new Item("Snapshot Item 1")));
+            assertEquals(0, snapshot.getQuantity(items[0]));
+            assertEquals(11, inventory.getQuantity(new Item("Snapshot Item 0")));
+            assertFalse(inventory.contains(new Item("Snapshot Item 1")));
+            assertNotSame(snapshot, inventory.snapshot());
+        }
+    }
+
+    @Test
+    public void inventoryFromSnapshotIsIndependent() {
+        Inventory inventory = new Inventory();
+        for (int i = 0; i < 3 * Inventory.INLINE_CAPACITY; i++) {
+            inventory.add(new Item("Forked Item " + i), 5);
+        }
+        Inventory copy = new Inventory(inventory.snapshot());
+        assertEquals(inventory, copy);
+        assertEquals(inventory.hashCode(), copy.hashCode());
+
+        copy.remove(new Item("Forked Item 3"), 5);
+        inventory.add(new Item("Forked Item 4"), 1);
+        assertEquals(5, inventory.getQuantity(new Item("Forked Item 3")));
+        assertEquals(5, copy.getQuantity(new Item("Forked Item 4")));
+        assertEquals(3 * Inventory.INLINE_CAPACITY - 1, copy.size());
+    }
+
     private static boolean listsHaveSameElements(List listA, List listB) {
         return listA.containsAll(listB) && listB.containsAll(listA);
     }
@@ -86,4 +86,31 @@ public class ItemTest {
         Item other = new Item("Item");
         assertEquals(item.hashCode(), other.hashCode());
     }
+
+    @Test
+    public void equalItemsHaveSameId() {
+        Item item = new Item("Item");
+        Item other = new Item("Item");
+        assertEquals(item.getId(), other.getId());
+    }
+
+    @Test
+    public void differentItemsHaveDifferentIds() {
+        Item item = new Item("Item");
+        Item other = new Item("Other item");
+        assertNotEquals(item.getId(), other.getId());
+        assertTrue(item.getId() < Item.getIdCount());
+        assertTrue(other.getId() < Item.getIdCount());
+    }
+
+    @Test
+    public void forIdTest() {
+        Item item = new Item("Item");
+        assertEquals(item, Item.forId(item.getId()));
+    }
+
+    @Test (expected = IndexOutOfBoundsException.class)
+    public void forUnknownId() {
+        Item.forId(Item.getIdCount());
+    }
 }
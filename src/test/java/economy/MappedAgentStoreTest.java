@@ -0,0 +1,197 @@
+package economy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MappedAgentStore} class.
+ */
+public class MappedAgentStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Item apple = new Item("Mapped Apple");
+    Item pear = new Item("Mapped Pear");
+
+    @Test
+    public void agentsAreStored() throws IOException {
+        try (MappedAgentStore store = new MappedAgentStore(folder.getRoot())) {
+            int alice = store.add("Alice");
+            store.setMoney(alice, 12.50);
+            store.setQuantity(alice, apple, 3);
+            assertEquals(1, store.size());
+            assertEquals("Alice", store.getName(alice));
+            assertEquals(12.50, store.getMoney(alice), 0.0);
+            assertEquals(3, store.getQuantity(alice, apple));
+            assertEquals(0, store.getQuantity(alice, pear));
+        }
+    }
+
+    @Test
+    public void largeInventoriesOverflow() throws IOException {
+        Item[] items = new Item[40];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Mapped Item " + i);
+        }
+
+        try (MappedAgentStore store = new MappedAgentStore(folder.getRoot(), 2)) {
+            int other = store.add("Other");
+            int index = store.add("Hoarder");
+            store.setQuantity(other, apple, 1);
+            for (int i = 0; i < items.length; i++) {
+                store.setQuantity(index, items[i], i + 1);
+            }
+            assertEquals(40, store.getItemCount(index));
+            assertEquals(3, store.getOverflowBlocks());
+            for (int i = 0; i < items.length; i++) {
+                assertEquals(i + 1, store.getQuantity(index, items[i]));
+            }
+
+            for (int i = 0; i < items.length; i += 2) {
+                store.setQuantity(index, items[i], 0);
+            }
+            assertEquals(20, store.getItemCount(index));
+            for (int i = 0; i < items.length; i++) {
+                assertEquals(i % 2 == 0 ? 0 : i + 1, store.getQuantity(index, items[i]));
+            }
+            assertEquals(1, store.getQuantity(other, apple));
+
+            // Freed blocks are reused rather than the overflow area growing.
+            for (int i = 0; i < items.length; i += 2) {
+                store.setQuantity(index, items[i], i + 1);
+            }
+            assertEquals(40, store.getItemCount(index));
+            assertEquals(3, store.getOverflowBlocks());
+            assertEquals(39, store.getQuantity(index, items[38]));
+        }
+    }
+
+    @Test
+    public void storeSurvivesReopening() throws IOException {
+        File directory = folder.getRoot();
+        try (MappedAgentStore store = new MappedAgentStore(directory, 1)) {
+            store.add("Alice");
+            int bob = store.add("Bob");
+            store.setMoney(bob, 7.25);
+            store.setQuantity(bob, apple, 2);
+            store.setQuantity(bob, pear, 5);
+        }
+
+        try (MappedAgentStore store = new MappedAgentStore(directory, 1)) {
+            assertEquals(2, store.size());
+            assertEquals("Bob", store.getName(1));
+            assertEquals(7.25, store.getMoney(1), 0.0);
+            assertEquals(2, store.getQuantity(1, apple));
+            assertEquals(5, store.getQuantity(1, pear));
+            assertEquals(2, store.add("Carol"));
+        }
+    }
+
+    @Test
+    public void reopeningInAnotherRunWithItemsCreatedInAnotherOrder() throws Exception {
+        File directory = folder.getRoot();
+        try (MappedAgentStore store = new MappedAgentStore(directory, 1)) {
+            int bob = store.add("Bob");
+            store.setQuantity(bob, apple, 2);
+            store.setQuantity(bob, pear, 5);
+        }
+
+        // Item ids only last as long as the JVM, so read the store back in a new one which creates the items the other
+        // way round.
+        assertEquals("Mapped Apple=2 Mapped Pear=5", runInNewJvm(directory.getPath()));
+    }
+
+    @Test
+    public void storeLeftWithoutFlushingIsConsistent() throws Exception {
+        File directory = folder.getRoot();
+        assertNull(runInNewJvm(directory.getPath(), "halt"));
+
+        try (MappedAgentStore store = new MappedAgentStore(directory, 1)) {
+            assertEquals(1, store.size());
+            assertEquals("Halted", store.getName(0));
+            assertEquals(2, store.getQuantity(0, apple));
+            assertEquals(5, store.getQuantity(0, pear));
+        }
+    }
+
+    /**
+     * Runs {@link #main} in a new JVM with the given arguments, and returns the first line it prints, or null if it
+     * prints nothing.
+     */
+    private static String runInNewJvm(String... args) throws Exception {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                MappedAgentStoreTest.class.getName()));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            output = in.readLine();
+        }
+        assertEquals(0, process.waitFor());
+        return output;
+    }
+
+    /**
+     * Opens the store in the directory given as the first argument, having created the items of this test in the
+     * opposite order to the tests, and prints the quantities the store's first agent holds of them. If the second
+     * argument is {@code halt}, instead adds an agent holding the items to a new store there and halts the JVM without
+     * flushing or closing the store.
+     * @param args The directory holding the store, and optionally {@code halt}.
+     * @throws IOException If the store could not be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        Item pear = new Item("Mapped Pear");
+        Item apple = new Item("Mapped Apple");
+        if (args.length > 1 && args[1].equals("halt")) {
+            MappedAgentStore store = new MappedAgentStore(new File(args[0]), 1);
+            int agent = store.add("Halted");
+            store.setQuantity(agent, apple, 2);
+            store.setQuantity(agent, pear, 5);
+            Runtime.getRuntime().halt(0);
+        }
+        try (MappedAgentStore store = new MappedAgentStore(new File(args[0]), 1)) {
+            System.out.println(apple.getName() + "=" + store.getQuantity(0, apple) + " "
+                    + pear.getName() + "=" + store.getQuantity(0, pear));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reopeningWithOtherSlotsThrows() throws IOException {
+        File directory = folder.getRoot();
+        new MappedAgentStore(directory, 2).close();
+        new MappedAgentStore(directory, 3);
+    }
+
+    @Test
+    public void buyerNeverRunsOutOfSlots() throws IOException {
+        try (MappedAgentStore store = new MappedAgentStore(folder.getRoot(), 0)) {
+            int buyer = store.add("Buyer");
+            int seller = store.add("Seller");
+            store.setMoney(buyer, 10.00);
+            store.setQuantity(seller, apple, 3);
+            assertTrue(store.buy(buyer, seller, apple, 3, 1.00));
+            assertEquals(3, store.getQuantity(buyer, apple));
+            assertEquals(0, store.getItemCount(seller));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedStoreThrows() throws IOException {
+        MappedAgentStore store = new MappedAgentStore(folder.getRoot());
+        store.add("Alice");
+        store.close();
+        store.getMoney(0);
+    }
+}
@@ -0,0 +1,151 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MarketEventBus} class.
+ */
+public class MarketEventBusTest {
+    Item item = new Item("Event Item");
+
+    @Test (expected = IllegalArgumentException.class)
+    public void sizeNotPowerOfTwo() {
+        new MarketEventBus(new Market(0.05), 100, new WaitStrategy.BusySpin());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void twoBusesForOneMarket() {
+        Market market = new Market(0.05);
+        new MarketEventBus(market, 16, new WaitStrategy.BusySpin());
+        new MarketEventBus(market, 16, new WaitStrategy.BusySpin());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void addConsumerAfterClose() {
+        MarketEventBus bus = new MarketEventBus(new Market(0.05), 16, new WaitStrategy.BusySpin());
+        bus.close();
+        bus.addConsumer("Late", (event, sequence, endOfBatch) -> { });
+    }
+
+    @Test
+    public void marketEventsArriveInOrder() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        try (MarketEventBus bus = new MarketEventBus(market, 8, new WaitStrategy.Blocking())) {
+            bus.addConsumer("Recorder", (event, sequence, endOfBatch) -> events.add(event.toString()));
+
+            Agent buyer = new Agent("Buyer", market);
+            Agent seller = new Agent("Seller", market);
+            buyer.receive(100.00);
+            market.setPrice(item, 5.00);
+            seller.receive(item, 1);
+            market.buy(buyer, seller, item, 1, 6.00);
+            market.tick();
+            market.removeAgent(buyer);
+        }
+
+        assertEquals("tick 0: Buyer joined", events.get(0));
+        assertEquals("tick 0: Seller joined", events.get(1));
+        assertTrue(events.contains("tick 0: Buyer bought 1x\"Event Item\" from Seller at $6.00ea"));
+        assertTrue(events.contains("tick 1"));
+        // The buyer takes the item along, so its price changes straight after.
+        assertEquals("tick 1: Buyer left", events.get(events.size() - 2));
+    }
+
+    @Test
+    public void everyConsumerSeesEveryEvent() {
+        WaitStrategy[] strategies = {new WaitStrategy.BusySpin(), new WaitStrategy.Yielding(),
+                new WaitStrategy.Sleeping(), new WaitStrategy.Blocking()};
+        for (WaitStrategy strategy : strategies) {
+            Market market = new Market(0.0);
+            int count = 100000;
+            AtomicLong[] sums = {new AtomicLong(), new AtomicLong()};
+            AtomicLong[] lastSequences = {new AtomicLong(-1), new AtomicLong(-1)};
+            boolean[] ordered = {true, true};
+            try (MarketEventBus bus = new MarketEventBus(market, 64, strategy)) {
+                for (int c = 0; c < 2; c++) {
+                    int consumer = c;
+                    bus.addConsumer("Consumer " + c, (event, sequence, endOfBatch) -> {
+                        if (sequence != lastSequences[consumer].get() + 1) {
+                            ordered[consumer] = false;
+                        }
+                        lastSequences[consumer].set(sequence);
+                        sums[consumer].addAndGet((long) event.getPrice());
+                    });
+                }
+                for (int i = 0; i < count; i++) {
+                    market.setPrice(item, i);
+                }
+                assertEquals(count - 1, bus.getCursor());
+            }
+
+            long expected = (long) count * (count - 1) / 2;
+            for (int c = 0; c < 2; c++) {
+                assertTrue(ordered[c]);
+                assertEquals(count - 1, lastSequences[c].get());
+                assertEquals(expected, sums[c].get());
+            }
+        }
+    }
+
+    @Test
+    public void handlerExceptionsGoToExceptionHandler() {
+        Market market = new Market(0.0);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong handled = new AtomicLong();
+        try (MarketEventBus bus = new MarketEventBus(market, 8, new WaitStrategy.Blocking())) {
+            bus.setExceptionHandler((event, e) -> failures.add(event.getPrice() + " " + e.getMessage()));
+            bus.addConsumer("Failing", (event, sequence, endOfBatch) -> {
+                if (event.getPrice() == 2.00) {
+                    throw new IllegalStateException("bad price");
+                }
+                handled.incrementAndGet();
+            });
+            for (int i = 1; i <= 3; i++) {
+                market.setPrice(item, i);
+            }
+        }
+
+        assertEquals(Collections.singletonList("2.0 bad price"), failures);
+        assertEquals(2, handled.get());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nullExceptionHandler() {
+        new MarketEventBus(new Market(0.0), 8, new WaitStrategy.BusySpin()).setExceptionHandler(null);
+    }
+
+    @Test (timeout = 10000)
+    public void deadConsumerDoesNotHoldUpMarket() {
+        Market market = new Market(0.0);
+        AtomicLong handled = new AtomicLong();
+        try (MarketEventBus bus = new MarketEventBus(market, 4, new WaitStrategy.Yielding())) {
+            bus.addConsumer("Dying", (event, sequence, endOfBatch) -> {
+                throw new Error("consumer died");
+            });
+            bus.addConsumer("Living", (event, sequence, endOfBatch) -> handled.incrementAndGet());
+            for (int i = 0; i < 100; i++) {
+                market.setPrice(item, i);
+            }
+        }
+
+        assertEquals(100, handled.get());
+    }
+
+    @Test
+    public void closeDetachesFromMarket() {
+        Market market = new Market(0.0);
+        MarketEventBus bus = new MarketEventBus(market, 16, new WaitStrategy.Yielding());
+        bus.close();
+        market.setPrice(item, 1.00);
+        assertEquals(-1, bus.getCursor());
+        new MarketEventBus(market, 16, new WaitStrategy.Yielding()).close();
+    }
+}
@@ -0,0 +1,206 @@
+package economy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MarketJournal} class.
+ */
+public class MarketJournalTest {
+    Item[] items = {new Item("Item 0"), new Item("Item 1"), new Item("Item 2")};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Runs a small market for a number of ticks, returning the string representation of the market at the end of each
+     * tick.
+     */
+    private List<String> simulate(Market market, int ticks) throws InsufficientAmountException {
+        List<String> states = new ArrayList<>();
+        List<Agent> leavers = new ArrayList<>();
+        for (int t = 0; t < ticks; t++) {
+            Agent buyer = market.getRandomAgent();
+            Agent seller = market.getRandomAgent();
+            Item item = items[t % items.length];
+            if (buyer != seller && seller.inventory.getQuantity(item) > 0 && buyer.getMoney() > 1.00) {
+                market.buy(buyer, seller, item, 1, 1.00);
+            }
+            market.getRandomAgent().receive(items[(t + 1) % items.length], 2);
+
+            if (t % 7 == 3) {
+                Agent agent = new Agent("Agent " + t);
+                agent.receive(50.00);
+                agent.receive(items[2], 3);
+                market.addAgent(agent);
+                leavers.add(agent);
+            }
+            if (t % 11 == 5 && !leavers.isEmpty()) {
+                market.removeAgent(leavers.remove(0));
+            }
+
+            states.add(market.toString());
+            market.tick();
+        }
+        return states;
+    }
+
+    private Market newMarket() {
+        Market market = new Market("Journalled", 0.01);
+        for (int i = 0; i < 5; i++) {
+            Agent agent = new Agent("Agent " + i, market);
+            agent.receive(items[i % items.length], 10);
+        }
+        market.generateMoney(500.00);
+        return market;
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nonPositiveCheckpointInterval() throws IOException {
+        new MarketJournal(new Market(0.05), folder.newFolder(), 0);
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void attachTwoJournals() throws IOException {
+        Market market = new Market(0.05);
+        new MarketJournal(market, folder.newFolder(), 10);
+        new MarketJournal(market, folder.newFolder(), 10);
+    }
+
+    @Test
+    public void reconstructEveryTick() throws IOException, InsufficientAmountException {
+        Market market = newMarket();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 10);
+        List<String> states = simulate(market, 50);
+        journal.close();
+
+        for (int t = 0; t < states.size(); t++) {
+            Market reconstructed = MarketJournal.reconstruct(directory, t);
+            assertEquals(t, reconstructed.getTick());
+            assertEquals(market.name, reconstructed.name);
+            assertEquals(market.elasticity, reconstructed.elasticity, 0.0);
+            assertEquals(states.get(t), reconstructed.toString());
+        }
+    }
+
+    @Test
+    public void reconstructLatest() throws IOException, InsufficientAmountException {
+        Market market = newMarket();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 4);
+        simulate(market, 9);
+        market.getRandomAgent().receive(items[0], 1);
+        journal.flush();
+
+        Market reconstructed = MarketJournal.reconstruct(directory, Long.MAX_VALUE);
+        assertEquals(market.getTick(), reconstructed.getTick());
+        assertEquals(market.toString(), reconstructed.toString());
+        journal.close();
+    }
+
+    @Test
+    public void reconstructKeepsAgentIds() throws IOException {
+        Market market = newMarket();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 1);
+        market.tick();
+        journal.close();
+
+        Market reconstructed = MarketJournal.reconstruct(directory, 1);
+        for (int i = 0; i < market.getAgents().size(); i++) {
+            assertEquals(market.getAgents().get(i).id, reconstructed.getAgents().get(i).id);
+        }
+
+        Agent newAgent = new Agent();
+        for (Agent agent : market.getAgents()) {
+            assertTrue(newAgent.id > agent.id);
+        }
+    }
+
+    @Test
+    public void closedJournalStopsRecording() throws IOException {
+        Market market = newMarket();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 1);
+        market.setPrice(items[0], 1.00);
+        journal.close();
+        market.setPrice(items[0], 2.00);
+
+        assertEquals(1.00, MarketJournal.reconstruct(directory, 0).getPrice(items[0]), 0.0);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void reconstructBeforeJournal() throws IOException {
+        Market market = newMarket();
+        market.tick();
+        market.tick();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 10);
+        market.tick();
+        journal.close();
+        MarketJournal.reconstruct(directory, 1);
+    }
+
+    @Test
+    public void indexIsSparse() throws IOException {
+        Market market = newMarket();
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 100);
+        for (int t = 0; t < 1000; t++) {
+            market.tick();
+        }
+        journal.close();
+
+        MarketJournal.Index index = MarketJournal.Index.read(new File(directory, MarketJournal.INDEX_FILE));
+        assertEquals(11, index.ticks.length);
+        assertEquals(-1, index.floor(-1));
+        assertEquals(0, index.floor(99));
+        assertEquals(1, index.floor(100));
+        assertEquals(5, index.floor(555));
+        assertEquals(10, index.floor(5000));
+        for (int i = 1; i < index.ticks.length; i++) {
+            assertTrue(index.checkpointOffsets[i] > index.checkpointOffsets[i - 1]);
+            assertTrue(index.journalOffsets[i] > index.journalOffsets[i - 1]);
+        }
+    }
+
+    @Test
+    public void reconstructKeepsPricingModelAndDeferredPrices() throws IOException, InsufficientAmountException {
+        Market market = new Market("Batched", 0.01, ExponentialPricingModel.INSTANCE);
+        for (int i = 0; i < 5; i++) {
+            new Agent("Agent " + i, market).receive(items[i % items.length], 10);
+        }
+        market.generateMoney(500.00);
+        market.setBatchPricing(true);
+        // Deferred before the journal is attached, so only the first checkpoint has it.
+        market.getAgents().get(0).receive(items[0], 4);
+
+        File directory = folder.newFolder();
+        MarketJournal journal = new MarketJournal(market, directory, 5);
+        simulate(market, 7);
+        market.getAgents().get(1).receive(items[1], 3);
+        journal.flush();
+
+        Market reconstructed = MarketJournal.reconstruct(directory, Long.MAX_VALUE);
+        assertSame(ExponentialPricingModel.INSTANCE, reconstructed.getPricingModel());
+        assertTrue(reconstructed.isBatchPricing());
+        assertTrue(market.getPendingCount() > 0);
+        assertEquals(market.getPendingCount(), reconstructed.getPendingCount());
+
+        market.tick();
+        reconstructed.tick();
+        assertEquals(market.toString(), reconstructed.toString());
+
+        Market early = MarketJournal.reconstruct(directory, 0);
+        assertTrue(early.isBatchPricing());
+        journal.close();
+    }
+}
@@ -0,0 +1,81 @@
+package economy;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MarketMetrics} class. The build runs tests with instrumentation switched on.
+ */
+public class MarketMetricsTest {
+    Item item = new Item("Metrics Item");
+
+    @Before
+    public void instrumented() {
+        Assume.assumeTrue(MarketMetrics.ENABLED);
+    }
+
+    @Test
+    public void countsTradesAndRejections() {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(100.00);
+        seller.receive(item, 3);
+        market.setPrice(item, 1.00);
+
+        MarketMetrics metrics = market.getMetrics();
+        metrics.reset();
+        OrderBatch orders = new OrderBatch();
+        for (int i = 0; i < 5; i++) {
+            orders.add(buyer, seller, item, 1, 1.00);
+        }
+        orders.add(buyer, seller, item, 0, 1.00);
+        market.execute(orders);
+
+        assertEquals(3, metrics.getTradeCount());
+        assertEquals(2, metrics.getRejectedCount());
+        assertEquals(0.4, metrics.getRejectionRate(), 1e-9);
+        // Each trade moves the price as the item leaves the seller, reaches the buyer, and changes hands.
+        assertEquals(9, metrics.getPriceUpdateCount());
+        assertEquals(2, metrics.getAgentCount());
+        assertTrue(metrics.getBuyLatencyMax() >= metrics.getBuyLatency50());
+        assertTrue(metrics.getTradesPerSecond() > 0);
+    }
+
+    @Test
+    public void registersUnderMarketName() throws Exception {
+        Market market = new Market("Metrics Market", 0.0);
+        MarketMetrics metrics = market.getMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("economy:type=Market,name=\"Metrics Market\"");
+
+        metrics.register();
+        try {
+            assertTrue(server.isRegistered(name));
+            new Agent("Agent", market);
+            assertEquals(1, server.getAttribute(name, "AgentCount"));
+            assertEquals("Metrics Market", server.getAttribute(name, "MarketName"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void twoMarketsWithOneName() {
+        MarketMetrics first = new Market("Duplicate Market", 0.0).getMetrics();
+        first.register();
+        try {
+            new Market("Duplicate Market", 0.0).getMetrics().register();
+        } finally {
+            first.unregister();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package economy;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 
 import static org.junit.Assert.*;
@@ -53,6 +55,30 @@ public class MarketTest {
         assertEquals(10, market.getSupply(items[0]));
     }
 
+    @Test
+    public void getSupplyFollowsInventories() {
+        Market market = new Market(0.05);
+        Agent agent1 = new Agent(market);
+        Agent agent2 = new Agent();
+        agent2.receive(items[0], 5);
+
+        agent1.receive(items[0], 10);
+        agent1.lose(items[0], 3);
+        assertEquals(7, market.getSupply(items[0]));
+
+        market.addAgent(agent2);
+        assertEquals(12, market.getSupply(items[0]));
+
+        agent1.lose(items[0], 100);
+        assertEquals(5, market.getSupply(items[0]));
+
+        market.removeAgent(agent2);
+        assertEquals(0, market.getSupply(items[0]));
+
+        agent2.receive(items[0], 5);
+        assertEquals(0, market.getSupply(items[0]));
+    }
+
     @Test (expected = IllegalStateException.class)
     public void getPriceOfNonExistentItem() {
         Market market = new Market(0.05);
@@ -188,6 +214,32 @@ public class MarketTest {
         assertTrue(market.getItems().size() >= 0 && market.getItems().size() < 50);
     }
 
+    @Test
+    public void generateItemsTracksSupplyAndPrices() {
+        Market market = new Market(0.0);
+        market.generateAgents(1000);
+        market.generateItems(10000, 100);
+
+        Inventory items = market.getItems();
+        assertFalse(items.isEmpty());
+        for (Map.Entry<Item, Long> entry : items) {
+            assertEquals((long) entry.getValue(), market.getSupply(entry.getKey()));
+            double price = market.getPrice(entry.getKey());
+            assertTrue(price >= 0 && price < 10000.00);
+        }
+
+        Item item = items.getItems().get(0);
+        double price = market.getPrice(item);
+        market.generateItems(1000, 100);
+        assertEquals(price, market.getPrice(item), 0.0);
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void generateItemsWithNoAgents() {
+        Market market = new Market(0.05);
+        market.generateItems(10, 100);
+    }
+
     @Test
     public void generateNegativeItems() {
         Market market = new Market(0.05);
@@ -206,6 +258,46 @@ public class MarketTest {
         }
     }
 
+    @Test
+    public void generateMoneyWithLedgerIsExact() {
+        Market market = new Market(0.05);
+        market.enableMoneyLedger();
+        market.generateAgents(3);
+        market.generateMoney(100);
+
+        MoneyLedger ledger = market.getMoneyLedger();
+        double total = 0;
+        for (Agent agent : market.getAgents()) {
+            assertTrue(agent.getMoney() == 33.34 || agent.getMoney() == 33.33);
+            total += ledger.getCents(agent.id);
+        }
+        assertEquals(10000, total, 0.0);
+        assertTrue(ledger.isBalanced());
+    }
+
+    @Test
+    public void ledgerFollowsAgents() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer");
+        buyer.receive(10.00);
+        market.addAgent(buyer);
+        market.enableMoneyLedger();
+        Agent seller = new Agent("Seller", market);
+        seller.receive(items[0], 10);
+
+        for (int i = 0; i < 10; i++) {
+            market.buy(buyer, seller, items[0], 1, 0.10);
+        }
+        assertEquals(9.00, buyer.getMoney(), 0.0);
+        assertEquals(1.00, seller.getMoney(), 0.0);
+        assertEquals(1000, market.getMoneyLedger().getIssued());
+
+        market.removeAgent(buyer);
+        assertEquals(9.00, buyer.getMoney(), 0.0);
+        assertEquals(100, market.getMoneyLedger().getTotal());
+        assertTrue(market.getMoneyLedger().isBalanced());
+    }
+
     @Test
     public void generateNegativeMoney() {
         Market market = new Market(0.05);
@@ -676,4 +768,253 @@ public class MarketTest {
         assertEquals(expected, market.toString());
     }
 
+    @Test
+    public void forkStartsOutEqual() {
+        Market market = new Market("Original", 0.05);
+        market.setBatchPricing(true);
+        Agent agent = new Agent("Agent", market);
+        agent.receive(items[0], 10);
+        agent.receive(25.00);
+        market.setPrice(items[0], 3.00);
+        market.tick();
+
+        Market fork = market.fork();
+
+        assertEquals("Original", fork.name);
+        assertEquals(0.05, fork.elasticity, 0.0);
+        assertTrue(fork.isBatchPricing());
+        assertEquals(1, fork.getTick());
+        assertEquals(3.00, fork.getPrice(items[0]), 0.0);
+        assertEquals(10, fork.getSupply(items[0]));
+
+        Agent copy = fork.getAgents().get(0);
+        assertNotSame(agent, copy);
+        assertEquals(agent.id, copy.id);
+        assertEquals("Agent", copy.name);
+        assertEquals(25.00, copy.getMoney(), 0.0);
+        assertEquals(agent.inventory, copy.inventory);
+    }
+
+    @Test
+    public void forkChangesIndependently() throws InsufficientAmountException {
+        Market market = new Market(0.05);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(100.00);
+        for (int i = 0; i < 20; i++) {
+            seller.receive(new Item("Fork Item " + i), 5);
+        }
+        seller.receive(items[0], 10);
+        market.setPrice(items[0], 1.00);
+
+        Market fork = market.fork();
+        Agent forkBuyer = fork.getAgents().get(0);
+        Agent forkSeller = fork.getAgents().get(1);
+        fork.buy(forkBuyer, forkSeller, items[0], 4, 1.00);
+        forkSeller.lose(new Item("Fork Item 3"), 5);
+
+        assertEquals(0, buyer.inventory.getQuantity(items[0]));
+        assertEquals(10, seller.inventory.getQuantity(items[0]));
+        assertEquals(5, seller.inventory.getQuantity(new Item("Fork Item 3")));
+        assertEquals(100.00, buyer.getMoney(), 0.0);
+        assertEquals(10, market.getSupply(items[0]));
+        assertEquals(1.00, market.getPrice(items[0]), 0.0);
+        assertEquals(4, forkBuyer.inventory.getQuantity(items[0]));
+        assertEquals(96.00, forkBuyer.getMoney(), 0.0);
+
+        market.buy(buyer, seller, items[0], 1, 1.00);
+        seller.receive(new Item("Fork Item 4"), 1);
+
+        assertEquals(4, forkBuyer.inventory.getQuantity(items[0]));
+        assertEquals(6, forkSeller.inventory.getQuantity(items[0]));
+        assertEquals(5, forkSeller.inventory.getQuantity(new Item("Fork Item 4")));
+        assertEquals(0, forkSeller.inventory.getQuantity(new Item("Fork Item 3")));
+        assertEquals(10, fork.getSupply(items[0]));
+    }
+
+    @Test
+    public void forkKeepsMoneyInItsOwnLedger() {
+        Market market = new Market(0.05);
+        market.enableMoneyLedger();
+        Agent agent = new Agent("Agent", market);
+        agent.receive(10.00);
+
+        Market fork = market.fork();
+        Agent copy = fork.getAgents().get(0);
+        copy.receive(5.00);
+
+        assertNotNull(fork.getMoneyLedger());
+        assertNotSame(market.getMoneyLedger(), fork.getMoneyLedger());
+        assertEquals(15.00, copy.getMoney(), 0.0);
+        assertEquals(10.00, agent.getMoney(), 0.0);
+    }
+
+    @Test
+    public void forkOfForkIsIndependent() {
+        Market market = new Market(0.05);
+        Agent agent = new Agent("Agent", market);
+        agent.receive(items[1], 3);
+
+        Market first = market.fork();
+        Market second = first.fork();
+        first.getAgents().get(0).receive(items[1], 1);
+        second.getAgents().get(0).lose(items[1], 1);
+
+        assertEquals(3, agent.inventory.getQuantity(items[1]));
+        assertEquals(4, first.getAgents().get(0).inventory.getQuantity(items[1]));
+        assertEquals(2, second.getAgents().get(0).inventory.getQuantity(items[1]));
+        assertEquals(3, market.getSupply(items[1]));
+        assertEquals(4, first.getSupply(items[1]));
+        assertEquals(2, second.getSupply(items[1]));
+    }
+
+    @Test
+    public void rangeQueriesWithoutIndexes() {
+        Market market = new Market(0.05);
+        Agent poor = new Agent("Poor", market);
+        Agent rich = new Agent("Rich", market);
+        poor.receive(50.00);
+        rich.receive(5000.00);
+        market.setPrice(items[0], 12.00);
+        market.setPrice(items[1], 60.00);
+
+        assertNull(market.getPriceIndex());
+        assertEquals(Collections.singletonList(items[0]), market.getItemsPricedBetween(10.00, 50.00));
+        assertEquals(Collections.singletonList(poor), market.getAgentsWithMoneyBetween(0.00, 100.00));
+    }
+
+    @Test
+    public void rangeIndexesFollowPricesAndMoney() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(120.00);
+        seller.receive(items[0], 10);
+        market.setPrice(items[0], 5.00);
+        market.setPrice(items[1], 30.00);
+        market.enableRangeIndexes();
+
+        assertEquals(Arrays.asList(items[0], items[1]), market.getItemsPricedBetween(0.00, 50.00));
+        assertEquals(Collections.singletonList(seller), market.getAgentsWithMoneyBetween(0.00, 100.00));
+
+        market.buy(buyer, seller, items[0], 5, 10.00);
+        market.changePrice(items[1], 40.00);
+
+        assertEquals(Collections.singletonList(items[0]), market.getItemsPricedBetween(0.00, 50.00));
+        assertEquals(Arrays.asList(seller, buyer), market.getAgentsWithMoneyBetween(0.00, 100.00));
+
+        Agent newcomer = new Agent("Newcomer", market);
+        assertEquals(3, market.getAgentsWithMoneyBetween(0.00, 100.00).size());
+        market.removeAgent(newcomer);
+        assertEquals(2, market.getMoneyIndex().size());
+    }
+
+    @Test
+    public void rangeIndexesFollowLedgerTransfers() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        market.enableRangeIndexes();
+        market.enableMoneyLedger();
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(100.00);
+        seller.receive(items[0], 10);
+        market.setPrice(items[0], 1.00);
+
+        market.buy(buyer, seller, items[0], 3, 10.00);
+
+        assertEquals(70.00, market.getMoneyIndex().getKey(buyer.id), 0.0);
+        assertEquals(30.00, market.getMoneyIndex().getKey(seller.id), 0.0);
+        assertEquals(Collections.singletonList(seller), market.getAgentsWithMoneyBetween(0.00, 50.00));
+    }
+
+    @Test
+    public void getRandomHolderWithoutIndex() {
+        Market market = new Market(0.05);
+        new Agent("Empty", market);
+        Agent holder = new Agent("Holder", market);
+        holder.receive(items[0], 2);
+
+        assertNull(market.getHolderIndex());
+        for (int i = 0; i < 20; i++) {
+            assertSame(holder, market.getRandomHolder(items[0]));
+        }
+        assertNull(market.getRandomHolder(items[1]));
+    }
+
+    @Test
+    public void holderIndexFollowsInventories() throws InsufficientAmountException {
+        Market market = new Market(0.0);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(100.00);
+        seller.receive(items[0], 3);
+        market.enableHolderIndex();
+        HolderIndex holders = market.getHolderIndex();
+
+        assertEquals(Collections.singletonList(seller), holders.getAll(items[0]));
+
+        market.buy(buyer, seller, items[0], 1, 1.00);
+        assertEquals(2, holders.count(items[0]));
+        assertTrue(holders.contains(items[0], buyer));
+
+        market.buy(buyer, seller, items[0], 2, 1.00);
+        assertEquals(Collections.singletonList(buyer), holders.getAll(items[0]));
+        assertSame(buyer, market.getRandomHolder(items[0]));
+
+        buyer.lose(items[0], 10);
+        assertEquals(0, holders.count(items[0]));
+        assertNull(market.getRandomHolder(items[0]));
+    }
+
+    @Test
+    public void holderIndexFollowsAgentsJoiningAndLeaving() {
+        Market market = new Market(0.05);
+        market.enableHolderIndex();
+        Agent agent = new Agent("Agent");
+        agent.receive(items[0], 1);
+        agent.receive(items[1], 1);
+
+        market.addAgent(agent);
+        assertTrue(market.getHolderIndex().contains(items[0], agent));
+        assertTrue(market.getHolderIndex().contains(items[1], agent));
+
+        market.removeAgent(agent);
+        assertEquals(0, market.getHolderIndex().count(items[0]));
+        assertEquals(0, market.getHolderIndex().count(items[1]));
+    }
+
+    @Test
+    public void holderIndexFollowsGeneratedItems() {
+        Market market = new Market(0.0);
+        market.generateAgents(20);
+        market.enableHolderIndex();
+        market.generateItems(50, 10);
+
+        for (Map.Entry<Item, Long> entry : market.getItems()) {
+            Item item = entry.getKey();
+            int holders = 0;
+            for (Agent agent : market.getAgents()) {
+                if (agent.inventory.contains(item)) {
+                    holders++;
+                    assertTrue(market.getHolderIndex().contains(item, agent));
+                }
+            }
+            assertEquals(holders, market.getHolderIndex().count(item));
+        }
+    }
+
+    @Test
+    public void forkKeepsItsOwnHolderIndex() {
+        Market market = new Market(0.05);
+        Agent agent = new Agent("Agent", market);
+        agent.receive(items[0], 1);
+        market.enableHolderIndex();
+
+        Market fork = market.fork();
+        Agent forked = fork.getAgents().get(0);
+        forked.lose(items[0], 1);
+
+        assertEquals(0, fork.getHolderIndex().count(items[0]));
+        assertEquals(Collections.singletonList(agent), market.getHolderIndex().getAll(items[0]));
+    }
 }
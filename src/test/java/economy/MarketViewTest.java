@@ -0,0 +1,169 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MarketView} class.
+ */
+public class MarketViewTest {
+    private final Item item = new Item("View Item");
+
+    @Test
+    public void marketsDoNotPublishViewsByDefault() {
+        Market market = new Market(0.05);
+        market.tick();
+        assertNull(market.getView());
+    }
+
+    @Test
+    public void enablingPublishesTheCurrentState() {
+        Market market = new Market(0.05);
+        Agent agent = new Agent("Agent", market);
+        agent.receive(item, 4);
+        agent.receive(10.00);
+        market.setPrice(item, 2.00);
+
+        market.enableReadViews();
+        MarketView view = market.getView();
+
+        assertEquals(0, view.getTick());
+        assertEquals(2.00, view.getPrice(item), 0.0);
+        assertEquals(1, view.getAgents().size());
+        MarketView.AgentView agentView = view.getAgents().get(0);
+        assertEquals(agent.id, agentView.getId());
+        assertEquals("Agent", agentView.getName());
+        assertEquals(10.00, agentView.getMoney(), 0.0);
+        assertEquals(4, agentView.getItems().getQuantity(item));
+        assertEquals(18.00, view.getAgentWealth(agentView), 0.0);
+        assertEquals(4, view.getSupply(item));
+    }
+
+    @Test
+    public void viewsDoNotChangeUntilTheNextTick() throws InsufficientAmountException {
+        Market market = new Market(0.05);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(10.00);
+        seller.receive(item, 5);
+        market.setPrice(item, 1.00);
+        market.enableReadViews();
+        MarketView before = market.getView();
+
+        market.buy(buyer, seller, item, 2, 1.00);
+        market.setPrice(item, 3.00);
+        new Agent("Newcomer", market);
+
+        assertSame(before, market.getView());
+        assertEquals(10.00, before.getAgents().get(0).getMoney(), 0.0);
+        assertEquals(5, before.getAgents().get(1).getItems().getQuantity(item));
+        assertEquals(1.00, before.getPrice(item), 0.0);
+        assertEquals(2, before.getAgents().size());
+
+        market.tick();
+        MarketView after = market.getView();
+
+        assertEquals(1, after.getTick());
+        assertEquals(8.00, after.getAgents().get(0).getMoney(), 0.0);
+        assertEquals(3, after.getAgents().get(1).getItems().getQuantity(item));
+        assertEquals(3.00, after.getPrice(item), 0.0);
+        assertEquals(3, after.getAgents().size());
+        assertEquals(10.00, before.getAgents().get(0).getMoney(), 0.0);
+    }
+
+    @Test
+    public void unchangedAgentsAreShared() {
+        Market market = new Market(0.05);
+        Agent changing = new Agent("Changing", market);
+        new Agent("Idle", market).receive(item, 1);
+        market.enableReadViews();
+        MarketView before = market.getView();
+
+        changing.receive(1.00);
+        market.tick();
+        MarketView after = market.getView();
+
+        assertNotSame(before.getAgents().get(0), after.getAgents().get(0));
+        assertSame(before.getAgents().get(1), after.getAgents().get(1));
+    }
+
+    @Test (expected = UnsupportedOperationException.class)
+    public void viewsCannotBeChanged() {
+        Market market = new Market(0.05);
+        market.enableReadViews();
+        market.getView().getPrices().put(item, 1.00);
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void getPriceOfItemWithoutPrice() {
+        Market market = new Market(0.05);
+        market.enableReadViews();
+        market.getView().getPrice(item);
+    }
+
+    @Test
+    public void readersAlwaysSeeConsistentViews() throws InterruptedException {
+        Market market = new Market(0.0);
+        Item[] items = new Item[12];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("View Item " + i);
+            market.setPrice(items[i], 1.00);
+        }
+        Agent[] agents = new Agent[50];
+        for (int i = 0; i < agents.length; i++) {
+            agents[i] = new Agent("Agent " + i, market);
+            agents[i].receive(1_000.00);
+            for (Item held : items) {
+                agents[i].receive(held, 100);
+            }
+        }
+        market.enableReadViews();
+
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            long lastTick = -1;
+            while (!Thread.currentThread().isInterrupted() && failure.get() == null) {
+                MarketView view = market.getView();
+                if (view.getTick() < lastTick) {
+                    failure.set("tick went backwards");
+                }
+                lastTick = view.getTick();
+                double money = 0;
+                List<MarketView.AgentView> seen = view.getAgents();
+                for (MarketView.AgentView agent : seen) {
+                    money += agent.getMoney();
+                }
+                if (money != 50_000.00) {
+                    failure.set("money was " + money + " at tick " + view.getTick());
+                }
+                for (Item held : items) {
+                    if (view.getSupply(held) != 5_000) {
+                        failure.set("supply of " + held + " was " + view.getSupply(held));
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        OrderBatch orders = new OrderBatch();
+        for (int tick = 0; tick < 2_000 && failure.get() == null; tick++) {
+            for (int t = 0; t < 50; t++) {
+                int buyer = (tick * 7 + t) % agents.length;
+                int seller = (tick * 13 + t * 3 + 1) % agents.length;
+                orders.add(agents[buyer], agents[seller], items[(tick + t) % items.length], 1, 1.00);
+            }
+            market.execute(orders);
+            orders.clear();
+            market.tick();
+        }
+        reader.interrupt();
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(market.getTick(), market.getView().getTick());
+    }
+}
@@ -0,0 +1,170 @@
+package economy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MetricsExporter} and {@link MetricsReader} classes.
+ */
+public class MetricsExporterTest {
+    Item[] items = {new Item("Item 0"), new Item("Item 1"), new Item("Item 2")};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nonPositiveChunkTicks() throws IOException {
+        new MetricsExporter(new Market(0.05), folder.newFile(), 0);
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void twoExportersForOneMarket() throws IOException {
+        Market market = new Market(0.05);
+        new MetricsExporter(market, folder.newFile(), 10);
+        new MetricsExporter(market, folder.newFile(), 10);
+    }
+
+    @Test
+    public void exportAndReadBack() throws IOException, InsufficientAmountException {
+        Market market = new Market(0.05);
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        buyer.receive(1000000.00);
+        seller.receive(items[0], 1000);
+        seller.receive(items[1], 1000);
+
+        List<Double> prices = new ArrayList<>();
+        List<Long> supplies = new ArrayList<>();
+        List<Double> maxMoney = new ArrayList<>();
+        File file = folder.newFile();
+        MetricsExporter exporter = new MetricsExporter(market, file, 16);
+        for (int t = 0; t < 100; t++) {
+            if (t % 3 == 0) {
+                market.buy(buyer, seller, items[0], 1, 5.00);
+                market.buy(buyer, seller, items[0], 2, 5.00);
+            }
+            seller.receive(items[1], t);
+            if (t == 40) {
+                seller.receive(items[2], 1);
+            }
+
+            prices.add(market.getPrice(items[0]));
+            supplies.add(market.getSupply(items[1]));
+            maxMoney.add(Math.max(buyer.getMoney(), seller.getMoney()));
+            market.tick();
+        }
+        exporter.close();
+
+        try (MetricsReader reader = new MetricsReader(file)) {
+            assertTrue(reader.getColumnNames().contains("price.Item 0"));
+            assertTrue(reader.getColumnNames().contains("supply.Item 2"));
+
+            long[] ticks = reader.readLongs("tick");
+            assertEquals(100, ticks.length);
+            for (int t = 0; t < 100; t++) {
+                assertEquals(t, ticks[t]);
+            }
+
+            double[] price = reader.readDoubles("price.Item 0");
+            long[] supply = reader.readLongs("supply.Item 1");
+            double[] money = reader.readDoubles("money.max");
+            long[] trades = reader.readLongs("trades.Item 0");
+            long[] volume = reader.readLongs("volume.Item 0");
+            long[] allTrades = reader.readLongs("trades");
+            for (int t = 0; t < 100; t++) {
+                assertEquals(prices.get(t), price[t], 0.0);
+                assertEquals((long) supplies.get(t), supply[t]);
+                assertEquals(maxMoney.get(t), money[t], 0.0);
+                assertEquals(t % 3 == 0 ? 2 : 0, trades[t]);
+                assertEquals(t % 3 == 0 ? 3 : 0, volume[t]);
+                assertEquals(t % 3 == 0 ? 2 : 0, allTrades[t]);
+            }
+
+            assertEquals(0, reader.getFirstTick("price.Item 0"));
+            assertEquals(40, reader.getFirstTick("price.Item 2"));
+            assertEquals(60, reader.readLongs("supply.Item 2").length);
+            assertEquals(2, reader.readLongs("agents")[99]);
+            assertEquals(1000000.00, reader.readDoubles("money.total")[99], 1e-6);
+        }
+    }
+
+    @Test
+    public void emptyMarket() throws IOException {
+        Market market = new Market(0.05);
+        File file = folder.newFile();
+        MetricsExporter exporter = new MetricsExporter(market, file, 4);
+        market.tick();
+        exporter.close();
+
+        try (MetricsReader reader = new MetricsReader(file)) {
+            assertArrayEquals(new long[] {0}, reader.readLongs("agents"));
+            assertArrayEquals(new double[] {0}, reader.readDoubles("money.min"), 0.0);
+        }
+    }
+
+    @Test
+    public void moneyColumnsFromRangeIndex() throws IOException, InsufficientAmountException {
+        Market market = new Market(0.0);
+        market.enableRangeIndexes();
+        Agent buyer = new Agent("Buyer", market);
+        Agent seller = new Agent("Seller", market);
+        new Agent("Broke", market);
+        buyer.receive(100.00);
+        seller.receive(items[0], 10);
+        market.setPrice(items[0], 2.00);
+        File file = folder.newFile();
+
+        MetricsExporter exporter = new MetricsExporter(market, file, 4);
+        market.tick();
+        market.buy(buyer, seller, items[0], 5, 3.00);
+        market.tick();
+        exporter.close();
+
+        try (MetricsReader reader = new MetricsReader(file)) {
+            assertArrayEquals(new double[] {100.00, 100.00}, reader.readDoubles("money.total"), 1e-9);
+            assertArrayEquals(new double[] {0.00, 0.00}, reader.readDoubles("money.min"), 0.0);
+            assertArrayEquals(new double[] {100.00, 85.00}, reader.readDoubles("money.max"), 1e-9);
+            assertArrayEquals(new double[] {2.00, 2.00}, reader.readDoubles("price.Item 0"), 1e-9);
+        }
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void readMissingColumn() throws IOException {
+        Market market = new Market(0.05);
+        File file = folder.newFile();
+        new MetricsExporter(market, file, 4).close();
+
+        try (MetricsReader reader = new MetricsReader(file)) {
+            reader.readDoubles("price.Item 0");
+        }
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void readColumnAsWrongType() throws IOException {
+        Market market = new Market(0.05);
+        File file = folder.newFile();
+        new MetricsExporter(market, file, 4).close();
+
+        try (MetricsReader reader = new MetricsReader(file)) {
+            reader.readDoubles("tick");
+        }
+    }
+
+    @Test (expected = IOException.class)
+    public void readUnfinishedFile() throws IOException {
+        Market market = new Market(0.05);
+        File file = folder.newFile();
+        new MetricsExporter(market, file, 4);
+        market.tick();
+
+        new MetricsReader(file);
+    }
+}
@@ -0,0 +1,115 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link MoneyLedger} class.
+ */
+public class MoneyLedgerTest {
+    @Test
+    public void centsConversion() {
+        assertEquals(1234, MoneyLedger.toCents(12.34));
+        assertEquals(-5, MoneyLedger.toCents(-0.05));
+        assertEquals(12.34, MoneyLedger.toDollars(1234), 0.0);
+    }
+
+    @Test
+    public void unknownAgentHasNothing() {
+        MoneyLedger ledger = new MoneyLedger();
+        assertEquals(0, ledger.getCents(123456));
+        assertEquals(0, ledger.getTotal());
+    }
+
+    @Test
+    public void depositAndWithdraw() {
+        MoneyLedger ledger = new MoneyLedger();
+        ledger.deposit(3, 500);
+        ledger.deposit(100000, 250);
+        ledger.withdraw(3, 700);
+        assertEquals(-200, ledger.getCents(3));
+        assertEquals(250, ledger.getCents(100000));
+        assertEquals(50, ledger.getIssued());
+        assertTrue(ledger.isBalanced());
+    }
+
+    @Test
+    public void setCents() {
+        MoneyLedger ledger = new MoneyLedger();
+        ledger.deposit(1, 100);
+        assertEquals(100, ledger.setCents(1, 40));
+        assertEquals(40, ledger.getCents(1));
+        assertEquals(40, ledger.getIssued());
+    }
+
+    @Test
+    public void transfer() throws InsufficientAmountException {
+        MoneyLedger ledger = new MoneyLedger();
+        ledger.deposit(0, 1000);
+        ledger.transfer(0, 1, 999);
+        assertEquals(1, ledger.getCents(0));
+        assertEquals(999, ledger.getCents(1));
+        assertEquals(1000, ledger.getIssued());
+        assertTrue(ledger.isBalanced());
+    }
+
+    @Test (expected = InsufficientAmountException.class)
+    public void transferTooMuch() throws InsufficientAmountException {
+        MoneyLedger ledger = new MoneyLedger();
+        ledger.deposit(0, 1000);
+        ledger.transfer(0, 1, 1001);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void transferNegative() throws InsufficientAmountException {
+        new MoneyLedger().transfer(0, 1, -1);
+    }
+
+    @Test
+    public void splitEquallyIsExact() {
+        MoneyLedger ledger = new MoneyLedger();
+        int[] ids = {7, 8, 9};
+        ledger.splitEqually(ids, 10000);
+        assertEquals(3334, ledger.getCents(7));
+        assertEquals(3333, ledger.getCents(8));
+        assertEquals(3333, ledger.getCents(9));
+        assertEquals(10000, ledger.getTotal());
+        assertTrue(ledger.isBalanced());
+    }
+
+    @Test
+    public void concurrentTransfersConserveMoney() throws InterruptedException {
+        MoneyLedger ledger = new MoneyLedger();
+        int agents = 100;
+        for (int id = 0; id < agents; id++) {
+            ledger.deposit(id, 1000);
+        }
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 100000; i++) {
+                    try {
+                        ledger.transfer(random.nextInt(agents), random.nextInt(agents), random.nextInt(50));
+                    } catch (InsufficientAmountException e) {
+                        // Expected now and again.
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(100000, ledger.getTotal());
+        assertTrue(ledger.isBalanced());
+        for (int id = 0; id < agents; id++) {
+            assertTrue(ledger.getCents(id) >= 0);
+        }
+    }
+}
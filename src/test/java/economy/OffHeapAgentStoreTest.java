@@ -0,0 +1,150 @@
+package economy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link OffHeapAgentStore} class and the {@link StoredAgent} cursors over it.
+ */
+public class OffHeapAgentStoreTest {
+    Item apple = new Item("Store Apple");
+    Item pear = new Item("Store Pear");
+    Item plum = new Item("Store Plum");
+    OffHeapAgentStore store = new OffHeapAgentStore(2);
+
+    @After
+    public void close() {
+        store.close();
+    }
+
+    @Test
+    public void newAgentsAreEmpty() {
+        assertEquals(0, store.add("Alice"));
+        assertEquals(1, store.add("Bob"));
+        assertEquals(2, store.size());
+        assertEquals("Bob", store.getName(1));
+        assertEquals(0.0, store.getMoney(0), 0.0);
+        assertEquals(0, store.getItemCount(0));
+        assertEquals(0, store.getQuantity(0, apple));
+    }
+
+    @Test
+    public void namesAreShared() {
+        store.add("Alice");
+        store.add((String) null);
+        store.add("Alice");
+        assertEquals("Alice", store.getName(2));
+        assertNull(store.getName(1));
+    }
+
+    @Test
+    public void quantitiesAreSetAndRemoved() {
+        int index = store.add("Alice");
+        store.setQuantity(index, apple, 5);
+        store.setQuantity(index, pear, 7);
+        store.setQuantity(index, apple, 6);
+        assertEquals(6, store.getQuantity(index, apple));
+        assertEquals(2, store.getItemCount(index));
+
+        store.setQuantity(index, apple, 0);
+        assertEquals(0, store.getQuantity(index, apple));
+        assertEquals(7, store.getQuantity(index, pear));
+        assertEquals(1, store.getItemCount(index));
+        assertEquals(pear, store.getItem(index, 0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullInventoryThrows() {
+        int index = store.add("Alice");
+        store.setQuantity(index, apple, 1);
+        store.setQuantity(index, pear, 1);
+        store.setQuantity(index, plum, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void missingAgentThrows() {
+        store.add("Alice");
+        store.getMoney(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedStoreThrows() {
+        store.add("Alice");
+        store.close();
+        store.getMoney(0);
+    }
+
+    @Test
+    public void storeGrowsAcrossSlabs() {
+        for (int i = 0; i < 100_000; i++) {
+            store.setMoney(store.add("Agent"), i);
+        }
+        assertEquals(99_999.0, store.getMoney(99_999), 0.0);
+        assertEquals(65_536.0, store.getMoney(65_536), 0.0);
+        assertTrue(store.getMemoryUsed() > 0);
+    }
+
+    @Test
+    public void buyMovesMoneyAndItems() {
+        int buyer = store.add("Buyer");
+        int seller = store.add("Seller");
+        store.setMoney(buyer, 10.00);
+        store.setQuantity(seller, apple, 3);
+
+        assertTrue(store.buy(buyer, seller, apple, 2, 2.50));
+        assertEquals(5.00, store.getMoney(buyer), 0.0);
+        assertEquals(5.00, store.getMoney(seller), 0.0);
+        assertEquals(2, store.getQuantity(buyer, apple));
+        assertEquals(1, store.getQuantity(seller, apple));
+
+        assertFalse(store.buy(buyer, seller, apple, 2, 1.00));
+        assertFalse(store.buy(buyer, seller, apple, 1, 6.00));
+        assertEquals(1, store.getQuantity(seller, apple));
+    }
+
+    @Test
+    public void failedBuyChangesNothing() {
+        int buyer = store.add("Buyer");
+        int seller = store.add("Seller");
+        store.setMoney(buyer, 10.00);
+        store.setQuantity(buyer, pear, 1);
+        store.setQuantity(buyer, plum, 1);
+        store.setQuantity(seller, apple, 3);
+
+        assertFalse(store.buy(buyer, seller, apple, 1, 1.00));
+        assertEquals(10.00, store.getMoney(buyer), 0.0);
+        assertEquals(3, store.getQuantity(seller, apple));
+    }
+
+    @Test
+    public void agentsAreCopiedInAndOut() {
+        Agent agent = new Agent("Alice");
+        agent.receive(12.50);
+        agent.receive(apple, 4);
+
+        int index = store.add(agent);
+        Agent copy = store.toAgent(index);
+        assertEquals(agent, copy);
+        assertNotEquals(agent.id, copy.id);
+    }
+
+    @Test
+    public void cursorReadsAndWritesThrough() {
+        store.add("Alice");
+        store.add("Bob");
+        StoredAgent cursor = store.cursor(1);
+        cursor.receive(3.00);
+        cursor.lose(1.00);
+        cursor.receive(apple, 5);
+        cursor.lose(apple, 2);
+        assertEquals(2.00, store.getMoney(1), 0.0);
+        assertEquals(3, store.getQuantity(1, apple));
+
+        cursor.lose(apple, 10);
+        assertEquals(0, cursor.getItemCount());
+        assertEquals("Alice", cursor.moveTo(0).getName());
+        assertEquals("\"Alice\" with $0.00 and 0 different items", cursor.toString());
+    }
+}
@@ -0,0 +1,157 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link PersistentInventory} class.
+ */
+public class PersistentInventoryTest {
+    Item apple = new Item("Persistent Apple");
+    Item pear = new Item("Persistent Pear");
+
+    @Test
+    public void emptyInventoryHasNothing() {
+        PersistentInventory empty = PersistentInventory.empty();
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.getQuantity(apple));
+        assertFalse(empty.iterator().hasNext());
+        assertEquals("no items", empty.toString());
+    }
+
+    @Test
+    public void changesMakeNewVersions() {
+        PersistentInventory first = PersistentInventory.empty().add(apple, 3);
+        PersistentInventory second = first.add(apple, 2).add(pear, 1);
+        PersistentInventory third = second.remove(apple, 10);
+
+        assertEquals(3, first.getQuantity(apple));
+        assertEquals(1, first.size());
+        assertEquals(5, second.getQuantity(apple));
+        assertEquals(2, second.size());
+        assertFalse(third.contains(apple));
+        assertEquals(1, third.size());
+        assertEquals(1, third.getQuantity(pear));
+    }
+
+    @Test
+    public void unchangedVersionsAreShared() {
+        PersistentInventory inventory = PersistentInventory.empty().add(apple, 3);
+        assertSame(inventory, inventory.add(apple, 0));
+        assertSame(inventory, inventory.remove(pear, 1));
+        assertSame(inventory, inventory.with(apple, 3));
+        assertSame(PersistentInventory.empty(), inventory.remove(apple, 3));
+    }
+
+    @Test
+    public void matchesMapUnderRandomChanges() {
+        Random random = new Random(42);
+        Item[] items = new Item[500];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Persistent Item " + i);
+        }
+
+        Map<Item, Long> expected = new HashMap<>();
+        PersistentInventory inventory = PersistentInventory.empty();
+        PersistentInventory[] versions = new PersistentInventory[20];
+        Map<Integer, Map<Item, Long>> versionContents = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            Item item = items[random.nextInt(items.length)];
+            long quantity = random.nextInt(5);
+            if (random.nextBoolean()) {
+                inventory = inventory.add(item, quantity);
+                if (quantity > 0) {
+                    expected.merge(item, quantity, Long::sum);
+                }
+            } else {
+                inventory = inventory.remove(item, quantity);
+                long left = expected.getOrDefault(item, 0L) - quantity;
+                if (left > 0) {
+                    expected.put(item, left);
+                } else if (quantity > 0) {
+                    expected.remove(item);
+                }
+            }
+            if (step % 1000 == 0) {
+                versions[step / 1000] = inventory;
+                versionContents.put(step / 1000, new HashMap<>(expected));
+            }
+        }
+
+        assertContains(expected, inventory);
+        for (int v = 0; v < versions.length; v++) {
+            assertContains(versionContents.get(v), versions[v]);
+        }
+    }
+
+    @Test
+    public void inventorySnapshotsSurviveRandomChanges() {
+        Random random = new Random(7);
+        Item[] items = new Item[200];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item("Snapshotted Item " + i);
+        }
+
+        Inventory inventory = new Inventory();
+        Map<Item, Long> expected = new HashMap<>();
+        PersistentInventory[] snapshots = new PersistentInventory[50];
+        Map<Integer, Map<Item, Long>> snapshotContents = new HashMap<>();
+        for (int step = 0; step < 10_000; step++) {
+            Item item = items[random.nextInt(items.length)];
+            long quantity = 1 + random.nextInt(4);
+            if (random.nextInt(3) > 0) {
+                inventory.add(item, quantity);
+                expected.merge(item, quantity, Long::sum);
+            } else {
+                inventory.remove(item, quantity);
+                long left = expected.getOrDefault(item, 0L) - quantity;
+                if (left > 0) {
+                    expected.put(item, left);
+                } else {
+                    expected.remove(item);
+                }
+            }
+            if (step % 200 == 0) {
+                snapshots[step / 200] = inventory.snapshot();
+                snapshotContents.put(step / 200, new HashMap<>(expected));
+            }
+        }
+
+        assertContains(expected, inventory.snapshot());
+        for (int s = 0; s < snapshots.length; s++) {
+            assertContains(snapshotContents.get(s), snapshots[s]);
+        }
+    }
+
+    @Test
+    public void equalInventoriesHaveEqualHashCodes() {
+        PersistentInventory a = PersistentInventory.empty().add(apple, 1).add(pear, 2);
+        PersistentInventory b = PersistentInventory.empty().add(pear, 2).add(apple, 1);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+
+        Inventory inventory = new Inventory();
+        inventory.add(apple, 1);
+        inventory.add(pear, 2);
+        assertEquals(inventory.hashCode(), a.hashCode());
+        assertNotEquals(a, b.add(apple, 1));
+    }
+
+    private static void assertContains(Map<Item, Long> expected, PersistentInventory inventory) {
+        assertEquals(expected.size(), inventory.size());
+        int seen = 0;
+        for (Map.Entry<Item, Long> entry : inventory) {
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            seen++;
+        }
+        assertEquals(expected.size(), seen);
+        for (Map.Entry<Item, Long> entry : expected.entrySet()) {
+            assertEquals((long) entry.getValue(), inventory.getQuantity(entry.getKey()));
+        }
+    }
+}
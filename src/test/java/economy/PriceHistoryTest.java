@@ -0,0 +1,150 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link PriceHistory} class.
+ */
+public class PriceHistoryTest {
+    Item[] items = {new Item("Item 0"), new Item("Item 1"), new Item("Item 2")};
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nonPositiveCapacity() {
+        new PriceHistory(new Market(0.05), 0);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nonPositiveResolution() {
+        new PriceHistory(new Market(0.05), 10, 1, 0);
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void twoHistoriesForOneMarket() {
+        Market market = new Market(0.05);
+        new PriceHistory(market, 10);
+        new PriceHistory(market, 10);
+    }
+
+    @Test
+    public void noHistoryForUnknownItem() {
+        PriceHistory history = new PriceHistory(new Market(0.05), 10);
+        assertEquals(0, history.getUpdateCount(items[0]));
+        assertEquals(0, history.getPrices(items[0], new long[10], new double[10]));
+        assertEquals(0, history.getBars(items[0], 1, new PriceHistory.Bars(10)));
+    }
+
+    @Test
+    public void recordsEveryPriceChange() {
+        Market market = new Market(0.05);
+        PriceHistory history = new PriceHistory(market, 10);
+
+        market.setPrice(items[0], 10.00);
+        market.tick();
+        market.changePrice(items[0], 5.00);
+        market.changePrice(items[0], -20.00);
+
+        long[] ticks = new long[10];
+        double[] prices = new double[10];
+        assertEquals(3, history.getUpdateCount(items[0]));
+        assertEquals(3, history.getPrices(items[0], ticks, prices));
+        assertArrayEquals(new long[] {0, 1, 1}, Arrays.copyOf(ticks, 3));
+        assertArrayEquals(new double[] {10.00, 15.00, 0.00}, Arrays.copyOf(prices, 3), 0.0);
+        assertEquals(0, history.getUpdateCount(items[1]));
+    }
+
+    @Test
+    public void oldestUpdatesAreOverwritten() {
+        Market market = new Market(0.05);
+        PriceHistory history = new PriceHistory(market, 4);
+
+        for (int i = 0; i < 10; i++) {
+            market.setPrice(items[1], i);
+            market.tick();
+        }
+
+        long[] ticks = new long[10];
+        double[] prices = new double[10];
+        assertEquals(10, history.getUpdateCount(items[1]));
+        assertEquals(4, history.getPrices(items[1], ticks, prices));
+        assertArrayEquals(new long[] {6, 7, 8, 9}, Arrays.copyOf(ticks, 4));
+        assertArrayEquals(new double[] {6, 7, 8, 9}, Arrays.copyOf(prices, 4), 0.0);
+
+        assertEquals(2, history.getPrices(items[1], new long[2], prices));
+        assertEquals(8, prices[0], 0.0);
+        assertEquals(9, prices[1], 0.0);
+    }
+
+    @Test
+    public void barsAtEachResolution() {
+        Market market = new Market(0.05);
+        PriceHistory history = new PriceHistory(market, 100, 1, 10);
+
+        // Ticks 0 to 19, with two price updates per tick.
+        for (int t = 0; t < 20; t++) {
+            market.setPrice(items[2], 100 + t);
+            market.setPrice(items[2], 50 + 2 * t);
+            market.tick();
+        }
+
+        PriceHistory.Bars bars = new PriceHistory.Bars(100);
+        assertEquals(20, history.getBars(items[2], 1, bars));
+        assertEquals(20, bars.size);
+        assertEquals(5, bars.starts[5]);
+        assertEquals(105, bars.open[5], 0.0);
+        assertEquals(105, bars.high[5], 0.0);
+        assertEquals(60, bars.low[5], 0.0);
+        assertEquals(60, bars.close[5], 0.0);
+
+        assertEquals(2, history.getBars(items[2], 10, bars));
+        assertEquals(0, bars.starts[0]);
+        assertEquals(100, bars.open[0], 0.0);
+        assertEquals(109, bars.high[0], 0.0);
+        assertEquals(50, bars.low[0], 0.0);
+        assertEquals(68, bars.close[0], 0.0);
+        assertEquals(10, bars.starts[1]);
+        assertEquals(110, bars.open[1], 0.0);
+        assertEquals(119, bars.high[1], 0.0);
+        assertEquals(70, bars.low[1], 0.0);
+        assertEquals(88, bars.close[1], 0.0);
+    }
+
+    @Test
+    public void barsSkipTicksWithoutChanges() {
+        Market market = new Market(0.05);
+        PriceHistory history = new PriceHistory(market, 10, 100);
+
+        market.setPrice(items[0], 1.00);
+        for (int t = 0; t < 350; t++) {
+            market.tick();
+        }
+        market.setPrice(items[0], 2.00);
+
+        PriceHistory.Bars bars = new PriceHistory.Bars(10);
+        assertEquals(2, history.getBars(items[0], 100, bars));
+        assertEquals(0, bars.starts[0]);
+        assertEquals(300, bars.starts[1]);
+        assertEquals(2.00, bars.open[1], 0.0);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void barsOfUnknownResolution() {
+        PriceHistory history = new PriceHistory(new Market(0.05), 10);
+        history.getBars(items[0], 7, new PriceHistory.Bars(10));
+    }
+
+    @Test
+    public void closedHistoryStopsRecording() {
+        Market market = new Market(0.05);
+        PriceHistory history = new PriceHistory(market, 10);
+        market.setPrice(items[0], 1.00);
+        history.close();
+        market.setPrice(items[0], 2.00);
+
+        assertEquals(0, history.getUpdateCount(items[0]));
+        new PriceHistory(market, 10);
+    }
+}
@@ -0,0 +1,173 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link PriceTable} class.
+ */
+public class PriceTableTest {
+    Item[] items = {new Item("Price Item 0"), new Item("Price Item 1"), new Item("Price Item 2")};
+
+    @Test
+    public void newTableHasNoPrices() {
+        PriceTable table = new PriceTable();
+        assertFalse(table.contains(items[0]));
+        assertTrue(Double.isNaN(table.get(items[0])));
+        assertTrue(table.toMap().isEmpty());
+    }
+
+    @Test
+    public void setReturnsPreviousPrice() {
+        PriceTable table = new PriceTable();
+        assertTrue(Double.isNaN(table.set(items[1], 2.50)));
+        assertEquals(2.50, table.set(items[1], 3.00), 0.0);
+        assertEquals(3.00, table.get(items[1]), 0.0);
+        assertTrue(table.contains(items[1]));
+        assertFalse(table.contains(items[0]));
+    }
+
+    @Test
+    public void notANumberIsAPrice() {
+        PriceTable table = new PriceTable();
+        table.set(items[0], Double.NaN);
+        assertTrue(table.contains(items[0]));
+        assertTrue(Double.isNaN(table.get(items[0])));
+    }
+
+    @Test
+    public void readAllIndexesByItemIdentifier() {
+        PriceTable table = new PriceTable();
+        table.set(items[0], 1.00);
+        table.set(items[2], 3.00);
+
+        double[] prices = new double[Item.getIdCount() + 5];
+        table.readAll(prices);
+
+        assertEquals(1.00, prices[items[0].getId()], 0.0);
+        assertTrue(Double.isNaN(prices[items[1].getId()]));
+        assertEquals(3.00, prices[items[2].getId()], 0.0);
+        assertTrue(Double.isNaN(prices[prices.length - 1]));
+    }
+
+    @Test
+    public void readGivenItems() {
+        PriceTable table = new PriceTable();
+        table.set(items[0], 1.00);
+        table.set(items[1], 2.00);
+
+        double[] prices = new double[2];
+        table.read(new Item[] {items[1], items[2]}, prices);
+
+        assertEquals(2.00, prices[0], 0.0);
+        assertTrue(Double.isNaN(prices[1]));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void readIntoShortArray() {
+        new PriceTable().read(items, new double[2]);
+    }
+
+    @Test
+    public void toMapHasEveryPrice() {
+        PriceTable table = new PriceTable();
+        table.set(items[0], 1.00);
+        table.set(items[2], 3.00);
+
+        Map<Item, Double> prices = table.toMap();
+
+        assertEquals(2, prices.size());
+        assertEquals(1.00, prices.get(items[0]), 0.0);
+        assertEquals(3.00, prices.get(items[2]), 0.0);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        PriceTable table = new PriceTable();
+        table.set(items[0], 1.00);
+        PriceTable copy = table.copy();
+        copy.set(items[0], 5.00);
+        copy.set(items[1], 6.00);
+
+        assertEquals(1.00, table.get(items[0]), 0.0);
+        assertFalse(table.contains(items[1]));
+        assertEquals(5.00, copy.get(items[0]), 0.0);
+    }
+
+    @Test
+    public void marketKeepsItsPricesInTheTable() {
+        Market market = new Market(0.05);
+        market.setPrice(items[0], 4.00);
+        assertEquals(4.00, market.getPriceTable().get(items[0]), 0.0);
+    }
+
+    @Test
+    public void batchedPriceChangesArePublishedTogether() throws InterruptedException {
+        Item[] many = new Item[64];
+        PriceTable table = new PriceTable();
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Item("Batched Price Item " + i);
+            table.set(many[i], 0);
+        }
+        boolean[] inconsistent = {false};
+
+        Thread reader = new Thread(() -> {
+            double[] prices = new double[many.length];
+            for (int i = 0; i < 5000; i++) {
+                table.read(many, prices);
+                for (double price : prices) {
+                    if (price != prices[0]) {
+                        inconsistent[0] = true;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int round = 1; reader.isAlive(); round++) {
+            table.beginBatch();
+            for (Item item : many) {
+                table.set(item, round);
+            }
+            table.endBatch();
+        }
+        reader.join();
+
+        assertFalse(inconsistent[0]);
+    }
+
+    @Test
+    public void concurrentReadsSeeEveryPriceFromTheSameMoment() throws InterruptedException {
+        Item[] many = new Item[64];
+        PriceTable table = new PriceTable();
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Item("Ordered Price Item " + i);
+            table.set(many[i], 0);
+        }
+        boolean[] inconsistent = {false};
+
+        Thread reader = new Thread(() -> {
+            double[] prices = new double[many.length];
+            for (int i = 0; i < 5000; i++) {
+                table.read(many, prices);
+                // Prices are set in order each round, so no price can be ahead of one set before it.
+                for (int k = 1; k < prices.length; k++) {
+                    if (prices[k] > prices[k - 1] || prices[0] - prices[k] > 1) {
+                        inconsistent[0] = true;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int round = 1; reader.isAlive(); round++) {
+            for (Item item : many) {
+                table.set(item, round);
+            }
+        }
+        reader.join();
+
+        assertFalse(inconsistent[0]);
+    }
+}
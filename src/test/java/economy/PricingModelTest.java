@@ -0,0 +1,140 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link PricingModel} implementations and batch pricing in {@link Market}.
+ */
+public class PricingModelTest {
+    Item item = new Item("Pricing Item");
+    PricingModel[] models = {LinearPricingModel.INSTANCE, ExponentialPricingModel.INSTANCE,
+            LogElasticPricingModel.INSTANCE};
+
+    @Test
+    public void linearMatchesOriginalFormula() {
+        double price = 123.45;
+        assertEquals(price - price * 0.05 * 3, LinearPricingModel.INSTANCE.supplyChanged(price, 3, 0.05), 0.0);
+        assertEquals(price + price * 0.05 * 3, LinearPricingModel.INSTANCE.supplyChanged(price, -3, 0.05), 0.0);
+        assertEquals(0.0, LinearPricingModel.INSTANCE.supplyChanged(price, 100, 0.05), 0.0);
+        assertEquals(0.0, LinearPricingModel.INSTANCE.demandChanged(1.0, -100, 0.05), 0.0);
+        assertEquals(price + 2.0 * 0.05 * 7.0, LinearPricingModel.INSTANCE.demandChanged(price, 2.0 * 0.05 * 7.0, 0.05),
+                0.0);
+    }
+
+    @Test
+    public void supplyMovesPricesTheRightWay() {
+        for (PricingModel model : models) {
+            assertTrue(model.supplyChanged(100, 5, 0.01) < 100);
+            assertTrue(model.supplyChanged(100, -5, 0.01) > 100);
+            assertEquals(100, model.supplyChanged(100, 0, 0.01), 0.0);
+            assertTrue(model.demandChanged(100, 50, 0.01) > 100);
+            assertTrue(model.demandChanged(100, -50, 0.01) < 100);
+            assertTrue(model.demandChanged(100, -1e12, 0.01) >= 0);
+        }
+    }
+
+    @Test
+    public void exponentialAndLogElasticAreSymmetric() {
+        for (PricingModel model : new PricingModel[] {ExponentialPricingModel.INSTANCE, LogElasticPricingModel.INSTANCE}) {
+            double price = model.supplyChanged(model.supplyChanged(100, 7, 0.05), -7, 0.05);
+            assertEquals(100, price, 1e-9);
+        }
+    }
+
+    @Test
+    public void batchMatchesScalar() {
+        double[] prices = {10, 20, 30};
+        long[] deltas = {1, -2, 0};
+        double[] pressures = {0, 5, -5};
+        for (PricingModel model : models) {
+            double[] batch = prices.clone();
+            model.apply(batch, deltas, pressures, 3, 0.01);
+            for (int i = 0; i < 3; i++) {
+                double scalar = model.demandChanged(model.supplyChanged(prices[i], deltas[i], 0.01), pressures[i], 0.01);
+                assertEquals(scalar, batch[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void marketUsesModel() {
+        Market market = new Market("Exponential", 0.01, ExponentialPricingModel.INSTANCE);
+        assertSame(ExponentialPricingModel.INSTANCE, market.getPricingModel());
+        Agent agent = new Agent("Agent", market);
+        market.setPrice(item, 100.00);
+        agent.receive(item, 10);
+        assertEquals(100.00 * Math.exp(-0.1), market.getPrice(item), 1e-9);
+        agent.lose(item, 10);
+        assertEquals(100.00, market.getPrice(item), 1e-9);
+    }
+
+    @Test
+    public void generateItemsUsesModel() {
+        Market market = new Market("Exponential", 0.001, ExponentialPricingModel.INSTANCE);
+        market.generateAgents(100);
+        market.generateItems(5000, 10);
+        Map<Item, Double> prices = new HashMap<>();
+        Map<Item, Long> supplies = new HashMap<>();
+        for (Map.Entry<Item, Long> entry : market.getItems()) {
+            prices.put(entry.getKey(), market.getPrice(entry.getKey()));
+            supplies.put(entry.getKey(), entry.getValue());
+        }
+
+        market.generateItems(1000, 10);
+        for (Map.Entry<Item, Double> entry : prices.entrySet()) {
+            long received = market.getSupply(entry.getKey()) - supplies.get(entry.getKey());
+            double expected = entry.getValue() * Math.exp(-0.001 * received);
+            assertEquals(expected, market.getPrice(entry.getKey()), expected * 1e-12);
+        }
+    }
+
+    @Test
+    public void generateItemsDefersWhenBatchPricing() {
+        Market market = new Market("Exponential", 0.001, ExponentialPricingModel.INSTANCE);
+        market.generateAgents(100);
+        market.generateItems(5000, 10);
+        Map<Item, Double> prices = new HashMap<>();
+        Map<Item, Long> supplies = new HashMap<>();
+        for (Map.Entry<Item, Long> entry : market.getItems()) {
+            prices.put(entry.getKey(), market.getPrice(entry.getKey()));
+            supplies.put(entry.getKey(), entry.getValue());
+        }
+
+        market.setBatchPricing(true);
+        market.generateItems(1000, 10);
+        for (Map.Entry<Item, Double> entry : prices.entrySet()) {
+            assertEquals(entry.getValue(), market.getPrice(entry.getKey()), 0.0);
+        }
+        market.tick();
+        for (Map.Entry<Item, Double> entry : prices.entrySet()) {
+            long received = market.getSupply(entry.getKey()) - supplies.get(entry.getKey());
+            double expected = entry.getValue() * Math.exp(-0.001 * received);
+            assertEquals(expected, market.getPrice(entry.getKey()), expected * 1e-12);
+        }
+    }
+
+    @Test
+    public void batchPricingDefersToTick() {
+        Market market = new Market(0.01);
+        Agent agent = new Agent("Agent", market);
+        market.setPrice(item, 100.00);
+        market.setBatchPricing(true);
+        assertTrue(market.isBatchPricing());
+
+        agent.receive(item, 10);
+        agent.lose(item, 4);
+        assertEquals(100.00, market.getPrice(item), 0.0);
+
+        market.tick();
+        assertEquals(100.00 - 100.00 * 0.01 * 6, market.getPrice(item), 1e-9);
+
+        agent.receive(item, 1);
+        market.setBatchPricing(false);
+        assertEquals(94.00 - 94.00 * 0.01, market.getPrice(item), 1e-9);
+    }
+}
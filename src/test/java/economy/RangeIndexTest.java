@@ -0,0 +1,161 @@
+package economy;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link RangeIndex} class.
+ */
+public class RangeIndexTest {
+    @Test
+    public void newIndexIsEmpty() {
+        RangeIndex<String> index = new RangeIndex<>();
+        assertEquals(0, index.size());
+        assertFalse(index.contains(0));
+        assertTrue(Double.isNaN(index.getKey(0)));
+        assertTrue(index.getInRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).isEmpty());
+        assertTrue(Double.isNaN(index.getMin()));
+        assertTrue(Double.isNaN(index.getMax()));
+        assertEquals(0.0, index.getSum(), 0.0);
+    }
+
+    @Test
+    public void rangesAreInclusiveAndInOrderOfKey() {
+        RangeIndex<String> index = new RangeIndex<>();
+        index.put(0, "fifty", 50.0);
+        index.put(1, "ten", 10.0);
+        index.put(2, "five", 5.0);
+        index.put(3, "twenty", 20.0);
+
+        assertEquals(Arrays.asList("ten", "twenty", "fifty"), index.getInRange(10.0, 50.0));
+        assertEquals(Arrays.asList("five", "ten"), index.getInRange(0.0, 19.99));
+        assertEquals(2, index.countInRange(6.0, 20.0));
+        assertEquals(0, index.countInRange(51.0, 100.0));
+    }
+
+    @Test
+    public void equalKeysAreOrderedByIdentifier() {
+        RangeIndex<String> index = new RangeIndex<>();
+        index.put(7, "c", 1.0);
+        index.put(2, "a", 1.0);
+        index.put(5, "b", 1.0);
+
+        assertEquals(Arrays.asList("a", "b", "c"), index.getInRange(1.0, 1.0));
+    }
+
+    @Test
+    public void putMovesValuesAlreadyInIndex() {
+        RangeIndex<String> index = new RangeIndex<>();
+        index.put(0, "a", 1.0);
+        index.put(1, "b", 2.0);
+        index.put(2, "c", 3.0);
+
+        index.put(0, "a", 2.5);
+        assertEquals(Arrays.asList("b", "a", "c"), index.getInRange(0.0, 10.0));
+        index.put(2, "c", 0.5);
+        assertEquals(Arrays.asList("c", "b", "a"), index.getInRange(0.0, 10.0));
+        assertEquals(3, index.size());
+        assertEquals(0.5, index.getKey(2), 0.0);
+    }
+
+    @Test
+    public void remove() {
+        RangeIndex<String> index = new RangeIndex<>();
+        index.put(0, "a", 1.0);
+        index.put(1, "b", 2.0);
+
+        assertTrue(index.remove(0));
+        assertFalse(index.remove(0));
+        assertFalse(index.remove(99));
+        assertFalse(index.contains(0));
+        assertEquals(1, index.size());
+        assertEquals(Collections.singletonList("b"), index.getInRange(0.0, 10.0));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void putNegativeIdentifier() {
+        new RangeIndex<String>().put(-1, "a", 1.0);
+    }
+
+    @Test
+    public void matchesSortedModelUnderRandomChanges() {
+        Random random = new Random(49);
+        RangeIndex<Integer> index = new RangeIndex<>();
+        Map<Integer, Double> keys = new HashMap<>();
+
+        // Enough values for the tree to be several levels deep.
+        for (int step = 0; step < 200000; step++) {
+            int id = random.nextInt(20000);
+            if (random.nextInt(5) == 0) {
+                assertEquals(keys.remove(id) != null, index.remove(id));
+            } else {
+                // Mostly small moves, which keep a value between its neighbours, and some large ones.
+                double key = keys.containsKey(id) && random.nextBoolean()
+                        ? keys.get(id) + random.nextGaussian()
+                        : random.nextInt(1000) / 10.0;
+                keys.put(id, key);
+                index.put(id, id, key);
+            }
+
+            if (step % 1000 == 0) {
+                double min = random.nextDouble() * 100;
+                double max = min + random.nextDouble() * 30;
+                List<Integer> expected = new ArrayList<>();
+                keys.entrySet().stream()
+                        .filter(e -> e.getValue() >= min && e.getValue() <= max)
+                        .sorted(Comparator.<Map.Entry<Integer, Double>>comparingDouble(Map.Entry::getValue)
+                                .thenComparing(Map.Entry::getKey))
+                        .forEach(e -> expected.add(e.getKey()));
+                assertEquals(expected, index.getInRange(min, max));
+                assertEquals(expected.size(), index.countInRange(min, max));
+                assertEquals(keys.size(), index.size());
+                assertEquals(keys.values().stream().mapToDouble(Double::doubleValue).sum(), index.getSum(), 1e-6);
+                if (!keys.isEmpty()) {
+                    assertEquals(Collections.min(keys.values()), index.getMin(), 0.0);
+                    assertEquals(Collections.max(keys.values()), index.getMax(), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nodesAreReclaimedAsValuesLeave() {
+        Random random = new Random(26);
+        RangeIndex<Integer> index = new RangeIndex<>();
+        for (int round = 0; round < 20; round++) {
+            for (int id = 0; id < 10000; id++) {
+                index.put(id, id, random.nextInt(100000) / 10.0);
+            }
+            // Move every value far enough to leave its leaf, then remove all but every hundredth.
+            for (int id = 0; id < 10000; id++) {
+                index.put(id, id, random.nextInt(100000) / 10.0);
+            }
+            for (int id = 0; id < 10000; id++) {
+                if (id % 100 != 0) {
+                    index.remove(id);
+                }
+            }
+
+            assertEquals(100, index.size());
+            // Every leaf but a root leaf is at least half full, so 100 values need at most three leaves and a root.
+            assertTrue(index.getNodeCount() <= 4);
+            List<Integer> found = index.getInRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            assertEquals(100, found.size());
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(index.getKey(found.get(i - 1)) <= index.getKey(found.get(i)));
+            }
+            assertEquals(index.getKey(found.get(0)), index.getMin(), 0.0);
+            assertEquals(index.getKey(found.get(99)), index.getMax(), 0.0);
+        }
+
+        for (int id = 0; id < 10000; id += 100) {
+            index.remove(id);
+        }
+        assertEquals(1, index.getNodeCount());
+        assertTrue(Double.isNaN(index.getMin()));
+        assertTrue(index.getInRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).isEmpty());
+    }
+}
@@ -0,0 +1,275 @@
+package economy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link ShardedMarket} class.
+ */
+public class ShardedMarketTest {
+    Item[] items = {new Item("Item 0"), new Item("Item 1"), new Item("Item 2")};
+
+    ShardedMarket sharded = new ShardedMarket("Shard", 4, 0.05);
+
+    @After
+    public void tearDown() {
+        sharded.close();
+    }
+
+    private Agent addAgent(int shard, String name, double money, Item item, long quantity) throws Exception {
+        Agent agent = new Agent(name);
+        agent.receive(money);
+        agent.receive(item, quantity);
+        sharded.execute(shard, market -> market.addAgent(agent)).get();
+        return agent;
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void noShards() {
+        new ShardedMarket("Shard", 0, 0.05);
+    }
+
+    @Test
+    public void shardsHaveTheirOwnMarkets() throws Exception {
+        assertEquals(4, sharded.getShardCount());
+        assertEquals("Shard 0", sharded.query(0, market -> market.name).get());
+        assertEquals("Shard 3", sharded.query(3, market -> market.name).get());
+    }
+
+    @Test
+    public void migrateAppliesPriceEffectsOnBothSides() throws Exception {
+        addAgent(0, "Stays in 0", 0, items[0], 10);
+        addAgent(1, "Stays in 1", 0, items[0], 10);
+        Agent agent = addAgent(0, "Moves", 0, items[0], 2);
+
+        double oldPrice0 = sharded.query(0, market -> market.getPrice(items[0])).get();
+        double oldPrice1 = sharded.query(1, market -> market.getPrice(items[0])).get();
+
+        sharded.migrate(agent, 0, 1).get();
+
+        assertEquals(10L, (long) sharded.query(0, market -> market.getSupply(items[0])).get());
+        assertEquals(12L, (long) sharded.query(1, market -> market.getSupply(items[0])).get());
+        assertTrue(sharded.query(0, market -> market.getPrice(items[0])).get() > oldPrice0);
+        assertEquals(Math.max(0, oldPrice1 * (1 - 0.05 * 2)),
+                sharded.query(1, market -> market.getPrice(items[0])).get(), 0x1.0p-10);
+        assertTrue(sharded.query(1, market -> market.getAgents().contains(agent)).get());
+        assertFalse(sharded.query(0, market -> market.getAgents().contains(agent)).get());
+    }
+
+    @Test
+    public void migrateAgentFromWrongShard() throws Exception {
+        Agent agent = addAgent(0, "Agent", 0, items[0], 1);
+        try {
+            sharded.migrate(agent, 2, 1).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void buyAcrossShards() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 100.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 10);
+
+        assertTrue(sharded.buy(0, buyer, 1, seller, items[0], 4, 5.00).get());
+
+        assertEquals(80.00, sharded.query(0, market -> buyer.getMoney()).get(), 0.0);
+        assertEquals(4L, (long) sharded.query(0, market -> buyer.inventory.getQuantity(items[0])).get());
+        assertEquals(4L, (long) sharded.query(0, market -> market.getSupply(items[0])).get());
+        assertEquals(20.00, sharded.query(1, market -> seller.getMoney()).get(), 0.0);
+        assertEquals(6L, (long) sharded.query(1, market -> market.getSupply(items[0])).get());
+        assertEquals(5.00, sharded.query(1, market -> market.getTradeStatistics().getVwap(items[0])).get(), 0.0);
+    }
+
+    @Test
+    public void buyAcrossShardsMovesSellersPrice() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 1000.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 10);
+        // The items leaving the seller move the price too, so compare against a seller with no buyer elsewhere.
+        Agent control = addAgent(2, "Control", 0, items[0], 10);
+        sharded.execute(1, market -> {
+            market.setPrice(items[0], 5.00);
+            if (MarketMetrics.ENABLED) {
+                market.getMetrics().reset();
+            }
+        }).get();
+        sharded.execute(2, market -> market.setPrice(items[0], 5.00)).get();
+
+        assertTrue(sharded.buy(0, buyer, 1, seller, items[0], 4, 100.00).get());
+        double price = sharded.query(1, market -> market.getPrice(items[0])).get();
+        double unpressured = sharded.query(2, market -> {
+            control.lose(items[0], 4);
+            return market.getPrice(items[0]);
+        }).get();
+
+        assertTrue(price > unpressured);
+        if (MarketMetrics.ENABLED) {
+            assertEquals(1, (long) sharded.query(1, market -> market.getMetrics().getTradeCount()).get());
+        }
+    }
+
+    @Test
+    public void buyAcrossShardsWithoutStockRefundsBuyer() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 100.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 1);
+
+        try {
+            sharded.buy(0, buyer, 1, seller, items[0], 4, 5.00).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InsufficientAmountException);
+        }
+
+        assertEquals(100.00, sharded.query(0, market -> buyer.getMoney()).get(), 0.0);
+        assertEquals(0.00, sharded.query(1, market -> seller.getMoney()).get(), 0.0);
+        assertEquals(1L, (long) sharded.query(1, market -> seller.inventory.getQuantity(items[0])).get());
+    }
+
+    @Test
+    public void buyAcrossShardsWithoutMoney() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 1.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 10);
+
+        try {
+            sharded.buy(0, buyer, 1, seller, items[0], 4, 5.00).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InsufficientAmountException);
+        }
+    }
+
+    @Test
+    public void buyWithinShard() throws Exception {
+        Agent buyer = addAgent(2, "Buyer", 100.00, items[1], 1);
+        Agent seller = addAgent(2, "Seller", 0, items[0], 10);
+
+        assertTrue(sharded.buy(2, buyer, 2, seller, items[0], 1, 5.00).get());
+        assertFalse(sharded.buy(2, buyer, 2, seller, items[0], 0, 5.00).get());
+        assertEquals(95.00, sharded.query(2, market -> buyer.getMoney()).get(), 0.0);
+    }
+
+    @Test
+    public void buyerCannotMigrateWhileTradeIsInFlight() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 100.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 10);
+
+        CountDownLatch release = new CountDownLatch(1);
+        sharded.execute(1, market -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Boolean> trade = sharded.buy(0, buyer, 1, seller, items[0], 4, 5.00);
+        try {
+            sharded.migrate(buyer, 0, 2).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(trade.get());
+        assertEquals(4L, (long) sharded.query(0, market -> buyer.inventory.getQuantity(items[0])).get());
+        sharded.migrate(buyer, 0, 2).get();
+        assertEquals(4L, (long) sharded.query(2, market -> market.getSupply(items[0])).get());
+    }
+
+    @Test
+    public void failedMessageCompletesFutureAndReachesHandler() throws Exception {
+        AtomicReference<Market> failedIn = new AtomicReference<>();
+        sharded.setExceptionHandler((market, e) -> failedIn.set(market));
+        Agent agent = addAgent(0, "Agent", 0, items[0], 1);
+        sharded.execute(0, market -> agent.inventory = null).get();
+
+        try {
+            sharded.migrate(agent, 0, 1).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        assertEquals("Shard 0", failedIn.get().name);
+        assertEquals("Shard 0", sharded.query(0, market -> market.name).get());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void nullExceptionHandler() {
+        sharded.setExceptionHandler(null);
+    }
+
+    @Test
+    public void closeFinishesTradesInFlight() throws Exception {
+        Agent buyer = addAgent(0, "Buyer", 100.00, items[1], 1);
+        Agent seller = addAgent(1, "Seller", 0, items[0], 10);
+
+        CompletableFuture<Boolean> trade = sharded.buy(0, buyer, 1, seller, items[0], 4, 5.00);
+        sharded.close();
+
+        assertTrue(trade.isDone());
+        assertTrue(trade.get());
+        assertEquals(4L, buyer.inventory.getQuantity(items[0]));
+        try {
+            sharded.query(0, market -> market.name).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void concurrentMigrationsAndTradesConserveAgentsAndMoney() throws Exception {
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            agents.add(addAgent(i % 4, "Agent " + i, 100.00, items[i % 3], 100));
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 40; i += 2) {
+                int buyerShard = (i + round) % 4;
+                int sellerShard = (i + 1 + round) % 4;
+                futures.add(sharded.buy(buyerShard, agents.get(i), sellerShard, agents.get(i + 1),
+                        items[(i + 1) % 3], 1, 1.00).exceptionally(e -> false));
+            }
+            for (CompletableFuture<?> future : futures) {
+                future.get();
+            }
+            futures.clear();
+
+            for (int i = 0; i < 40; i++) {
+                futures.add(sharded.migrate(agents.get(i), (i + round) % 4, (i + round + 1) % 4));
+            }
+            for (CompletableFuture<?> future : futures) {
+                future.get();
+            }
+            futures.clear();
+        }
+
+        int agentCount = 0;
+        double money = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            agentCount += sharded.query(shard, market -> market.getAgents().size()).get();
+            money += sharded.query(shard, market -> {
+                double total = 0;
+                for (Agent agent : market.getAgents()) {
+                    total += agent.getMoney();
+                }
+                return total;
+            }).get();
+        }
+        assertEquals(40, agentCount);
+        assertEquals(4000.00, money, 1e-9);
+    }
+}
@@ -0,0 +1,260 @@
+package economy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link TieredAgentStore} class.
+ */
+public class TieredAgentStoreTest {
+    Item apple = new Item("Tiered Apple");
+    Item pear = new Item("Tiered Pear");
+    OffHeapAgentStore cold = new OffHeapAgentStore(4);
+    TieredAgentStore store = new TieredAgentStore(cold, 2);
+
+    @After
+    public void close() {
+        store.close();
+    }
+
+    @Test
+    public void newAgentsAreCached() {
+        int alice = store.add("Alice");
+        assertTrue(store.isCached(alice));
+        assertEquals("Alice", store.getName(alice));
+        assertEquals(1, store.getHits());
+        assertEquals(0, store.getMisses());
+    }
+
+    @Test
+    public void evictedAgentsAreWrittenBackAndReloaded() {
+        int alice = store.add("Alice");
+        store.setMoney(alice, 5.00);
+        store.setQuantity(alice, apple, 3);
+        store.add("Bob");
+        store.add("Carol");
+
+        assertFalse(store.isCached(alice));
+        assertEquals(1, store.getEvictions());
+        assertEquals(1, store.getWriteBacks());
+        assertEquals(5.00, cold.getMoney(alice), 0.0);
+        assertEquals(3, cold.getQuantity(alice, apple));
+
+        long misses = store.getMisses();
+        assertEquals(3, store.getQuantity(alice, apple));
+        assertEquals(misses + 1, store.getMisses());
+        assertTrue(store.isCached(alice));
+    }
+
+    @Test
+    public void manyAgentsThroughSmallCache() {
+        TieredAgentStore large = new TieredAgentStore(new OffHeapAgentStore(4), 37);
+        Random random = new Random(43);
+        for (int i = 0; i < 1000; i++) {
+            large.setMoney(large.add("Agent " + i), i);
+        }
+        for (int step = 0; step < 20000; step++) {
+            int index = random.nextInt(1000);
+            assertEquals(index, large.getMoney(index), 0.0);
+            assertTrue(large.isCached(index));
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (large.isCached(i)) {
+                cached++;
+            }
+        }
+        assertEquals(37, cached);
+        assertEquals(37, large.getCachedCount());
+        large.close();
+    }
+
+    @Test
+    public void unchangedAgentsAreNotWrittenBack() {
+        store.add("Alice");
+        store.add("Bob");
+        store.add("Carol");
+        assertEquals(1, store.getEvictions());
+        assertEquals(0, store.getWriteBacks());
+    }
+
+    @Test
+    public void recentlyUsedAgentsGetASecondChance() {
+        int alice = store.add("Alice");
+        int bob = store.add("Bob");
+        int carol = store.add("Carol");
+        assertFalse(store.isCached(alice));
+
+        // Carol has just been added and Bob's bit was cleared by the last sweep, so Bob goes next.
+        store.getMoney(carol);
+        store.getMoney(alice);
+        assertTrue(store.isCached(carol));
+        assertFalse(store.isCached(bob));
+    }
+
+    @Test
+    public void removedItemsAreRemovedFromColdStore() {
+        int alice = store.add("Alice");
+        store.setQuantity(alice, apple, 3);
+        store.setQuantity(alice, pear, 4);
+        store.flush();
+        store.setQuantity(alice, apple, 0);
+        store.flush();
+        assertEquals(0, cold.getQuantity(alice, apple));
+        assertEquals(4, cold.getQuantity(alice, pear));
+        assertEquals(1, cold.getItemCount(alice));
+    }
+
+    @Test
+    public void tradesWorkAcrossTiers() {
+        int buyer = store.add("Buyer");
+        int seller = store.add("Seller");
+        store.setMoney(buyer, 10.00);
+        store.setQuantity(seller, apple, 3);
+        store.add("Other");
+        store.add("Another");
+
+        assertTrue(store.buy(buyer, seller, apple, 2, 1.50));
+        assertEquals(7.00, store.getMoney(buyer), 0.0);
+        assertEquals(3.00, store.getMoney(seller), 0.0);
+        assertEquals(1, store.getQuantity(seller, apple));
+        assertTrue(store.getHitRate() > 0 && store.getHitRate() < 1);
+        assertTrue(store.getMeanEvictionNanos() >= 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void coldStoreSlotsAreEnforced() {
+        TieredAgentStore small = new TieredAgentStore(new OffHeapAgentStore(1), 2);
+        try {
+            int alice = small.add("Alice");
+            small.setQuantity(alice, apple, 1);
+            small.setQuantity(alice, pear, 1);
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void slotsFollowTheColdStore() {
+        int alice = store.add("Alice");
+        store.setQuantity(alice, apple, 1);
+        store.setQuantity(alice, pear, 2);
+        store.setQuantity(alice, apple, 0);
+        assertEquals(1, store.getItemCount(alice));
+        assertEquals(pear, store.getItem(alice, 0));
+
+        store.add("Bob");
+        store.add("Carol");
+        assertFalse(store.isCached(alice));
+        assertEquals(pear, cold.getItem(alice, 0));
+        assertEquals(pear, store.getItem(alice, 0));
+        assertEquals(2, store.getQuantity(alice, pear));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void unusedSlotThrows() {
+        int alice = store.add("Alice");
+        store.setQuantity(alice, apple, 1);
+        store.getItem(alice, 1);
+    }
+
+    @Test
+    public void marketBackedByStoreCountsHoldings() {
+        for (int i = 0; i < 5; i++) {
+            store.setQuantity(store.add("Agent " + i), apple, i + 1);
+        }
+        Market market = new Market(0.0);
+        market.setAgentStore(store);
+
+        assertSame(store, market.getAgentStore());
+        assertEquals(15, market.getSupply(apple));
+        assertTrue(market.getPrice(apple) >= 0);
+        for (int i = 0; i < 20; i++) {
+            int index = market.getRandomStoredAgent();
+            assertTrue(index >= 0 && index < 5);
+        }
+
+        market.receive(0, pear, 4);
+        assertEquals(4, market.getSupply(pear));
+        assertEquals(4, store.getQuantity(0, pear));
+    }
+
+    @Test
+    public void forkLeavesStoredAgentsBehind() {
+        for (int i = 0; i < 5; i++) {
+            store.setQuantity(store.add("Agent " + i), apple, i + 1);
+        }
+        Market market = new Market(0.0);
+        new Agent("Holder", market).receive(apple, 2);
+        market.setAgentStore(store);
+        market.receive(0, pear, 4);
+
+        Market fork = market.fork();
+        assertNull(fork.getAgentStore());
+        assertEquals(1, fork.getAgentCount());
+        assertEquals(2, fork.getSupply(apple));
+        assertEquals(0, fork.getSupply(pear));
+        assertEquals(market.getPrice(apple), fork.getPrice(apple), 0.0);
+        assertEquals(17, market.getSupply(apple));
+    }
+
+    @Test
+    public void marketBackedByStoreTrades() throws InsufficientAmountException {
+        for (int i = 0; i < 6; i++) {
+            int index = store.add("Agent " + i);
+            store.setMoney(index, 100.00);
+            store.setQuantity(index, apple, 10);
+        }
+        Market market = new Market(0.01);
+        market.setAgentStore(store);
+        market.setPrice(apple, 1.00);
+
+        market.buy(0, 1, apple, 3, 2.00);
+        assertEquals(94.00, store.getMoney(0), 0.0);
+        assertEquals(106.00, store.getMoney(1), 0.0);
+        assertEquals(13, store.getQuantity(0, apple));
+        assertEquals(7, store.getQuantity(1, apple));
+        assertEquals(60, market.getSupply(apple));
+        assertEquals(2.00, market.getTradeStatistics().getVwap(apple), 0.0);
+
+        // Trade among more agents than the cache holds, so that they are evicted and reloaded along the way.
+        for (int round = 0; round < 50; round++) {
+            market.buy(round % 6, (round + 1) % 6, apple, 1, 1.00);
+        }
+        store.flush();
+        double money = 0;
+        long apples = 0;
+        for (int i = 0; i < 6; i++) {
+            money += cold.getMoney(i);
+            apples += cold.getQuantity(i, apple);
+        }
+        assertEquals(600.00, money, 1e-9);
+        assertEquals(60, apples);
+        assertTrue(store.getEvictions() > 0);
+    }
+
+    @Test(expected = InsufficientAmountException.class)
+    public void storedBuyerWithoutMoney() throws InsufficientAmountException {
+        int buyer = store.add("Buyer");
+        int seller = store.add("Seller");
+        store.setQuantity(seller, apple, 1);
+        Market market = new Market(0.0);
+        market.setAgentStore(store);
+        market.buy(buyer, seller, apple, 1, 1.00);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void marketWithoutStore() {
+        new Market(0.0).receive(0, apple, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new TieredAgentStore(cold, 0);
+    }
+}
@@ -0,0 +1,132 @@
+package economy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the {@link TradeStatistics} class.
+ */
+public class TradeStatisticsTest {
+    Item[] items = {new Item("Item 0"), new Item("Item 1"), new Item("Item 2")};
+
+    private Market newMarket(Agent buyer, Agent seller) {
+        Market market = new Market(0.05);
+        market.addAgents(buyer, seller);
+        buyer.receive(10000.00);
+        seller.receive(items[0], 100);
+        seller.receive(items[1], 100);
+        return market;
+    }
+
+    @Test
+    public void noTrades() {
+        Market market = new Market(0.05);
+        TradeStatistics.Window window = new TradeStatistics.Window();
+        market.getTradeStatistics().readCumulative(items[0], window);
+        assertEquals(0, window.quantity);
+        assertEquals(0.0, window.notional, 0.0);
+        assertEquals(0, window.trades);
+        assertTrue(Double.isNaN(window.getVwap()));
+        assertTrue(Double.isNaN(market.getTradeStatistics().getVwap(items[0])));
+    }
+
+    @Test
+    public void cumulativeTotals() throws InsufficientAmountException {
+        Agent buyer = new Agent("Buyer");
+        Agent seller = new Agent("Seller");
+        Market market = newMarket(buyer, seller);
+
+        market.buy(buyer, seller, items[0], 2, 10.00);
+        market.tick();
+        market.buy(buyer, seller, items[0], 3, 20.00);
+        market.buy(buyer, seller, items[1], 1, 5.00);
+
+        TradeStatistics.Window window = new TradeStatistics.Window();
+        market.getTradeStatistics().readCumulative(items[0], window);
+        assertEquals(5, window.quantity);
+        assertEquals(80.00, window.notional, 0.0);
+        assertEquals(2, window.trades);
+        assertEquals(16.00, window.getVwap(), 0.0);
+        assertEquals(16.00, market.getTradeStatistics().getVwap(items[0]), 0.0);
+        assertEquals(5.00, market.getTradeStatistics().getVwap(items[1]), 0.0);
+    }
+
+    @Test
+    public void perTickTotals() throws InsufficientAmountException {
+        Agent buyer = new Agent("Buyer");
+        Agent seller = new Agent("Seller");
+        Market market = newMarket(buyer, seller);
+        TradeStatistics statistics = market.getTradeStatistics();
+        TradeStatistics.Window window = new TradeStatistics.Window();
+
+        statistics.readLastTick(items[0], window);
+        assertEquals(-1, window.tick);
+
+        market.buy(buyer, seller, items[0], 2, 10.00);
+        statistics.readCurrentTick(items[0], window);
+        assertEquals(2, window.quantity);
+
+        market.tick();
+        statistics.readCurrentTick(items[0], window);
+        assertEquals(0, window.quantity);
+        assertEquals(0, window.trades);
+        statistics.readLastTick(items[0], window);
+        assertEquals(0, window.tick);
+        assertEquals(2, window.quantity);
+        assertEquals(20.00, window.notional, 0.0);
+        assertEquals(1, window.trades);
+
+        market.buy(buyer, seller, items[0], 1, 4.00);
+        market.tick();
+        statistics.readLastTick(items[0], window);
+        assertEquals(1, window.tick);
+        assertEquals(1, window.quantity);
+        assertEquals(4.00, window.getVwap(), 0.0);
+    }
+
+    @Test
+    public void failedTradesAreNotRecorded() {
+        Agent buyer = new Agent("Buyer");
+        Agent seller = new Agent("Seller");
+        Market market = newMarket(buyer, seller);
+
+        try {
+            market.buy(buyer, seller, items[2], 1, 1.00);
+            fail();
+        } catch (InsufficientAmountException e) {
+            // Expected: the seller has none of the item.
+        }
+
+        TradeStatistics.Window window = new TradeStatistics.Window();
+        market.getTradeStatistics().readCumulative(items[2], window);
+        assertEquals(0, window.trades);
+    }
+
+    @Test
+    public void concurrentReadsAreConsistent() throws InterruptedException {
+        Agent buyer = new Agent("Buyer");
+        Agent seller = new Agent("Seller");
+        Market market = newMarket(buyer, seller);
+        TradeStatistics statistics = market.getTradeStatistics();
+        boolean[] inconsistent = {false};
+
+        Thread reader = new Thread(() -> {
+            TradeStatistics.Window window = new TradeStatistics.Window();
+            for (int i = 0; i < 100000; i++) {
+                statistics.readCumulative(items[0], window);
+                // Every trade is of 2 units for $6.00, so the totals must always agree with each other.
+                if (window.quantity != 2 * window.trades || window.notional != 6.00 * window.trades) {
+                    inconsistent[0] = true;
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 100000; i++) {
+            statistics.record(items[0], 2, 6.00);
+        }
+        reader.join();
+
+        assertFalse(inconsistent[0]);
+    }
+}